@@ -0,0 +1,84 @@
+package com.vision.paas.gateway.auth;
+
+import com.vision.paas.common.security.UserPrincipal;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Array;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * API Key Repository
+ * Reads the usable rows of api_keys, keyed by the Base64 SHA-256 hash stored in
+ * the api_key column, together with the owner's active subscription plan
+ */
+@Repository
+@RequiredArgsConstructor
+public class ApiKeyRepository {
+
+    private static final String SELECT_ACTIVE =
+            "SELECT k.api_key, k.user_id, k.key_name, k.scopes, k.expires_at, "
+            + "(SELECT s.plan_name FROM subscriptions s WHERE s.user_id = k.user_id AND s.status = 'active' "
+            + "ORDER BY s.created_at DESC LIMIT 1) AS plan "
+            + "FROM api_keys k WHERE k.is_active AND (k.expires_at IS NULL OR k.expires_at > NOW())";
+
+    // Never moves last_used_at backwards when flushes from several gateways interleave
+    private static final String UPDATE_LAST_USED =
+            "UPDATE api_keys SET last_used_at = ? WHERE api_key = ? AND (last_used_at IS NULL OR last_used_at < ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<StoredKey> findActive() {
+        return jdbcTemplate.query(SELECT_ACTIVE, KEY_MAPPER);
+    }
+
+    public StoredKey findActive(String keyHash) {
+        List<StoredKey> keys = jdbcTemplate.query(SELECT_ACTIVE + " AND k.api_key = ?", KEY_MAPPER, keyHash);
+        return keys.isEmpty() ? null : keys.get(0);
+    }
+
+    /**
+     * @param uses Key hash → epoch millis of its latest use
+     */
+    public void updateLastUsed(List<Map.Entry<String, Long>> uses) {
+        jdbcTemplate.batchUpdate(UPDATE_LAST_USED, uses, uses.size(), (ps, use) -> {
+            Timestamp usedAt = new Timestamp(use.getValue());
+            ps.setTimestamp(1, usedAt);
+            ps.setString(2, use.getKey());
+            ps.setTimestamp(3, usedAt);
+        });
+    }
+
+    private static final RowMapper<StoredKey> KEY_MAPPER = (rs, row) -> {
+        Array scopes = rs.getArray("scopes");
+        Timestamp expiresAt = rs.getTimestamp("expires_at");
+        String plan = rs.getString("plan");
+        return new StoredKey(rs.getString("api_key"), new AuthenticatedUser(rs.getString("user_id"), null,
+                rs.getString("key_name"), plan != null ? plan.toUpperCase(Locale.ROOT) : null,
+                scopes != null ? Arrays.asList((String[]) scopes.getArray()) : List.of(UserPrincipal.ALL_SCOPES),
+                expiresAt != null ? expiresAt.getTime() : Long.MAX_VALUE));
+    };
+
+    /**
+     * Usable key and the identity it authenticates as
+     */
+    public static class StoredKey {
+        private final String keyHash;
+        private final AuthenticatedUser user;
+
+        public StoredKey(String keyHash, AuthenticatedUser user) {
+            this.keyHash = keyHash;
+            this.user = user;
+        }
+
+        public String getKeyHash() { return keyHash; }
+
+        public AuthenticatedUser getUser() { return user; }
+    }
+}
@@ -0,0 +1,230 @@
+package com.vision.paas.gateway.auth;
+
+import com.vision.paas.gateway.auth.ApiKeyRepository.StoredKey;
+import com.vision.paas.gateway.config.GatewayProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * API Key Store
+ * In-memory copy of the usable API keys, keyed by their SHA-256 hash, with a Bloom filter
+ * in front so that unknown keys are rejected without any lookup. Changes to api_keys reach
+ * the gateway as NOTIFY events from a trigger; one listener thread applies them and also
+ * reloads the whole table periodically and after reconnecting, so the two never race.
+ * A notified key passes the Bloom filter but is dropped from memory, so its next use
+ * is looked up in the database, off the event loop.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ApiKeyStore {
+
+    public static final String KEY_PREFIX = "vsk_";
+
+    /**
+     * Channel the api_keys trigger notifies with the changed key's hash
+     */
+    static final String CHANNEL = "api_key_changes";
+
+    private static final long RECONNECT_DELAY_MS = 5000;
+
+    private final GatewayProperties properties;
+    private final ApiKeyRepository repository;
+    private final DataSource dataSource;
+    private final ApiKeyUsageRecorder usageRecorder;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile Snapshot snapshot;
+    private volatile boolean running;
+    private ExpiringCache<String, Boolean> unknownKeys;
+    private Thread listener;
+
+    @PostConstruct
+    public void init() {
+        GatewayProperties.ApiKeys config = properties.getApiKeys();
+        if (!config.isEnabled()) {
+            log.info("API key authentication disabled");
+            return;
+        }
+        unknownKeys = new ExpiringCache<>(config.getNegativeCacheSize());
+        running = true;
+        listener = new Thread(this::listen, "api-key-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+
+    /**
+     * @return The key's user, or empty when the key is unknown, revoked or expired
+     */
+    public Mono<AuthenticatedUser> lookup(String apiKey) {
+        if (!running || apiKey == null || !apiKey.startsWith(KEY_PREFIX)) {
+            return Mono.empty();
+        }
+        byte[] digest = Sha256.digest(apiKey);
+        ByteBuffer halves = ByteBuffer.wrap(digest);
+        Snapshot current = snapshot;
+        if (current != null && !current.bloom.mightContain(halves.getLong(), halves.getLong())) {
+            return Mono.empty();
+        }
+        String keyHash = Base64.getEncoder().encodeToString(digest);
+        if (current != null) {
+            AuthenticatedUser user = current.keys.get(keyHash);
+            if (user != null) {
+                if (user.getExpiresAt() <= System.currentTimeMillis()) {
+                    return Mono.empty();
+                }
+                usageRecorder.record(keyHash);
+                return Mono.just(user);
+            }
+        }
+        if (unknownKeys.get(keyHash) != null) {
+            return Mono.empty();
+        }
+        long seen = generation.get();
+        return Mono.fromCallable(() -> repository.findActive(keyHash))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnSuccess(stored -> remember(keyHash, stored, seen))
+                .map(stored -> {
+                    usageRecorder.record(keyHash);
+                    return stored.getUser();
+                })
+                .onErrorResume(DataAccessException.class, e -> {
+                    log.warn("API key lookup failed: {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Keys currently held in memory, -1 before the first load
+     */
+    public int size() {
+        Snapshot current = snapshot;
+        return current != null ? current.keys.size() : -1;
+    }
+
+    /**
+     * Cache a database answer unless the key changed while it was being looked up
+     */
+    private void remember(String keyHash, StoredKey stored, long seen) {
+        if (generation.get() != seen) {
+            return;
+        }
+        Snapshot current = snapshot;
+        if (stored == null) {
+            unknownKeys.put(keyHash, Boolean.TRUE,
+                    System.currentTimeMillis() + properties.getApiKeys().getNegativeTtl().toMillis());
+        } else if (current != null) {
+            current.add(keyHash, stored.getUser());
+        }
+    }
+
+    /**
+     * Forget the key so the next request reads it from the database; it stays in the
+     * Bloom filter, which only loses revoked keys on the next full reload
+     */
+    void invalidate(String keyHash) {
+        generation.incrementAndGet();
+        unknownKeys.invalidate(keyHash);
+        Snapshot current = snapshot;
+        if (current != null) {
+            current.keys.remove(keyHash);
+            ByteBuffer halves = ByteBuffer.wrap(Base64.getDecoder().decode(keyHash));
+            current.bloom.put(halves.getLong(), halves.getLong());
+        }
+    }
+
+    void reload() {
+        List<StoredKey> keys = repository.findActive();
+        Snapshot loaded = new Snapshot(BloomFilter.create(Math.max(keys.size() * 2, 1024),
+                properties.getApiKeys().getFalsePositiveRate()));
+        keys.forEach(key -> loaded.add(key.getKeyHash(), key.getUser()));
+        generation.incrementAndGet();
+        snapshot = loaded;
+        unknownKeys.clear();
+        log.info("Loaded {} API keys", keys.size());
+    }
+
+    private void listen() {
+        long reloadInterval = properties.getApiKeys().getReloadInterval().toMillis();
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                // Load only once subscribed, so no change can fall between the two
+                reload();
+                long nextReload = System.currentTimeMillis() + reloadInterval;
+                while (running) {
+                    long wait = nextReload - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        reload();
+                        nextReload = System.currentTimeMillis() + reloadInterval;
+                        continue;
+                    }
+                    PGNotification[] notifications = pgConnection.getNotifications((int) Math.min(wait, 10000));
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            invalidate(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException | DataAccessException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("API key listener disconnected, retrying in {} ms: {}", RECONNECT_DELAY_MS, e.getMessage());
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Keys and Bloom filter from one full load, plus what was added since
+     */
+    private static final class Snapshot {
+        final ConcurrentHashMap<String, AuthenticatedUser> keys = new ConcurrentHashMap<>();
+        final BloomFilter bloom;
+
+        Snapshot(BloomFilter bloom) {
+            this.bloom = bloom;
+        }
+
+        void add(String keyHash, AuthenticatedUser user) {
+            ByteBuffer halves = ByteBuffer.wrap(Base64.getDecoder().decode(keyHash));
+            bloom.put(halves.getLong(), halves.getLong());
+            keys.put(keyHash, user);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.vision.paas.gateway.auth;
+
+import com.vision.paas.gateway.config.GatewayProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * API Key Usage Recorder
+ * Write-behind for api_keys.last_used_at: a request only records the key's latest use in
+ * memory, and a background thread writes whatever accumulated as one batched UPDATE every
+ * few seconds. Repeat uses of a key between flushes collapse into a single row update.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ApiKeyUsageRecorder {
+
+    /**
+     * Uses closer together than this are not worth touching the map for
+     */
+    private static final long RESOLUTION_MS = 1000;
+
+    private final GatewayProperties properties;
+    private final ApiKeyRepository repository;
+    private final MeterRegistry registry;
+
+    // Per-bin locking in ConcurrentHashMap keeps writers to different keys apart
+    private final ConcurrentHashMap<String, Long> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flusher;
+    private Counter flushed;
+    private Counter failed;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("vision.gateway.api_keys.usage.pending", pending, Map::size)
+                .description("API keys with a use not yet written to last_used_at")
+                .register(registry);
+        flushed = Counter.builder("vision.gateway.api_keys.usage.flushed")
+                .description("last_used_at updates written")
+                .register(registry);
+        failed = Counter.builder("vision.gateway.api_keys.usage.failed")
+                .description("Flushes that failed and were retried later")
+                .register(registry);
+
+        long interval = properties.getApiKeys().getUsageFlushInterval().toMillis();
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "api-key-usage-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        flush();
+    }
+
+    public void record(String keyHash) {
+        long now = System.currentTimeMillis();
+        Long last = pending.get(keyHash);
+        if (last != null && now - last < RESOLUTION_MS) {
+            return;
+        }
+        pending.merge(keyHash, now, Math::max);
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Write the recorded uses; an entry is only removed if no newer use arrived meanwhile,
+     * and failed batches stay pending for the next flush
+     */
+    synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, Long>> uses = new ArrayList<>(pending.size());
+        pending.forEach((keyHash, usedAt) -> uses.add(Map.entry(keyHash, usedAt)));
+        int batchSize = properties.getApiKeys().getUsageBatchSize();
+        for (int from = 0; from < uses.size(); from += batchSize) {
+            List<Map.Entry<String, Long>> batch = uses.subList(from, Math.min(from + batchSize, uses.size()));
+            try {
+                repository.updateLastUsed(batch);
+            } catch (DataAccessException e) {
+                failed.increment();
+                log.warn("Failed to write last_used_at for {} API keys: {}", uses.size() - from, e.getMessage());
+                return;
+            }
+            batch.forEach(use -> pending.remove(use.getKey(), use.getValue()));
+            flushed.increment(batch.size());
+        }
+    }
+}
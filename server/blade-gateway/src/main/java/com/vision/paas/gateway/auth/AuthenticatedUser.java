@@ -0,0 +1,52 @@
+package com.vision.paas.gateway.auth;
+
+import java.util.List;
+
+/**
+ * Authenticated User
+ * Identity taken from a verified token; immutable so cached instances can be shared
+ */
+public class AuthenticatedUser {
+
+    private final String userId;
+    private final String email;
+    private final String name;
+    private final String plan;
+    private final List<String> scopes;
+    private final long expiresAt;
+
+    public AuthenticatedUser(String userId, String email, String name, String plan, List<String> scopes,
+                             long expiresAt) {
+        this.userId = userId;
+        this.email = email;
+        this.name = name;
+        this.plan = plan;
+        this.scopes = List.copyOf(scopes);
+        this.expiresAt = expiresAt;
+    }
+
+    public String getUserId() { return userId; }
+
+    public String getEmail() { return email; }
+
+    public String getName() { return name; }
+
+    /**
+     * Subscription plan name, or null when the credential does not carry one
+     */
+    public String getPlan() { return plan; }
+
+    public List<String> getScopes() { return scopes; }
+
+    /**
+     * The same identity with the plan looked up for it
+     */
+    public AuthenticatedUser withPlan(String plan) {
+        return new AuthenticatedUser(userId, email, name, plan, scopes, expiresAt);
+    }
+
+    /**
+     * Epoch millis after which the credential is no longer accepted
+     */
+    public long getExpiresAt() { return expiresAt; }
+}
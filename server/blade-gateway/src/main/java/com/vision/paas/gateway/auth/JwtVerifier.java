@@ -0,0 +1,121 @@
+package com.vision.paas.gateway.auth;
+
+import com.vision.paas.common.security.UserPrincipal;
+import com.vision.paas.gateway.config.GatewayProperties;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * JWT Verifier
+ * Verifies blade-auth's HS256 tokens locally, with a parser built once at startup.
+ * Verified claims are cached under the token's SHA-256 until the token expires, so a
+ * repeat request costs one hash and one map lookup instead of an HMAC check and a JSON
+ * parse. Everything is CPU-only, so it runs inline on the event loop.
+ */
+@Slf4j
+@Component
+public class JwtVerifier {
+
+    private final JwtParser parser;
+    private final ExpiringCache<TokenKey, AuthenticatedUser> cache;
+    private final long clockSkewMillis;
+
+    public JwtVerifier(GatewayProperties properties) {
+        GatewayProperties.Jwt config = properties.getJwt();
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(config.getSecret().getBytes(StandardCharsets.UTF_8)))
+                .setAllowedClockSkewSeconds(config.getClockSkew().toSeconds())
+                .build();
+        this.cache = new ExpiringCache<>(config.getCacheSize());
+        this.clockSkewMillis = config.getClockSkew().toMillis();
+    }
+
+    /**
+     * @return The token's user, or null when the token is malformed, forged, expired or has no expiry
+     */
+    public AuthenticatedUser verify(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        TokenKey key = TokenKey.of(token);
+        AuthenticatedUser user = cache.get(key);
+        if (user != null) {
+            return user;
+        }
+        user = parse(token);
+        if (user != null) {
+            cache.put(key, user, user.getExpiresAt() + clockSkewMillis);
+        }
+        return user;
+    }
+
+    /**
+     * Drop a cached token, e.g. after logout
+     */
+    public void invalidate(String token) {
+        cache.invalidate(TokenKey.of(token));
+    }
+
+    public int cachedTokens() {
+        return cache.size();
+    }
+
+    private AuthenticatedUser parse(String token) {
+        try {
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            Date expiration = claims.getExpiration();
+            if (claims.getSubject() == null || expiration == null) {
+                log.debug("Rejected token without subject or expiry");
+                return null;
+            }
+            String name = claims.get("name", String.class);
+            String scopes = claims.get("scopes", String.class);
+            return new AuthenticatedUser(claims.getSubject(), claims.get("email", String.class),
+                    name != null ? name : claims.get("username", String.class), claims.get("plan", String.class),
+                    scopes != null ? Arrays.asList(scopes.split(" ")) : List.of(UserPrincipal.ALL_SCOPES),
+                    expiration.getTime());
+        } catch (JwtException | IllegalArgumentException | ClassCastException e) {
+            log.debug("Rejected token: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * First 128 bits of the token's SHA-256; the raw bearer token is never kept
+     */
+    private static final class TokenKey {
+        private final long high;
+        private final long low;
+
+        private TokenKey(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        static TokenKey of(String token) {
+            ByteBuffer digest = ByteBuffer.wrap(Sha256.digest(token));
+            return new TokenKey(digest.getLong(), digest.getLong());
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof TokenKey key && key.high == high && key.low == low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.vision.paas.gateway.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 of credentials, with one digest instance per thread
+ */
+final class Sha256 {
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private Sha256() {
+    }
+
+    static byte[] digest(String value) {
+        return DIGEST.get().digest(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,66 @@
+package com.vision.paas.gateway.auth;
+
+import com.vision.paas.gateway.config.GatewayProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Subscription Plans
+ * Fills in the plan of users whose credential does not carry one, i.e. blade-auth's JWTs,
+ * from their active subscription. Answers are cached per user for a short time, so a plan
+ * change is picked up within the TTL; the database is only read off the event loop.
+ */
+@Slf4j
+@Component
+public class SubscriptionPlans {
+
+    /**
+     * Cached answer for a user without an active subscription
+     */
+    private static final String NO_PLAN = "";
+
+    private final SubscriptionRepository repository;
+    private final ExpiringCache<String, String> plans;
+    private final long ttlMillis;
+
+    public SubscriptionPlans(GatewayProperties properties, SubscriptionRepository repository) {
+        GatewayProperties.Subscriptions config = properties.getSubscriptions();
+        this.repository = repository;
+        this.plans = new ExpiringCache<>(config.getCacheSize());
+        this.ttlMillis = config.getTtl().toMillis();
+    }
+
+    /**
+     * @return The user with their plan; unchanged when the credential already names one,
+     * or when the lookup fails, in which case the services apply the free plan
+     */
+    public Mono<AuthenticatedUser> resolve(AuthenticatedUser user) {
+        if (user.getPlan() != null) {
+            return Mono.just(user);
+        }
+        String cached = plans.get(user.getUserId());
+        if (cached != null) {
+            return Mono.just(withPlan(user, cached));
+        }
+        return Mono.fromCallable(() -> {
+                    String plan = repository.findActivePlan(user.getUserId());
+                    return plan != null ? plan : NO_PLAN;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(plan -> {
+                    plans.put(user.getUserId(), plan, System.currentTimeMillis() + ttlMillis);
+                    return withPlan(user, plan);
+                })
+                .onErrorResume(DataAccessException.class, e -> {
+                    log.warn("Subscription plan lookup failed for user {}: {}", user.getUserId(), e.getMessage());
+                    return Mono.just(user);
+                });
+    }
+
+    private static AuthenticatedUser withPlan(AuthenticatedUser user, String plan) {
+        return NO_PLAN.equals(plan) ? user : user.withPlan(plan);
+    }
+}
@@ -0,0 +1,38 @@
+package com.vision.paas.gateway.auth;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Subscription Repository
+ * Reads a user's active subscription plan, the same way {@link ApiKeyRepository} does for a key's owner
+ */
+@Repository
+@RequiredArgsConstructor
+public class SubscriptionRepository {
+
+    private static final String SELECT_ACTIVE_PLAN =
+            "SELECT plan_name FROM subscriptions WHERE user_id = CAST(? AS uuid) AND status = 'active' "
+            + "ORDER BY created_at DESC LIMIT 1";
+
+    private static final Pattern UUID_PATTERN =
+            Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @return The upper-case plan name, or null when the user has no active subscription
+     */
+    public String findActivePlan(String userId) {
+        if (userId == null || !UUID_PATTERN.matcher(userId).matches()) {
+            return null;
+        }
+        List<String> plans = jdbcTemplate.queryForList(SELECT_ACTIVE_PLAN, String.class, userId);
+        return plans.isEmpty() || plans.get(0) == null ? null : plans.get(0).toUpperCase(Locale.ROOT);
+    }
+}
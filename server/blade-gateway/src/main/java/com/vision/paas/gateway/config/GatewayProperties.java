@@ -0,0 +1,390 @@
+package com.vision.paas.gateway.config;
+
+import com.vision.paas.common.enums.SubscriptionPlan;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gateway Properties
+ * Bound from the "gateway" section of application.yml
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway")
+public class GatewayProperties {
+
+    private Jwt jwt = new Jwt();
+
+    private Identity identity = new Identity();
+
+    private ApiKeys apiKeys = new ApiKeys();
+
+    private Subscriptions subscriptions = new Subscriptions();
+
+    private RateLimit rateLimit = new RateLimit();
+
+    private HeavyHitters heavyHitters = new HeavyHitters();
+
+    private Downstream downstream = new Downstream();
+
+    /**
+     * Per-route policies, compiled into a path trie; the most specific path wins.
+     * Reloaded when the environment is refreshed.
+     */
+    private List<Route> routes = new ArrayList<>();
+
+    /**
+     * Bearer token verification
+     */
+    @Data
+    public static class Jwt {
+
+        /**
+         * HMAC secret shared with blade-auth, which signs the tokens
+         */
+        private String secret = "vision-paas-jwt-secret-key-change-in-production";
+
+        /**
+         * Tolerated clock difference between blade-auth and the gateway
+         */
+        private Duration clockSkew = Duration.ofSeconds(30);
+
+        /**
+         * Verified tokens kept in memory; each entry lives until its token expires
+         */
+        private int cacheSize = 10000;
+    }
+
+    /**
+     * Signed identity forwarded to the services behind the gateway
+     */
+    @Data
+    public static class Identity {
+
+        /**
+         * Lifetime of a forwarded identity; only needs to cover the hop to the service
+         */
+        private Duration ttl = Duration.ofSeconds(60);
+    }
+
+    /**
+     * X-API-Key authentication against the api_keys table
+     */
+    @Data
+    public static class ApiKeys {
+
+        private boolean enabled = true;
+
+        /**
+         * Full reload of the keys, which also drops revoked keys from the Bloom filter;
+         * individual changes arrive as they happen
+         */
+        private Duration reloadInterval = Duration.ofMinutes(10);
+
+        /**
+         * Share of unknown keys the Bloom filter lets through to a database lookup
+         */
+        private double falsePositiveRate = 0.01;
+
+        /**
+         * How long a key the database did not know is rejected without asking again
+         */
+        private Duration negativeTtl = Duration.ofSeconds(60);
+
+        private int negativeCacheSize = 10000;
+
+        /**
+         * How often recorded key uses are written to api_keys.last_used_at
+         */
+        private Duration usageFlushInterval = Duration.ofSeconds(5);
+
+        /**
+         * Keys updated per batched UPDATE
+         */
+        private int usageBatchSize = 1000;
+    }
+
+    /**
+     * Plans of users whose token does not carry one, read from the subscriptions table
+     */
+    @Data
+    public static class Subscriptions {
+
+        /**
+         * How long a user's plan is used before it is read again; bounds how late a plan change applies
+         */
+        private Duration ttl = Duration.ofSeconds(60);
+
+        private int cacheSize = 10000;
+    }
+
+    /**
+     * Request rate limiting per client
+     */
+    @Data
+    public static class RateLimit {
+
+        /**
+         * LOCAL keeps the counters in this instance; REDIS shares them across all replicas
+         */
+        private Backend backend = Backend.REDIS;
+
+        /**
+         * Sustained rate of anonymous clients, and of routes that set none
+         */
+        private int requestsPerMinute = 60;
+
+        /**
+         * Requests that may arrive at once; 0 for as many as the rate allows per minute
+         */
+        private int burst;
+
+        /**
+         * Rates of signed-in clients by plan, on routes that set none
+         */
+        private Map<SubscriptionPlan, Rate> plans = new EnumMap<>(SubscriptionPlan.class);
+
+        /**
+         * Most requests one instance reserves from Redis in a single round trip and then
+         * hands out locally; capped at a twentieth of the burst so small limits stay exact
+         */
+        private int batchSize = 10;
+
+        /**
+         * Reserved requests not used within this time are given up
+         */
+        private Duration leaseTtl = Duration.ofSeconds(1);
+
+        /**
+         * Longest wait for Redis before the failure mode applies
+         */
+        private Duration timeout = Duration.ofMillis(50);
+
+        /**
+         * What to do while Redis is unreachable
+         */
+        private FailureMode failureMode = FailureMode.LOCAL;
+
+        /**
+         * After a Redis failure, how long to apply the failure mode before trying Redis again
+         */
+        private Duration retryAfterFailure = Duration.ofSeconds(1);
+
+        private String keyPrefix = "vision:ratelimit:";
+
+        /**
+         * Clients the local limiter tracks at most; beyond this, idle clients are forgotten first
+         */
+        private int localMaxClients = 100000;
+
+        public enum Backend {
+            LOCAL,
+            REDIS
+        }
+
+        /**
+         * Sustained rate plus the burst allowed on top of it
+         */
+        @Data
+        public static class Rate {
+
+            private int requestsPerMinute;
+
+            /**
+             * 0 for as many as the rate allows per minute
+             */
+            private int burst;
+        }
+
+        /**
+         * OPEN lets requests through, CLOSED rejects them, LOCAL limits them per instance
+         */
+        public enum FailureMode {
+            OPEN,
+            CLOSED,
+            LOCAL
+        }
+    }
+
+    /**
+     * Early rejection of addresses sending far more than any client should
+     */
+    @Data
+    public static class HeavyHitters {
+
+        private boolean enabled = true;
+
+        /**
+         * Requests are counted per window, with the previous window fading out over the current one
+         */
+        private Duration window = Duration.ofSeconds(10);
+
+        /**
+         * Requests from one address within a window beyond which it is rejected outright
+         */
+        private int threshold = 5000;
+
+        /**
+         * Counters per row of the sketch, rounded up to a power of two; more means fewer overestimates
+         */
+        private int width = 16384;
+
+        /**
+         * Rows of the sketch, each hashing addresses independently
+         */
+        private int depth = 4;
+
+        /**
+         * Heaviest addresses kept for the heavyhitters endpoint
+         */
+        private int topSize = 20;
+    }
+
+    /**
+     * Policy of the requests matching one of the paths, optionally only for some methods
+     */
+    @Data
+    public static class Route {
+
+        /**
+         * Also separates the route's rate limit counters from those of other routes
+         */
+        private String name;
+
+        /**
+         * Path patterns made of literal segments, * or {name} for one segment and a final ** for any rest
+         */
+        private List<String> paths = new ArrayList<>();
+
+        /**
+         * HTTP methods the route applies to; empty for all
+         */
+        private List<String> methods = new ArrayList<>();
+
+        /**
+         * Let requests through without a token or API key
+         */
+        private boolean anonymous;
+
+        /**
+         * Rate for every client on the route; null keeps the default and plan rates
+         */
+        private Integer requestsPerMinute;
+
+        private int burst;
+
+        /**
+         * Rates by plan on the route, ahead of the route's own rate
+         */
+        private Map<SubscriptionPlan, RateLimit.Rate> plans = new EnumMap<>(SubscriptionPlan.class);
+
+        /**
+         * Longest time to answer, after which the gateway responds 504; null for no limit
+         */
+        private Duration timeout;
+
+        /**
+         * Cache-Control set on responses that carry none
+         */
+        private String cacheControl;
+
+        /**
+         * Calls that take long by design, e.g. a deployment; they are not limited by, and do not
+         * feed, the latency-based concurrency limit, so they cannot starve the service's quick calls
+         */
+        private boolean longRunning;
+    }
+
+    /**
+     * Protection of the services behind the gateway, per gateway route and route policy
+     */
+    @Data
+    public static class Downstream {
+
+        private boolean enabled = true;
+
+        private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+        private Concurrency concurrency = new Concurrency();
+
+        /**
+         * Stops calling a route whose calls keep failing. Failures are errors such as refused
+         * connections and timeouts, and 502, 503 and 504 responses; other 5xx come from a
+         * service that is up.
+         */
+        @Data
+        public static class CircuitBreaker {
+
+            /**
+             * Share of failed calls in the window that opens the circuit
+             */
+            private double failureRateThreshold = 0.5;
+
+            /**
+             * Calls needed in the window before the failure rate counts
+             */
+            private int minimumCalls = 20;
+
+            /**
+             * Calls are counted over this sliding window, in one-second buckets
+             */
+            private Duration window = Duration.ofSeconds(10);
+
+            /**
+             * How long an open circuit rejects calls before letting trial calls through
+             */
+            private Duration openDuration = Duration.ofSeconds(30);
+
+            /**
+             * Trial calls that must all succeed to close the circuit again
+             */
+            private int halfOpenCalls = 5;
+        }
+
+        /**
+         * Adaptive limit of calls in flight, lowered as latency rises above the route's
+         * long-term latency and raised while it does not
+         */
+        @Data
+        public static class Concurrency {
+
+            private int initialLimit = 20;
+
+            private int minLimit = 5;
+
+            private int maxLimit = 1000;
+
+            /**
+             * Latency may grow to this multiple of the long-term latency before the limit shrinks
+             */
+            private double rttTolerance = 1.5;
+
+            /**
+             * Weight of each new limit estimate; lower reacts more slowly but steadier
+             */
+            private double smoothing = 0.2;
+
+            /**
+             * Calls are averaged per sample window, and the limit adjusted once per window
+             */
+            private Duration sampleWindow = Duration.ofSeconds(1);
+
+            /**
+             * Sample windows the long-term latency is averaged over
+             */
+            private int longWindow = 600;
+
+            /**
+             * Retry-After of calls rejected for being over the limit
+             */
+            private Duration retryAfter = Duration.ofSeconds(1);
+        }
+    }
+}
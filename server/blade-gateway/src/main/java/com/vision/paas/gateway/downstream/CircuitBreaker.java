@@ -0,0 +1,161 @@
+package com.vision.paas.gateway.downstream;
+
+import com.vision.paas.gateway.config.GatewayProperties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Circuit Breaker
+ * Counts calls and failures in one-second buckets over a sliding window. Once enough calls
+ * failed, the circuit opens and rejects every call for the open duration; then a few trial
+ * calls go through, and the circuit closes when all of them succeed or opens again when one
+ * fails.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final long SECOND = 1_000_000_000L;
+
+    /**
+     * Second of a bucket that counts nothing
+     */
+    private static final long UNUSED = Long.MIN_VALUE;
+
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final int buckets;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    /**
+     * Per bucket: the second it counts, its calls and its failures
+     */
+    private final AtomicLongArray counts;
+
+    private final AtomicInteger trialPermits = new AtomicInteger();
+    private final AtomicInteger trialSuccesses = new AtomicInteger();
+
+    private volatile State state = State.CLOSED;
+    private volatile long openUntil;
+
+    public CircuitBreaker(GatewayProperties.Downstream.CircuitBreaker config) {
+        this.failureRateThreshold = config.getFailureRateThreshold();
+        this.minimumCalls = config.getMinimumCalls();
+        this.buckets = (int) Math.max(1, config.getWindow().toSeconds());
+        this.openNanos = config.getOpenDuration().toNanos();
+        this.halfOpenCalls = Math.max(1, config.getHalfOpenCalls());
+        this.counts = new AtomicLongArray(buckets * 3);
+        for (int i = 0; i < buckets; i++) {
+            counts.set(i * 3, UNUSED);
+        }
+    }
+
+    /**
+     * @return Whether a call may go through; a permitted call must end in {@link #onResult} or {@link #onCancel}
+     */
+    public boolean tryAcquire(long now) {
+        State current = state;
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN) {
+            if (now - openUntil < 0) {
+                return false;
+            }
+            synchronized (this) {
+                if (state == State.OPEN && now - openUntil >= 0) {
+                    trialPermits.set(halfOpenCalls);
+                    trialSuccesses.set(0);
+                    state = State.HALF_OPEN;
+                }
+            }
+        }
+        return state == State.HALF_OPEN ? trialPermits.getAndDecrement() > 0 : state == State.CLOSED;
+    }
+
+    public void onResult(boolean success, long now) {
+        if (state == State.HALF_OPEN) {
+            if (!success) {
+                open(now);
+            } else if (trialSuccesses.incrementAndGet() >= halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        record(success, now);
+        if (!success && state == State.CLOSED) {
+            long calls = 0;
+            long failures = 0;
+            long second = Math.floorDiv(now, SECOND);
+            for (int i = 0; i < buckets; i++) {
+                long bucketSecond = counts.get(i * 3);
+                if (bucketSecond != UNUSED && second - bucketSecond < buckets) {
+                    calls += counts.get(i * 3 + 1);
+                    failures += counts.get(i * 3 + 2);
+                }
+            }
+            if (calls >= minimumCalls && failures >= calls * failureRateThreshold) {
+                open(now);
+            }
+        }
+    }
+
+    /**
+     * A permitted call that ended without an outcome, e.g. because the client went away
+     */
+    public void onCancel() {
+        if (state == State.HALF_OPEN) {
+            trialPermits.incrementAndGet();
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Time until an open circuit lets trial calls through
+     */
+    public long retryAfterNanos(long now) {
+        return Math.max(0, openUntil - now);
+    }
+
+    private void record(boolean success, long now) {
+        long second = Math.floorDiv(now, SECOND);
+        int bucket = (int) Math.floorMod(second, (long) buckets);
+        if (counts.get(bucket * 3) != second) {
+            synchronized (this) {
+                if (counts.get(bucket * 3) != second) {
+                    counts.set(bucket * 3 + 1, 0);
+                    counts.set(bucket * 3 + 2, 0);
+                    counts.set(bucket * 3, second);
+                }
+            }
+        }
+        counts.incrementAndGet(bucket * 3 + 1);
+        if (!success) {
+            counts.incrementAndGet(bucket * 3 + 2);
+        }
+    }
+
+    private synchronized void open(long now) {
+        openUntil = now + openNanos;
+        state = State.OPEN;
+    }
+
+    private synchronized void close() {
+        if (state != State.HALF_OPEN) {
+            return;
+        }
+        for (int i = 0; i < buckets; i++) {
+            counts.set(i * 3, UNUSED);
+        }
+        state = State.CLOSED;
+    }
+}
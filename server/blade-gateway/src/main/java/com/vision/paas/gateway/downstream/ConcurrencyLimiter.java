@@ -0,0 +1,128 @@
+package com.vision.paas.gateway.downstream;
+
+import com.vision.paas.gateway.config.GatewayProperties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency Limiter
+ * Finds the calls a service can have in flight from its latency, in the manner of a gradient
+ * limiter: each sample window's average round-trip time is compared with a long average over
+ * many windows that stands for the service's unloaded latency. While the two agree the limit
+ * grows by about its square root per window; as queueing raises the window's latency, the
+ * ratio pulls the limit down. A window with a failed call halves the estimate before smoothing.
+ */
+public class ConcurrencyLimiter {
+
+    /**
+     * Calls a window needs before it adjusts the limit
+     */
+    private static final int MIN_WINDOW_CALLS = 10;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private final double smoothing;
+    private final long windowNanos;
+    private final double longWeight;
+
+    private volatile int limit;
+
+    // Guarded by this
+    private double estimatedLimit;
+    private double longRtt;
+    private long windowStart;
+    private long windowRtt;
+    private int windowCalls;
+    private int windowMaxInFlight;
+    private boolean windowFailed;
+
+    public ConcurrencyLimiter(GatewayProperties.Downstream.Concurrency config, long now) {
+        this.minLimit = Math.max(1, config.getMinLimit());
+        this.maxLimit = Math.max(minLimit, config.getMaxLimit());
+        this.rttTolerance = config.getRttTolerance();
+        this.smoothing = config.getSmoothing();
+        this.windowNanos = config.getSampleWindow().toNanos();
+        this.longWeight = 2.0 / (Math.max(1, config.getLongWindow()) + 1);
+        this.estimatedLimit = Math.min(maxLimit, Math.max(minLimit, config.getInitialLimit()));
+        this.limit = (int) estimatedLimit;
+        this.windowStart = now;
+    }
+
+    /**
+     * @return The calls in flight including this one, or 0 when the limit is reached;
+     * an admitted call must end in {@link #onSample} or {@link #release}
+     */
+    public int tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return 0;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * End an admitted call without telling anything about the service
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * End an admitted call and adjust the limit once its window is over
+     *
+     * @param inFlightAtStart What {@link #tryAcquire} returned for the call
+     * @param failed          Whether the call failed or timed out rather than completing
+     */
+    public void onSample(long rttNanos, int inFlightAtStart, boolean failed, long now) {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            windowRtt += rttNanos;
+            windowCalls++;
+            windowMaxInFlight = Math.max(windowMaxInFlight, inFlightAtStart);
+            windowFailed |= failed;
+            if (now - windowStart < windowNanos || windowCalls < MIN_WINDOW_CALLS) {
+                return;
+            }
+            adjust((double) windowRtt / windowCalls);
+            windowStart = now;
+            windowRtt = 0;
+            windowCalls = 0;
+            windowMaxInFlight = 0;
+            windowFailed = false;
+        }
+    }
+
+    private void adjust(double shortRtt) {
+        if (longRtt == 0) {
+            longRtt = shortRtt;
+        }
+        longRtt += (shortRtt - longRtt) * longWeight;
+        // Once latency falls well below the long average, that average was raised by an overload; let it recover
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+        // Calls made well below the limit say nothing about where the limit should be
+        if (!windowFailed && windowMaxInFlight < estimatedLimit / 2) {
+            return;
+        }
+        double gradient = windowFailed ? 0.5 : Math.max(0.5, Math.min(1.0, rttTolerance * longRtt / shortRtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit,
+                estimatedLimit * (1 - smoothing) + newLimit * smoothing));
+        limit = (int) estimatedLimit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
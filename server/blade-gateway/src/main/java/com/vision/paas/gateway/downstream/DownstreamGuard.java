@@ -0,0 +1,92 @@
+package com.vision.paas.gateway.downstream;
+
+import com.vision.paas.gateway.config.GatewayProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Downstream Guard
+ * One circuit breaker and one concurrency limiter per gateway route and route policy, created
+ * on first use so a failing or slow service only sheds its own traffic, and slow calls of one
+ * policy do not pull down the limit of the service's other calls.
+ */
+@Component
+@RequiredArgsConstructor
+public class DownstreamGuard {
+
+    private final GatewayProperties properties;
+    private final MeterRegistry registry;
+
+    private final ConcurrentHashMap<String, Downstream> downstreams = new ConcurrentHashMap<>();
+
+    public Downstream get(String routeId, String policy) {
+        String key = routeId + "/" + policy;
+        Downstream downstream = downstreams.get(key);
+        return downstream != null ? downstream : downstreams.computeIfAbsent(key, ignored -> create(routeId, policy));
+    }
+
+    private Downstream create(String routeId, String policy) {
+        GatewayProperties.Downstream config = properties.getDownstream();
+        Downstream downstream = new Downstream(new CircuitBreaker(config.getCircuitBreaker()),
+                new ConcurrencyLimiter(config.getConcurrency(), System.nanoTime()),
+                rejected(routeId, policy, "circuit_open"), rejected(routeId, policy, "concurrency"));
+        Gauge.builder("vision.gateway.downstream.limit", downstream.limiter, ConcurrencyLimiter::getLimit)
+                .description("Calls the route's service may have in flight")
+                .tag("route", routeId)
+                .tag("policy", policy)
+                .register(registry);
+        Gauge.builder("vision.gateway.downstream.in_flight", downstream.limiter, ConcurrencyLimiter::getInFlight)
+                .description("Calls in flight to the route's service")
+                .tag("route", routeId)
+                .tag("policy", policy)
+                .register(registry);
+        Gauge.builder("vision.gateway.downstream.circuit", downstream.breaker, breaker -> breaker.getState().ordinal())
+                .description("Circuit state of the route: 0 closed, 1 open, 2 half open")
+                .tag("route", routeId)
+                .tag("policy", policy)
+                .register(registry);
+        return downstream;
+    }
+
+    private Counter rejected(String routeId, String policy, String reason) {
+        return Counter.builder("vision.gateway.downstream.rejected")
+                .description("Requests shed before reaching the route's service")
+                .tag("route", routeId)
+                .tag("policy", policy)
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    public static class Downstream {
+        private final CircuitBreaker breaker;
+        private final ConcurrencyLimiter limiter;
+        private final Counter circuitOpen;
+        private final Counter overLimit;
+
+        Downstream(CircuitBreaker breaker, ConcurrencyLimiter limiter, Counter circuitOpen, Counter overLimit) {
+            this.breaker = breaker;
+            this.limiter = limiter;
+            this.circuitOpen = circuitOpen;
+            this.overLimit = overLimit;
+        }
+
+        public CircuitBreaker getBreaker() { return breaker; }
+
+        public ConcurrencyLimiter getLimiter() { return limiter; }
+
+        /**
+         * Count a request turned away because the circuit is open
+         */
+        public void rejectedByCircuit() { circuitOpen.increment(); }
+
+        /**
+         * Count a request turned away because the concurrency limit is reached
+         */
+        public void rejectedByLimit() { overLimit.increment(); }
+    }
+}
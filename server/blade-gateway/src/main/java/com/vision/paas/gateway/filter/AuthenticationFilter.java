@@ -1,82 +1,135 @@
 package com.vision.paas.gateway.filter;
 
+import com.vision.paas.common.security.IdentityToken;
+import com.vision.paas.common.security.UserPrincipal;
+import com.vision.paas.gateway.auth.ApiKeyStore;
+import com.vision.paas.gateway.auth.AuthenticatedUser;
+import com.vision.paas.gateway.auth.JwtVerifier;
+import com.vision.paas.gateway.auth.SubscriptionPlans;
+import com.vision.paas.gateway.config.GatewayProperties;
+import com.vision.paas.gateway.route.RoutePolicies;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
 import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
-import java.util.List;
+import java.util.Optional;
 
 /**
  * Authentication Filter
- * Validates JWT tokens and API keys
+ * Validates JWT tokens and API keys, and forwards the verified identity downstream,
+ * with the user's subscription plan, in a signed header so the services do not verify
+ * the token again
  */
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class AuthenticationFilter implements GlobalFilter, Ordered {
-    
-    private static final List<String> EXCLUDED_PATHS = List.of(
-            "/api/auth/login",
-            "/api/auth/register",
-            "/api/auth/refresh",
-            "/health",
-            "/actuator"
-    );
+
+    /**
+     * Exchange attribute holding the {@link AuthenticatedUser} of an authenticated request
+     */
+    public static final String AUTHENTICATED_USER = AuthenticationFilter.class.getName() + ".user";
+
+    /**
+     * Unsigned plan header older service versions read; a client must never be able to set it
+     */
+    private static final String USER_PLAN_HEADER = "X-User-Plan";
+
+    private final JwtVerifier jwtVerifier;
+
+    private final ApiKeyStore apiKeyStore;
+
+    private final SubscriptionPlans subscriptionPlans;
+
+    private final IdentityToken identityToken;
+
+    private final GatewayProperties properties;
+
+    private final RoutePolicies routePolicies;
     
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
         ServerHttpRequest request = exchange.getRequest();
-        String path = request.getURI().getPath();
-        
-        log.debug("Processing request: {} {}", request.getMethod(), path);
+        log.debug("Processing request: {} {}", request.getMethod(), request.getPath());
         
-        // Skip authentication for excluded paths
-        if (isExcludedPath(path)) {
-            return chain.filter(exchange);
+        // Skip authentication on routes open to anonymous clients
+        if (routePolicies.get(exchange).isAnonymous()) {
+            return forward(exchange, chain, null);
         }
         
         // Check for API Key
         String apiKey = request.getHeaders().getFirst("X-API-Key");
-        if (apiKey != null && validateApiKey(apiKey)) {
-            log.debug("Valid API key authentication");
-            return chain.filter(exchange);
+        if (apiKey != null) {
+            return apiKeyStore.lookup(apiKey)
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .flatMap(user -> {
+                        if (user.isPresent()) {
+                            log.debug("Valid API key authentication for user {}", user.get().getUserId());
+                            exchange.getAttributes().put(AUTHENTICATED_USER, user.get());
+                            return forward(exchange, chain, user.get());
+                        }
+                        return authenticateBearer(exchange, chain);
+                    });
         }
-        
+        return authenticateBearer(exchange, chain);
+    }
+
+    private Mono<Void> authenticateBearer(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+
         // Check for JWT Token
         String authHeader = request.getHeaders().getFirst("Authorization");
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            String token = authHeader.substring(7);
-            if (validateJwtToken(token)) {
-                log.debug("Valid JWT authentication");
-                return chain.filter(exchange);
+            AuthenticatedUser verified = jwtVerifier.verify(authHeader.substring(7));
+            if (verified != null) {
+                log.debug("Valid JWT authentication for user {}", verified.getUserId());
+                // blade-auth's tokens carry no plan; it comes from the user's subscription
+                return subscriptionPlans.resolve(verified).flatMap(user -> {
+                    exchange.getAttributes().put(AUTHENTICATED_USER, user);
+                    return forward(exchange, chain, user);
+                });
             }
         }
         
         // No valid authentication found
-        log.warn("Unauthorized request to: {}", path);
+        log.warn("Unauthorized request to: {}", request.getURI().getPath());
         exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
         return exchange.getResponse().setComplete();
     }
     
-    private boolean isExcludedPath(String path) {
-        return EXCLUDED_PATHS.stream().anyMatch(path::startsWith);
-    }
-    
-    private boolean validateApiKey(String apiKey) {
-        // TODO: Implement API key validation with vision-user service
-        return apiKey.startsWith("vp_");
-    }
-    
-    private boolean validateJwtToken(String token) {
-        // TODO: Implement JWT validation with blade-auth service
-        return token != null && !token.isEmpty();
+    /**
+     * Replace whatever identity headers the client sent with the verified user's, if any;
+     * the plan only ever travels inside the signed identity
+     */
+    private Mono<Void> forward(ServerWebExchange exchange, GatewayFilterChain chain, AuthenticatedUser user) {
+        HttpHeaders headers = exchange.getRequest().getHeaders();
+        if (user == null && !headers.containsKey(IdentityToken.HEADER) && !headers.containsKey(IdentityToken.USER_ID_HEADER)
+                && !headers.containsKey(USER_PLAN_HEADER)) {
+            return chain.filter(exchange);
+        }
+        String identity = user != null ? identityToken.sign(new UserPrincipal(user.getUserId(), user.getPlan(),
+                user.getScopes(), System.currentTimeMillis() + properties.getIdentity().getTtl().toMillis())) : null;
+        ServerHttpRequest request = exchange.getRequest().mutate().headers(h -> {
+            h.remove(IdentityToken.HEADER);
+            h.remove(IdentityToken.USER_ID_HEADER);
+            h.remove(USER_PLAN_HEADER);
+            if (identity != null) {
+                h.set(IdentityToken.HEADER, identity);
+                h.set(IdentityToken.USER_ID_HEADER, user.getUserId());
+            }
+        }).build();
+        return chain.filter(exchange.mutate().request(request).build());
     }
-    
+
     @Override
     public int getOrder() {
         return -100;
@@ -0,0 +1,126 @@
+package com.vision.paas.gateway.filter;
+
+import com.vision.paas.gateway.config.GatewayProperties;
+import com.vision.paas.gateway.downstream.CircuitBreaker;
+import com.vision.paas.gateway.downstream.ConcurrencyLimiter;
+import com.vision.paas.gateway.downstream.DownstreamGuard;
+import com.vision.paas.gateway.route.RoutePolicies;
+import com.vision.paas.gateway.route.RoutePolicy;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downstream Protection Filter
+ * Sheds requests with a 503 while their route's circuit is open or its service already has
+ * as many calls in flight as it can take, and feeds every call's outcome and latency back.
+ * Only errors and 502, 503 and 504 responses count as failures; the service answering 4xx
+ * or 500 for a request is not a sign it is down. Calls of a long-running route policy only
+ * pass the circuit breaker, as their latency would read as overload.
+ */
+@Component
+public class DownstreamProtectionFilter implements GlobalFilter, Ordered {
+
+    private final boolean enabled;
+    private final DownstreamGuard guard;
+    private final RoutePolicies routePolicies;
+    private final String retryAfter;
+
+    public DownstreamProtectionFilter(GatewayProperties properties, DownstreamGuard guard, RoutePolicies routePolicies) {
+        this.enabled = properties.getDownstream().isEnabled();
+        this.guard = guard;
+        this.routePolicies = routePolicies;
+        this.retryAfter = Long.toString(Math.max(1, properties.getDownstream().getConcurrency().getRetryAfter().toSeconds()));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (!enabled || route == null) {
+            return chain.filter(exchange);
+        }
+        RoutePolicy policy = routePolicies.get(exchange);
+        DownstreamGuard.Downstream downstream = guard.get(route.getId(), policy.getName());
+        ConcurrencyLimiter limiter = policy.isLongRunning() ? null : downstream.getLimiter();
+        CircuitBreaker breaker = downstream.getBreaker();
+
+        long start = System.nanoTime();
+        int inFlight = limiter != null ? limiter.tryAcquire() : 1;
+        if (inFlight == 0) {
+            downstream.rejectedByLimit();
+            return reject(exchange, retryAfter);
+        }
+        if (!breaker.tryAcquire(start)) {
+            if (limiter != null) {
+                limiter.release();
+            }
+            downstream.rejectedByCircuit();
+            long seconds = TimeUnit.NANOSECONDS.toSeconds(breaker.retryAfterNanos(start) + TimeUnit.SECONDS.toNanos(1) - 1);
+            return reject(exchange, Long.toString(Math.max(1, seconds)));
+        }
+
+        ServerHttpResponse response = exchange.getResponse();
+        long[] committedAt = {0};
+        response.beforeCommit(() -> {
+            committedAt[0] = System.nanoTime();
+            return Mono.empty();
+        });
+        Duration timeout = policy.getTimeout();
+        return chain.filter(exchange).doFinally(signal -> {
+            long end = committedAt[0] != 0 ? committedAt[0] : System.nanoTime();
+            long rtt = end - start;
+            boolean failed;
+            if (signal == SignalType.CANCEL && committedAt[0] == 0) {
+                // The client went away; only the route's own timeout says anything about the service
+                if (timeout == null || rtt < timeout.toNanos()) {
+                    if (limiter != null) {
+                        limiter.release();
+                    }
+                    breaker.onCancel();
+                    return;
+                }
+                failed = true;
+            } else {
+                failed = signal == SignalType.ON_ERROR || isFailure(response.getStatusCode());
+            }
+            if (limiter != null) {
+                limiter.onSample(rtt, inFlight, failed, end);
+            }
+            breaker.onResult(!failed, end);
+        });
+    }
+
+    private static boolean isFailure(HttpStatusCode status) {
+        return status != null && (status.value() == HttpStatus.BAD_GATEWAY.value()
+                || status.value() == HttpStatus.SERVICE_UNAVAILABLE.value()
+                || status.value() == HttpStatus.GATEWAY_TIMEOUT.value());
+    }
+
+    private static Mono<Void> reject(ServerWebExchange exchange, String retryAfter) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+        return response.setComplete();
+    }
+
+    /**
+     * After rate limiting, so only requests that would be forwarded take a slot
+     */
+    @Override
+    public int getOrder() {
+        return 10;
+    }
+}
@@ -0,0 +1,62 @@
+package com.vision.paas.gateway.filter;
+
+import com.vision.paas.gateway.config.GatewayProperties;
+import com.vision.paas.gateway.ratelimit.HeavyHitterDetector;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Heavy Hitter Filter
+ * Rejects addresses flooding the gateway before authentication or rate limiting spend
+ * anything on them, and without keeping any state per address.
+ */
+@Component
+public class HeavyHitterFilter implements GlobalFilter, Ordered {
+
+    private final boolean enabled;
+    private final HeavyHitterDetector detector;
+    private final Counter rejected;
+    private final String retryAfter;
+
+    public HeavyHitterFilter(GatewayProperties properties, HeavyHitterDetector detector, MeterRegistry registry) {
+        this.enabled = properties.getHeavyHitters().isEnabled();
+        this.detector = detector;
+        this.rejected = Counter.builder("vision.gateway.heavy_hitters.rejected")
+                .description("Requests rejected because their address sent too many")
+                .register(registry);
+        this.retryAfter = Long.toString(Math.max(1, properties.getHeavyHitters().getWindow().toSeconds()));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        if (!enabled || remoteAddress == null || remoteAddress.getAddress() == null
+                || !detector.record(remoteAddress.getAddress())) {
+            return chain.filter(exchange);
+        }
+        rejected.increment();
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+        return response.setComplete();
+    }
+
+    /**
+     * Ahead of authentication
+     */
+    @Override
+    public int getOrder() {
+        return -200;
+    }
+}
@@ -1,98 +1,88 @@
 package com.vision.paas.gateway.filter;
 
+import com.vision.paas.gateway.auth.AuthenticatedUser;
+import com.vision.paas.gateway.config.GatewayProperties;
+import com.vision.paas.gateway.ratelimit.LocalRateLimiter;
+import com.vision.paas.gateway.ratelimit.RateLimit;
+import com.vision.paas.gateway.ratelimit.RateLimitDecision;
+import com.vision.paas.gateway.ratelimit.RedisRateLimiter;
+import com.vision.paas.gateway.route.RoutePolicies;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
 import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
-import java.time.Duration;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
-
 /**
  * Rate Limiting Filter
- * Implements token bucket algorithm for rate limiting
+ * Limits each client by the rate of the route's policy for the client's plan, either on
+ * this instance or across all replicas through Redis. Runs after authentication, so
+ * signed-in clients are limited by user and plan rather than by address.
  */
 @Slf4j
 @Component
 public class RateLimitFilter implements GlobalFilter, Ordered {
-    
-    private final ConcurrentHashMap<String, RateLimitBucket> buckets = new ConcurrentHashMap<>();
-    
-    private static final int MAX_REQUESTS_PER_MINUTE = 60;
-    
+
+    public static final String LIMIT_HEADER = "X-RateLimit-Limit";
+    public static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+
+    private final GatewayProperties properties;
+    private final RoutePolicies routePolicies;
+    private final LocalRateLimiter localRateLimiter;
+    private final RedisRateLimiter redisRateLimiter;
+
+    public RateLimitFilter(GatewayProperties properties, RoutePolicies routePolicies,
+                           LocalRateLimiter localRateLimiter, RedisRateLimiter redisRateLimiter) {
+        this.properties = properties;
+        this.routePolicies = routePolicies;
+        this.localRateLimiter = localRateLimiter;
+        this.redisRateLimiter = redisRateLimiter;
+    }
+
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
-        String clientId = getClientId(exchange);
-        
-        RateLimitBucket bucket = buckets.computeIfAbsent(clientId, 
-                k -> new RateLimitBucket(MAX_REQUESTS_PER_MINUTE));
-        
-        if (bucket.tryConsume()) {
-            log.debug("Request allowed for client: {}", clientId);
-            return chain.filter(exchange);
-        } else {
+        AuthenticatedUser user = exchange.getAttribute(AuthenticationFilter.AUTHENTICATED_USER);
+        RateLimit limit = routePolicies.get(exchange).getRateLimit(user != null, user != null ? user.getPlan() : null);
+        String clientId = limit.getPolicy() + ":" + getClientId(exchange, user);
+        Mono<RateLimitDecision> decision = properties.getRateLimit().getBackend() == GatewayProperties.RateLimit.Backend.REDIS
+                ? redisRateLimiter.acquire(clientId, limit)
+                : Mono.just(localRateLimiter.tryAcquire(clientId, limit));
+        return decision.flatMap(result -> {
+            ServerHttpResponse response = exchange.getResponse();
+            HttpHeaders headers = response.getHeaders();
+            headers.set(LIMIT_HEADER, Integer.toString(result.getLimit()));
+            if (result.getRemaining() >= 0) {
+                headers.set(REMAINING_HEADER, Integer.toString(result.getRemaining()));
+            }
+            if (result.isAllowed()) {
+                return chain.filter(exchange);
+            }
             log.warn("Rate limit exceeded for client: {}", clientId);
-            exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
-            return exchange.getResponse().setComplete();
-        }
+            response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+            headers.set(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, (result.getRetryAfterMillis() + 999) / 1000)));
+            return response.setComplete();
+        });
     }
-    
-    private String getClientId(ServerWebExchange exchange) {
-        // Use API key if available, otherwise use IP address
-        String apiKey = exchange.getRequest().getHeaders().getFirst("X-API-Key");
-        if (apiKey != null) {
-            return apiKey;
+
+    /**
+     * The authenticated user if there is one, otherwise the remote address; raw API keys never leave the gateway
+     */
+    private String getClientId(ServerWebExchange exchange, AuthenticatedUser user) {
+        if (user != null) {
+            return "user:" + user.getUserId();
         }
-        
         String clientIp = exchange.getRequest().getRemoteAddress() != null ?
                 exchange.getRequest().getRemoteAddress().getAddress().getHostAddress() : "unknown";
-        return clientIp;
+        return "ip:" + clientIp;
     }
-    
+
     @Override
     public int getOrder() {
         return -50;
     }
-    
-    /**
-     * Simple token bucket implementation
-     */
-    private static class RateLimitBucket {
-        private final int capacity;
-        private final AtomicInteger tokens;
-        private long lastRefillTime;
-        
-        public RateLimitBucket(int capacity) {
-            this.capacity = capacity;
-            this.tokens = new AtomicInteger(capacity);
-            this.lastRefillTime = System.currentTimeMillis();
-        }
-        
-        public synchronized boolean tryConsume() {
-            refill();
-            if (tokens.get() > 0) {
-                tokens.decrementAndGet();
-                return true;
-            }
-            return false;
-        }
-        
-        private void refill() {
-            long now = System.currentTimeMillis();
-            long timePassed = now - lastRefillTime;
-            
-            // Refill 1 token per second
-            int tokensToAdd = (int) (timePassed / 1000);
-            if (tokensToAdd > 0) {
-                int newTokens = Math.min(capacity, tokens.get() + tokensToAdd);
-                tokens.set(newTokens);
-                lastRefillTime = now;
-            }
-        }
-    }
 }
@@ -0,0 +1,63 @@
+package com.vision.paas.gateway.filter;
+
+import com.vision.paas.gateway.route.RoutePolicies;
+import com.vision.paas.gateway.route.RoutePolicy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Route Policy Filter
+ * Resolves the request's route policy for the filters after it, and applies the route's
+ * timeout and Cache-Control
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RoutePolicyFilter implements GlobalFilter, Ordered {
+
+    private final RoutePolicies routePolicies;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        RoutePolicy policy = routePolicies.get(exchange);
+        if (policy.getCacheControl() != null) {
+            ServerHttpResponse response = exchange.getResponse();
+            response.beforeCommit(() -> {
+                if (!response.getHeaders().containsKey(HttpHeaders.CACHE_CONTROL)) {
+                    response.getHeaders().set(HttpHeaders.CACHE_CONTROL, policy.getCacheControl());
+                }
+                return Mono.empty();
+            });
+        }
+        if (policy.getTimeout() == null) {
+            return chain.filter(exchange);
+        }
+        return chain.filter(exchange).timeout(policy.getTimeout(), Mono.defer(() -> {
+            ServerHttpResponse response = exchange.getResponse();
+            log.warn("Route {} timed out after {}: {}", policy.getName(), policy.getTimeout(),
+                    exchange.getRequest().getPath());
+            if (response.isCommitted()) {
+                return Mono.empty();
+            }
+            response.setStatusCode(HttpStatus.GATEWAY_TIMEOUT);
+            return response.setComplete();
+        }));
+    }
+
+    /**
+     * After heavy hitters are turned away, ahead of authentication
+     */
+    @Override
+    public int getOrder() {
+        return -150;
+    }
+}
@@ -0,0 +1,224 @@
+package com.vision.paas.gateway.ratelimit;
+
+import com.vision.paas.gateway.config.GatewayProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Heavy Hitter Detector
+ * Counts requests per source address in a Count-Min Sketch, whose size is fixed however many
+ * addresses there are. Counts never underestimate, so an address reported below the threshold
+ * really is below it. The sketch is replaced every window and the previous one fades out
+ * linearly over the current window, which gives a sliding count without per-address state.
+ * Addresses well on their way to the threshold are sampled into a small table of top
+ * offenders for inspection; recording a request otherwise allocates nothing.
+ */
+@Component
+public class HeavyHitterDetector {
+
+    private final int width;
+    private final int depth;
+    private final int mask;
+    private final int threshold;
+    private final long windowNanos;
+    private final LongSupplier clock;
+    private final Offender[] top;
+
+    private volatile Window window;
+
+    @Autowired
+    public HeavyHitterDetector(GatewayProperties properties) {
+        this(properties.getHeavyHitters(), System::nanoTime);
+    }
+
+    HeavyHitterDetector(GatewayProperties.HeavyHitters config, LongSupplier clock) {
+        if (config.getThreshold() <= 0 || config.getDepth() <= 0 || config.getWidth() <= 0) {
+            throw new IllegalArgumentException("threshold, depth and width must be positive");
+        }
+        this.width = Integer.highestOneBit(Math.max(2, config.getWidth()) - 1) << 1;
+        this.depth = config.getDepth();
+        this.mask = width - 1;
+        this.threshold = config.getThreshold();
+        this.windowNanos = config.getWindow().toNanos();
+        this.clock = clock;
+        this.top = new Offender[Math.max(1, config.getTopSize())];
+        this.window = new Window(clock.getAsLong(), new AtomicIntegerArray(width * depth), null);
+    }
+
+    /**
+     * Count one request from the address
+     *
+     * @return Whether the address is over the threshold and should be rejected
+     */
+    public boolean record(InetAddress address) {
+        long now = clock.getAsLong();
+        Window current = current(now);
+        long hash = mix(address.hashCode());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        int count = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            count = Math.min(count, current.counts.incrementAndGet(row * width + ((h1 + row * h2) & mask)));
+        }
+        long estimate = count + fading(current, now, h1, h2);
+        // Sampled so that a flood takes the table's lock once per 16 requests at most
+        if (estimate >= threshold / 4 && (count & 15) == 0) {
+            offer(address, estimate, now);
+        }
+        return estimate >= threshold;
+    }
+
+    /**
+     * Requests from the address over the sliding window, never less than the real number
+     */
+    public long estimate(InetAddress address) {
+        long now = clock.getAsLong();
+        Window current = current(now);
+        long hash = mix(address.hashCode());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return min(current.counts, h1, h2) + fading(current, now, h1, h2);
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Heaviest addresses seen recently, heaviest first, with their current estimates
+     */
+    public List<Offender> topOffenders() {
+        List<Offender> offenders = new ArrayList<>();
+        synchronized (top) {
+            for (Offender offender : top) {
+                if (offender != null) {
+                    offenders.add(offender);
+                }
+            }
+        }
+        List<Offender> result = new ArrayList<>(offenders.size());
+        for (Offender offender : offenders) {
+            long estimate = estimate(offender.address);
+            if (estimate > 0) {
+                result.add(new Offender(offender.address, estimate, estimate >= threshold, offender.seenAt));
+            }
+        }
+        result.sort(Comparator.comparingLong(Offender::getEstimate).reversed());
+        return result;
+    }
+
+    private void offer(InetAddress address, long estimate, long now) {
+        synchronized (top) {
+            int slot = -1;
+            for (int i = 0; i < top.length; i++) {
+                Offender offender = top[i];
+                if (offender == null || offender.address.equals(address)) {
+                    slot = i;
+                    break;
+                }
+                if (slot < 0 || weight(offender, now) < weight(top[slot], now)) {
+                    slot = i;
+                }
+            }
+            Offender existing = top[slot];
+            if (existing == null || existing.address.equals(address) || weight(existing, now) < estimate) {
+                top[slot] = new Offender(address, estimate, estimate >= threshold, now);
+            }
+        }
+    }
+
+    /**
+     * An offender not seen for two windows has dropped out of the sketches and makes room for any other
+     */
+    private long weight(Offender offender, long now) {
+        return now - offender.seenAt >= 2 * windowNanos ? 0 : offender.estimate;
+    }
+
+    /**
+     * The previous window's count, weighted by how much of the current window is still ahead
+     */
+    private long fading(Window current, long now, int h1, int h2) {
+        if (current.previous == null) {
+            return 0;
+        }
+        long remaining = windowNanos - (now - current.start);
+        return remaining <= 0 ? 0 : min(current.previous, h1, h2) * remaining / windowNanos;
+    }
+
+    private long min(AtomicIntegerArray counts, int h1, int h2) {
+        int count = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            count = Math.min(count, counts.get(row * width + ((h1 + row * h2) & mask)));
+        }
+        return count;
+    }
+
+    private Window current(long now) {
+        Window current = window;
+        if (now - current.start < windowNanos) {
+            return current;
+        }
+        synchronized (this) {
+            current = window;
+            long elapsed = (now - current.start) / windowNanos;
+            if (elapsed > 0) {
+                current = new Window(current.start + elapsed * windowNanos, new AtomicIntegerArray(width * depth),
+                        elapsed == 1 ? current.counts : null);
+                window = current;
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Spreads the address hash over 64 bits, split into the two hashes rows are derived from
+     */
+    private static long mix(int value) {
+        long z = value * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static final class Window {
+        final long start;
+        final AtomicIntegerArray counts;
+        final AtomicIntegerArray previous;
+
+        Window(long start, AtomicIntegerArray counts, AtomicIntegerArray previous) {
+            this.start = start;
+            this.counts = counts;
+            this.previous = previous;
+        }
+    }
+
+    /**
+     * Address among the heaviest, with its estimated requests over the sliding window
+     */
+    public static class Offender {
+        private final InetAddress address;
+        private final long estimate;
+        private final boolean rejected;
+        private final long seenAt;
+
+        Offender(InetAddress address, long estimate, boolean rejected, long seenAt) {
+            this.address = address;
+            this.estimate = estimate;
+            this.rejected = rejected;
+            this.seenAt = seenAt;
+        }
+
+        public String getAddress() { return address.getHostAddress(); }
+
+        public long getEstimate() { return estimate; }
+
+        public boolean isRejected() { return rejected; }
+    }
+}
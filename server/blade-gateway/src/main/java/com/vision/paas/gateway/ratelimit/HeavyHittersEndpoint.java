@@ -0,0 +1,31 @@
+package com.vision.paas.gateway.ratelimit;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Heavy Hitters Endpoint
+ * /actuator/heavyhitters lists the addresses sending the most requests and whether they are being rejected
+ */
+@Component
+@Endpoint(id = "heavyhitters")
+@RequiredArgsConstructor
+public class HeavyHittersEndpoint {
+
+    private final HeavyHitterDetector detector;
+
+    @ReadOperation
+    public Map<String, Object> heavyHitters() {
+        List<HeavyHitterDetector.Offender> offenders = detector.topOffenders();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("threshold", detector.getThreshold());
+        result.put("offenders", offenders);
+        return result;
+    }
+}
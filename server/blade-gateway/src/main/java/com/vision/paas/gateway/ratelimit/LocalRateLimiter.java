@@ -0,0 +1,91 @@
+package com.vision.paas.gateway.ratelimit;
+
+import com.vision.paas.gateway.config.GatewayProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Local Rate Limiter
+ * Limits held by this gateway instance only; each replica enforces the full limit on its
+ * own, so this is the single-instance backend and the Redis backend's fallback.
+ * A client's whole state is the GCRA theoretical arrival time, one long updated by
+ * compare-and-set. A client whose arrival time has passed is indistinguishable from a new
+ * one, so such idle clients are dropped first when the map is full, then arbitrary ones.
+ */
+@Component
+public class LocalRateLimiter {
+
+    private final ConcurrentHashMap<String, AtomicLong> clients;
+    private final int maxClients;
+    private final LongSupplier clock;
+    private final Object evictionLock = new Object();
+
+    @Autowired
+    public LocalRateLimiter(GatewayProperties properties) {
+        this(properties.getRateLimit().getLocalMaxClients(), System::nanoTime);
+    }
+
+    LocalRateLimiter(int maxClients, LongSupplier clock) {
+        if (maxClients <= 0) {
+            throw new IllegalArgumentException("maxClients must be positive");
+        }
+        this.clients = new ConcurrentHashMap<>(Math.min(maxClients, 1 << 16));
+        this.maxClients = maxClients;
+        this.clock = clock;
+    }
+
+    public RateLimitDecision tryAcquire(String clientId, RateLimit limit) {
+        long now = clock.getAsLong();
+        AtomicLong arrival = clients.get(clientId);
+        if (arrival == null) {
+            if (clients.size() >= maxClients) {
+                evict(now);
+            }
+            arrival = clients.computeIfAbsent(clientId, k -> new AtomicLong(now));
+        }
+        long interval = limit.getIntervalMicros() * 1000;
+        long tolerance = interval * limit.getBurst();
+        while (true) {
+            long tat = arrival.get();
+            long next = (tat - now > 0 ? tat : now) + interval;
+            if (next - now > tolerance) {
+                long retryAfterNanos = next - tolerance - now;
+                return RateLimitDecision.deny(limit.getRequestsPerMinute(), (retryAfterNanos + 999_999) / 1_000_000);
+            }
+            if (arrival.compareAndSet(tat, next)) {
+                return RateLimitDecision.allow(limit.getRequestsPerMinute(), (int) ((now + tolerance - next) / interval));
+            }
+        }
+    }
+
+    /**
+     * Clients currently tracked
+     */
+    public int size() {
+        return clients.size();
+    }
+
+    /**
+     * A request racing with the removal of its client may be counted against the dropped
+     * state; at most one request per evicted client is lost that way
+     */
+    private void evict(long now) {
+        synchronized (evictionLock) {
+            if (clients.size() < maxClients) {
+                return;
+            }
+            clients.values().removeIf(arrival -> arrival.get() - now <= 0);
+            int target = maxClients - maxClients / 4;
+            Iterator<String> keys = clients.keySet().iterator();
+            while (clients.size() > target && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.vision.paas.gateway.ratelimit;
+
+/**
+ * Rate Limit
+ * Allows {@code requestsPerMinute} sustained, of which up to {@code burst} may arrive at once.
+ * Counters are kept per policy, so limits of different policies never share a client's allowance.
+ */
+public class RateLimit {
+
+    public static final String DEFAULT_POLICY = "default";
+
+    private final String policy;
+    private final int requestsPerMinute;
+    private final int burst;
+    private final long intervalMicros;
+
+    public RateLimit(String policy, int requestsPerMinute, int burst) {
+        if (requestsPerMinute <= 0) {
+            throw new IllegalArgumentException("requestsPerMinute must be positive");
+        }
+        this.policy = policy;
+        this.requestsPerMinute = requestsPerMinute;
+        this.burst = burst > 0 ? burst : requestsPerMinute;
+        this.intervalMicros = Math.max(1, 60_000_000L / requestsPerMinute);
+    }
+
+    public static RateLimit perMinute(int requests) {
+        return new RateLimit(DEFAULT_POLICY, requests, requests);
+    }
+
+    public String getPolicy() { return policy; }
+
+    public int getRequestsPerMinute() { return requestsPerMinute; }
+
+    public int getBurst() { return burst; }
+
+    /**
+     * Time one request's allowance takes to come back
+     */
+    public long getIntervalMicros() { return intervalMicros; }
+}
@@ -0,0 +1,38 @@
+package com.vision.paas.gateway.ratelimit;
+
+/**
+ * Rate Limit Decision
+ */
+public class RateLimitDecision {
+
+    private final boolean allowed;
+    private final int limit;
+    private final int remaining;
+    private final long retryAfterMillis;
+
+    private RateLimitDecision(boolean allowed, int limit, int remaining, long retryAfterMillis) {
+        this.allowed = allowed;
+        this.limit = limit;
+        this.remaining = remaining;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @param remaining Requests still allowed right now, -1 when unknown
+     */
+    public static RateLimitDecision allow(int limit, int remaining) {
+        return new RateLimitDecision(true, limit, remaining, 0);
+    }
+
+    public static RateLimitDecision deny(int limit, long retryAfterMillis) {
+        return new RateLimitDecision(false, limit, 0, retryAfterMillis);
+    }
+
+    public boolean isAllowed() { return allowed; }
+
+    public int getLimit() { return limit; }
+
+    public int getRemaining() { return remaining; }
+
+    public long getRetryAfterMillis() { return retryAfterMillis; }
+}
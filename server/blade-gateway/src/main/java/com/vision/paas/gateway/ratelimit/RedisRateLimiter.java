@@ -0,0 +1,178 @@
+package com.vision.paas.gateway.ratelimit;
+
+import com.vision.paas.gateway.config.GatewayProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Redis Rate Limiter
+ * Shares each client's limit across all gateway replicas through a GCRA script that Redis
+ * runs atomically, using its own clock. A round trip reserves up to a batch of requests,
+ * which this instance then hands out from memory until they run out or the lease lapses,
+ * so a busy client costs one round trip per batch rather than one per request.
+ * While Redis is unreachable the configured failure mode decides.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RedisRateLimiter {
+
+    private static final int MIN_SWEEP_SIZE = 1024;
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> GCRA = RedisScript.of(new ClassPathResource("scripts/gcra.lua"), List.class);
+
+    private final GatewayProperties properties;
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final LocalRateLimiter localRateLimiter;
+    private final MeterRegistry registry;
+
+    private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+
+    // Lapsed leases are swept whenever the map has doubled since the last sweep
+    private volatile int sweepAt = MIN_SWEEP_SIZE;
+
+    private volatile long redisDownUntil;
+    private Counter roundTrips;
+    private Counter failures;
+
+    @PostConstruct
+    public void init() {
+        roundTrips = Counter.builder("vision.gateway.ratelimit.redis.calls")
+                .description("GCRA script calls to Redis")
+                .register(registry);
+        failures = Counter.builder("vision.gateway.ratelimit.redis.failures")
+                .description("GCRA script calls that failed or timed out")
+                .register(registry);
+    }
+
+    public Mono<RateLimitDecision> acquire(String clientId, RateLimit limit) {
+        long now = System.nanoTime();
+        Lease lease = leases.get(clientId);
+        if (lease != null && lease.tryTake(now)) {
+            return Mono.just(RateLimitDecision.allow(limit.getRequestsPerMinute(), lease.remaining()));
+        }
+        if (now - redisDownUntil < 0) {
+            return Mono.just(onFailure(clientId, limit));
+        }
+        GatewayProperties.RateLimit config = properties.getRateLimit();
+        int wanted = Math.max(1, Math.min(config.getBatchSize(), limit.getBurst() / 20));
+        roundTrips.increment();
+        return redisTemplate.execute(GCRA, List.of(config.getKeyPrefix() + clientId),
+                        List.of(Long.toString(limit.getIntervalMicros()), Integer.toString(limit.getBurst()),
+                                Integer.toString(wanted)))
+                .next()
+                .timeout(config.getTimeout())
+                .map(reply -> grant(clientId, limit, reply))
+                .onErrorResume(e -> {
+                    markDown(e);
+                    return Mono.just(onFailure(clientId, limit));
+                });
+    }
+
+    private RateLimitDecision grant(String clientId, RateLimit limit, List<?> reply) {
+        long granted = ((Number) reply.get(0)).longValue();
+        if (granted <= 0) {
+            long retryAfterMicros = ((Number) reply.get(1)).longValue();
+            return RateLimitDecision.deny(limit.getRequestsPerMinute(), Math.max(1, (retryAfterMicros + 999) / 1000));
+        }
+        int remaining = ((Number) reply.get(2)).intValue();
+        if (granted > 1) {
+            if (leases.size() >= sweepAt) {
+                evictExpired();
+                sweepAt = Math.max(MIN_SWEEP_SIZE, leases.size() * 2);
+            }
+            long expiresAt = System.nanoTime() + properties.getRateLimit().getLeaseTtl().toNanos();
+            leases.compute(clientId, (key, lease) -> lease == null || lease.isExpired(System.nanoTime())
+                    ? new Lease((int) granted - 1, remaining, expiresAt)
+                    : lease.extend((int) granted - 1, remaining, expiresAt));
+        }
+        return RateLimitDecision.allow(limit.getRequestsPerMinute(), remaining + (int) granted - 1);
+    }
+
+    private void markDown(Throwable e) {
+        failures.increment();
+        long now = System.nanoTime();
+        if (now - redisDownUntil >= 0) {
+            log.warn("Redis rate limiting unavailable, applying {} for {}: {}",
+                    properties.getRateLimit().getFailureMode(), properties.getRateLimit().getRetryAfterFailure(),
+                    e.toString());
+        }
+        redisDownUntil = now + properties.getRateLimit().getRetryAfterFailure().toNanos();
+    }
+
+    private RateLimitDecision onFailure(String clientId, RateLimit limit) {
+        return switch (properties.getRateLimit().getFailureMode()) {
+            case OPEN -> RateLimitDecision.allow(limit.getRequestsPerMinute(), -1);
+            case CLOSED -> RateLimitDecision.deny(limit.getRequestsPerMinute(),
+                    properties.getRateLimit().getRetryAfterFailure().toMillis());
+            case LOCAL -> localRateLimiter.tryAcquire(clientId, limit);
+        };
+    }
+
+    /**
+     * Drop leases that lapsed; they hold no reserved requests worth keeping
+     */
+    private void evictExpired() {
+        long now = System.nanoTime();
+        leases.values().removeIf(lease -> lease.isExpired(now));
+    }
+
+    /**
+     * Requests reserved from Redis and not yet handed out
+     */
+    private static final class Lease {
+        private final AtomicInteger tokens;
+        private volatile int remainingAtGrant;
+        private volatile long expiresAt;
+
+        Lease(int tokens, int remainingAtGrant, long expiresAt) {
+            this.tokens = new AtomicInteger(tokens);
+            this.remainingAtGrant = remainingAtGrant;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean tryTake(long now) {
+            if (isExpired(now)) {
+                return false;
+            }
+            int current;
+            while ((current = tokens.get()) > 0) {
+                if (tokens.compareAndSet(current, current - 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+
+        Lease extend(int more, int remaining, long newExpiresAt) {
+            tokens.addAndGet(more);
+            remainingAtGrant = remaining;
+            expiresAt = newExpiresAt;
+            return this;
+        }
+
+        /**
+         * Approximate, as other replicas keep drawing from the shared limit
+         */
+        int remaining() {
+            return remainingAtGrant + tokens.get();
+        }
+    }
+}
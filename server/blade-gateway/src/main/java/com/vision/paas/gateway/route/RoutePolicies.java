@@ -0,0 +1,150 @@
+package com.vision.paas.gateway.route;
+
+import com.vision.paas.common.enums.SubscriptionPlan;
+import com.vision.paas.gateway.config.GatewayProperties;
+import com.vision.paas.gateway.ratelimit.RateLimit;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Route Policies
+ * Compiles the configured routes, with their rate limits per plan, into a path trie once,
+ * and again as a whole whenever the environment is refreshed, e.g. by /actuator/refresh.
+ * A configuration that does not compile is logged and the previous routes stay.
+ * The policy of a request is resolved once and kept on the exchange for every filter.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RoutePolicies implements ApplicationListener<EnvironmentChangeEvent> {
+
+    /**
+     * Exchange attribute holding the request's {@link RoutePolicy}
+     */
+    public static final String ROUTE_POLICY = RoutePolicies.class.getName() + ".policy";
+
+    private static final SubscriptionPlan[] PLANS = SubscriptionPlan.values();
+
+    private final GatewayProperties properties;
+    private final Environment environment;
+
+    private volatile Compiled compiled;
+
+    @PostConstruct
+    public void init() {
+        compiled = compile(properties);
+        log.info("Loaded {} gateway routes", compiled.routes);
+    }
+
+    @Override
+    public void onApplicationEvent(EnvironmentChangeEvent event) {
+        try {
+            // Bound afresh rather than read from GatewayProperties, which may not be rebound yet
+            GatewayProperties config = Binder.get(environment)
+                    .bind("gateway", GatewayProperties.class)
+                    .orElseGet(GatewayProperties::new);
+            compiled = compile(config);
+            log.info("Reloaded {} gateway routes", compiled.routes);
+        } catch (RuntimeException e) {
+            log.error("Invalid gateway routes, keeping the previous ones: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * The request's policy, resolved on first use
+     */
+    public RoutePolicy get(ServerWebExchange exchange) {
+        RoutePolicy policy = exchange.getAttribute(ROUTE_POLICY);
+        if (policy == null) {
+            policy = resolve(exchange.getRequest());
+            exchange.getAttributes().put(ROUTE_POLICY, policy);
+        }
+        return policy;
+    }
+
+    public RoutePolicy resolve(ServerHttpRequest request) {
+        Compiled current = compiled;
+        RoutePolicy policy = current.trie.match(request.getPath().pathWithinApplication(), request.getMethod());
+        return policy != null ? policy : current.fallback;
+    }
+
+    static Compiled compile(GatewayProperties config) {
+        GatewayProperties.RateLimit rateLimit = config.getRateLimit();
+        RateLimit[] defaults = new RateLimit[PLANS.length + 1];
+        for (SubscriptionPlan plan : PLANS) {
+            GatewayProperties.RateLimit.Rate rate = rateLimit.getPlans().get(plan);
+            defaults[plan.ordinal()] = rate != null
+                    ? new RateLimit(RateLimit.DEFAULT_POLICY, rate.getRequestsPerMinute(), rate.getBurst())
+                    : new RateLimit(RateLimit.DEFAULT_POLICY, rateLimit.getRequestsPerMinute(), rateLimit.getBurst());
+        }
+        defaults[RoutePolicy.ANONYMOUS] = new RateLimit(RateLimit.DEFAULT_POLICY,
+                rateLimit.getRequestsPerMinute(), rateLimit.getBurst());
+
+        RouteTrie trie = new RouteTrie();
+        List<GatewayProperties.Route> routes = config.getRoutes();
+        Set<String> names = new HashSet<>();
+        names.add(RateLimit.DEFAULT_POLICY);
+        for (int i = 0; i < routes.size(); i++) {
+            GatewayProperties.Route route = routes.get(i);
+            String name = route.getName();
+            if (name == null || name.isBlank() || !names.add(name)) {
+                throw new IllegalArgumentException("Gateway route " + i + " needs a unique name, got " + name);
+            }
+            if (route.getPaths().isEmpty()) {
+                throw new IllegalArgumentException("Gateway route " + name + " has no paths");
+            }
+            List<HttpMethod> methods = route.getMethods().stream()
+                    .map(method -> HttpMethod.valueOf(method.toUpperCase(Locale.ROOT)))
+                    .toList();
+            RoutePolicy policy = new RoutePolicy(name, route.isAnonymous(), limits(route, defaults),
+                    route.getTimeout(), route.getCacheControl(), route.isLongRunning());
+            route.getPaths().forEach(path -> trie.add(path, methods, policy));
+        }
+        return new Compiled(trie, new RoutePolicy(RateLimit.DEFAULT_POLICY, false, defaults, null, null, false),
+                routes.size());
+    }
+
+    /**
+     * The route's own rates ahead of the default ones, counted under the route's name
+     */
+    private static RateLimit[] limits(GatewayProperties.Route route, RateLimit[] defaults) {
+        RateLimit[] limits = new RateLimit[defaults.length];
+        for (int i = 0; i < limits.length; i++) {
+            GatewayProperties.RateLimit.Rate rate = i < PLANS.length ? route.getPlans().get(PLANS[i]) : null;
+            if (rate != null) {
+                limits[i] = new RateLimit(route.getName(), rate.getRequestsPerMinute(), rate.getBurst());
+            } else if (route.getRequestsPerMinute() != null) {
+                limits[i] = new RateLimit(route.getName(), route.getRequestsPerMinute(), route.getBurst());
+            } else {
+                limits[i] = new RateLimit(route.getName(), defaults[i].getRequestsPerMinute(), defaults[i].getBurst());
+            }
+        }
+        return limits;
+    }
+
+    static final class Compiled {
+        final RouteTrie trie;
+        final RoutePolicy fallback;
+        final int routes;
+
+        Compiled(RouteTrie trie, RoutePolicy fallback, int routes) {
+            this.trie = trie;
+            this.fallback = fallback;
+            this.routes = routes;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.vision.paas.gateway.route;
+
+import com.vision.paas.common.enums.SubscriptionPlan;
+import com.vision.paas.gateway.ratelimit.RateLimit;
+
+import java.time.Duration;
+
+/**
+ * Route Policy
+ * Everything the gateway filters apply to one route, resolved once per request
+ */
+public class RoutePolicy {
+
+    private static final SubscriptionPlan[] PLANS = SubscriptionPlan.values();
+
+    /**
+     * Index of the limit of clients that are not signed in
+     */
+    static final int ANONYMOUS = PLANS.length;
+
+    private final String name;
+    private final boolean anonymous;
+    private final RateLimit[] limits;
+    private final Duration timeout;
+    private final String cacheControl;
+    private final boolean longRunning;
+
+    /**
+     * @param limits One limit per plan by ordinal, followed by the limit of anonymous clients
+     */
+    RoutePolicy(String name, boolean anonymous, RateLimit[] limits, Duration timeout, String cacheControl,
+                boolean longRunning) {
+        this.name = name;
+        this.anonymous = anonymous;
+        this.limits = limits;
+        this.timeout = timeout;
+        this.cacheControl = cacheControl;
+        this.longRunning = longRunning;
+    }
+
+    public String getName() { return name; }
+
+    /**
+     * Whether requests pass without a token or API key
+     */
+    public boolean isAnonymous() { return anonymous; }
+
+    /**
+     * @param plan Plan of a signed-in client; signed-in clients without a known plan are limited as FREE
+     */
+    public RateLimit getRateLimit(boolean authenticated, String plan) {
+        if (!authenticated) {
+            return limits[ANONYMOUS];
+        }
+        if (plan != null) {
+            for (SubscriptionPlan candidate : PLANS) {
+                if (candidate.name().equalsIgnoreCase(plan)) {
+                    return limits[candidate.ordinal()];
+                }
+            }
+        }
+        return limits[SubscriptionPlan.FREE.ordinal()];
+    }
+
+    /**
+     * @return The time limit, or null for none
+     */
+    public Duration getTimeout() { return timeout; }
+
+    /**
+     * @return Cache-Control for responses without one, or null
+     */
+    public String getCacheControl() { return cacheControl; }
+
+    /**
+     * Whether calls are slow by design, so their latency says nothing about the service's load
+     */
+    public boolean isLongRunning() { return longRunning; }
+}
@@ -0,0 +1,147 @@
+package com.vision.paas.gateway.route;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Route Trie
+ * Path patterns split into segments, one trie level per segment. Matching walks the request
+ * path once, preferring a literal segment over *, and * over a trailing **, so the most
+ * specific pattern wins regardless of the order routes were declared in. Every pattern
+ * holds one policy per HTTP method; of two routes with the same pattern and method, the
+ * one declared first wins. Matching does not allocate.
+ */
+class RouteTrie {
+
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+
+    /**
+     * Classes of the parsed path's elements; checking these instead of the PathContainer
+     * interfaces avoids alternating interface checks on one class, which the JVM handles slowly
+     */
+    private static final Class<?> SEGMENT_TYPE = PathContainer.parsePath("/a").elements().get(1).getClass();
+    private static final Class<?> SEPARATOR_TYPE = PathContainer.parsePath("/a").elements().get(0).getClass();
+
+    /**
+     * Slot of methods outside the standard ones
+     */
+    private static final int OTHER_METHOD = METHODS.length;
+
+    private final Node root = new Node();
+
+    /**
+     * @param methods Methods the policy applies to; empty for all
+     */
+    void add(String pattern, List<HttpMethod> methods, RoutePolicy policy) {
+        if (!pattern.startsWith("/")) {
+            throw new IllegalArgumentException("Route path must start with /: " + pattern);
+        }
+        String[] segments = pattern.substring(1).split("/");
+        Node node = root;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (segment.equals("**")) {
+                if (i != segments.length - 1) {
+                    throw new IllegalArgumentException("** is only allowed at the end of a route path: " + pattern);
+                }
+                node.rest = fill(node.rest, methods, policy);
+                return;
+            }
+            if (segment.equals("*") || segment.startsWith("{") && segment.endsWith("}")) {
+                node = node.wildcard != null ? node.wildcard : (node.wildcard = new Node());
+            } else if (segment.contains("*") || segment.contains("{")) {
+                throw new IllegalArgumentException("Route path segments are literal, *, {name} or **: " + pattern);
+            } else {
+                node = node.literals.computeIfAbsent(segment, k -> new Node());
+            }
+        }
+        node.policies = fill(node.policies, methods, policy);
+    }
+
+    /**
+     * @return The policy of the most specific matching route, or null when none matches
+     */
+    RoutePolicy match(PathContainer path, HttpMethod method) {
+        return match(root, path.elements(), 0, methodSlot(method));
+    }
+
+    private static RoutePolicy match(Node node, List<?> elements, int index, int method) {
+        String segment = null;
+        while (index < elements.size()) {
+            Object element = elements.get(index);
+            Class<?> type = element.getClass();
+            if (type == SEGMENT_TYPE || type != SEPARATOR_TYPE && element instanceof PathContainer.PathSegment) {
+                segment = ((PathContainer.PathSegment) element).valueToMatch();
+                if (!segment.isEmpty()) {
+                    break;
+                }
+            }
+            index++;
+        }
+        if (index == elements.size()) {
+            RoutePolicy policy = at(node.policies, method);
+            return policy != null ? policy : at(node.rest, method);
+        }
+        Node literal = node.literals.get(segment);
+        if (literal != null) {
+            RoutePolicy policy = match(literal, elements, index + 1, method);
+            if (policy != null) {
+                return policy;
+            }
+        }
+        if (node.wildcard != null) {
+            RoutePolicy policy = match(node.wildcard, elements, index + 1, method);
+            if (policy != null) {
+                return policy;
+            }
+        }
+        return at(node.rest, method);
+    }
+
+    private static RoutePolicy at(RoutePolicy[] policies, int method) {
+        return policies != null ? policies[method] : null;
+    }
+
+    private static RoutePolicy[] fill(RoutePolicy[] policies, List<HttpMethod> methods, RoutePolicy policy) {
+        if (policies == null) {
+            policies = new RoutePolicy[OTHER_METHOD + 1];
+        }
+        for (int slot = 0; slot < policies.length; slot++) {
+            if (policies[slot] == null && (methods.isEmpty() || slot < OTHER_METHOD && methods.contains(METHODS[slot]))) {
+                policies[slot] = policy;
+            }
+        }
+        return policies;
+    }
+
+    private static int methodSlot(HttpMethod method) {
+        for (int slot = 0; slot < METHODS.length; slot++) {
+            if (METHODS[slot].equals(method)) {
+                return slot;
+            }
+        }
+        return OTHER_METHOD;
+    }
+
+    private static final class Node {
+        final Map<String, Node> literals = new HashMap<>();
+        Node wildcard;
+
+        /**
+         * Policies by method slot of the patterns ending at this node
+         */
+        RoutePolicy[] policies;
+
+        /**
+         * Policies by method slot of the patterns ending in ** at this node
+         */
+        RoutePolicy[] rest;
+    }
+}
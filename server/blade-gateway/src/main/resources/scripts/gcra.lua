@@ -0,0 +1,25 @@
+-- Generic cell rate algorithm with batched grants.
+-- KEYS[1]  theoretical arrival time (TAT) of the client, in microseconds
+-- ARGV[1]  emission interval in microseconds (period / limit)
+-- ARGV[2]  burst capacity in requests
+-- ARGV[3]  requests wanted; grants as many as are available, up to this
+-- Returns {granted, retry after in microseconds, remaining}
+local now_parts = redis.call('TIME')
+local now = tonumber(now_parts[1]) * 1000000 + tonumber(now_parts[2])
+local interval = tonumber(ARGV[1])
+local tolerance = interval * tonumber(ARGV[2])
+
+local tat = tonumber(redis.call('GET', KEYS[1])) or now
+if tat < now then
+  tat = now
+end
+
+local available = math.floor((now + tolerance - tat) / interval)
+local granted = math.min(tonumber(ARGV[3]), available)
+if granted <= 0 then
+  return {0, tat + interval - tolerance - now, 0}
+end
+
+tat = tat + granted * interval
+redis.call('SET', KEYS[1], string.format('%.0f', tat), 'PX', math.ceil((tat - now) / 1000))
+return {granted, 0, available - granted}
@@ -0,0 +1,62 @@
+package com.vision.paas.gateway.auth;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The last_used_at update against H2 in PostgreSQL mode
+ */
+class ApiKeyRepositoryTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private ApiKeyRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1"));
+        jdbcTemplate.execute("CREATE TABLE api_keys (api_key VARCHAR(64) PRIMARY KEY, last_used_at TIMESTAMP)");
+        jdbcTemplate.update("INSERT INTO api_keys (api_key) VALUES ('key-a'), ('key-b')");
+        repository = new ApiKeyRepository(jdbcTemplate);
+    }
+
+    @Test
+    void firstUseIsWritten() {
+        repository.updateLastUsed(List.of(Map.entry("key-a", 1_000L)));
+
+        assertThat(lastUsed("key-a")).isEqualTo(1_000L);
+        assertThat(lastUsed("key-b")).isNull();
+    }
+
+    @Test
+    void laterUseMovesLastUsedForward() {
+        repository.updateLastUsed(List.of(Map.entry("key-a", 1_000L)));
+        repository.updateLastUsed(List.of(Map.entry("key-a", 2_000L)));
+
+        assertThat(lastUsed("key-a")).isEqualTo(2_000L);
+    }
+
+    @Test
+    void staleFlushFromAnotherGatewayNeverMovesLastUsedBack() {
+        repository.updateLastUsed(List.of(Map.entry("key-a", 2_000L)));
+        repository.updateLastUsed(List.of(Map.entry("key-a", 1_000L), Map.entry("key-b", 1_000L)));
+
+        assertThat(lastUsed("key-a")).isEqualTo(2_000L);
+        assertThat(lastUsed("key-b")).isEqualTo(1_000L);
+    }
+
+    private Long lastUsed(String keyHash) {
+        Timestamp lastUsed = jdbcTemplate.queryForObject("SELECT last_used_at FROM api_keys WHERE api_key = ?",
+                Timestamp.class, keyHash);
+        return lastUsed != null ? lastUsed.getTime() : null;
+    }
+}
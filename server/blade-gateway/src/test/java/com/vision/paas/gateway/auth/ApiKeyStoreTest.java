@@ -0,0 +1,149 @@
+package com.vision.paas.gateway.auth;
+
+import com.vision.paas.gateway.auth.ApiKeyRepository.StoredKey;
+import com.vision.paas.gateway.config.GatewayProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Bloom filter, negative cache and the invalidation a NOTIFY triggers; the LISTEN connection
+ * never comes up, so the test drives {@link ApiKeyStore#reload} and {@link ApiKeyStore#invalidate}
+ */
+class ApiKeyStoreTest {
+
+    private static final String KEY = ApiKeyStore.KEY_PREFIX + "known";
+    private static final String KEY_HASH = hash(KEY);
+
+    private ApiKeyRepository repository;
+    private ApiKeyUsageRecorder usageRecorder;
+    private ApiKeyStore store;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        repository = mock(ApiKeyRepository.class);
+        usageRecorder = mock(ApiKeyUsageRecorder.class);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenThrow(new SQLException("Connection refused"));
+        store = new ApiKeyStore(new GatewayProperties(), repository, dataSource, usageRecorder);
+        store.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    void loadedKeyIsServedFromMemory() {
+        when(repository.findActive()).thenReturn(List.of(stored(KEY_HASH, Long.MAX_VALUE)));
+        store.reload();
+
+        assertThat(store.lookup(KEY).block().getUserId()).isEqualTo("user-1");
+        verify(repository, never()).findActive(anyString());
+        verify(usageRecorder).record(KEY_HASH);
+    }
+
+    @Test
+    void keyOutsideTheBloomFilterIsRejectedWithoutALookup() {
+        when(repository.findActive()).thenReturn(List.of(stored(KEY_HASH, Long.MAX_VALUE)));
+        store.reload();
+
+        assertThat(store.lookup(ApiKeyStore.KEY_PREFIX + "unknown").block()).isNull();
+        verify(repository, never()).findActive(anyString());
+    }
+
+    @Test
+    void keyWithoutThePrefixIsRejectedWithoutALookup() {
+        assertThat(store.lookup("sk_live_other").block()).isNull();
+        verify(repository, never()).findActive(anyString());
+    }
+
+    @Test
+    void unknownKeyIsLookedUpOnceThenRejectedFromTheNegativeCache() {
+        assertThat(store.lookup(KEY).block()).isNull();
+        assertThat(store.lookup(KEY).block()).isNull();
+
+        verify(repository, times(1)).findActive(KEY_HASH);
+    }
+
+    @Test
+    void notifyDropsTheNegativeCacheEntrySoANewKeyIsFound() {
+        assertThat(store.lookup(KEY).block()).isNull();
+        when(repository.findActive(KEY_HASH)).thenReturn(stored(KEY_HASH, Long.MAX_VALUE));
+
+        store.invalidate(KEY_HASH);
+
+        assertThat(store.lookup(KEY).block().getUserId()).isEqualTo("user-1");
+        verify(repository, times(2)).findActive(KEY_HASH);
+    }
+
+    @Test
+    void keyNotifiedAfterTheLoadIsLookedUpOnceThenServedFromMemory() {
+        when(repository.findActive()).thenReturn(List.of());
+        store.reload();
+        assertThat(store.lookup(KEY).block()).isNull();
+        when(repository.findActive(KEY_HASH)).thenReturn(stored(KEY_HASH, Long.MAX_VALUE));
+
+        store.invalidate(KEY_HASH);
+
+        assertThat(store.lookup(KEY).block().getUserId()).isEqualTo("user-1");
+        assertThat(store.lookup(KEY).block().getUserId()).isEqualTo("user-1");
+        verify(repository, times(1)).findActive(KEY_HASH);
+    }
+
+    @Test
+    void notifyOfARevokedKeyMakesItsNextUseALookup() {
+        when(repository.findActive()).thenReturn(List.of(stored(KEY_HASH, Long.MAX_VALUE)));
+        store.reload();
+
+        store.invalidate(KEY_HASH);
+
+        assertThat(store.lookup(KEY).block()).isNull();
+        assertThat(store.lookup(KEY).block()).isNull();
+        verify(repository, times(1)).findActive(KEY_HASH);
+    }
+
+    @Test
+    void answerOvertakenByANotifyIsNotCached() {
+        when(repository.findActive(KEY_HASH)).thenAnswer(invocation -> {
+            store.invalidate(KEY_HASH);
+            return null;
+        });
+
+        assertThat(store.lookup(KEY).block()).isNull();
+        assertThat(store.lookup(KEY).block()).isNull();
+
+        verify(repository, times(2)).findActive(KEY_HASH);
+    }
+
+    @Test
+    void expiredKeyIsRejected() {
+        when(repository.findActive()).thenReturn(List.of(stored(KEY_HASH, System.currentTimeMillis() - 1)));
+        store.reload();
+
+        assertThat(store.lookup(KEY).block()).isNull();
+        verify(usageRecorder, never()).record(anyString());
+    }
+
+    private static StoredKey stored(String keyHash, long expiresAt) {
+        return new StoredKey(keyHash, new AuthenticatedUser("user-1", null, "ci", "PRO", List.of("*"), expiresAt));
+    }
+
+    private static String hash(String apiKey) {
+        return Base64.getEncoder().encodeToString(Sha256.digest(apiKey));
+    }
+}
@@ -0,0 +1,125 @@
+package com.vision.paas.gateway.auth;
+
+import com.vision.paas.gateway.config.GatewayProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Write-behind of last_used_at; the scheduled flush is pushed out so the test flushes by hand
+ */
+class ApiKeyUsageRecorderTest {
+
+    private GatewayProperties properties;
+    private ApiKeyRepository repository;
+    private ApiKeyUsageRecorder recorder;
+    private final List<List<Map.Entry<String, Long>>> written = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        properties = new GatewayProperties();
+        properties.getApiKeys().setUsageFlushInterval(Duration.ofHours(1));
+        repository = mock(ApiKeyRepository.class);
+        doAnswer(this::write)
+                .when(repository).updateLastUsed(anyList());
+        recorder = new ApiKeyUsageRecorder(properties, repository, new SimpleMeterRegistry());
+        recorder.init();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        recorder.shutdown();
+    }
+
+    @Test
+    void repeatUsesOfAKeyCoalesceIntoOneUpdate() {
+        for (int i = 0; i < 1000; i++) {
+            recorder.record("key-a");
+        }
+        assertThat(recorder.pendingCount()).isEqualTo(1);
+
+        recorder.flush();
+
+        assertThat(written).hasSize(1);
+        assertThat(written.get(0)).extracting(Map.Entry::getKey).containsExactly("key-a");
+        assertThat(recorder.pendingCount()).isZero();
+    }
+
+    @Test
+    void flushWithNothingRecordedWritesNothing() {
+        recorder.flush();
+
+        verify(repository, never()).updateLastUsed(anyList());
+    }
+
+    @Test
+    void keysAreWrittenInBatches() {
+        properties.getApiKeys().setUsageBatchSize(2);
+        for (int i = 0; i < 5; i++) {
+            recorder.record("key-" + i);
+        }
+
+        recorder.flush();
+
+        assertThat(written).extracting(List::size).containsExactly(2, 2, 1);
+        assertThat(recorder.pendingCount()).isZero();
+    }
+
+    @Test
+    void failedFlushKeepsTheUsesForTheNextOne() {
+        recorder.record("key-a");
+        doThrow(new DataAccessResourceFailureException("Connection refused"))
+                .doAnswer(this::write)
+                .when(repository).updateLastUsed(anyList());
+
+        recorder.flush();
+        assertThat(recorder.pendingCount()).isEqualTo(1);
+
+        recorder.flush();
+        assertThat(written).hasSize(1);
+        assertThat(recorder.pendingCount()).isZero();
+        verify(repository, times(2)).updateLastUsed(anyList());
+    }
+
+    @Test
+    void useRecordedDuringAFlushIsWrittenByTheNextOne() {
+        recorder.record("key-a");
+        doAnswer(invocation -> {
+            write(invocation);
+            // Past the recorder's resolution, so the new use replaces the one being written
+            Thread.sleep(1001);
+            recorder.record("key-a");
+            return null;
+        }).doAnswer(this::write)
+                .when(repository).updateLastUsed(anyList());
+
+        recorder.flush();
+        assertThat(recorder.pendingCount()).isEqualTo(1);
+
+        recorder.flush();
+        assertThat(written).hasSize(2);
+        assertThat(written.get(1).get(0).getValue()).isGreaterThan(written.get(0).get(0).getValue());
+    }
+
+    private Object write(InvocationOnMock invocation) {
+        written.add(List.copyOf(invocation.<List<Map.Entry<String, Long>>>getArgument(0)));
+        return null;
+    }
+}
@@ -0,0 +1,49 @@
+package com.vision.paas.gateway.auth;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BloomFilterTest {
+
+    @Test
+    void everyAddedValueIsFound() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        SplittableRandom random = new SplittableRandom(1);
+        long[][] values = new long[10_000][];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new long[]{random.nextLong(), random.nextLong()};
+            filter.put(values[i][0], values[i][1]);
+        }
+        for (long[] value : values) {
+            assertThat(filter.mightContain(value[0], value[1])).isTrue();
+        }
+    }
+
+    @Test
+    void falsePositivesStayNearTheConfiguredRate() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        SplittableRandom random = new SplittableRandom(2);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(random.nextLong(), random.nextLong());
+        }
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(random.nextLong(), random.nextLong())) {
+                falsePositives++;
+            }
+        }
+        assertThat((double) falsePositives / probes).isLessThan(0.02);
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        BloomFilter filter = BloomFilter.create(0, 0.01);
+        ByteBuffer halves = ByteBuffer.wrap(Sha256.digest("vsk_anything"));
+        assertThat(filter.mightContain(halves.getLong(), halves.getLong())).isFalse();
+    }
+}
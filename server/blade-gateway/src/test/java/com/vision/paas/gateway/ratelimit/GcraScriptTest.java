@@ -0,0 +1,84 @@
+package com.vision.paas.gateway.ratelimit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * scripts/gcra.lua at one request per second with a burst of five
+ */
+class GcraScriptTest {
+
+    private static final String KEY = "vision:ratelimit:client";
+    private static final long INTERVAL_MICROS = 1_000_000;
+    private static final int BURST = 5;
+
+    private LuaRedis redis;
+
+    @BeforeEach
+    void setUp() {
+        redis = new LuaRedis("scripts/gcra.lua", 1_700_000_000_000_000L);
+    }
+
+    @Test
+    void burstIsGrantedAtOnceThenDenied() {
+        for (int i = BURST - 1; i >= 0; i--) {
+            assertThat(acquire(1)).containsExactly(1L, 0L, (long) i);
+        }
+        assertThat(acquire(1)).containsExactly(0L, INTERVAL_MICROS, 0L);
+    }
+
+    @Test
+    void afterTheBurstOneRequestIsGrantedPerInterval() {
+        acquire(BURST);
+        for (int i = 0; i < 10; i++) {
+            redis.advance(Duration.ofMillis(500));
+            assertThat(acquire(1).get(0)).isEqualTo(0L);
+            redis.advance(Duration.ofMillis(500));
+            assertThat(acquire(1)).containsExactly(1L, 0L, 0L);
+        }
+    }
+
+    @Test
+    void retryAfterCountsDownToTheNextGrant() {
+        acquire(BURST);
+        redis.advance(Duration.ofMillis(300));
+        assertThat(acquire(1)).containsExactly(0L, 700_000L, 0L);
+    }
+
+    @Test
+    void idleClientRecoversTheWholeBurstButNoMore() {
+        acquire(BURST);
+        redis.advance(Duration.ofSeconds(2));
+        assertThat(acquire(BURST)).containsExactly(2L, 0L, 0L);
+
+        redis.advance(Duration.ofMinutes(1));
+        assertThat(acquire(BURST + 3)).containsExactly((long) BURST, 0L, 0L);
+        assertThat(acquire(1).get(0)).isEqualTo(0L);
+    }
+
+    @Test
+    void batchGrantsOnlyWhatIsAvailable() {
+        assertThat(acquire(3)).containsExactly(3L, 0L, 2L);
+        assertThat(acquire(3)).containsExactly(2L, 0L, 0L);
+    }
+
+    @Test
+    void keyExpiresOnceTheClientIsBackToAFullBurst() {
+        acquire(2);
+        assertThat(redis.get(KEY)).isNotNull();
+        redis.advance(Duration.ofMillis(1999));
+        assertThat(redis.get(KEY)).isNotNull();
+        redis.advance(Duration.ofMillis(1));
+        assertThat(redis.get(KEY)).isNull();
+    }
+
+    private List<Object> acquire(int wanted) {
+        return redis.eval(List.of(KEY),
+                List.of(Long.toString(INTERVAL_MICROS), Integer.toString(BURST), Integer.toString(wanted)));
+    }
+}
@@ -0,0 +1,163 @@
+package com.vision.paas.gateway.ratelimit;
+
+import com.vision.paas.gateway.config.GatewayProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Count-Min Sketch estimates, window decay and the top-offender table, on a clock the test moves
+ */
+class HeavyHitterDetectorTest {
+
+    private static final InetAddress A = address(1);
+    private static final InetAddress B = address(2);
+    private static final InetAddress C = address(3);
+
+    private GatewayProperties.HeavyHitters config;
+    private long now = TimeUnit.DAYS.toNanos(1);
+
+    @BeforeEach
+    void setUp() {
+        config = new GatewayProperties.HeavyHitters();
+        config.setWindow(Duration.ofSeconds(10));
+        config.setThreshold(100);
+        config.setWidth(1024);
+        config.setDepth(4);
+        config.setTopSize(20);
+    }
+
+    @Test
+    void estimatesNeverUndercount() {
+        config.setThreshold(1_000_000);
+        config.setWidth(64);
+        HeavyHitterDetector detector = detector();
+        SplittableRandom random = new SplittableRandom(3);
+        Map<InetAddress, Integer> sent = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            InetAddress address = address(random.nextInt(500));
+            detector.record(address);
+            sent.merge(address, 1, Integer::sum);
+        }
+        sent.forEach((address, count) -> assertThat(detector.estimate(address)).isGreaterThanOrEqualTo(count));
+    }
+
+    @Test
+    void addressIsRejectedFromTheThresholdOn() {
+        HeavyHitterDetector detector = detector();
+        for (int i = 1; i < 100; i++) {
+            assertThat(detector.record(A)).isFalse();
+        }
+        assertThat(detector.record(A)).isTrue();
+        assertThat(detector.record(B)).isFalse();
+    }
+
+    @Test
+    void previousWindowFadesOutOverTheCurrentOne() {
+        HeavyHitterDetector detector = detector();
+        record(detector, A, 80);
+
+        advanceSeconds(10);
+        assertThat(detector.estimate(A)).isEqualTo(80);
+        advanceSeconds(5);
+        assertThat(detector.estimate(A)).isEqualTo(40);
+        advanceSeconds(4);
+        assertThat(detector.estimate(A)).isEqualTo(8);
+        advanceSeconds(1);
+        assertThat(detector.estimate(A)).isZero();
+    }
+
+    @Test
+    void countsOfASkippedWindowAreForgotten() {
+        HeavyHitterDetector detector = detector();
+        record(detector, A, 80);
+
+        advanceSeconds(25);
+
+        assertThat(detector.estimate(A)).isZero();
+    }
+
+    @Test
+    void rejectionEndsAsTheFloodFades() {
+        HeavyHitterDetector detector = detector();
+        record(detector, A, 100);
+        assertThat(detector.record(A)).isTrue();
+
+        advanceSeconds(10);
+        assertThat(detector.record(A)).isTrue();
+        advanceSeconds(5);
+        assertThat(detector.record(A)).isFalse();
+    }
+
+    @Test
+    void topOffendersAreTheHeaviestAddressesFirst() {
+        HeavyHitterDetector detector = detector();
+        record(detector, A, 200);
+        record(detector, B, 50);
+        record(detector, C, 10);
+
+        assertThat(detector.topOffenders())
+                .extracting(HeavyHitterDetector.Offender::getAddress, HeavyHitterDetector.Offender::getEstimate,
+                        HeavyHitterDetector.Offender::isRejected)
+                .containsExactly(
+                        tuple("10.0.0.1", 200L, true),
+                        tuple("10.0.0.2", 50L, false));
+    }
+
+    @Test
+    void heavierAddressTakesTheSlotOfTheLightestInAFullTable() {
+        config.setTopSize(2);
+        HeavyHitterDetector detector = detector();
+        record(detector, A, 200);
+        record(detector, B, 100);
+        record(detector, C, 300);
+
+        assertThat(detector.topOffenders()).extracting(HeavyHitterDetector.Offender::getAddress)
+                .containsExactly("10.0.0.3", "10.0.0.1");
+    }
+
+    @Test
+    void offenderGoneForTwoWindowsMakesRoom() {
+        config.setTopSize(1);
+        HeavyHitterDetector detector = detector();
+        record(detector, A, 200);
+
+        advanceSeconds(20);
+        record(detector, B, 50);
+
+        assertThat(detector.topOffenders()).extracting(HeavyHitterDetector.Offender::getAddress)
+                .containsExactly("10.0.0.2");
+    }
+
+    private HeavyHitterDetector detector() {
+        return new HeavyHitterDetector(config, () -> now);
+    }
+
+    private static void record(HeavyHitterDetector detector, InetAddress address, int requests) {
+        for (int i = 0; i < requests; i++) {
+            detector.record(address);
+        }
+    }
+
+    private void advanceSeconds(long seconds) {
+        now += TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    private static InetAddress address(int host) {
+        try {
+            return InetAddress.getByAddress(new byte[]{10, 0, (byte) (host >>> 8), (byte) host});
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.vision.paas.gateway.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * GCRA arithmetic and the client bound, on a clock the test moves
+ */
+class LocalRateLimiterTest {
+
+    // One request per second, five at once
+    private static final RateLimit LIMIT = new RateLimit("test", 60, 5);
+
+    private long now = TimeUnit.DAYS.toNanos(1);
+    private final LocalRateLimiter limiter = new LocalRateLimiter(1000, () -> now);
+
+    @Test
+    void burstIsAllowedAtOnceThenDenied() {
+        for (int remaining = LIMIT.getBurst() - 1; remaining >= 0; remaining--) {
+            RateLimitDecision decision = limiter.tryAcquire("client", LIMIT);
+            assertThat(decision.isAllowed()).isTrue();
+            assertThat(decision.getRemaining()).isEqualTo(remaining);
+        }
+        RateLimitDecision denied = limiter.tryAcquire("client", LIMIT);
+        assertThat(denied.isAllowed()).isFalse();
+        assertThat(denied.getRetryAfterMillis()).isEqualTo(1000);
+    }
+
+    @Test
+    void afterTheBurstOneRequestIsAllowedPerInterval() {
+        exhaust("client");
+        for (int i = 0; i < 10; i++) {
+            advanceMillis(400);
+            RateLimitDecision early = limiter.tryAcquire("client", LIMIT);
+            assertThat(early.isAllowed()).isFalse();
+            assertThat(early.getRetryAfterMillis()).isEqualTo(600);
+            advanceMillis(600);
+            assertThat(limiter.tryAcquire("client", LIMIT).isAllowed()).isTrue();
+        }
+    }
+
+    @Test
+    void retryAfterIsRoundedUpToTheMillisecond() {
+        exhaust("client");
+        now += 1;
+        assertThat(limiter.tryAcquire("client", LIMIT).getRetryAfterMillis()).isEqualTo(1000);
+    }
+
+    @Test
+    void idleClientRecoversTheWholeBurstButNoMore() {
+        exhaust("client");
+        advanceMillis(2000);
+        assertThat(exhaust("client")).isEqualTo(2);
+
+        advanceMillis(60_000);
+        assertThat(exhaust("client")).isEqualTo(LIMIT.getBurst());
+    }
+
+    @Test
+    void clientsHaveTheirOwnAllowance() {
+        exhaust("a");
+        assertThat(limiter.tryAcquire("b", LIMIT).getRemaining()).isEqualTo(LIMIT.getBurst() - 1);
+    }
+
+    @Test
+    void trackedClientsNeverExceedTheBound() {
+        LocalRateLimiter bounded = new LocalRateLimiter(100, () -> now);
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(bounded.tryAcquire("client-" + i, LIMIT).isAllowed()).isTrue();
+            assertThat(bounded.size()).isLessThanOrEqualTo(100);
+        }
+    }
+
+    @Test
+    void idleClientsAreEvictedBeforeActiveOnes() {
+        LocalRateLimiter bounded = new LocalRateLimiter(4, () -> now);
+        RateLimit limit = new RateLimit("test", 60, 2);
+        bounded.tryAcquire("idle-1", limit);
+        bounded.tryAcquire("idle-2", limit);
+        advanceMillis(1000);
+        for (String client : new String[]{"active-1", "active-2"}) {
+            bounded.tryAcquire(client, limit);
+            bounded.tryAcquire(client, limit);
+        }
+
+        assertThat(bounded.tryAcquire("new", limit).isAllowed()).isTrue();
+
+        assertThat(bounded.size()).isEqualTo(3);
+        assertThat(bounded.tryAcquire("active-1", limit).isAllowed()).isFalse();
+        assertThat(bounded.tryAcquire("active-2", limit).isAllowed()).isFalse();
+    }
+
+    /**
+     * @return Requests allowed before the first denial
+     */
+    private int exhaust(String clientId) {
+        int allowed = 0;
+        while (limiter.tryAcquire(clientId, LIMIT).isAllowed()) {
+            allowed++;
+        }
+        return allowed;
+    }
+
+    private void advanceMillis(long millis) {
+        now += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
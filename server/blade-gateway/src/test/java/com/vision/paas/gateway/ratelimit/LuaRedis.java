@@ -0,0 +1,117 @@
+package com.vision.paas.gateway.ratelimit;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lua Redis
+ * Runs a Redis script with LuaJ against an in-memory keyspace and a clock the test moves,
+ * supporting the commands the rate limit scripts use: TIME, GET and SET with PX.
+ * Replies are converted the way Redis does, numbers truncated to integers.
+ */
+final class LuaRedis {
+
+    private final Globals globals = JsePlatform.standardGlobals();
+    private final LuaValue script;
+    private final Map<String, Value> keyspace = new HashMap<>();
+    private long nowMicros;
+
+    LuaRedis(String resource, long startMicros) {
+        try (InputStream in = LuaRedis.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("No script " + resource);
+            }
+            this.script = globals.load(new String(in.readAllBytes(), StandardCharsets.UTF_8), resource);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.nowMicros = startMicros;
+        LuaTable redis = new LuaTable();
+        redis.set("call", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                return LuaRedis.this.call(args);
+            }
+        });
+        globals.set("redis", redis);
+    }
+
+    synchronized List<Object> eval(List<String> keys, List<?> args) {
+        globals.set("KEYS", table(keys));
+        globals.set("ARGV", table(args));
+        LuaValue reply = script.call();
+        List<Object> result = new ArrayList<>();
+        for (int i = 1; i <= reply.length(); i++) {
+            result.add((long) reply.get(i).todouble());
+        }
+        return result;
+    }
+
+    synchronized void advance(Duration duration) {
+        nowMicros += duration.toNanos() / 1000;
+    }
+
+    /**
+     * @return The key's value, or null when it is absent or expired
+     */
+    synchronized String get(String key) {
+        Value value = keyspace.get(key);
+        return value != null && value.expiresAtMicros > nowMicros ? value.text : null;
+    }
+
+    private Varargs call(Varargs args) {
+        String command = args.checkjstring(1).toUpperCase();
+        switch (command) {
+            case "TIME":
+                return LuaValue.listOf(new LuaValue[]{
+                        LuaValue.valueOf(Long.toString(nowMicros / 1_000_000)),
+                        LuaValue.valueOf(Long.toString(nowMicros % 1_000_000))});
+            case "GET": {
+                String value = get(args.checkjstring(2));
+                return value != null ? LuaValue.valueOf(value) : LuaValue.FALSE;
+            }
+            case "SET": {
+                long expiresAt = Long.MAX_VALUE;
+                if (args.narg() >= 5 && "PX".equalsIgnoreCase(args.checkjstring(4))) {
+                    expiresAt = nowMicros + args.checklong(5) * 1000;
+                }
+                keyspace.put(args.checkjstring(2), new Value(args.checkjstring(3), expiresAt));
+                return LuaValue.valueOf("OK");
+            }
+            default:
+                throw new UnsupportedOperationException("Command not supported: " + command);
+        }
+    }
+
+    private static LuaTable table(List<?> values) {
+        LuaTable table = new LuaTable();
+        for (int i = 0; i < values.size(); i++) {
+            table.set(i + 1, LuaValue.valueOf(String.valueOf(values.get(i))));
+        }
+        return table;
+    }
+
+    private static final class Value {
+        final String text;
+        final long expiresAtMicros;
+
+        Value(String text, long expiresAtMicros) {
+            this.text = text;
+            this.expiresAtMicros = expiresAtMicros;
+        }
+    }
+}
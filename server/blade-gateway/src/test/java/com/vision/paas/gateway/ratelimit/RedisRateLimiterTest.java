@@ -0,0 +1,178 @@
+package com.vision.paas.gateway.ratelimit;
+
+import com.vision.paas.gateway.config.GatewayProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Leases and failure modes, with Redis played by {@link LuaRedis} running the real script
+ */
+class RedisRateLimiterTest {
+
+    private static final RateLimit LIMIT = new RateLimit("test", 600, 200);
+
+    private GatewayProperties properties;
+    private LuaRedis redis;
+
+    @BeforeEach
+    void setUp() {
+        properties = new GatewayProperties();
+        properties.getRateLimit().setBatchSize(10);
+        properties.getRateLimit().setLeaseTtl(Duration.ofMinutes(1));
+        properties.getRateLimit().setTimeout(Duration.ofSeconds(5));
+        properties.getRateLimit().setRetryAfterFailure(Duration.ofSeconds(30));
+        redis = new LuaRedis("scripts/gcra.lua", 1_700_000_000_000_000L);
+    }
+
+    @Test
+    void batchOfRequestsCostsOneRoundTrip() {
+        ReactiveStringRedisTemplate template = sharedRedis();
+        RedisRateLimiter limiter = limiter(template);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(acquire(limiter, "client").isAllowed()).isTrue();
+        }
+        verifyRoundTrips(template, 1);
+
+        assertThat(acquire(limiter, "client").isAllowed()).isTrue();
+        verifyRoundTrips(template, 2);
+    }
+
+    @Test
+    void leasedRequestsCountAgainstTheSharedLimit() {
+        RedisRateLimiter limiter = limiter(sharedRedis());
+
+        RateLimitDecision first = acquire(limiter, "client");
+        assertThat(first.isAllowed()).isTrue();
+        assertThat(first.getRemaining()).isEqualTo(LIMIT.getBurst() - 1);
+        assertThat(acquire(limiter, "client").getRemaining()).isEqualTo(LIMIT.getBurst() - 2);
+    }
+
+    @Test
+    void twoInstancesNeverGrantMoreThanTheBurstTogether() {
+        RedisRateLimiter first = limiter(sharedRedis());
+        RedisRateLimiter second = limiter(sharedRedis());
+
+        int allowed = 0;
+        boolean firstDenied = false;
+        boolean secondDenied = false;
+        while (!firstDenied || !secondDenied) {
+            if (!firstDenied) {
+                firstDenied = !acquire(first, "client").isAllowed();
+                allowed += firstDenied ? 0 : 1;
+            }
+            if (!secondDenied) {
+                secondDenied = !acquire(second, "client").isAllowed();
+                allowed += secondDenied ? 0 : 1;
+            }
+        }
+        assertThat(allowed).isEqualTo(LIMIT.getBurst());
+
+        redis.advance(Duration.ofMillis(100));
+        assertThat(acquire(first, "client").isAllowed()).isTrue();
+        assertThat(acquire(second, "client").isAllowed()).isFalse();
+    }
+
+    @Test
+    void clientsDoNotShareLeases() {
+        RateLimit small = new RateLimit("test", 60, 40);
+        RedisRateLimiter limiter = limiter(sharedRedis());
+
+        assertThat(limiter.acquire("a", small).block().isAllowed()).isTrue();
+        assertThat(limiter.acquire("b", small).block().getRemaining()).isEqualTo(small.getBurst() - 1);
+    }
+
+    @Test
+    void openFailureModeAllowsWhileRedisIsDown() {
+        properties.getRateLimit().setFailureMode(GatewayProperties.RateLimit.FailureMode.OPEN);
+        RedisRateLimiter limiter = limiter(unreachableRedis());
+
+        RateLimitDecision decision = acquire(limiter, "client");
+
+        assertThat(decision.isAllowed()).isTrue();
+        assertThat(decision.getRemaining()).isEqualTo(-1);
+    }
+
+    @Test
+    void closedFailureModeDeniesWhileRedisIsDown() {
+        properties.getRateLimit().setFailureMode(GatewayProperties.RateLimit.FailureMode.CLOSED);
+        RedisRateLimiter limiter = limiter(unreachableRedis());
+
+        RateLimitDecision decision = acquire(limiter, "client");
+
+        assertThat(decision.isAllowed()).isFalse();
+        assertThat(decision.getRetryAfterMillis()).isEqualTo(30_000);
+    }
+
+    @Test
+    void localFailureModeLimitsInMemoryWithoutAskingRedisAgain() {
+        properties.getRateLimit().setFailureMode(GatewayProperties.RateLimit.FailureMode.LOCAL);
+        ReactiveStringRedisTemplate template = unreachableRedis();
+        RedisRateLimiter limiter = limiter(template);
+        RateLimit small = new RateLimit("test", 60, 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.acquire("client", small).block().isAllowed()).isTrue();
+        }
+        assertThat(limiter.acquire("client", small).block().isAllowed()).isFalse();
+        verifyRoundTrips(template, 1);
+    }
+
+    @Test
+    void timeoutAppliesTheFailureMode() {
+        properties.getRateLimit().setFailureMode(GatewayProperties.RateLimit.FailureMode.CLOSED);
+        properties.getRateLimit().setTimeout(Duration.ofMillis(20));
+        ReactiveStringRedisTemplate template = mock(ReactiveStringRedisTemplate.class);
+        doReturn(Flux.never()).when(template).execute(any(RedisScript.class), anyList(), anyList());
+
+        assertThat(acquire(limiter(template), "client").isAllowed()).isFalse();
+    }
+
+    private RedisRateLimiter limiter(ReactiveStringRedisTemplate template) {
+        RedisRateLimiter limiter = new RedisRateLimiter(properties, template, new LocalRateLimiter(properties),
+                new SimpleMeterRegistry());
+        limiter.init();
+        return limiter;
+    }
+
+    private static RateLimitDecision acquire(RedisRateLimiter limiter, String clientId) {
+        return limiter.acquire(clientId, LIMIT).block();
+    }
+
+    @SuppressWarnings("unchecked")
+    private ReactiveStringRedisTemplate sharedRedis() {
+        ReactiveStringRedisTemplate template = mock(ReactiveStringRedisTemplate.class);
+        doAnswer(invocation -> Flux.defer(() -> Flux.just(redis.eval(invocation.getArgument(1),
+                invocation.getArgument(2)))))
+                .when(template).execute(any(RedisScript.class), anyList(), anyList());
+        return template;
+    }
+
+    private static ReactiveStringRedisTemplate unreachableRedis() {
+        ReactiveStringRedisTemplate template = mock(ReactiveStringRedisTemplate.class);
+        doReturn(Flux.error(new RedisConnectionFailureException("Connection refused")))
+                .when(template).execute(any(RedisScript.class), anyList(), anyList());
+        return template;
+    }
+
+    private static void verifyRoundTrips(ReactiveStringRedisTemplate template, int times) {
+        verify(template, times(times)).execute(any(RedisScript.class), anyList(), anyList());
+    }
+}
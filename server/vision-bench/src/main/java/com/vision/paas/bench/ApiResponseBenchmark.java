@@ -0,0 +1,80 @@
+package com.vision.paas.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vision.paas.common.dto.ApiResponse;
+import com.vision.paas.common.enums.DeploymentStatus;
+import com.vision.paas.common.enums.ProjectType;
+import com.vision.paas.deploy.service.AutoDeployService.DeploymentResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ApiResponse serialisation with a small payload and a full DeploymentResult
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApiResponseBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ApiResponse<Map<String, Object>> smallResponse;
+    private ApiResponse<DeploymentResult> deploymentResponse;
+    private String smallJson;
+
+    @Setup
+    public void setup() throws JsonProcessingException {
+        smallResponse = ApiResponse.success(Map.of(
+                "id", "3f2c9a7e1b5d4c8a9e0f1a2b3c4d5e6f",
+                "name", "storefront",
+                "tags", List.of("nextjs", "production")));
+
+        DeploymentResult result = new DeploymentResult();
+        result.setProjectId("storefront-a1b2c3");
+        result.setStatus(DeploymentStatus.RUNNING);
+        result.setProjectType(ProjectType.NEXTJS);
+        result.setImageId("sha256:4c1f0d6e2b3a59788a6d1e0f9c2b7a5d3e8f1c0b6a4d2e9f7c5b3a1d8e6f4c2a");
+        result.setContainerId("9b8a7c6d5e4f3a2b1c0d9e8f7a6b5c4d3e2f1a0b9c8d7e6f5a4b3c2d1e0f9a8b");
+        result.setPort(3000);
+        result.setHostPort(32768);
+        result.addLog("✓ Repository cloned successfully");
+        result.addLog("✓ Detected project type: Next.js");
+        result.addLog("✓ Image built successfully");
+        result.addLog("✓ Container started");
+        deploymentResponse = ApiResponse.success("Deployment initiated", result);
+
+        smallJson = objectMapper.writeValueAsString(smallResponse);
+    }
+
+    @Benchmark
+    public String serializeSmall() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(smallResponse);
+    }
+
+    @Benchmark
+    public byte[] serializeDeploymentResult() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(deploymentResponse);
+    }
+
+    @Benchmark
+    public ApiResponse<Map<String, Object>> deserializeSmall() throws JsonProcessingException {
+        return objectMapper.readValue(smallJson, new TypeReference<>() { });
+    }
+}
@@ -0,0 +1,90 @@
+package com.vision.paas.bench;
+
+import com.vision.common.util.JwtUtil;
+import com.vision.paas.common.security.IdentityToken;
+import com.vision.paas.gateway.auth.ApiKeyStore;
+import com.vision.paas.gateway.auth.AuthenticatedUser;
+import com.vision.paas.gateway.auth.JwtVerifier;
+import com.vision.paas.gateway.auth.SubscriptionPlans;
+import com.vision.paas.gateway.auth.SubscriptionRepository;
+import com.vision.paas.gateway.config.GatewayProperties;
+import com.vision.paas.gateway.filter.AuthenticationFilter;
+import com.vision.paas.gateway.route.RoutePolicies;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gateway bearer-token authentication: a repeat token served from the verified-claims
+ * cache, a first-seen token going through the HMAC check, and the whole filter
+ * including the cached plan lookup and the signed identity header it forwards
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticationFilterBenchmark {
+
+    private static final GatewayFilterChain CHAIN = exchange -> Mono.empty();
+
+    private JwtVerifier verifier;
+    private AuthenticationFilter filter;
+    private String token;
+    private MockServerWebExchange exchange;
+
+    @Setup
+    public void setup() {
+        GatewayProperties properties = new GatewayProperties();
+        properties.getJwt().setSecret("benchmark-secret-key-that-is-long-enough-for-hs256");
+        verifier = new JwtVerifier(properties);
+        RoutePolicies routePolicies = new RoutePolicies(properties, null);
+        routePolicies.init();
+        SubscriptionRepository subscriptions = new SubscriptionRepository(null) {
+            @Override
+            public String findActivePlan(String userId) {
+                return "PRO";
+            }
+        };
+        filter = new AuthenticationFilter(verifier, new ApiKeyStore(properties, null, null, null),
+                new SubscriptionPlans(properties, subscriptions), new IdentityToken("benchmark-identity-secret"),
+                properties, routePolicies);
+
+        JwtUtil jwtUtil = new JwtUtil();
+        BenchSupport.setField(jwtUtil, "secret", "benchmark-secret-key-that-is-long-enough-for-hs256");
+        BenchSupport.setField(jwtUtil, "expiration", 604800000L);
+        token = jwtUtil.generateToken("user-123", "bench");
+        exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/project/list")
+                .header("Authorization", "Bearer " + token));
+    }
+
+    @Benchmark
+    public AuthenticatedUser verifyCached() {
+        return verifier.verify(token);
+    }
+
+    @Benchmark
+    public AuthenticatedUser verifyUncached() {
+        verifier.invalidate(token);
+        return verifier.verify(token);
+    }
+
+    @Benchmark
+    public Mono<Void> filter() {
+        return filter.filter(exchange, CHAIN);
+    }
+}
@@ -0,0 +1,117 @@
+package com.vision.paas.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmark Runner
+ * Runs the benchmarks once per thread count, writes JMH JSON results per
+ * thread count and compares them against the committed baseline.
+ *
+ * System properties:
+ *   bench.include    regex of benchmarks to run (default: all)
+ *   bench.threads    comma-separated thread counts (default: 1)
+ *   bench.output     directory for result files (default: target/bench-results)
+ *   bench.baseline   baseline directory to compare with (default: baseline)
+ *   bench.tolerance  allowed relative slowdown before flagging, e.g. 0.10 (default)
+ *   bench.fail       exit non-zero on regressions (default: false)
+ *
+ * To refresh the baseline, run with bench.output=baseline and commit the files.
+ */
+public final class BenchRunner {
+
+    private BenchRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        String include = System.getProperty("bench.include", ".*");
+        String[] threadCounts = System.getProperty("bench.threads", "1").split(",");
+        Path output = Paths.get(System.getProperty("bench.output", "target/bench-results"));
+        Path baseline = Paths.get(System.getProperty("bench.baseline", "baseline"));
+        double tolerance = Double.parseDouble(System.getProperty("bench.tolerance", "0.10"));
+        boolean failOnRegression = Boolean.parseBoolean(System.getProperty("bench.fail", "false"));
+
+        Files.createDirectories(output);
+        List<String> regressions = new ArrayList<>();
+
+        for (String value : threadCounts) {
+            int threads = Integer.parseInt(value.trim());
+            String fileName = "results-t" + threads + ".json";
+            Path resultFile = output.resolve(fileName);
+
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .result(resultFile.toString())
+                    .resultFormat(ResultFormatType.JSON);
+            new Runner(options.build()).run();
+
+            Path baselineFile = baseline.resolve(fileName);
+            if (!baselineFile.equals(resultFile) && Files.exists(baselineFile)) {
+                regressions.addAll(compare(baselineFile, resultFile, tolerance));
+            }
+        }
+
+        if (regressions.isEmpty()) {
+            System.out.println("No regressions against " + baseline);
+            return;
+        }
+        System.out.println("Regressions against " + baseline + " (tolerance " + tolerance + "):");
+        regressions.forEach(line -> System.out.println("  " + line));
+        if (failOnRegression) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compare primary scores per benchmark and parameter set. Throughput scores
+     * regress when they drop; time-per-op scores regress when they grow.
+     */
+    static List<String> compare(Path baselineFile, Path resultFile, double tolerance) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, JsonNode> expected = index(mapper.readTree(baselineFile.toFile()));
+        List<String> regressions = new ArrayList<>();
+
+        for (Map.Entry<String, JsonNode> entry : index(mapper.readTree(resultFile.toFile())).entrySet()) {
+            JsonNode before = expected.get(entry.getKey());
+            if (before == null) {
+                continue;
+            }
+            JsonNode after = entry.getValue();
+            double old = before.path("primaryMetric").path("score").asDouble();
+            double now = after.path("primaryMetric").path("score").asDouble();
+            boolean throughput = "thrpt".equals(after.path("mode").asText());
+            double change = old == 0 ? 0 : (now - old) / old;
+            if (throughput ? change < -tolerance : change > tolerance) {
+                regressions.add(String.format("%s: %.3f -> %.3f %s (%+.1f%%)", entry.getKey(), old, now,
+                        after.path("primaryMetric").path("scoreUnit").asText(), change * 100));
+            }
+        }
+        return regressions;
+    }
+
+    private static Map<String, JsonNode> index(JsonNode results) {
+        Map<String, JsonNode> byKey = new HashMap<>();
+        for (JsonNode result : results) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+            result.path("params").fields().forEachRemaining(param ->
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText()));
+            byKey.put(key.toString(), result);
+        }
+        return byKey;
+    }
+}
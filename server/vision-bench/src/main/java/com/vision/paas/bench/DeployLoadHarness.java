@@ -0,0 +1,231 @@
+package com.vision.paas.bench;
+
+import com.vision.paas.bench.docker.FakeDockerDaemon;
+import com.vision.paas.bench.docker.FakeDockerProfile;
+import com.vision.paas.common.enums.DeploymentStatus;
+import com.vision.paas.common.enums.SubscriptionPlan;
+import com.vision.paas.common.exception.BusinessException;
+import com.vision.paas.deploy.config.DeployProperties;
+import com.vision.paas.deploy.detector.ProjectDetector;
+import com.vision.paas.deploy.docker.DockerService;
+import com.vision.paas.deploy.generator.DockerfileGenerator;
+import com.vision.paas.deploy.git.GitService;
+import com.vision.paas.deploy.history.DeploymentHistory;
+import com.vision.paas.deploy.metrics.DeploymentMetrics;
+import com.vision.paas.deploy.metrics.DeploymentTimeline;
+import com.vision.paas.deploy.pipeline.CheckpointStore;
+import com.vision.paas.deploy.scheduler.BuildJob;
+import com.vision.paas.deploy.scheduler.BuildScheduler;
+import com.vision.paas.deploy.service.AutoDeployService;
+import com.vision.paas.deploy.service.AutoDeployService.DeploymentResult;
+import com.vision.paas.deploy.supervisor.RestartSupervisor;
+import com.vision.paas.deploy.workspace.WorkspaceManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.jgit.api.Git;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deploy Load Harness
+ * Drives concurrent deployments through the real BuildScheduler, AutoDeployService
+ * and DockerService against a {@link FakeDockerDaemon}, then reports per-stage
+ * latencies, queue wait and build worker utilisation.
+ *
+ * Run: java -cp target/benchmarks.jar com.vision.paas.bench.DeployLoadHarness
+ *
+ * System properties (plus the docker.* properties of {@link FakeDockerProfile}):
+ *   load.deploys     deployments to submit at once (default: 200)
+ *   load.tenants     tenants the deployments are spread over (default: 50)
+ *   load.plan        plan of every tenant (default: ENTERPRISE)
+ *   load.workers     build workers (default: 16)
+ *   load.memory      container memory in MB (default: 512)
+ *   load.repo        synthetic repository: nextjs, spring-boot, django, go, static (default: nextjs)
+ *   load.transport   tcp or unix (default: tcp)
+ *   load.socket      unix socket path (default: target/fake-docker.sock)
+ *   load.workspace   workspace root for clones (default: target/load-workspaces)
+ *   load.settle      readiness settle time in ms (default: 200)
+ */
+public final class DeployLoadHarness {
+
+    private DeployLoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int deploys = Integer.getInteger("load.deploys", 200);
+        int tenants = Integer.getInteger("load.tenants", 50);
+        SubscriptionPlan plan = SubscriptionPlan.valueOf(System.getProperty("load.plan", "ENTERPRISE"));
+        int workers = Integer.getInteger("load.workers", 16);
+        int memoryMB = Integer.getInteger("load.memory", 512);
+        String repo = System.getProperty("load.repo", "nextjs");
+        String transport = System.getProperty("load.transport", "tcp");
+        Path socket = Paths.get(System.getProperty("load.socket", "target/fake-docker.sock"));
+        Path workspaceRoot = Paths.get(System.getProperty("load.workspace", "target/load-workspaces"));
+        long settleMs = Long.getLong("load.settle", 200);
+
+        FakeDockerProfile profile = FakeDockerProfile.fromSystemProperties();
+        Path repoPath = createGitRepo(repo);
+        String gitUrl = repoPath.toUri().toString();
+
+        try (FakeDockerDaemon daemon = "unix".equals(transport)
+                ? FakeDockerDaemon.unix(socket, profile)
+                : FakeDockerDaemon.tcp(0, profile)) {
+            System.out.println("Fake docker daemon on " + daemon.getDockerHost() + "\n  " + profile);
+
+            DeployProperties properties = new DeployProperties();
+            properties.getDocker().setHost(daemon.getDockerHost());
+            properties.getDocker().setMaxConnections(Math.max(100, workers * 2));
+            properties.getScheduler().setWorkers(workers);
+            properties.getTimeouts().setReadinessSettle(Duration.ofMillis(settleMs));
+            properties.getWorkspace().setRoot(workspaceRoot.toString());
+            properties.getPipeline().setCheckpointDir(workspaceRoot.resolveSibling("load-checkpoints").toString());
+
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            DockerService dockerService = new DockerService(properties);
+            dockerService.init();
+            WorkspaceManager workspaceManager = new WorkspaceManager(properties);
+            workspaceManager.init();
+            GitService gitService = new GitService(properties, workspaceManager);
+            // Load projects are not in a database; nothing to record them in
+            properties.getHistory().setEnabled(false);
+            DeploymentHistory history = new DeploymentHistory(properties, null, registry);
+            history.init();
+            RestartSupervisor supervisor = new RestartSupervisor(properties, dockerService, history, registry);
+            supervisor.init();
+            CheckpointStore checkpointStore = new CheckpointStore(properties);
+            checkpointStore.init();
+            AutoDeployService deployService = new AutoDeployService(gitService, new ProjectDetector(),
+                    new DockerfileGenerator(), dockerService, new DeploymentMetrics(registry, dockerService), supervisor,
+                    checkpointStore, history);
+            BuildScheduler scheduler = new BuildScheduler(properties, registry);
+            scheduler.init();
+
+            LongAdder busyNanos = new LongAdder();
+            Map<String, Long> submittedAt = new ConcurrentHashMap<>();
+            ConcurrentLinkedQueue<Long> waits = new ConcurrentLinkedQueue<>();
+            List<BuildJob> jobs = new ArrayList<>();
+            Map<String, Integer> rejected = new TreeMap<>();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < deploys; i++) {
+                String projectId = "load-" + i;
+                String tenantId = "tenant-" + (i % Math.max(1, tenants));
+                submittedAt.put(projectId, System.nanoTime());
+                try {
+                    jobs.add(scheduler.submit(tenantId, plan, projectId, memoryMB, token -> {
+                        long begin = System.nanoTime();
+                        waits.add((begin - submittedAt.get(projectId)) / 1_000_000);
+                        try {
+                            return deployService.deploy(projectId, gitUrl, Map.of(), memoryMB, plan, token);
+                        } finally {
+                            gitService.cleanup(projectId);
+                            busyNanos.add(System.nanoTime() - begin);
+                        }
+                    }));
+                } catch (BusinessException e) {
+                    rejected.merge(e.getMessage(), 1, Integer::sum);
+                }
+            }
+
+            Map<DeploymentStatus, Integer> statuses = new EnumMap<>(DeploymentStatus.class);
+            Map<String, List<Long>> stages = new TreeMap<>();
+            List<Long> totals = new ArrayList<>();
+            for (BuildJob job : jobs) {
+                DeploymentResult result = job.await();
+                statuses.merge(result.getStatus(), 1, Integer::sum);
+                long total = 0;
+                for (DeploymentTimeline.StageTiming stage : result.getTimeline().getStages()) {
+                    stages.computeIfAbsent(stage.getStage(), name -> new ArrayList<>()).add(stage.getDurationMs());
+                    total += stage.getDurationMs();
+                }
+                totals.add(total);
+            }
+            long wallNanos = System.nanoTime() - start;
+            scheduler.shutdown();
+            supervisor.shutdown();
+            workspaceManager.shutdown();
+
+            report(deploys, workers, wallNanos, busyNanos.sum(), statuses, rejected,
+                    stages, totals, new ArrayList<>(waits), daemon);
+        } finally {
+            BenchSupport.deleteRecursively(repoPath);
+        }
+    }
+
+    /**
+     * A local repository with one commit on main, cloned by GitService over file://
+     */
+    private static Path createGitRepo(String repo) throws Exception {
+        Map<String, String> files = ProjectDetectorBenchmark.REPOS.get(repo);
+        if (files == null) {
+            throw new IllegalArgumentException("Unknown repo " + repo + ", expected one of "
+                    + ProjectDetectorBenchmark.REPOS.keySet());
+        }
+        Path root = BenchSupport.createRepo("load-repo-", files);
+        try (Git git = Git.init().setDirectory(root.toFile()).setInitialBranch("main").call()) {
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("Initial commit").setAuthor("bench", "bench@localhost").call();
+        }
+        return root;
+    }
+
+    private static void report(int deploys, int workers, long wallNanos, long busyNanos,
+                               Map<DeploymentStatus, Integer> statuses, Map<String, Integer> rejected,
+                               Map<String, List<Long>> stages, List<Long> totals, List<Long> waits,
+                               FakeDockerDaemon daemon) {
+        double wallSeconds = wallNanos / 1e9;
+        System.out.println();
+        System.out.printf("Deployments: %d in %.1fs (%.1f/min), statuses %s%n",
+                deploys, wallSeconds, statuses.values().stream().mapToInt(Integer::intValue).sum() / wallSeconds * 60,
+                statuses);
+        if (!rejected.isEmpty()) {
+            System.out.println("Rejected at submit: " + rejected);
+        }
+        System.out.printf("Worker utilisation: %.1f%% of %d workers%n",
+                100.0 * busyNanos / ((double) workers * wallNanos), workers);
+
+        System.out.println();
+        System.out.printf("%-10s %7s %8s %8s %8s %8s%n", "stage", "count", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        printRow("queue", waits);
+        for (String stage : List.of(DeploymentTimeline.CLONE, DeploymentTimeline.DETECT,
+                DeploymentTimeline.GENERATE, DeploymentTimeline.CONTEXT, DeploymentTimeline.BUILD,
+                DeploymentTimeline.CREATE, DeploymentTimeline.START, DeploymentTimeline.READY)) {
+            if (stages.containsKey(stage)) {
+                printRow(stage, stages.get(stage));
+            }
+        }
+        printRow("pipeline", totals);
+
+        System.out.println();
+        System.out.println("Daemon requests: " + daemon.getRequestCounts());
+        if (!daemon.getFailureCounts().isEmpty()) {
+            System.out.println("Injected failures: " + daemon.getFailureCounts());
+        }
+    }
+
+    private static void printRow(String name, List<Long> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        System.out.printf("%-10s %7d %8d %8d %8d %8d%n", name, sorted.size(),
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                sorted.get(sorted.size() - 1));
+    }
+
+    private static long percentile(List<Long> sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+}
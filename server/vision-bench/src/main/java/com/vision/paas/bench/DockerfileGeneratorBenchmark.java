@@ -0,0 +1,38 @@
+package com.vision.paas.bench;
+
+import com.vision.paas.common.enums.ProjectType;
+import com.vision.paas.deploy.generator.DockerfileGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DockerfileGenerator.generate for the common project types
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DockerfileGeneratorBenchmark {
+
+    @Param({"NEXTJS", "REACT", "SPRING_BOOT", "DJANGO", "GO", "STATIC_HTML"})
+    public ProjectType projectType;
+
+    private final DockerfileGenerator generator = new DockerfileGenerator();
+
+    @Benchmark
+    public String generate() {
+        return generator.generate(projectType, "/tmp/bench-repo", projectType.getDefaultPort());
+    }
+}
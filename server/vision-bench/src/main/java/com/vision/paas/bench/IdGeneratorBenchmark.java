@@ -0,0 +1,43 @@
+package com.vision.paas.bench;
+
+import com.vision.paas.common.util.IdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IdGenerator; generateShortId shares one SecureRandom across threads
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    @Benchmark
+    public String generateId() {
+        return IdGenerator.generateId();
+    }
+
+    @Benchmark
+    public String generateShortId() {
+        return IdGenerator.generateShortId(6);
+    }
+
+    @Benchmark
+    public String generateApiKey() {
+        return IdGenerator.generateApiKey();
+    }
+
+    @Benchmark
+    public String generateProjectSlug() {
+        return IdGenerator.generateProjectSlug("My Next.js Storefront");
+    }
+}
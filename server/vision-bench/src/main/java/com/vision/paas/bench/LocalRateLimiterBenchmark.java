@@ -0,0 +1,94 @@
+package com.vision.paas.bench;
+
+import com.vision.paas.gateway.config.GatewayProperties;
+import com.vision.paas.gateway.ratelimit.LocalRateLimiter;
+import com.vision.paas.gateway.ratelimit.RateLimit;
+import com.vision.paas.gateway.ratelimit.RateLimitDecision;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LocalRateLimiter under contention and under a flood of distinct clients.
+ * "contended" runs 64 threads against one shared client or one client each;
+ * "distinctClients" gives every call a new client, as rotating IPs would, and
+ * prints the tracked clients and heap after each iteration, which must stay flat.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocalRateLimiterBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class LimiterState {
+
+        @Param({"shared", "per-thread"})
+        public String clients;
+
+        /**
+         * 60 denies nearly every shared call; the larger limit keeps granting
+         */
+        @Param({"60", "6000000"})
+        public int requestsPerMinute;
+
+        final AtomicInteger threadIds = new AtomicInteger();
+        LocalRateLimiter limiter;
+        RateLimit limit;
+
+        @Setup
+        public void setup() {
+            limiter = new LocalRateLimiter(new GatewayProperties());
+            limit = RateLimit.perMinute(requestsPerMinute);
+        }
+
+        @TearDown(Level.Iteration)
+        public void report() {
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            System.out.printf("  [clients=%d heap=%dMB]%n", limiter.size(),
+                    (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ClientState {
+
+        String clientId;
+        long next;
+
+        @Setup
+        public void setup(LimiterState state) {
+            int thread = state.threadIds.incrementAndGet();
+            clientId = "shared".equals(state.clients) ? "ip:shared" : "ip:thread-" + thread;
+            next = (long) thread << 40;
+        }
+    }
+
+    @Benchmark
+    @Threads(64)
+    public RateLimitDecision contended(LimiterState state, ClientState client) {
+        return state.limiter.tryAcquire(client.clientId, state.limit);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public RateLimitDecision distinctClients(LimiterState state, ClientState client) {
+        return state.limiter.tryAcquire("ip:" + client.next++, state.limit);
+    }
+}
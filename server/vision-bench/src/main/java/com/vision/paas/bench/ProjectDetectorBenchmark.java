@@ -0,0 +1,87 @@
+package com.vision.paas.bench;
+
+import com.vision.paas.common.enums.ProjectType;
+import com.vision.paas.deploy.detector.ProjectDetector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProjectDetector.detect and detectPort on synthetic repositories
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProjectDetectorBenchmark {
+
+    static final Map<String, Map<String, String>> REPOS = Map.of(
+            "nextjs", Map.of(
+                    "package.json", """
+                            {"name":"web","scripts":{"dev":"next dev -p 3000","build":"next build"},
+                             "dependencies":{"next":"14.0.0","react":"18.2.0","react-dom":"18.2.0"}}
+                            """,
+                    "next.config.js", "module.exports = {}"),
+            "spring-boot", Map.of(
+                    "pom.xml", """
+                            <project><parent><groupId>org.springframework.boot</groupId>
+                            <artifactId>spring-boot-starter-parent</artifactId></parent></project>
+                            """,
+                    "src/main/resources/application.properties", "server.port=8081\n"),
+            "django", Map.of(
+                    "requirements.txt", "Django==4.2\ngunicorn==21.2\n",
+                    "manage.py", "#!/usr/bin/env python\n"),
+            "go", Map.of(
+                    "go.mod", "module example.com/api\n\nrequire github.com/gin-gonic/gin v1.9.1\n",
+                    "main.go", "package main\n"),
+            "static", Map.of(
+                    "index.html", "<html><body>hello</body></html>"),
+            "empty", Map.of(
+                    "README.md", "# nothing to detect\n"));
+
+    @Param({"nextjs", "spring-boot", "django", "go", "static", "empty"})
+    public String repo;
+
+    private final ProjectDetector detector = new ProjectDetector();
+    private Path repoPath;
+    private String repoDir;
+    private ProjectType detectedType;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        repoPath = BenchSupport.createRepo("bench-repo-", REPOS.get(repo));
+        repoDir = repoPath.toString();
+        detectedType = detector.detect(repoDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchSupport.deleteRecursively(repoPath);
+    }
+
+    @Benchmark
+    public ProjectType detect() {
+        return detector.detect(repoDir);
+    }
+
+    @Benchmark
+    public int detectPort() {
+        return detector.detectPort(repoDir, detectedType);
+    }
+}
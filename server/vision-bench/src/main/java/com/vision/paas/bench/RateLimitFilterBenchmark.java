@@ -0,0 +1,83 @@
+package com.vision.paas.bench;
+
+import com.vision.paas.gateway.auth.AuthenticatedUser;
+import com.vision.paas.gateway.config.GatewayProperties;
+import com.vision.paas.gateway.filter.AuthenticationFilter;
+import com.vision.paas.gateway.filter.RateLimitFilter;
+import com.vision.paas.gateway.ratelimit.LocalRateLimiter;
+import com.vision.paas.gateway.route.RoutePolicies;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RateLimitFilter decision cost. With "shared" every thread hits the same
+ * client bucket (worst-case contention); with "per-thread" each thread has
+ * its own client. Run with -t / bench.threads to vary contention.
+ * Uses the local backend; the Redis backend adds a round trip per batch.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimitFilterBenchmark {
+
+    private static final GatewayFilterChain CHAIN = exchange -> Mono.empty();
+
+    @State(Scope.Benchmark)
+    public static class FilterState {
+
+        @Param({"shared", "per-thread"})
+        public String clients;
+
+        final AtomicInteger threadIds = new AtomicInteger();
+        RateLimitFilter filter;
+
+        @Setup
+        public void setup() {
+            GatewayProperties properties = new GatewayProperties();
+            properties.getRateLimit().setBackend(GatewayProperties.RateLimit.Backend.LOCAL);
+            RoutePolicies routePolicies = new RoutePolicies(properties, null);
+            routePolicies.init();
+            filter = new RateLimitFilter(properties, routePolicies, new LocalRateLimiter(properties), null);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ClientState {
+
+        MockServerWebExchange exchange;
+
+        @Setup
+        public void setup(FilterState state) {
+            String userId = "shared".equals(state.clients)
+                    ? "shared"
+                    : "thread-" + state.threadIds.incrementAndGet();
+            exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/project/list"));
+            exchange.getAttributes().put(AuthenticationFilter.AUTHENTICATED_USER,
+                    new AuthenticatedUser(userId, null, null, "FREE", List.of("*"), Long.MAX_VALUE));
+        }
+    }
+
+    @Benchmark
+    public Mono<Void> filter(FilterState state, ClientState client) {
+        return state.filter.filter(client.exchange, CHAIN);
+    }
+}
@@ -0,0 +1,72 @@
+package com.vision.paas.bench;
+
+import com.vision.paas.gateway.config.GatewayProperties;
+import com.vision.paas.gateway.route.RoutePolicies;
+import com.vision.paas.gateway.route.RoutePolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Route policy lookup in the compiled trie, for a literal route, a wildcard
+ * route, a trailing ** route and a path no route matches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoutePoliciesBenchmark {
+
+    @Param({"POST /api/auth/login", "GET /api/deploy/history/p1/d1/logs", "GET /api/project/list", "DELETE /api/project/1"})
+    public String request;
+
+    private RoutePolicies routePolicies;
+    private ServerHttpRequest serverRequest;
+
+    @Setup
+    public void setup() {
+        GatewayProperties properties = new GatewayProperties();
+        properties.getRoutes().add(route("auth", List.of("/api/auth/login", "/api/auth/register", "/api/auth/refresh"), List.of()));
+        properties.getRoutes().add(route("health", List.of("/health/**", "/actuator/**"), List.of()));
+        properties.getRoutes().add(route("deploy-trigger", List.of("/api/deploy/auto", "/api/deploy/custom",
+                "/api/deploy/redeploy/*", "/api/deploy/reconfigure/*"), List.of("POST")));
+        properties.getRoutes().add(route("logs", List.of("/api/deploy/history/*/*/logs", "/api/monitor/**"), List.of("GET")));
+        properties.getRoutes().add(route("reads", List.of("/api/**"), List.of("GET", "HEAD")));
+        routePolicies = new RoutePolicies(properties, null);
+        routePolicies.init();
+
+        String[] parts = request.split(" ");
+        serverRequest = MockServerHttpRequest.method(HttpMethod.valueOf(parts[0]), parts[1]).build();
+        // Parsed once by the server for every request, not by the lookup
+        serverRequest.getPath();
+    }
+
+    private static GatewayProperties.Route route(String name, List<String> paths, List<String> methods) {
+        GatewayProperties.Route route = new GatewayProperties.Route();
+        route.setName(name);
+        route.setPaths(paths);
+        route.setMethods(methods);
+        return route;
+    }
+
+    @Benchmark
+    public RoutePolicy resolve() {
+        return routePolicies.resolve(serverRequest);
+    }
+}
@@ -0,0 +1,1258 @@
+package com.vision.paas.bench.docker;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.URLDecoder;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Fake Docker Daemon
+ * Speaks enough of the Docker Engine HTTP API for DockerService: ping, version, info,
+ * build, container create/start/stop/restart/update/rename/remove/inspect/logs/stats,
+ * image inspect/remove and events, over TCP or a unix socket. Nothing is ever run: containers
+ * only move between states, with the latencies and failures of a {@link FakeDockerProfile}.
+ */
+public class FakeDockerDaemon implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(FakeDockerDaemon.class);
+
+    private static final String API_VERSION = "1.43";
+    private static final String NEVER = "0001-01-01T00:00:00Z";
+    private static final Pattern VERSION_PREFIX = Pattern.compile("^/v\\d+\\.\\d+");
+    private static final int STREAM_STDOUT = 1;
+    private static final int FIRST_HOST_PORT = 32768;
+
+    private final FakeDockerProfile profile;
+    private final ServerSocketChannel server;
+    private final String dockerHost;
+    private final Path socketPath;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ExecutorService connections = Executors.newCachedThreadPool(daemonThreads("fake-docker-conn-"));
+    private final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor(daemonThreads("fake-docker-timer-"));
+    private final Set<SocketChannel> openChannels = ConcurrentHashMap.newKeySet();
+    private final Map<String, FakeContainer> containers = new ConcurrentHashMap<>();
+    private final Map<String, String> images = new ConcurrentHashMap<>();
+    private final List<BlockingQueue<Map<String, Object>>> eventStreams = new CopyOnWriteArrayList<>();
+    private final Map<String, AtomicLong> attempts = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final AtomicInteger nextHostPort = new AtomicInteger(FIRST_HOST_PORT);
+    private volatile boolean closed;
+
+    private FakeDockerDaemon(FakeDockerProfile profile, ServerSocketChannel server,
+                             String dockerHost, Path socketPath) {
+        this.profile = profile;
+        this.server = server;
+        this.dockerHost = dockerHost;
+        this.socketPath = socketPath;
+        Thread acceptor = new Thread(this::acceptLoop, "fake-docker-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Listen on 127.0.0.1; port 0 picks a free port
+     */
+    public static FakeDockerDaemon tcp(int port, FakeDockerProfile profile) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        int boundPort = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        return new FakeDockerDaemon(profile, channel, "tcp://127.0.0.1:" + boundPort, null);
+    }
+
+    /**
+     * Listen on a unix socket, replacing a stale socket file
+     */
+    public static FakeDockerDaemon unix(Path socket, FakeDockerProfile profile) throws IOException {
+        Path absolute = socket.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        Files.deleteIfExists(absolute);
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.bind(UnixDomainSocketAddress.of(absolute), 1024);
+        return new FakeDockerDaemon(profile, channel, "unix://" + absolute, absolute);
+    }
+
+    /**
+     * Value for DOCKER_HOST / deploy.docker.host
+     */
+    public String getDockerHost() {
+        return dockerHost;
+    }
+
+    /**
+     * Requests served per operation
+     */
+    public Map<String, Long> getRequestCounts() {
+        return snapshot(requests);
+    }
+
+    /**
+     * Injected failures per operation
+     */
+    public Map<String, Long> getFailureCounts() {
+        return snapshot(failures);
+    }
+
+    public int getContainerCount() {
+        return containers.size();
+    }
+
+    public int getImageCount() {
+        return images.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        for (SocketChannel channel : openChannels) {
+            channel.close();
+        }
+        connections.shutdownNow();
+        timers.shutdownNow();
+        if (socketPath != null) {
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                SocketChannel channel = server.accept();
+                if (channel.getLocalAddress() instanceof InetSocketAddress) {
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+                connections.execute(() -> serve(channel));
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("Fake docker daemon failed to accept a connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * One client connection: requests are served in order until the client closes
+     * the connection, asks for Connection: close, or drops a streaming response
+     */
+    private void serve(SocketChannel channel) {
+        openChannels.add(channel);
+        try (channel) {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024);
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 16 * 1024);
+            while (!closed) {
+                HttpRequest request = HttpRequest.read(in, out);
+                if (request == null) {
+                    return;
+                }
+                HttpResponse response = new HttpResponse(out, mapper);
+                try {
+                    handle(request, response);
+                } catch (DockerError e) {
+                    response.error(e.status, e.getMessage());
+                }
+                if (!response.complete || !request.keepAlive()) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // Client went away, e.g. an aborted build or a closed event stream
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            openChannels.remove(channel);
+        }
+    }
+
+    private void handle(HttpRequest request, HttpResponse response) throws IOException, InterruptedException {
+        String path = VERSION_PREFIX.matcher(request.path).replaceFirst("");
+        String[] segments = path.length() > 1 ? path.substring(1).split("/") : new String[0];
+        String method = request.method;
+
+        if (segments.length == 1 && "GET".equals(method)) {
+            switch (segments[0]) {
+                case "_ping" -> {
+                    response.send(200, "text/plain", "OK".getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                case "version" -> {
+                    response.json(200, version());
+                    return;
+                }
+                case "info" -> {
+                    simulate(FakeDockerProfile.INFO, "daemon");
+                    response.json(200, info());
+                    return;
+                }
+                case "events" -> {
+                    events(request, response);
+                    return;
+                }
+                default -> {
+                }
+            }
+        }
+        if (segments.length == 1 && "POST".equals(method) && "build".equals(segments[0])) {
+            build(request, response);
+            return;
+        }
+        if (segments.length >= 3 && "images".equals(segments[0]) && "GET".equals(method)
+                && "json".equals(segments[segments.length - 1])) {
+            inspectImage(String.join("/", List.of(segments).subList(1, segments.length - 1)), response);
+            return;
+        }
+        if (segments.length >= 2 && "images".equals(segments[0]) && "DELETE".equals(method)) {
+            removeImage(String.join("/", List.of(segments).subList(1, segments.length)), response);
+            return;
+        }
+        if (segments.length >= 2 && "containers".equals(segments[0])) {
+            if (segments.length == 2 && "GET".equals(method) && "json".equals(segments[1])) {
+                listContainers(request, response);
+                return;
+            }
+            if (segments.length == 2 && "POST".equals(method) && "create".equals(segments[1])) {
+                createContainer(request, response);
+                return;
+            }
+            if (segments.length == 2 && "DELETE".equals(method)) {
+                removeContainer(segments[1], request, response);
+                return;
+            }
+            if (segments.length == 3) {
+                String idOrName = segments[1];
+                switch (method + " " + segments[2]) {
+                    case "GET json" -> inspect(idOrName, response);
+                    case "GET logs" -> logs(idOrName, request, response);
+                    case "GET stats" -> stats(idOrName, request, response);
+                    case "POST start" -> start(idOrName, response);
+                    case "POST stop", "POST kill" -> stop(idOrName, response);
+                    case "POST restart" -> restart(idOrName, response);
+                    case "POST update" -> update(idOrName, request, response);
+                    case "POST rename" -> rename(idOrName, request, response);
+                    default -> throw new DockerError(404, "page not found");
+                }
+                return;
+            }
+        }
+        throw new DockerError(404, "page not found");
+    }
+
+    // ---------------------------------------------------------------- system
+
+    private Map<String, Object> version() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("Version", "24.0.0-fake");
+        body.put("ApiVersion", API_VERSION);
+        body.put("MinAPIVersion", "1.12");
+        body.put("Os", "linux");
+        body.put("Arch", "amd64");
+        return body;
+    }
+
+    private Map<String, Object> info() {
+        long running = containers.values().stream().filter(FakeContainer::isRunning).count();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("ID", "FAKE:DOCKER");
+        body.put("Name", "fake-docker");
+        body.put("Containers", containers.size());
+        body.put("ContainersRunning", running);
+        body.put("ContainersStopped", containers.size() - running);
+        body.put("Images", images.size());
+        body.put("ServerVersion", "24.0.0-fake");
+        body.put("OperatingSystem", "Fake Docker Engine");
+        body.put("NCPU", Runtime.getRuntime().availableProcessors());
+        body.put("MemTotal", Runtime.getRuntime().maxMemory());
+        return body;
+    }
+
+    // ---------------------------------------------------------------- images
+
+    /**
+     * Legacy builder output: one "Step n/m" per step, ending in " ---> <layer>",
+     * preceded by " ---> Using cache" for cached steps; the profile's build latency
+     * is spread over the steps that were not cached
+     */
+    private void build(HttpRequest request, HttpResponse response) throws IOException, InterruptedException {
+        String tag = request.query.getOrDefault("t", "untagged");
+        SplittableRandom random = begin(FakeDockerProfile.BUILD, tag);
+        FakeDockerProfile.Operation operation = profile.getOperation(FakeDockerProfile.BUILD);
+
+        if (profile.getContextRateMBps() > 0) {
+            Thread.sleep((long) (request.body.length / (profile.getContextRateMBps() * 1024 * 1024) * 1000));
+        }
+
+        int steps = Math.max(1, profile.getBuildSteps());
+        boolean[] cached = new boolean[steps];
+        int uncached = 0;
+        for (int i = 0; i < steps; i++) {
+            cached[i] = random.nextDouble() < profile.getBuildCacheRatio();
+            if (!cached[i]) {
+                uncached++;
+            }
+        }
+        long stepMillis = uncached > 0 ? operation.sampleLatency(random) / uncached : 0;
+        int failAt = operation.sampleFailure(random) ? random.nextInt(steps) : -1;
+
+        response.startStream("application/json");
+        for (int i = 0; i < steps; i++) {
+            String command = "fake-step-" + (i + 1);
+            streamLine(response, "stream", "Step " + (i + 1) + "/" + steps + " : RUN " + command + "\n");
+            if (cached[i] && i != failAt) {
+                streamLine(response, "stream", " ---> Using cache\n");
+                streamLine(response, "stream", " ---> " + shortId(random) + "\n");
+                continue;
+            }
+            String intermediate = shortId(random);
+            streamLine(response, "stream", " ---> Running in " + intermediate + "\n");
+            Thread.sleep(stepMillis);
+            if (i == failAt) {
+                count(failures, FakeDockerProfile.BUILD);
+                String message = "The command '/bin/sh -c " + command + "' returned a non-zero code: 1";
+                Map<String, Object> error = new LinkedHashMap<>();
+                error.put("errorDetail", Map.of("code", 1, "message", message));
+                error.put("error", message);
+                response.chunk(line(error));
+                response.endStream();
+                return;
+            }
+            streamLine(response, "stream", "Removing intermediate container " + intermediate + "\n");
+            streamLine(response, "stream", " ---> " + shortId(random) + "\n");
+        }
+
+        String imageId = "sha256:" + longId(random);
+        images.put(tag, imageId);
+        response.chunk(line(Map.of("aux", Map.of("ID", imageId))));
+        streamLine(response, "stream", "Successfully built " + imageId.substring(7, 19) + "\n");
+        streamLine(response, "stream", "Successfully tagged " + tag + "\n");
+        response.endStream();
+        publishEvent("image", "tag", imageId, Map.of("name", tag));
+    }
+
+    private void removeImage(String name, HttpResponse response) throws IOException, InterruptedException {
+        if (simulate(FakeDockerProfile.IMAGE_REMOVE, name)) {
+            throw injected(FakeDockerProfile.IMAGE_REMOVE);
+        }
+        String tag = findImage(name);
+        if (tag == null) {
+            throw new DockerError(404, "No such image: " + name);
+        }
+        String imageId = images.remove(tag);
+        publishEvent("image", "delete", imageId, Map.of("name", tag));
+        response.json(200, List.of(Map.of("Untagged", tag), Map.of("Deleted", imageId)));
+    }
+
+    private void inspectImage(String name, HttpResponse response) throws IOException, InterruptedException {
+        if (simulate(FakeDockerProfile.INSPECT, name)) {
+            throw injected(FakeDockerProfile.INSPECT);
+        }
+        String tag = findImage(name);
+        if (tag == null) {
+            throw new DockerError(404, "No such image: " + name);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("Id", images.get(tag));
+        body.put("RepoTags", List.of(tag));
+        body.put("Os", "linux");
+        body.put("Architecture", "amd64");
+        response.json(200, body);
+    }
+
+    /**
+     * Tag of an image referenced by tag, full ID or ID prefix
+     */
+    private String findImage(String reference) {
+        if (images.containsKey(reference)) {
+            return reference;
+        }
+        String id = reference.startsWith("sha256:") ? reference : "sha256:" + reference;
+        for (Map.Entry<String, String> image : images.entrySet()) {
+            if (image.getValue().startsWith(id)) {
+                return image.getKey();
+            }
+        }
+        return null;
+    }
+
+    // ---------------------------------------------------------------- containers
+
+    private void createContainer(HttpRequest request, HttpResponse response) throws IOException, InterruptedException {
+        String name = request.query.get("name");
+        String target = name != null ? name : "anonymous";
+        SplittableRandom random = begin(FakeDockerProfile.CREATE, target);
+        if (failed(FakeDockerProfile.CREATE, random)) {
+            throw injected(FakeDockerProfile.CREATE);
+        }
+
+        Map<String, Object> body = request.body.length > 0
+                ? mapper.readValue(request.body, new TypeReference<Map<String, Object>>() { })
+                : Map.of();
+        String image = String.valueOf(body.get("Image"));
+        if (findImage(image) == null) {
+            throw new DockerError(404, "No such image: " + image);
+        }
+        String id = longId(random);
+        String containerName = name != null ? name : "fake_" + id.substring(0, 8);
+        FakeContainer container = new FakeContainer(id, containerName, image, body, bindPorts(body));
+        if (containers.values().stream().anyMatch(existing -> existing.name.equals(containerName))) {
+            throw new DockerError(409, "Conflict. The container name \"/" + containerName + "\" is already in use");
+        }
+        containers.put(id, container);
+        publishEvent("container", "create", id, container.attributes());
+
+        Map<String, Object> created = new LinkedHashMap<>();
+        created.put("Id", id);
+        created.put("Warnings", List.of());
+        response.json(201, created);
+    }
+
+    /**
+     * Host ports the container publishes; port "0" or empty picks the next free one
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, List<Map<String, String>>> bindPorts(Map<String, Object> body) {
+        Map<String, List<Map<String, String>>> ports = new TreeMap<>();
+        Object exposed = body.get("ExposedPorts");
+        if (exposed instanceof Map<?, ?> exposedPorts) {
+            exposedPorts.keySet().forEach(port -> ports.put(String.valueOf(port), List.of()));
+        }
+        Object hostConfig = body.get("HostConfig");
+        Object bindings = hostConfig instanceof Map<?, ?> config ? config.get("PortBindings") : null;
+        if (bindings instanceof Map<?, ?> portBindings) {
+            for (Map.Entry<?, ?> entry : portBindings.entrySet()) {
+                List<Map<String, String>> hostPorts = new ArrayList<>();
+                for (Object binding : (List<Object>) entry.getValue()) {
+                    Map<String, Object> requested = (Map<String, Object>) binding;
+                    String hostPort = requested.get("HostPort") != null ? String.valueOf(requested.get("HostPort")) : "";
+                    if (hostPort.isEmpty() || "0".equals(hostPort)) {
+                        hostPort = String.valueOf(nextHostPort.getAndIncrement());
+                    }
+                    hostPorts.add(Map.of("HostIp", "0.0.0.0", "HostPort", hostPort));
+                }
+                ports.put(String.valueOf(entry.getKey()), hostPorts);
+            }
+        }
+        return ports;
+    }
+
+    private void start(String idOrName, HttpResponse response) throws IOException, InterruptedException {
+        if (simulate(FakeDockerProfile.START, idOrName)) {
+            throw injected(FakeDockerProfile.START);
+        }
+        FakeContainer container = resolve(idOrName);
+        synchronized (container) {
+            if (container.isRunning()) {
+                response.empty(304);
+                return;
+            }
+            run(container);
+        }
+        response.empty(204);
+    }
+
+    private void stop(String idOrName, HttpResponse response) throws IOException, InterruptedException {
+        if (simulate(FakeDockerProfile.STOP, idOrName)) {
+            throw injected(FakeDockerProfile.STOP);
+        }
+        FakeContainer container = resolve(idOrName);
+        synchronized (container) {
+            if (!container.isRunning() && !"restarting".equals(container.status)) {
+                response.empty(304);
+                return;
+            }
+            halt(container, 0, "stop");
+        }
+        response.empty(204);
+    }
+
+    private void restart(String idOrName, HttpResponse response) throws IOException, InterruptedException {
+        if (simulate(FakeDockerProfile.RESTART, idOrName)) {
+            throw injected(FakeDockerProfile.RESTART);
+        }
+        FakeContainer container = resolve(idOrName);
+        synchronized (container) {
+            if (container.isRunning()) {
+                halt(container, 0, "stop");
+            }
+            run(container);
+        }
+        publishEvent("container", "restart", container.id, container.attributes());
+        response.empty(204);
+    }
+
+    /**
+     * Live resource update; like the real daemon, a memory limit above the swap limit is refused
+     */
+    @SuppressWarnings("unchecked")
+    private void update(String idOrName, HttpRequest request, HttpResponse response)
+            throws IOException, InterruptedException {
+        if (simulate(FakeDockerProfile.UPDATE, idOrName)) {
+            throw injected(FakeDockerProfile.UPDATE);
+        }
+        FakeContainer container = resolve(idOrName);
+        Map<String, Object> body = request.body.length > 0
+                ? mapper.readValue(request.body, new TypeReference<Map<String, Object>>() { })
+                : Map.of();
+        synchronized (container) {
+            Map<String, Object> hostConfig = new LinkedHashMap<>(
+                    (Map<String, Object>) container.createBody.getOrDefault("HostConfig", Map.of()));
+            for (String key : List.of("Memory", "MemorySwap", "MemoryReservation", "NanoCpus", "CpuShares",
+                    "CpuQuota", "CpuPeriod", "CpusetCpus", "BlkioWeight", "PidsLimit")) {
+                if (body.get(key) != null) {
+                    hostConfig.put(key, body.get(key));
+                }
+            }
+            if (hostConfig.get("Memory") instanceof Number memory && hostConfig.get("MemorySwap") instanceof Number swap
+                    && swap.longValue() > 0 && memory.longValue() > swap.longValue()) {
+                throw new DockerError(409, "Memory limit should be smaller than already set memoryswap limit, "
+                        + "update the memoryswap at the same time");
+            }
+            container.createBody.put("HostConfig", hostConfig);
+        }
+        publishEvent("container", "update", container.id, container.attributes());
+        response.json(200, Map.of("Warnings", List.of()));
+    }
+
+    private void rename(String idOrName, HttpRequest request, HttpResponse response)
+            throws IOException, InterruptedException {
+        if (simulate(FakeDockerProfile.RENAME, idOrName)) {
+            throw injected(FakeDockerProfile.RENAME);
+        }
+        FakeContainer container = resolve(idOrName);
+        String newName = request.query.get("name");
+        if (newName == null || newName.isBlank()) {
+            throw new DockerError(400, "name is required");
+        }
+        synchronized (containers) {
+            if (containers.values().stream().anyMatch(other -> other != container && other.name.equals(newName))) {
+                throw new DockerError(409, "Conflict. The container name \"/" + newName + "\" is already in use");
+            }
+            String oldName = container.name;
+            container.name = newName;
+            Map<String, String> attributes = container.attributes();
+            attributes.put("oldName", "/" + oldName);
+            publishEvent("container", "rename", container.id, attributes);
+        }
+        response.empty(204);
+    }
+
+    private void removeContainer(String idOrName, HttpRequest request, HttpResponse response)
+            throws IOException, InterruptedException {
+        if (simulate(FakeDockerProfile.REMOVE, idOrName)) {
+            throw injected(FakeDockerProfile.REMOVE);
+        }
+        FakeContainer container = resolve(idOrName);
+        synchronized (container) {
+            if (container.isRunning()) {
+                if (!Boolean.parseBoolean(request.query.getOrDefault("force", "false"))) {
+                    throw new DockerError(409, "You cannot remove a running container " + container.id
+                            + ". Stop the container before attempting removal or force remove");
+                }
+                halt(container, 137, "kill");
+            }
+            container.cancelTimers();
+            containers.remove(container.id);
+        }
+        publishEvent("container", "destroy", container.id, container.attributes());
+        response.empty(204);
+    }
+
+    private void inspect(String idOrName, HttpResponse response) throws IOException, InterruptedException {
+        if (simulate(FakeDockerProfile.INSPECT, idOrName)) {
+            throw injected(FakeDockerProfile.INSPECT);
+        }
+        FakeContainer container = resolve(idOrName);
+        response.json(200, container.inspect());
+    }
+
+    private void listContainers(HttpRequest request, HttpResponse response) throws IOException {
+        boolean all = Boolean.parseBoolean(request.query.getOrDefault("all", "false"));
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (FakeContainer container : containers.values()) {
+            if (!all && !container.isRunning()) {
+                continue;
+            }
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("Id", container.id);
+            summary.put("Names", List.of("/" + container.name));
+            summary.put("Image", container.image);
+            summary.put("Labels", container.createBody.getOrDefault("Labels", Map.of()));
+            summary.put("State", container.status);
+            summary.put("Status", container.status);
+            list.add(summary);
+        }
+        response.json(200, list);
+    }
+
+    /**
+     * Multiplexed stdout frames: 1 byte stream, 3 padding, 4 byte big-endian length
+     */
+    private void logs(String idOrName, HttpRequest request, HttpResponse response) throws IOException, InterruptedException {
+        if (simulate(FakeDockerProfile.LOGS, idOrName)) {
+            throw injected(FakeDockerProfile.LOGS);
+        }
+        FakeContainer container = resolve(idOrName);
+        List<String> lines = new ArrayList<>(container.logs);
+        String tail = request.query.getOrDefault("tail", "all");
+        if (!"all".equals(tail)) {
+            int count = Integer.parseInt(tail);
+            lines = lines.subList(Math.max(0, lines.size() - count), lines.size());
+        }
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        for (String text : lines) {
+            byte[] payload = (text + "\n").getBytes(StandardCharsets.UTF_8);
+            frames.write(STREAM_STDOUT);
+            frames.write(new byte[3]);
+            frames.write(payload.length >>> 24);
+            frames.write(payload.length >>> 16);
+            frames.write(payload.length >>> 8);
+            frames.write(payload.length);
+            frames.write(payload);
+        }
+        response.send(200, "application/vnd.docker.raw-stream", frames.toByteArray());
+    }
+
+    /**
+     * One sample with stream=false, otherwise one sample per second until the client hangs up
+     */
+    private void stats(String idOrName, HttpRequest request, HttpResponse response) throws IOException, InterruptedException {
+        if (simulate(FakeDockerProfile.STATS, idOrName)) {
+            throw injected(FakeDockerProfile.STATS);
+        }
+        FakeContainer container = resolve(idOrName);
+        if (!Boolean.parseBoolean(request.query.getOrDefault("stream", "true"))) {
+            response.json(200, container.stats());
+            return;
+        }
+        response.startStream("application/json");
+        while (!closed && containers.containsKey(container.id)) {
+            response.chunk(line(container.stats()));
+            Thread.sleep(1000);
+        }
+        response.endStream();
+    }
+
+    // ---------------------------------------------------------------- events
+
+    private void events(HttpRequest request, HttpResponse response) throws IOException, InterruptedException {
+        count(requests, FakeDockerProfile.EVENTS);
+        Map<String, List<String>> filters = request.query.containsKey("filters")
+                ? mapper.readValue(request.query.get("filters"), new TypeReference<Map<String, List<String>>>() { })
+                : Map.of();
+        long until = request.query.containsKey("until")
+                ? Long.parseLong(request.query.get("until").split("\\.")[0]) * 1000
+                : Long.MAX_VALUE;
+
+        BlockingQueue<Map<String, Object>> queue = new LinkedBlockingQueue<>();
+        eventStreams.add(queue);
+        try {
+            response.startStream("application/json");
+            while (!closed && System.currentTimeMillis() < until) {
+                Map<String, Object> event = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (event != null && matches(event, filters)) {
+                    response.chunk(line(event));
+                }
+            }
+            response.endStream();
+        } finally {
+            eventStreams.remove(queue);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean matches(Map<String, Object> event, Map<String, List<String>> filters) {
+        Map<String, Object> actor = (Map<String, Object>) event.get("Actor");
+        Map<String, String> attributes = (Map<String, String>) actor.get("Attributes");
+        for (Map.Entry<String, List<String>> filter : filters.entrySet()) {
+            List<String> accepted = filter.getValue();
+            boolean match = switch (filter.getKey()) {
+                case "type" -> accepted.contains(String.valueOf(event.get("Type")));
+                case "event" -> accepted.contains(String.valueOf(event.get("Action")));
+                case "container", "image" -> accepted.contains(String.valueOf(actor.get("ID")))
+                        || accepted.contains(attributes.get("name"));
+                case "label" -> accepted.stream().allMatch(label -> {
+                    String[] pair = label.split("=", 2);
+                    return pair.length == 1 ? attributes.containsKey(pair[0]) : pair[1].equals(attributes.get(pair[0]));
+                });
+                default -> true;
+            };
+            if (!match) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void publishEvent(String type, String action, String id, Map<String, String> attributes) {
+        long now = System.currentTimeMillis();
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("status", action);
+        event.put("id", id);
+        if (attributes.containsKey("image")) {
+            event.put("from", attributes.get("image"));
+        }
+        event.put("Type", type);
+        event.put("Action", action);
+        event.put("Actor", Map.of("ID", id, "Attributes", attributes));
+        event.put("scope", "local");
+        event.put("time", now / 1000);
+        event.put("timeNano", now * 1_000_000);
+        for (BlockingQueue<Map<String, Object>> stream : eventStreams) {
+            stream.offer(event);
+        }
+    }
+
+    // ---------------------------------------------------------------- container lifecycle
+
+    /**
+     * Start a container; with the profile's crash rate it exits by itself after
+     * crashAfterMs and is restarted as its restart policy allows. Caller holds the container lock.
+     */
+    private void run(FakeContainer container) {
+        container.cancelTimers();
+        container.status = "running";
+        container.startedAt = Instant.now().toString();
+        container.exitCode = 0;
+        container.logs.add("Listening on " + container.publishedPorts());
+        publishEvent("container", "start", container.id, container.attributes());
+
+        long attempt = container.starts++;
+        SplittableRandom random = profile.random("crash", container.name, attempt);
+        if (profile.getCrashRate() > 0 && random.nextDouble() < profile.getCrashRate()) {
+            container.crash = timers.schedule(() -> crash(container), profile.getCrashAfterMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void crash(FakeContainer container) {
+        synchronized (container) {
+            if (!container.isRunning()) {
+                return;
+            }
+            container.logs.add("Error: fake application crashed");
+            halt(container, 1, null);
+            if (container.shouldRestart()) {
+                container.status = "restarting";
+                container.restartCount++;
+                // Docker doubles the delay between restarts, starting at 100ms
+                long delay = 100L << Math.min(container.restartCount - 1, 10);
+                container.crash = timers.schedule(() -> {
+                    synchronized (container) {
+                        if ("restarting".equals(container.status)) {
+                            run(container);
+                        }
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Caller holds the container lock
+     */
+    private void halt(FakeContainer container, int exitCode, String action) {
+        container.cancelTimers();
+        container.status = "exited";
+        container.exitCode = exitCode;
+        container.finishedAt = Instant.now().toString();
+        Map<String, String> attributes = new LinkedHashMap<>(container.attributes());
+        if ("kill".equals(action) || "stop".equals(action)) {
+            attributes.put("signal", "kill".equals(action) ? "9" : "15");
+            publishEvent("container", "kill", container.id, attributes);
+        }
+        attributes.put("exitCode", String.valueOf(exitCode));
+        publishEvent("container", "die", container.id, attributes);
+        if ("stop".equals(action)) {
+            publishEvent("container", "stop", container.id, container.attributes());
+        }
+    }
+
+    private FakeContainer resolve(String idOrName) {
+        String name = idOrName.startsWith("/") ? idOrName.substring(1) : idOrName;
+        FakeContainer container = containers.get(name);
+        if (container != null) {
+            return container;
+        }
+        for (FakeContainer candidate : containers.values()) {
+            if (candidate.name.equals(name) || candidate.id.startsWith(name)) {
+                return candidate;
+            }
+        }
+        throw new DockerError(404, "No such container: " + idOrName);
+    }
+
+    // ---------------------------------------------------------------- profile
+
+    /**
+     * Count the call and give it its random source
+     */
+    private SplittableRandom begin(String operation, String target) {
+        count(requests, operation);
+        long attempt = attempts.computeIfAbsent(operation + ":" + target, key -> new AtomicLong()).getAndIncrement();
+        return profile.random(operation, target, attempt);
+    }
+
+    /**
+     * Wait out the operation's latency
+     * @return true if this call should fail
+     */
+    private boolean simulate(String operation, String target) throws InterruptedException {
+        return failed(operation, begin(operation, target));
+    }
+
+    private boolean failed(String operation, SplittableRandom random) throws InterruptedException {
+        FakeDockerProfile.Operation settings = profile.getOperation(operation);
+        long latency = settings.sampleLatency(random);
+        if (latency > 0) {
+            Thread.sleep(latency);
+        }
+        if (settings.sampleFailure(random)) {
+            count(failures, operation);
+            return true;
+        }
+        return false;
+    }
+
+    private static DockerError injected(String operation) {
+        return new DockerError(500, "fake docker: injected " + operation + " failure");
+    }
+
+    private static void count(Map<String, LongAdder> counters, String operation) {
+        counters.computeIfAbsent(operation, key -> new LongAdder()).increment();
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> counters) {
+        Map<String, Long> counts = new TreeMap<>();
+        counters.forEach((operation, count) -> counts.put(operation, count.sum()));
+        return counts;
+    }
+
+    private void streamLine(HttpResponse response, String key, String value) throws IOException {
+        response.chunk(line(Map.of(key, value)));
+    }
+
+    private byte[] line(Object value) throws IOException {
+        byte[] json = mapper.writeValueAsBytes(value);
+        byte[] line = new byte[json.length + 2];
+        System.arraycopy(json, 0, line, 0, json.length);
+        line[json.length] = '\r';
+        line[json.length + 1] = '\n';
+        return line;
+    }
+
+    private static String shortId(SplittableRandom random) {
+        return longId(random).substring(0, 12);
+    }
+
+    private static String longId(SplittableRandom random) {
+        StringBuilder id = new StringBuilder(64);
+        for (int i = 0; i < 4; i++) {
+            id.append(String.format("%016x", random.nextLong()));
+        }
+        return id.toString();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Container state; fields are guarded by the container's monitor
+     */
+    private static final class FakeContainer {
+        private final String id;
+        private volatile String name;
+        private final String image;
+        private final Map<String, Object> createBody;
+        private final Map<String, List<Map<String, String>>> ports;
+        private final String created = Instant.now().toString();
+        private final List<String> logs = new CopyOnWriteArrayList<>();
+        private volatile String status = "created";
+        private volatile int exitCode;
+        private volatile String startedAt = NEVER;
+        private volatile String finishedAt = NEVER;
+        private volatile int restartCount;
+        private long starts;
+        private ScheduledFuture<?> crash;
+
+        FakeContainer(String id, String name, String image, Map<String, Object> createBody,
+                      Map<String, List<Map<String, String>>> ports) {
+            this.id = id;
+            this.name = name;
+            this.image = image;
+            this.createBody = Collections.synchronizedMap(new LinkedHashMap<>(createBody));
+            this.ports = ports;
+        }
+
+        boolean isRunning() {
+            return "running".equals(status);
+        }
+
+        void cancelTimers() {
+            if (crash != null) {
+                crash.cancel(false);
+                crash = null;
+            }
+        }
+
+        /**
+         * on-failure restarts up to MaximumRetryCount, always/unless-stopped forever
+         */
+        @SuppressWarnings("unchecked")
+        boolean shouldRestart() {
+            Object hostConfig = createBody.get("HostConfig");
+            Object policy = hostConfig instanceof Map<?, ?> config ? config.get("RestartPolicy") : null;
+            if (!(policy instanceof Map<?, ?>)) {
+                return false;
+            }
+            Map<String, Object> restartPolicy = (Map<String, Object>) policy;
+            String policyName = String.valueOf(restartPolicy.get("Name"));
+            if ("always".equals(policyName) || "unless-stopped".equals(policyName)) {
+                return true;
+            }
+            Object retries = restartPolicy.get("MaximumRetryCount");
+            int maxRetries = retries instanceof Number number ? number.intValue() : 0;
+            return "on-failure".equals(policyName) && (maxRetries == 0 || restartCount < maxRetries);
+        }
+
+        String publishedPorts() {
+            List<String> published = new ArrayList<>();
+            ports.forEach((port, bindings) -> bindings.forEach(
+                    binding -> published.add(binding.get("HostPort") + "->" + port)));
+            return published.isEmpty() ? "no ports" : String.join(", ", published);
+        }
+
+        /**
+         * Event attributes: the container's labels plus image and name, as the real daemon sends them
+         */
+        Map<String, String> attributes() {
+            Map<String, String> attributes = new LinkedHashMap<>();
+            if (createBody.get("Labels") instanceof Map<?, ?> labels) {
+                labels.forEach((key, value) -> attributes.put(String.valueOf(key), String.valueOf(value)));
+            }
+            attributes.put("image", image);
+            attributes.put("name", name);
+            return attributes;
+        }
+
+        Map<String, Object> inspect() {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("Status", status);
+            state.put("Running", isRunning());
+            state.put("Paused", false);
+            state.put("Restarting", "restarting".equals(status));
+            state.put("OOMKilled", false);
+            state.put("Dead", false);
+            state.put("Pid", isRunning() ? 4000 + Math.abs(id.hashCode() % 60000) : 0);
+            state.put("ExitCode", exitCode);
+            state.put("Error", "");
+            state.put("StartedAt", startedAt);
+            state.put("FinishedAt", finishedAt);
+
+            Map<String, Object> config = new LinkedHashMap<>();
+            config.put("Image", image);
+            config.put("Env", createBody.getOrDefault("Env", List.of()));
+            config.put("ExposedPorts", createBody.getOrDefault("ExposedPorts", Map.of()));
+            config.put("Labels", createBody.getOrDefault("Labels", Map.of()));
+
+            Map<String, Object> network = new LinkedHashMap<>();
+            network.put("Ports", isRunning() ? ports : Map.of());
+
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("Id", id);
+            body.put("Created", created);
+            body.put("Name", "/" + name);
+            body.put("Image", image);
+            body.put("RestartCount", restartCount);
+            body.put("State", state);
+            body.put("Config", config);
+            body.put("HostConfig", createBody.getOrDefault("HostConfig", Map.of()));
+            body.put("NetworkSettings", network);
+            return body;
+        }
+
+        /**
+         * Plausible, stable-per-container resource usage
+         */
+        Map<String, Object> stats() {
+            Object hostConfig = createBody.get("HostConfig");
+            Object memory = hostConfig instanceof Map<?, ?> config ? config.get("Memory") : null;
+            long limit = memory instanceof Number number && number.longValue() > 0 ? number.longValue() : 1L << 30;
+            SplittableRandom random = new SplittableRandom(id.hashCode());
+            long usage = isRunning() ? (long) (limit * (0.2 + 0.5 * random.nextDouble())) : 0;
+            long cpu = System.nanoTime() / 1000;
+
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("read", Instant.now().toString());
+            body.put("preread", Instant.now().minusSeconds(1).toString());
+            body.put("id", id);
+            body.put("name", "/" + name);
+            body.put("pids_stats", Map.of("current", isRunning() ? 8 : 0));
+            body.put("cpu_stats", Map.of(
+                    "cpu_usage", Map.of("total_usage", cpu, "usage_in_kernelmode", cpu / 4, "usage_in_usermode", cpu / 2),
+                    "system_cpu_usage", cpu * 20,
+                    "online_cpus", 2,
+                    "throttling_data", Map.of("periods", 0, "throttled_periods", 0, "throttled_time", 0)));
+            body.put("precpu_stats", Map.of(
+                    "cpu_usage", Map.of("total_usage", cpu - 10_000, "usage_in_kernelmode", 0, "usage_in_usermode", 0),
+                    "system_cpu_usage", cpu * 20 - 200_000,
+                    "online_cpus", 2));
+            body.put("memory_stats", Map.of(
+                    "usage", usage,
+                    "max_usage", Math.min(limit, usage + usage / 5),
+                    "limit", limit,
+                    "stats", Map.of("cache", usage / 10)));
+            body.put("networks", Map.of("eth0", Map.of("rx_bytes", cpu / 100, "tx_bytes", cpu / 200,
+                    "rx_packets", cpu / 10_000, "tx_packets", cpu / 20_000)));
+            return body;
+        }
+    }
+
+    /**
+     * Error answered as {"message": ...} with the given status
+     */
+    private static final class DockerError extends RuntimeException {
+        private final int status;
+
+        DockerError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Minimal HTTP/1.1 request: Content-Length or chunked body, Expect: 100-continue
+     */
+    private static final class HttpRequest {
+        private String method;
+        private String path;
+        private final Map<String, String> query = new LinkedHashMap<>();
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private byte[] body = new byte[0];
+
+        static HttpRequest read(InputStream in, OutputStream out) throws IOException {
+            String requestLine = readLine(in);
+            while (requestLine != null && requestLine.isEmpty()) {
+                requestLine = readLine(in);
+            }
+            if (requestLine == null) {
+                return null;
+            }
+            String[] parts = requestLine.split(" ");
+            if (parts.length < 2) {
+                throw new IOException("Malformed request line: " + requestLine);
+            }
+
+            HttpRequest request = new HttpRequest();
+            request.method = parts[0];
+            String target = parts[1];
+            int queryStart = target.indexOf('?');
+            request.path = decode(queryStart >= 0 ? target.substring(0, queryStart) : target, false);
+            if (queryStart >= 0) {
+                for (String pair : target.substring(queryStart + 1).split("&")) {
+                    if (pair.isEmpty()) {
+                        continue;
+                    }
+                    int eq = pair.indexOf('=');
+                    request.query.put(decode(eq >= 0 ? pair.substring(0, eq) : pair, true),
+                            eq >= 0 ? decode(pair.substring(eq + 1), true) : "");
+                }
+            }
+
+            String header;
+            while ((header = readLine(in)) != null && !header.isEmpty()) {
+                int colon = header.indexOf(':');
+                if (colon > 0) {
+                    request.headers.put(header.substring(0, colon).trim().toLowerCase(), header.substring(colon + 1).trim());
+                }
+            }
+
+            if ("100-continue".equalsIgnoreCase(request.headers.get("expect"))) {
+                out.write("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+            }
+            if ("chunked".equalsIgnoreCase(request.headers.get("transfer-encoding"))) {
+                request.body = readChunked(in);
+            } else if (request.headers.containsKey("content-length")) {
+                int length = Integer.parseInt(request.headers.get("content-length"));
+                request.body = in.readNBytes(length);
+                if (request.body.length < length) {
+                    throw new EOFException("Request body truncated");
+                }
+            }
+            return request;
+        }
+
+        boolean keepAlive() {
+            return !"close".equalsIgnoreCase(headers.get("connection"));
+        }
+
+        private static byte[] readChunked(InputStream in) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            while (true) {
+                String sizeLine = readLine(in);
+                if (sizeLine == null) {
+                    throw new EOFException("Chunked body truncated");
+                }
+                int size = Integer.parseInt(sizeLine.split(";")[0].trim(), 16);
+                if (size == 0) {
+                    String trailer;
+                    while ((trailer = readLine(in)) != null && !trailer.isEmpty()) {
+                        // Trailers are not used by docker clients
+                    }
+                    return body.toByteArray();
+                }
+                byte[] chunk = in.readNBytes(size);
+                if (chunk.length < size) {
+                    throw new EOFException("Chunked body truncated");
+                }
+                body.write(chunk);
+                readLine(in);
+            }
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    byte[] bytes = line.toByteArray();
+                    int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                    return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+                }
+                line.write(b);
+            }
+            return line.size() > 0 ? line.toString(StandardCharsets.ISO_8859_1) : null;
+        }
+
+        private static String decode(String value, boolean plusIsSpace) {
+            return URLDecoder.decode(plusIsSpace ? value : value.replace("+", "%2B"), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Minimal HTTP/1.1 response: fixed length, or chunked for streaming endpoints
+     */
+    private static final class HttpResponse {
+        private static final Map<Integer, String> REASONS = Map.of(
+                200, "OK", 201, "Created", 204, "No Content", 304, "Not Modified",
+                400, "Bad Request", 404, "Not Found", 409, "Conflict", 500, "Internal Server Error");
+
+        private final OutputStream out;
+        private final ObjectMapper mapper;
+        private boolean committed;
+        private boolean complete;
+
+        HttpResponse(OutputStream out, ObjectMapper mapper) {
+            this.out = out;
+            this.mapper = mapper;
+        }
+
+        void send(int status, String contentType, byte[] body) throws IOException {
+            writeHead(status, "Content-Type: " + contentType + "\r\nContent-Length: " + body.length);
+            out.write(body);
+            out.flush();
+            complete = true;
+        }
+
+        void json(int status, Object body) throws IOException {
+            send(status, "application/json", mapper.writeValueAsBytes(body));
+        }
+
+        void empty(int status) throws IOException {
+            writeHead(status, null);
+            out.flush();
+            complete = true;
+        }
+
+        /**
+         * Error body, unless a streaming response already started; then the connection is dropped
+         */
+        void error(int status, String message) throws IOException {
+            if (committed) {
+                complete = false;
+                return;
+            }
+            json(status, Collections.singletonMap("message", message));
+        }
+
+        void startStream(String contentType) throws IOException {
+            writeHead(200, "Content-Type: " + contentType + "\r\nTransfer-Encoding: chunked");
+            out.flush();
+        }
+
+        void chunk(byte[] data) throws IOException {
+            out.write((Integer.toHexString(data.length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.write(data);
+            out.write('\r');
+            out.write('\n');
+            out.flush();
+        }
+
+        void endStream() throws IOException {
+            out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            complete = true;
+        }
+
+        private void writeHead(int status, String headers) throws IOException {
+            committed = true;
+            StringBuilder head = new StringBuilder()
+                    .append("HTTP/1.1 ").append(status).append(' ').append(REASONS.getOrDefault(status, "Unknown")).append("\r\n")
+                    .append("Api-Version: ").append(API_VERSION).append("\r\n")
+                    .append("Server: Docker/24.0.0-fake (linux)\r\n");
+            if (headers != null) {
+                head.append(headers).append("\r\n");
+            }
+            head.append("\r\n");
+            out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.vision.paas.bench.docker;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Fake Docker Profile
+ * Latency and failure behaviour of the fake daemon, per API operation.
+ *
+ * System properties (see {@link #fromSystemProperties()}):
+ *   docker.seed                 seed for every random decision (default: 42)
+ *   docker.&lt;op&gt;.latency        mean latency in ms
+ *   docker.&lt;op&gt;.jitter         uniform +/- jitter in ms
+ *   docker.&lt;op&gt;.failure        failure rate between 0 and 1
+ *   docker.build.steps          steps per build (default: 8)
+ *   docker.build.cache          share of steps served from cache (default: 0.5)
+ *   docker.build.context-rate   context upload rate in MB/s, 0 = unlimited (default: 0)
+ *   docker.crash.rate           share of started containers that exit on their own (default: 0)
+ *   docker.crash.after          ms after start at which they exit (default: 1000)
+ *
+ * Operations: info, build, create, start, inspect, logs, stats, events, stop, restart, update, rename,
+ * remove, image-remove.
+ * For build the latency is the whole build, spread over its steps.
+ */
+public class FakeDockerProfile {
+
+    public static final String INFO = "info";
+    public static final String BUILD = "build";
+    public static final String CREATE = "create";
+    public static final String START = "start";
+    public static final String INSPECT = "inspect";
+    public static final String LOGS = "logs";
+    public static final String STATS = "stats";
+    public static final String EVENTS = "events";
+    public static final String STOP = "stop";
+    public static final String RESTART = "restart";
+    public static final String UPDATE = "update";
+    public static final String RENAME = "rename";
+    public static final String REMOVE = "remove";
+    public static final String IMAGE_REMOVE = "image-remove";
+
+    private static final String[] OPERATIONS = {
+            INFO, BUILD, CREATE, START, INSPECT, LOGS, STATS, EVENTS, STOP, RESTART, UPDATE, RENAME, REMOVE, IMAGE_REMOVE
+    };
+
+    private final Map<String, Operation> operations = new HashMap<>();
+    private long seed = 42;
+    private int buildSteps = 8;
+    private double buildCacheRatio = 0.5;
+    private double contextRateMBps;
+    private double crashRate;
+    private long crashAfterMs = 1000;
+
+    public FakeDockerProfile() {
+        operations.put(INFO, new Operation(1, 0, 0));
+        operations.put(BUILD, new Operation(2000, 500, 0));
+        operations.put(CREATE, new Operation(50, 20, 0));
+        operations.put(START, new Operation(100, 50, 0));
+        operations.put(INSPECT, new Operation(5, 2, 0));
+        operations.put(LOGS, new Operation(5, 2, 0));
+        operations.put(STATS, new Operation(10, 5, 0));
+        operations.put(EVENTS, new Operation(0, 0, 0));
+        operations.put(STOP, new Operation(50, 20, 0));
+        operations.put(RESTART, new Operation(150, 50, 0));
+        operations.put(UPDATE, new Operation(20, 10, 0));
+        operations.put(RENAME, new Operation(5, 2, 0));
+        operations.put(REMOVE, new Operation(20, 10, 0));
+        operations.put(IMAGE_REMOVE, new Operation(20, 10, 0));
+    }
+
+    /**
+     * Defaults overridden by docker.* system properties
+     */
+    public static FakeDockerProfile fromSystemProperties() {
+        FakeDockerProfile profile = new FakeDockerProfile();
+        profile.seed = Long.getLong("docker.seed", profile.seed);
+        profile.buildSteps = Integer.getInteger("docker.build.steps", profile.buildSteps);
+        profile.buildCacheRatio = doubleProperty("docker.build.cache", profile.buildCacheRatio);
+        profile.contextRateMBps = doubleProperty("docker.build.context-rate", profile.contextRateMBps);
+        profile.crashRate = doubleProperty("docker.crash.rate", profile.crashRate);
+        profile.crashAfterMs = Long.getLong("docker.crash.after", profile.crashAfterMs);
+        for (String name : OPERATIONS) {
+            Operation defaults = profile.operations.get(name);
+            profile.operations.put(name, new Operation(
+                    Long.getLong("docker." + name + ".latency", defaults.latencyMs),
+                    Long.getLong("docker." + name + ".jitter", defaults.jitterMs),
+                    doubleProperty("docker." + name + ".failure", defaults.failureRate)));
+        }
+        return profile;
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+
+    public FakeDockerProfile operation(String name, long latencyMs, long jitterMs, double failureRate) {
+        operations.put(name, new Operation(latencyMs, jitterMs, failureRate));
+        return this;
+    }
+
+    public Operation getOperation(String name) {
+        return operations.get(name);
+    }
+
+    /**
+     * Random source for one call; the same operation on the same target
+     * makes the same decisions on every run, whatever the interleaving
+     */
+    SplittableRandom random(String operation, String target, long attempt) {
+        long mixed = seed;
+        mixed = 31 * mixed + operation.hashCode();
+        mixed = 31 * mixed + target.hashCode();
+        mixed = 31 * mixed + attempt;
+        return new SplittableRandom(mixed);
+    }
+
+    public long getSeed() { return seed; }
+
+    public FakeDockerProfile seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public int getBuildSteps() { return buildSteps; }
+
+    public FakeDockerProfile buildSteps(int buildSteps) {
+        this.buildSteps = buildSteps;
+        return this;
+    }
+
+    public double getBuildCacheRatio() { return buildCacheRatio; }
+
+    public FakeDockerProfile buildCacheRatio(double buildCacheRatio) {
+        this.buildCacheRatio = buildCacheRatio;
+        return this;
+    }
+
+    public double getContextRateMBps() { return contextRateMBps; }
+
+    public FakeDockerProfile contextRateMBps(double contextRateMBps) {
+        this.contextRateMBps = contextRateMBps;
+        return this;
+    }
+
+    public double getCrashRate() { return crashRate; }
+
+    public FakeDockerProfile crashRate(double crashRate) {
+        this.crashRate = crashRate;
+        return this;
+    }
+
+    public long getCrashAfterMs() { return crashAfterMs; }
+
+    public FakeDockerProfile crashAfterMs(long crashAfterMs) {
+        this.crashAfterMs = crashAfterMs;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("seed=" + seed + " buildSteps=" + buildSteps
+                + " cache=" + buildCacheRatio + " crashRate=" + crashRate);
+        for (String name : OPERATIONS) {
+            Operation operation = operations.get(name);
+            text.append("\n  ").append(name).append(": ").append(operation);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Latency and failure rate of one operation
+     */
+    public static class Operation {
+        private final long latencyMs;
+        private final long jitterMs;
+        private final double failureRate;
+
+        public Operation(long latencyMs, long jitterMs, double failureRate) {
+            this.latencyMs = latencyMs;
+            this.jitterMs = jitterMs;
+            this.failureRate = failureRate;
+        }
+
+        public long getLatencyMs() { return latencyMs; }
+
+        public long getJitterMs() { return jitterMs; }
+
+        public double getFailureRate() { return failureRate; }
+
+        long sampleLatency(SplittableRandom random) {
+            if (jitterMs <= 0) {
+                return latencyMs;
+            }
+            return Math.max(0, latencyMs + random.nextLong(-jitterMs, jitterMs + 1));
+        }
+
+        boolean sampleFailure(SplittableRandom random) {
+            return failureRate > 0 && random.nextDouble() < failureRate;
+        }
+
+        @Override
+        public String toString() {
+            return latencyMs + "ms +/-" + jitterMs + "ms, failure " + failureRate;
+        }
+    }
+}
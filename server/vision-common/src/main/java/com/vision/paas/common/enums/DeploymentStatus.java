@@ -12,7 +12,10 @@ public enum DeploymentStatus {
     RUNNING("Running"),
     FAILED("Failed"),
     STOPPED("Stopped"),
-    ROLLING_BACK("Rolling Back");
+    CANCELLED("Cancelled"),
+    ROLLING_BACK("Rolling Back"),
+    SKIPPED("Skipped"),
+    RESTARTING("Restarting");
     
     private final String displayName;
     
@@ -4,24 +4,42 @@ package com.vision.paas.common.enums;
  * Subscription Plans
  */
 public enum SubscriptionPlan {
-    FREE("Free", 0, 1, 100, 512),
-    HOBBY("Hobby", 29, 5, 1000, 1024),
-    PRO("Pro", 99, 20, 10000, 2048),
-    ENTERPRISE("Enterprise", 299, -1, -1, 4096);
+    FREE("Free", 0, 1, 100, 512, 1, 3, 1, 250, 256, 100, 128, 0),
+    HOBBY("Hobby", 29, 5, 1000, 1024, 1, 10, 2, 500, 512, 250, 256, 0),
+    PRO("Pro", 99, 20, 10000, 2048, 2, 25, 4, 1000, 1024, 500, 512, 0),
+    ENTERPRISE("Enterprise", 299, -1, -1, 4096, 4, 100, 8, 2000, 2048, 750, 1024, 2);
     
     private final String displayName;
     private final int monthlyPrice;
     private final int maxProjects;
     private final int maxDeployments;
     private final int maxMemoryMB;
+    private final int maxConcurrentBuilds;
+    private final int maxQueuedBuilds;
+    private final int buildWeight;
+    private final int cpuMillis;
+    private final int cpuShares;
+    private final int blkioWeight;
+    private final int pidsLimit;
+    private final int pinnedCpus;
     
     SubscriptionPlan(String displayName, int monthlyPrice, int maxProjects, 
-                     int maxDeployments, int maxMemoryMB) {
+                     int maxDeployments, int maxMemoryMB,
+                     int maxConcurrentBuilds, int maxQueuedBuilds, int buildWeight,
+                     int cpuMillis, int cpuShares, int blkioWeight, int pidsLimit, int pinnedCpus) {
         this.displayName = displayName;
         this.monthlyPrice = monthlyPrice;
         this.maxProjects = maxProjects;
         this.maxDeployments = maxDeployments;
         this.maxMemoryMB = maxMemoryMB;
+        this.maxConcurrentBuilds = maxConcurrentBuilds;
+        this.maxQueuedBuilds = maxQueuedBuilds;
+        this.buildWeight = buildWeight;
+        this.cpuMillis = cpuMillis;
+        this.cpuShares = cpuShares;
+        this.blkioWeight = blkioWeight;
+        this.pidsLimit = pidsLimit;
+        this.pinnedCpus = pinnedCpus;
     }
     
     public String getDisplayName() {
@@ -43,4 +61,60 @@ public enum SubscriptionPlan {
     public int getMaxMemoryMB() {
         return maxMemoryMB;
     }
+    
+    /**
+     * Builds a tenant on this plan may run at the same time
+     */
+    public int getMaxConcurrentBuilds() {
+        return maxConcurrentBuilds;
+    }
+    
+    /**
+     * Builds a tenant on this plan may have queued or running at once; further submissions are rejected
+     */
+    public int getMaxQueuedBuilds() {
+        return maxQueuedBuilds;
+    }
+    
+    /**
+     * Relative share of build workers when tenants compete for them
+     */
+    public int getBuildWeight() {
+        return buildWeight;
+    }
+    
+    /**
+     * CPU time an app container may use, in thousandths of a core (CFS quota)
+     */
+    public int getCpuMillis() {
+        return cpuMillis;
+    }
+    
+    /**
+     * Relative CPU weight of an app container when the host is contended
+     */
+    public int getCpuShares() {
+        return cpuShares;
+    }
+    
+    /**
+     * Relative block I/O weight of an app container, 10 to 1000
+     */
+    public int getBlkioWeight() {
+        return blkioWeight;
+    }
+    
+    /**
+     * Processes and threads an app container may run at once
+     */
+    public int getPidsLimit() {
+        return pidsLimit;
+    }
+    
+    /**
+     * Cores an app container is pinned to when a cpuset pool is configured, 0 for none
+     */
+    public int getPinnedCpus() {
+        return pinnedCpus;
+    }
 }
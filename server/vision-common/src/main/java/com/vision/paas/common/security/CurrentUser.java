@@ -0,0 +1,23 @@
+package com.vision.paas.common.security;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Current User
+ * Binds a controller parameter to the caller identity forwarded by the gateway.
+ * Works on {@link UserPrincipal} parameters and on String parameters, which get the user id.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CurrentUser {
+
+    /**
+     * When false, a request without identity binds null instead of failing with 401
+     */
+    boolean required() default true;
+}
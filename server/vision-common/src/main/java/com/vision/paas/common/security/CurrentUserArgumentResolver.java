@@ -0,0 +1,49 @@
+package com.vision.paas.common.security;
+
+import com.vision.paas.common.exception.BusinessException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.MethodParameter;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/**
+ * Current User Argument Resolver
+ * Resolves {@link CurrentUser} parameters from the gateway's signed identity header,
+ * verifying it at most once per request
+ */
+@RequiredArgsConstructor
+public class CurrentUserArgumentResolver implements HandlerMethodArgumentResolver {
+
+    private static final String ATTRIBUTE = CurrentUserArgumentResolver.class.getName() + ".principal";
+
+    private final IdentityToken identityToken;
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        Class<?> type = parameter.getParameterType();
+        return parameter.hasParameterAnnotation(CurrentUser.class)
+                && (type == UserPrincipal.class || type == String.class);
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                  NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        UserPrincipal principal = (UserPrincipal) webRequest.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (principal == null) {
+            principal = identityToken.verify(webRequest.getHeader(IdentityToken.HEADER), System.currentTimeMillis());
+            if (principal != null) {
+                webRequest.setAttribute(ATTRIBUTE, principal, RequestAttributes.SCOPE_REQUEST);
+            }
+        }
+        if (principal == null) {
+            if (parameter.getParameterAnnotation(CurrentUser.class).required()) {
+                throw new BusinessException(401, "Unauthorized");
+            }
+            return null;
+        }
+        return parameter.getParameterType() == String.class ? principal.getUserId() : principal;
+    }
+}
@@ -0,0 +1,45 @@
+package com.vision.paas.common.security;
+
+import java.util.List;
+
+/**
+ * User Principal
+ * Caller identity as verified by the gateway
+ */
+public class UserPrincipal {
+
+    /**
+     * Scope granted to interactive sessions, covering every other scope
+     */
+    public static final String ALL_SCOPES = "*";
+
+    private final String userId;
+    private final String plan;
+    private final List<String> scopes;
+    private final long expiresAt;
+
+    public UserPrincipal(String userId, String plan, List<String> scopes, long expiresAt) {
+        this.userId = userId;
+        this.plan = plan;
+        this.scopes = scopes != null ? List.copyOf(scopes) : List.of();
+        this.expiresAt = expiresAt;
+    }
+
+    public String getUserId() { return userId; }
+
+    /**
+     * Subscription plan name, or null when the gateway did not know it
+     */
+    public String getPlan() { return plan; }
+
+    public List<String> getScopes() { return scopes; }
+
+    /**
+     * Epoch millis after which the forwarded identity is no longer accepted
+     */
+    public long getExpiresAt() { return expiresAt; }
+
+    public boolean hasScope(String scope) {
+        return scopes.contains(ALL_SCOPES) || scopes.contains(scope);
+    }
+}
@@ -0,0 +1,119 @@
+package com.vision.paas.common.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdentityTokenTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    private final IdentityToken token = new IdentityToken("test-identity-secret");
+
+    @Test
+    void signedPrincipalVerifies() {
+        UserPrincipal principal = new UserPrincipal("user-1", "PRO", List.of("deploy", "read"), NOW + 60_000);
+
+        UserPrincipal verified = token.verify(token.sign(principal), NOW);
+
+        assertThat(verified).isNotNull();
+        assertThat(verified.getUserId()).isEqualTo("user-1");
+        assertThat(verified.getPlan()).isEqualTo("PRO");
+        assertThat(verified.getScopes()).containsExactly("deploy", "read");
+        assertThat(verified.getExpiresAt()).isEqualTo(NOW + 60_000);
+    }
+
+    @Test
+    void missingPlanAndScopesRoundTrip() {
+        UserPrincipal verified = token.verify(token.sign(new UserPrincipal("user-1", null, null, NOW + 1)), NOW);
+
+        assertThat(verified).isNotNull();
+        assertThat(verified.getPlan()).isNull();
+        assertThat(verified.getScopes()).isEmpty();
+    }
+
+    @Test
+    void tamperedPayloadIsRejected() {
+        String signed = token.sign(new UserPrincipal("user-1", "FREE", List.of(), NOW + 60_000));
+        String forged = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                ("user-1\nENTERPRISE\n\n" + (NOW + 60_000)).getBytes(StandardCharsets.UTF_8));
+
+        assertThat(token.verify(forged + signed.substring(signed.indexOf('.')), NOW)).isNull();
+    }
+
+    @Test
+    void tamperedSignatureIsRejected() {
+        String signed = token.sign(new UserPrincipal("user-1", "FREE", List.of(), NOW + 60_000));
+        int tag = signed.indexOf('.') + 1;
+        String tampered = signed.substring(0, tag) + (signed.charAt(tag) == 'A' ? 'B' : 'A') + signed.substring(tag + 1);
+
+        assertThat(token.verify(tampered, NOW)).isNull();
+    }
+
+    @Test
+    void tokenSignedWithAnotherSecretIsRejected() {
+        String signed = new IdentityToken("another-secret")
+                .sign(new UserPrincipal("user-1", "FREE", List.of(), NOW + 60_000));
+
+        assertThat(token.verify(signed, NOW)).isNull();
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        String signed = token.sign(new UserPrincipal("user-1", "FREE", List.of(), NOW));
+
+        assertThat(token.verify(signed, NOW - 1)).isNotNull();
+        assertThat(token.verify(signed, NOW)).isNull();
+        assertThat(token.verify(signed, NOW + 1)).isNull();
+    }
+
+    @Test
+    void malformedValuesAreRejected() {
+        assertThat(token.verify(null, NOW)).isNull();
+        assertThat(token.verify("", NOW)).isNull();
+        assertThat(token.verify("no-dot", NOW)).isNull();
+        assertThat(token.verify(".tag", NOW)).isNull();
+        assertThat(token.verify("!!!.???", NOW)).isNull();
+    }
+
+    @Test
+    void missingSecretFailsStartupOutsideDev() {
+        assertThatThrownBy(() -> new IdentityToken("", new MockEnvironment()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("identity.secret");
+    }
+
+    @Test
+    void defaultSecretFailsStartupOutsideDev() {
+        MockEnvironment environment = new MockEnvironment();
+        environment.setActiveProfiles("prod");
+
+        assertThatThrownBy(() -> new IdentityToken(IdentityToken.DEV_SECRET, environment))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void devProfileFallsBackToTheDefaultSecret() {
+        MockEnvironment environment = new MockEnvironment();
+        environment.setActiveProfiles("dev");
+        IdentityToken dev = new IdentityToken("", environment);
+
+        String signed = new IdentityToken(IdentityToken.DEV_SECRET)
+                .sign(new UserPrincipal("user-1", "FREE", List.of(), NOW + 60_000));
+        assertThat(dev.verify(signed, NOW)).isNotNull();
+    }
+
+    @Test
+    void configuredSecretIsUsedInAnyProfile() {
+        IdentityToken configured = new IdentityToken("test-identity-secret", new MockEnvironment());
+
+        String signed = configured.sign(new UserPrincipal("user-1", "FREE", List.of(), NOW + 60_000));
+        assertThat(token.verify(signed, NOW)).isNotNull();
+    }
+}
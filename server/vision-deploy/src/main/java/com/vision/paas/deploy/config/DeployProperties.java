@@ -0,0 +1,444 @@
+package com.vision.paas.deploy.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deploy Service Properties
+ * Bound from the "deploy" section of application.yml
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "deploy")
+public class DeployProperties {
+
+    private Docker docker = new Docker();
+
+    private Build build = new Build();
+
+    private Limits limits = new Limits();
+
+    private Scheduler scheduler = new Scheduler();
+
+    private Timeouts timeouts = new Timeouts();
+
+    private Workspace workspace = new Workspace();
+
+    private Supervisor supervisor = new Supervisor();
+
+    private Sizing sizing = new Sizing();
+
+    private Pipeline pipeline = new Pipeline();
+
+    private History history = new History();
+
+    private Cluster cluster = new Cluster();
+
+    /**
+     * Docker daemon connection
+     */
+    @Data
+    public static class Docker {
+
+        /**
+         * Daemon endpoint, e.g. unix:///var/run/docker.sock or tcp://host:2375;
+         * empty falls back to DOCKER_HOST and the docker-java defaults
+         */
+        private String host;
+
+        /**
+         * Pooled HTTP connections to the daemon
+         */
+        private int maxConnections = 100;
+    }
+
+    /**
+     * Image builds
+     */
+    @Data
+    public static class Build {
+
+        /**
+         * LEGACY builds through the daemon's classic builder API; BUILDKIT runs
+         * "docker buildx build", which builds independent stages concurrently
+         * and skips stages the final image does not need
+         */
+        private Backend backend = Backend.LEGACY;
+
+        /**
+         * Docker CLI used for BuildKit builds
+         */
+        private String cli = "docker";
+
+        /**
+         * buildx builder to use; a builder created with the remote driver runs the
+         * builds on a standalone buildkitd. Empty uses the daemon's own BuildKit.
+         */
+        private String builder;
+
+        /**
+         * --cache-from sources, "{project}" is replaced by the project ID.
+         * Empty imports the inline cache of the project's previous image.
+         */
+        private List<String> cacheFrom = new ArrayList<>();
+
+        /**
+         * --cache-to destinations, "{project}" is replaced by the project ID.
+         * Empty embeds an inline cache in the built image.
+         */
+        private List<String> cacheTo = new ArrayList<>();
+
+        /**
+         * CPU weight of build containers; below every plan's app weight, so
+         * builds yield the CPU to running apps when the host is contended
+         */
+        private int cpuShares = 128;
+
+        /**
+         * Cores builds are confined to, e.g. "0-1"; empty lets them use any core.
+         * Only the legacy builder takes it per build.
+         */
+        private String cpusetCpus;
+
+        /**
+         * Memory limit of build containers; empty for none. Only the legacy builder takes it per build.
+         */
+        private DataSize memory;
+
+        /**
+         * Parent cgroup for BuildKit RUN steps, e.g. a systemd slice with a low CPU and I/O weight
+         */
+        private String cgroupParent;
+
+        public enum Backend {
+            LEGACY,
+            BUILDKIT
+        }
+    }
+
+    /**
+     * Resource limits of app containers beyond memory; CPU, I/O and pids come from the tenant's plan
+     */
+    @Data
+    public static class Limits {
+
+        /**
+         * Cores available for pinning containers of plans with dedicated CPUs, e.g. "4-15";
+         * empty disables pinning. Keep them apart from the build cpuset.
+         */
+        private String cpusetPool;
+
+        /**
+         * CFS period the plan's CPU quota is applied over
+         */
+        private Duration cpuPeriod = Duration.ofMillis(100);
+    }
+
+    /**
+     * Build scheduler settings
+     */
+    @Data
+    public static class Scheduler {
+
+        /**
+         * Builds that may run at once on this node, across all tenants
+         */
+        private int workers = 4;
+    }
+
+    /**
+     * Per-stage limits; a stage that runs over is aborted and frees its worker
+     */
+    @Data
+    public static class Timeouts {
+
+        /**
+         * Whole clone, including checkout
+         */
+        private Duration clone = Duration.ofMinutes(5);
+
+        /**
+         * Image build, from context upload to the final image ID
+         */
+        private Duration build = Duration.ofMinutes(10);
+
+        /**
+         * Time for a started container to become ready
+         */
+        private Duration readiness = Duration.ofMinutes(1);
+
+        /**
+         * Minimum time a container without a HEALTHCHECK must stay up to count as ready
+         */
+        private Duration readinessSettle = Duration.ofSeconds(3);
+    }
+
+    /**
+     * Build workspaces that repositories are cloned into
+     */
+    @Data
+    public static class Workspace {
+
+        /**
+         * Directory holding one workspace per project; may be a tmpfs mount
+         */
+        private String root = "/tmp/vision-deploy";
+
+        /**
+         * Largest checkout a single project may have
+         */
+        private DataSize projectQuota = DataSize.ofGigabytes(1);
+
+        /**
+         * Total size of all workspaces, including ones still being deleted
+         */
+        private DataSize globalQuota = DataSize.ofGigabytes(20);
+
+        /**
+         * New clones wait while the workspace file system has less free space than this
+         */
+        private DataSize minFreeSpace = DataSize.ofGigabytes(2);
+
+        /**
+         * How long a clone waits for space before the deployment fails
+         */
+        private Duration pressureWait = Duration.ofMinutes(2);
+
+        /**
+         * Threads deleting discarded workspaces in the background
+         */
+        private int deleteThreads = 4;
+
+        /**
+         * Update the previous checkout of a project instead of cloning it again
+         */
+        private boolean reuse = true;
+    }
+
+    /**
+     * Restart supervision of running app containers
+     */
+    @Data
+    public static class Supervisor {
+
+        /**
+         * Restart crashed containers with backoff; when off, Docker's on-failure policy (3 retries) applies
+         */
+        private boolean enabled = true;
+
+        /**
+         * Delay before the first restart; doubles with every further restart in the window
+         */
+        private Duration initialBackoff = Duration.ofSeconds(1);
+
+        /**
+         * Longest delay between restarts
+         */
+        private Duration maxBackoff = Duration.ofMinutes(5);
+
+        /**
+         * Restarts within the window after which the deployment is marked FAILED
+         */
+        private int maxRestarts = 5;
+
+        /**
+         * Window the restarts are counted over
+         */
+        private Duration window = Duration.ofMinutes(10);
+
+        /**
+         * A container that ran this long before crashing starts a fresh backoff
+         */
+        private Duration stableAfter = Duration.ofMinutes(2);
+
+        /**
+         * Log lines kept from a crashed container
+         */
+        private int logLines = 50;
+    }
+
+    /**
+     * Memory right-sizing from observed container usage
+     */
+    @Data
+    public static class Sizing {
+
+        /**
+         * Sample the memory use of running app containers
+         */
+        private boolean enabled = true;
+
+        /**
+         * Time between two samples of every container
+         */
+        private Duration sampleInterval = Duration.ofSeconds(30);
+
+        /**
+         * Containers sampled at the same time
+         */
+        private int sampleThreads = 4;
+
+        /**
+         * Usage and OOM kills older than this are forgotten
+         */
+        private Duration window = Duration.ofHours(24);
+
+        /**
+         * Samples needed before a project gets a recommendation
+         */
+        private int minSamples = 20;
+
+        /**
+         * Margin added on top of the p99 usage
+         */
+        private double headroom = 0.2;
+
+        /**
+         * Factor the current limit grows by when the container was OOM-killed in the window
+         */
+        private double oomGrowth = 1.5;
+
+        /**
+         * Recommendations are rounded up to a multiple of this
+         */
+        private DataSize step = DataSize.ofMegabytes(64);
+
+        /**
+         * Smallest limit ever recommended
+         */
+        private DataSize minimum = DataSize.ofMegabytes(128);
+
+        /**
+         * Apply recommendations to running containers, within the project's plan
+         */
+        private boolean autoApply = false;
+
+        /**
+         * Relative change below which a recommendation is not applied
+         */
+        private double minChange = 0.1;
+
+        /**
+         * Least time between two automatic changes of the same project
+         */
+        private Duration applyCooldown = Duration.ofHours(1);
+    }
+
+    /**
+     * Checkpoints of deployment pipeline stages
+     */
+    @Data
+    public static class Pipeline {
+
+        /**
+         * Record completed stages so a retry resumes after the last one
+         */
+        private boolean checkpoints = true;
+
+        /**
+         * Directory the checkpoints are kept in; outside the workspace root, which only holds checkouts
+         */
+        private String checkpointDir = "/tmp/vision-deploy-checkpoints";
+
+        /**
+         * Checkpoints not updated for this long are not resumed from
+         */
+        private Duration resumeWindow = Duration.ofHours(6);
+    }
+
+    /**
+     * Deployment history in the deployments table
+     */
+    @Data
+    public static class History {
+
+        /**
+         * Persist deployments, their stage transitions and logs
+         */
+        private boolean enabled = true;
+
+        /**
+         * Writes waiting for the writer; beyond this they are dropped rather than slowing deployments
+         */
+        private int queueCapacity = 10000;
+
+        /**
+         * Writes sent to the database in one batch
+         */
+        private int batchSize = 500;
+
+        /**
+         * How long the writer waits for more writes before sending a batch that is not full
+         */
+        private Duration linger = Duration.ofMillis(200);
+
+        /**
+         * Deployments per history page when the request does not say
+         */
+        private int pageSize = 20;
+
+        /**
+         * Upper bound for the page size a request may ask for
+         */
+        private int maxPageSize = 100;
+    }
+
+    /**
+     * Several instances sharing one job queue in the database
+     */
+    @Data
+    public static class Cluster {
+
+        /**
+         * Queue builds in the deploy_jobs table for any instance to run, instead of on this instance only
+         */
+        private boolean enabled = false;
+
+        /**
+         * Name of this instance among the workers; empty derives one from the Docker node name
+         */
+        private String workerId;
+
+        /**
+         * How often a worker reports in and extends the leases of the jobs it runs
+         */
+        private Duration heartbeatInterval = Duration.ofSeconds(5);
+
+        /**
+         * A running job whose lease was not extended for this long is requeued; its worker counts as dead
+         */
+        private Duration lease = Duration.ofSeconds(30);
+
+        /**
+         * How often an idle worker looks for jobs, and a waiting request for the job's outcome
+         */
+        private Duration pollInterval = Duration.ofMillis(500);
+
+        /**
+         * A job queued for a busy worker may be taken by any other one after this long
+         */
+        private Duration stealAfter = Duration.ofSeconds(2);
+
+        /**
+         * Keep a project's jobs on the worker that deployed it while that worker is alive,
+         * since its container, image cache and checkpoint are there
+         */
+        private boolean pinProjects = true;
+
+        /**
+         * Runs of a job before a lost lease fails it instead of requeueing it
+         */
+        private int maxAttempts = 3;
+
+        /**
+         * Finished jobs are kept this long for their submitters to collect
+         */
+        private Duration retention = Duration.ofHours(24);
+    }
+}
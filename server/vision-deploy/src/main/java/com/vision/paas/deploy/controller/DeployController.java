@@ -1,12 +1,29 @@
 package com.vision.paas.deploy.controller;
 
 import com.vision.paas.common.dto.ApiResponse;
+import com.vision.paas.common.enums.SubscriptionPlan;
+import com.vision.paas.common.exception.BusinessException;
+import com.vision.paas.common.security.CurrentUser;
+import com.vision.paas.common.security.UserPrincipal;
+import com.vision.paas.deploy.history.DeploymentHistory;
+import com.vision.paas.deploy.pipeline.CheckpointStore;
+import com.vision.paas.deploy.pipeline.DeploymentCheckpoint;
+import com.vision.paas.deploy.project.ProjectAccess;
+import com.vision.paas.deploy.scheduler.BuildJob;
+import com.vision.paas.deploy.scheduler.BuildScheduler;
+import com.vision.paas.deploy.scheduler.CancellationToken;
+import com.vision.paas.deploy.scheduler.DistributedBuildQueue;
 import com.vision.paas.deploy.service.AutoDeployService;
+import com.vision.paas.deploy.sizing.MemoryRecommender;
+import com.vision.paas.deploy.supervisor.RestartSupervisor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Deployment Controller
@@ -19,6 +36,13 @@ import java.util.Map;
 public class DeployController {
     
     private final AutoDeployService autoDeployService;
+    private final BuildScheduler buildScheduler;
+    private final DistributedBuildQueue buildQueue;
+    private final RestartSupervisor restartSupervisor;
+    private final MemoryRecommender memoryRecommender;
+    private final CheckpointStore checkpointStore;
+    private final DeploymentHistory deploymentHistory;
+    private final ProjectAccess projectAccess;
     
     /**
      * Auto-deploy (zero-config mode)
@@ -26,15 +50,21 @@ public class DeployController {
      */
     @PostMapping("/auto")
     public ApiResponse<AutoDeployService.DeploymentResult> autoDeploy(
-            @RequestBody AutoDeployRequest request) {
+            @RequestBody AutoDeployRequest request,
+            @CurrentUser UserPrincipal user) {
         log.info("Received auto-deploy request for project: {}", request.getProjectId());
+        projectAccess.requireOwner(request.getProjectId(), user.getUserId());
         
-        AutoDeployService.DeploymentResult result = autoDeployService.deploy(
-                request.getProjectId(),
-                request.getGitUrl(),
-                request.getEnvVars(),
-                request.getMemoryMB() != null ? request.getMemoryMB() : 512
-        );
+        SubscriptionPlan subscriptionPlan = planOf(user);
+        AutoDeployService.DeploymentRequest deployment = new AutoDeployService.DeploymentRequest();
+        deployment.setKind(AutoDeployService.DeploymentRequest.Kind.AUTO);
+        deployment.setProjectId(request.getProjectId());
+        deployment.setGitUrl(request.getGitUrl());
+        deployment.setEnvVars(request.getEnvVars());
+        deployment.setMemoryMB(request.getMemoryMB() != null ? request.getMemoryMB()
+                : memoryRecommender.defaultMemoryMB(request.getProjectId(), subscriptionPlan));
+        deployment.setPlan(subscriptionPlan);
+        AutoDeployService.DeploymentResult result = schedule(user.getUserId(), deployment);
         
         return ApiResponse.success("Deployment initiated", result);
     }
@@ -45,8 +75,10 @@ public class DeployController {
      */
     @PostMapping("/custom")
     public ApiResponse<AutoDeployService.DeploymentResult> customDeploy(
-            @RequestBody CustomDeployRequest request) {
+            @RequestBody CustomDeployRequest request,
+            @CurrentUser UserPrincipal user) {
         log.info("Received custom deploy request for project: {}", request.getProjectId());
+        projectAccess.requireOwner(request.getProjectId(), user.getUserId());
         
         AutoDeployService.DeploymentConfig config = new AutoDeployService.DeploymentConfig();
         config.setProjectType(request.getProjectType());
@@ -55,14 +87,24 @@ public class DeployController {
         config.setBuildCommand(request.getBuildCommand());
         config.setStartCommand(request.getStartCommand());
         config.setEnvVars(request.getEnvVars());
-        config.setMemoryMB(request.getMemoryMB());
+        config.setPlan(planOf(user));
+        config.setMemoryMB(request.getMemoryMB() != null ? request.getMemoryMB()
+                : memoryRecommender.defaultMemoryMB(request.getProjectId(), config.getPlan()));
         config.setRootDirectory(request.getRootDirectory());
+        config.setDependsOn(request.getDependsOn());
+        config.setIncludePaths(request.getIncludePaths());
+        config.setExcludePaths(request.getExcludePaths());
+        config.setLastDeployedSha(request.getLastDeployedSha());
+        config.setForce(request.getForce());
         
-        AutoDeployService.DeploymentResult result = autoDeployService.deployWithConfig(
-                request.getProjectId(),
-                request.getGitUrl(),
-                config
-        );
+        AutoDeployService.DeploymentRequest deployment = new AutoDeployService.DeploymentRequest();
+        deployment.setKind(AutoDeployService.DeploymentRequest.Kind.CUSTOM);
+        deployment.setProjectId(request.getProjectId());
+        deployment.setGitUrl(request.getGitUrl());
+        deployment.setMemoryMB(config.getMemoryMB());
+        deployment.setPlan(config.getPlan());
+        deployment.setConfig(config);
+        AutoDeployService.DeploymentResult result = schedule(user.getUserId(), deployment);
         
         return ApiResponse.success("Custom deployment initiated", result);
     }
@@ -74,19 +116,240 @@ public class DeployController {
     @PostMapping("/redeploy/{projectId}")
     public ApiResponse<AutoDeployService.DeploymentResult> redeploy(
             @PathVariable String projectId,
-            @RequestBody RedeployRequest request) {
+            @RequestBody RedeployRequest request,
+            @CurrentUser UserPrincipal user) {
         log.info("Received redeploy request for project: {}", projectId);
+        projectAccess.requireOwner(projectId, user.getUserId());
         
-        AutoDeployService.DeploymentResult result = autoDeployService.redeploy(
-                projectId,
-                request.getGitUrl(),
-                request.getEnvVars(),
-                request.getMemoryMB() != null ? request.getMemoryMB() : 512
-        );
+        SubscriptionPlan subscriptionPlan = planOf(user);
+        AutoDeployService.DeploymentRequest deployment = new AutoDeployService.DeploymentRequest();
+        deployment.setKind(AutoDeployService.DeploymentRequest.Kind.REDEPLOY);
+        deployment.setProjectId(projectId);
+        deployment.setGitUrl(request.getGitUrl());
+        deployment.setEnvVars(request.getEnvVars());
+        deployment.setMemoryMB(request.getMemoryMB() != null ? request.getMemoryMB()
+                : memoryRecommender.defaultMemoryMB(projectId, subscriptionPlan));
+        deployment.setPlan(subscriptionPlan);
+        AutoDeployService.DeploymentResult result = schedule(user.getUserId(), deployment);
         
         return ApiResponse.success("Redeployment completed", result);
     }
     
+    /**
+     * Apply new environment variables or memory limit without rebuilding
+     * POST /api/deploy/reconfigure/{projectId}
+     */
+    @PostMapping("/reconfigure/{projectId}")
+    public ApiResponse<AutoDeployService.DeploymentResult> reconfigure(
+            @PathVariable String projectId,
+            @RequestBody ReconfigureRequest request,
+            @CurrentUser UserPrincipal user) {
+        log.info("Received reconfigure request for project: {}", projectId);
+        projectAccess.requireOwner(projectId, user.getUserId());
+        
+        if (request.getEnvVars() == null && request.getMemoryMB() == null) {
+            throw new BusinessException(400, "Nothing to change: give envVars and/or memoryMB");
+        }
+        SubscriptionPlan subscriptionPlan = planOf(user);
+        if (request.getMemoryMB() != null) {
+            BuildScheduler.checkMemory(subscriptionPlan, request.getMemoryMB());
+        }
+        AutoDeployService.DeploymentRequest reconfigure = new AutoDeployService.DeploymentRequest();
+        reconfigure.setKind(AutoDeployService.DeploymentRequest.Kind.RECONFIGURE);
+        reconfigure.setProjectId(projectId);
+        reconfigure.setEnvVars(request.getEnvVars());
+        reconfigure.setMemoryMB(request.getMemoryMB() != null ? request.getMemoryMB() : 0);
+        reconfigure.setPlan(subscriptionPlan);
+        AutoDeployService.DeploymentResult result = onOwner(user.getUserId(), reconfigure,
+                () -> autoDeployService.reconfigure(projectId, request.getEnvVars(), request.getMemoryMB(),
+                        subscriptionPlan, new CancellationToken()));
+        
+        return ApiResponse.success("Runtime configuration applied", result);
+    }
+    
+    /**
+     * List the caller's queued and running deployment jobs
+     * GET /api/deploy/jobs?projectId=
+     */
+    @GetMapping("/jobs")
+    public ApiResponse<List<JobInfo>> listJobs(@RequestParam(required = false) String projectId,
+                                               @CurrentUser String userId) {
+        Set<String> owned = projectAccess.ownedProjects(userId);
+        return ApiResponse.success(activeJobs().stream()
+                .filter(job -> ProjectAccess.owns(owned, job.getProjectId()))
+                .filter(job -> projectId == null || projectId.equals(job.getProjectId()))
+                .toList());
+    }
+    
+    /**
+     * Cancel a queued or in-flight deployment
+     * DELETE /api/deploy/jobs/{jobId}
+     */
+    @DeleteMapping("/jobs/{jobId}")
+    public ApiResponse<String> cancelJob(@PathVariable String jobId, @CurrentUser String userId) {
+        log.info("Received cancel request for job: {}", jobId);
+        JobInfo job = activeJobs().stream()
+                .filter(active -> active.getId().equals(jobId))
+                .findFirst()
+                .orElseThrow(() -> new BusinessException(404, "No active deployment job: " + jobId));
+        projectAccess.requireOwner(job.getProjectId(), userId);
+        boolean cancelled = buildQueue.isEnabled() ? buildQueue.cancel(jobId) : buildScheduler.cancel(jobId);
+        if (!cancelled) {
+            throw new BusinessException(404, "No active deployment job: " + jobId);
+        }
+        return ApiResponse.success("Cancellation requested", jobId);
+    }
+    
+    /**
+     * Build queue depth and wait time per plan
+     * GET /api/deploy/scheduler/stats
+     */
+    @GetMapping("/scheduler/stats")
+    public ApiResponse<Map<SubscriptionPlan, BuildScheduler.PlanStats>> schedulerStats() {
+        return ApiResponse.success(buildScheduler.getStats());
+    }
+    
+    /**
+     * The caller's unfinished deployments a retry would resume
+     * GET /api/deploy/checkpoints
+     */
+    @GetMapping("/checkpoints")
+    public ApiResponse<List<DeploymentCheckpoint>> listCheckpoints(@CurrentUser String userId) {
+        Set<String> owned = projectAccess.ownedProjects(userId);
+        return ApiResponse.success(checkpointStore.list().stream()
+                .filter(checkpoint -> ProjectAccess.owns(owned, checkpoint.getProjectId()))
+                .toList());
+    }
+    
+    /**
+     * Forget a project's unfinished deployment so the next one starts from scratch
+     * DELETE /api/deploy/checkpoints/{projectId}
+     */
+    @DeleteMapping("/checkpoints/{projectId}")
+    public ApiResponse<String> discardCheckpoint(@PathVariable String projectId, @CurrentUser String userId) {
+        projectAccess.requireOwner(projectId, userId);
+        if (checkpointStore.load(projectId) == null) {
+            throw new BusinessException(404, "No unfinished deployment for project: " + projectId);
+        }
+        checkpointStore.delete(projectId);
+        return ApiResponse.success("Checkpoint discarded", projectId);
+    }
+    
+    /**
+     * Deployments of a project, newest first
+     * GET /api/deploy/history/{projectId}?cursor=&limit=
+     */
+    @GetMapping("/history/{projectId}")
+    public ApiResponse<DeploymentHistory.HistoryPage> history(
+            @PathVariable String projectId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @CurrentUser String userId) {
+        projectAccess.requireOwner(projectId, userId);
+        return ApiResponse.success(deploymentHistory.getHistory(projectId, cursor, limit));
+    }
+    
+    /**
+     * One deployment with its status transitions and stage timings
+     * GET /api/deploy/history/{projectId}/{deploymentId}
+     */
+    @GetMapping("/history/{projectId}/{deploymentId}")
+    public ApiResponse<DeploymentHistory.DeploymentDetail> deployment(
+            @PathVariable String projectId, @PathVariable String deploymentId, @CurrentUser String userId) {
+        projectAccess.requireOwner(projectId, userId);
+        DeploymentHistory.DeploymentDetail detail = deploymentHistory.getDeployment(projectId, deploymentId);
+        if (detail == null) {
+            throw new BusinessException(404, "Deployment not found: " + deploymentId);
+        }
+        return ApiResponse.success(detail);
+    }
+    
+    /**
+     * Log of one deployment
+     * GET /api/deploy/history/{projectId}/{deploymentId}/logs
+     */
+    @GetMapping("/history/{projectId}/{deploymentId}/logs")
+    public ApiResponse<String> deploymentLogs(@PathVariable String projectId, @PathVariable String deploymentId,
+                                             @CurrentUser String userId) {
+        projectAccess.requireOwner(projectId, userId);
+        String logs = deploymentHistory.getLogs(projectId, deploymentId);
+        if (logs == null) {
+            throw new BusinessException(404, "No logs for deployment: " + deploymentId);
+        }
+        return ApiResponse.success(logs);
+    }
+    
+    /**
+     * Crash and restart state of the caller's supervised containers
+     * GET /api/deploy/supervisor
+     */
+    @GetMapping("/supervisor")
+    public ApiResponse<List<RestartSupervisor.ProjectHealth>> supervisorHealth(@CurrentUser String userId) {
+        Set<String> owned = projectAccess.ownedProjects(userId);
+        return ApiResponse.success(restartSupervisor.getHealth().stream()
+                .filter(health -> ProjectAccess.owns(owned, health.getProjectId()))
+                .toList());
+    }
+    
+    /**
+     * Crash and restart state of one project's container
+     * GET /api/deploy/supervisor/{projectId}
+     */
+    @GetMapping("/supervisor/{projectId}")
+    public ApiResponse<RestartSupervisor.ProjectHealth> supervisorHealth(@PathVariable String projectId,
+                                                                         @CurrentUser String userId) {
+        projectAccess.requireOwner(projectId, userId);
+        RestartSupervisor.ProjectHealth health = restartSupervisor.getHealth(projectId);
+        if (health == null) {
+            throw new BusinessException(404, "Project is not supervised: " + projectId);
+        }
+        return ApiResponse.success(health);
+    }
+    
+    /**
+     * Memory recommendations of the caller's sampled projects and the capacity right-sizing would free
+     * GET /api/deploy/sizing
+     */
+    @GetMapping("/sizing")
+    public ApiResponse<MemoryRecommender.CapacityReport> sizingReport(@CurrentUser String userId) {
+        Set<String> owned = projectAccess.ownedProjects(userId);
+        return ApiResponse.success(memoryRecommender.getReport(projectId -> ProjectAccess.owns(owned, projectId)));
+    }
+    
+    /**
+     * Memory recommendation of one project
+     * GET /api/deploy/sizing/{projectId}
+     */
+    @GetMapping("/sizing/{projectId}")
+    public ApiResponse<MemoryRecommender.Recommendation> sizing(@PathVariable String projectId,
+                                                                @CurrentUser String userId) {
+        projectAccess.requireOwner(projectId, userId);
+        MemoryRecommender.Recommendation recommendation = memoryRecommender.getRecommendation(projectId);
+        if (recommendation == null) {
+            throw new BusinessException(404, "No memory samples for project: " + projectId);
+        }
+        return ApiResponse.success(recommendation);
+    }
+    
+    /**
+     * Set the project's memory limit to the recommendation, without rebuilding
+     * POST /api/deploy/sizing/{projectId}/apply
+     */
+    @PostMapping("/sizing/{projectId}/apply")
+    public ApiResponse<AutoDeployService.DeploymentResult> applySizing(@PathVariable String projectId,
+                                                                      @CurrentUser UserPrincipal user) {
+        log.info("Received memory right-sizing request for project: {}", projectId);
+        projectAccess.requireOwner(projectId, user.getUserId());
+        SubscriptionPlan subscriptionPlan = planOf(user);
+        AutoDeployService.DeploymentRequest resize = new AutoDeployService.DeploymentRequest();
+        resize.setKind(AutoDeployService.DeploymentRequest.Kind.RECONFIGURE);
+        resize.setProjectId(projectId);
+        resize.setRecommendedMemory(true);
+        resize.setPlan(subscriptionPlan);
+        return ApiResponse.success("Memory recommendation applied", onOwner(user.getUserId(), resize,
+                () -> memoryRecommender.apply(projectId, subscriptionPlan)));
+    }
+    
     /**
      * Health check
      * GET /api/deploy/health
@@ -96,6 +359,52 @@ public class DeployController {
         return ApiResponse.success("Deploy service is running");
     }
     
+    /**
+     * Jobs queued or running, cluster-wide when this instance is part of a cluster
+     */
+    private List<JobInfo> activeJobs() {
+        return buildQueue.isEnabled()
+                ? buildQueue.getActiveJobs().stream().map(JobInfo::new).toList()
+                : buildScheduler.getActiveJobs().stream().map(JobInfo::new).toList();
+    }
+    
+    /**
+     * Queue the deployment, on the shared queue when this instance is part of a cluster,
+     * and wait for its outcome
+     */
+    private AutoDeployService.DeploymentResult schedule(String tenantId, AutoDeployService.DeploymentRequest request) {
+        BuildJob job = buildQueue.isEnabled()
+                ? buildQueue.submit(tenantId, request)
+                : buildScheduler.submit(tenantId, request.getPlan(), request.getProjectId(), request.getMemoryMB(),
+                        token -> autoDeployService.run(request, token));
+        return job.await();
+    }
+    
+    /**
+     * Act on the project's running container: on this instance, or in a cluster as a job for the
+     * worker whose Docker daemon runs it, without waiting behind builds on the local scheduler
+     */
+    private AutoDeployService.DeploymentResult onOwner(String tenantId, AutoDeployService.DeploymentRequest request,
+                                                       Supplier<AutoDeployService.DeploymentResult> local) {
+        return buildQueue.isEnabled() ? buildQueue.submitToOwner(tenantId, request).await() : local.get();
+    }
+    
+    /**
+     * Plan of the signed identity; never taken from anything the client sends itself
+     */
+    private SubscriptionPlan planOf(UserPrincipal user) {
+        String plan = user.getPlan();
+        if (plan == null || plan.isBlank()) {
+            return SubscriptionPlan.FREE;
+        }
+        try {
+            return SubscriptionPlan.valueOf(plan.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown subscription plan '{}', scheduling as FREE", plan);
+            return SubscriptionPlan.FREE;
+        }
+    }
+    
     // Request DTOs
     public static class AutoDeployRequest {
         private String projectId;
@@ -124,6 +433,11 @@ public class DeployController {
         private String buildCommand;
         private String startCommand;
         private String rootDirectory;
+        private List<String> dependsOn;
+        private List<String> includePaths;
+        private List<String> excludePaths;
+        private String lastDeployedSha;
+        private Boolean force;
         
         // Getters and Setters
         public com.vision.paas.common.enums.ProjectType getProjectType() { return projectType; }
@@ -147,6 +461,91 @@ public class DeployController {
         
         public String getRootDirectory() { return rootDirectory; }
         public void setRootDirectory(String rootDirectory) { this.rootDirectory = rootDirectory; }
+        
+        public List<String> getDependsOn() { return dependsOn; }
+        public void setDependsOn(List<String> dependsOn) { this.dependsOn = dependsOn; }
+        
+        public List<String> getIncludePaths() { return includePaths; }
+        public void setIncludePaths(List<String> includePaths) { this.includePaths = includePaths; }
+        
+        public List<String> getExcludePaths() { return excludePaths; }
+        public void setExcludePaths(List<String> excludePaths) { this.excludePaths = excludePaths; }
+        
+        public String getLastDeployedSha() { return lastDeployedSha; }
+        public void setLastDeployedSha(String lastDeployedSha) { this.lastDeployedSha = lastDeployedSha; }
+        
+        public Boolean getForce() { return force; }
+        public void setForce(Boolean force) { this.force = force; }
+    }
+    
+    public static class ReconfigureRequest {
+        private Map<String, String> envVars;
+        private Integer memoryMB;
+        
+        // Getters and Setters
+        public Map<String, String> getEnvVars() { return envVars; }
+        public void setEnvVars(Map<String, String> envVars) { this.envVars = envVars; }
+        
+        public Integer getMemoryMB() { return memoryMB; }
+        public void setMemoryMB(Integer memoryMB) { this.memoryMB = memoryMB; }
+    }
+    
+    public static class JobInfo {
+        private final String id;
+        private final String projectId;
+        private final String tenantId;
+        private final SubscriptionPlan plan;
+        private final String state;
+        private final long enqueuedAt;
+        private final long startedAt;
+        private final String worker;
+        
+        public JobInfo(BuildJob job) {
+            this.id = job.getId();
+            this.projectId = job.getProjectId();
+            this.tenantId = job.getTenantId();
+            this.plan = job.getPlan();
+            this.state = job.getState();
+            this.enqueuedAt = job.getEnqueuedAt();
+            this.startedAt = job.getStartedAt();
+            this.worker = null;
+        }
+        
+        public JobInfo(DistributedBuildQueue.QueuedJob job) {
+            this.id = job.getId();
+            this.projectId = job.getProjectId();
+            this.tenantId = job.getTenantId();
+            this.plan = parsePlan(job.getPlan());
+            this.state = job.getState().toUpperCase();
+            this.enqueuedAt = job.getEnqueuedAt();
+            this.startedAt = job.getStartedAt();
+            this.worker = job.getOwner() != null ? job.getOwner() : job.getPreferredWorker();
+        }
+        
+        /**
+         * A row written by another version may name a plan this one does not know
+         */
+        private static SubscriptionPlan parsePlan(String plan) {
+            try {
+                return plan != null ? SubscriptionPlan.valueOf(plan) : null;
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        
+        // Getters
+        public String getId() { return id; }
+        public String getProjectId() { return projectId; }
+        public String getTenantId() { return tenantId; }
+        public SubscriptionPlan getPlan() { return plan; }
+        public String getState() { return state; }
+        public long getEnqueuedAt() { return enqueuedAt; }
+        public long getStartedAt() { return startedAt; }
+        
+        /**
+         * Worker running the job, or the one it is queued for; null on a single instance
+         */
+        public String getWorker() { return worker; }
     }
     
     public static class RedeployRequest {
@@ -0,0 +1,143 @@
+package com.vision.paas.deploy.docker;
+
+import com.vision.paas.common.exception.BusinessException;
+import com.vision.paas.deploy.config.DeployProperties;
+import com.vision.paas.deploy.scheduler.CancellationToken;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BuildKit Builder
+ * Builds images with "docker buildx build" against the same daemon docker-java talks to,
+ * or a buildkitd behind a buildx builder. docker-java cannot open the gRPC session
+ * BuildKit builds need, so the CLI does that part and we follow its plain progress.
+ */
+@Slf4j
+class BuildKitBuilder {
+
+    private static final String PROJECT_PLACEHOLDER = "{project}";
+    private static final String IMAGE_ID_PREFIX = "sha256:";
+
+    private final DeployProperties.Build properties;
+    private final String dockerHost;
+
+    BuildKitBuilder(DeployProperties.Build properties, String dockerHost) {
+        this.properties = properties;
+        this.dockerHost = dockerHost;
+    }
+
+    /**
+     * Build and load the image into the daemon, aborting on cancel or after the timeout
+     * @return Image ID without the "sha256:" prefix
+     */
+    String build(String projectId, File contextDir, File dockerfile, String imageTag,
+                 CancellationToken token, Duration timeout, BuildKitProgress progress)
+            throws IOException, InterruptedException {
+        Path iidFile = Files.createTempFile("vision-build-", ".iid");
+        Process process = null;
+        AutoCloseable kill = null;
+        try {
+            ProcessBuilder builder = new ProcessBuilder(command(projectId, contextDir, dockerfile, imageTag, iidFile))
+                    .redirectErrorStream(true);
+            if (dockerHost != null && !dockerHost.isBlank()) {
+                builder.environment().put("DOCKER_HOST", dockerHost);
+            }
+            // Provenance attestations turn the result into an image index older daemons cannot --load
+            builder.environment().put("BUILDX_NO_DEFAULT_ATTESTATIONS", "1");
+            process = builder.start();
+            Process started = process;
+            kill = token.register(started::destroyForcibly);
+
+            Thread reader = new Thread(() -> pump(started, progress), "buildkit-progress-" + projectId);
+            reader.setDaemon(true);
+            reader.start();
+
+            if (!process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                throw new BusinessException(408, "Image build timed out after " + timeout.toSeconds() + "s");
+            }
+            // The output ends with the process; don't wait on a grandchild that kept the pipe open
+            reader.join(TimeUnit.SECONDS.toMillis(5));
+            token.throwIfCancelled();
+
+            if (process.exitValue() != 0) {
+                String error = progress.getLastError();
+                throw new BusinessException("BuildKit build failed" + (error != null ? ": " + error : ""));
+            }
+            String imageId = Files.readString(iidFile).trim();
+            if (imageId.isEmpty()) {
+                throw new BusinessException("BuildKit build did not report an image ID");
+            }
+            log.info("[{}] BuildKit ran stages {}", projectId, progress.getStages());
+            return imageId.startsWith(IMAGE_ID_PREFIX) ? imageId.substring(IMAGE_ID_PREFIX.length()) : imageId;
+        } finally {
+            if (kill != null) {
+                token.unregister(kill);
+            }
+            if (process != null && process.isAlive()) {
+                process.destroyForcibly();
+            }
+            Files.deleteIfExists(iidFile);
+        }
+    }
+
+    private List<String> command(String projectId, File contextDir, File dockerfile, String imageTag, Path iidFile) {
+        List<String> command = new ArrayList<>(List.of(properties.getCli(), "buildx", "build"));
+        if (properties.getBuilder() != null && !properties.getBuilder().isBlank()) {
+            command.add("--builder");
+            command.add(properties.getBuilder());
+        }
+        if (properties.getCgroupParent() != null && !properties.getCgroupParent().isBlank()) {
+            command.add("--cgroup-parent");
+            command.add(properties.getCgroupParent());
+        }
+        command.addAll(List.of("--progress=plain", "--load",
+                "--tag", imageTag,
+                "--file", dockerfile.getAbsolutePath(),
+                "--iidfile", iidFile.toString()));
+
+        // Without explicit caches, reuse the layers of the project's previous image
+        if (properties.getCacheFrom().isEmpty()) {
+            command.add("--cache-from");
+            command.add(imageTag);
+        }
+        for (String source : properties.getCacheFrom()) {
+            command.add("--cache-from");
+            command.add(source.replace(PROJECT_PLACEHOLDER, projectId));
+        }
+        if (properties.getCacheTo().isEmpty()) {
+            command.add("--build-arg");
+            command.add("BUILDKIT_INLINE_CACHE=1");
+        }
+        for (String destination : properties.getCacheTo()) {
+            command.add("--cache-to");
+            command.add(destination.replace(PROJECT_PLACEHOLDER, projectId));
+        }
+        command.add(contextDir.getAbsolutePath());
+        return command;
+    }
+
+    private void pump(Process process, BuildKitProgress progress) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                progress.accept(line);
+            }
+        } catch (IOException e) {
+            // Stream closed because the build was killed
+            log.debug("BuildKit progress stream closed", e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.vision.paas.deploy.docker;
+
+import com.vision.paas.deploy.metrics.DeploymentTimeline;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads BuildKit's plain progress output ("--progress=plain"), forwarding every
+ * line and recording when the build context was transferred, which stages ran
+ * and how many steps came from cache
+ */
+public class BuildKitProgress implements Consumer<String> {
+
+    private static final Pattern VERTEX = Pattern.compile("^#(\\d+) (.*)$");
+    private static final Pattern STAGE_STEP = Pattern.compile("^\\[([^\\]\\s]+) \\d+/\\d+\\]");
+    private static final String LOAD_CONTEXT = "[internal] load build context";
+
+    private final Consumer<String> forward;
+    private final Map<String, String> stepStages = new ConcurrentHashMap<>();
+    private final Set<String> stages = ConcurrentHashMap.newKeySet();
+    private volatile String contextVertex;
+    private volatile long firstResponseNanos;
+    private volatile long contextDoneNanos;
+    private volatile int steps;
+    private volatile int cachedSteps;
+    private volatile String lastError;
+
+    public BuildKitProgress(Consumer<String> forward) {
+        this.forward = forward;
+    }
+
+    @Override
+    public void accept(String line) {
+        if (firstResponseNanos == 0) {
+            firstResponseNanos = System.nanoTime();
+        }
+        track(line);
+        forward.accept(line);
+    }
+
+    /**
+     * A vertex is announced by "#n name" and finishes with "#n DONE", "#n CACHED" or "#n ERROR: ..."
+     */
+    private void track(String line) {
+        Matcher vertex = VERTEX.matcher(line);
+        if (!vertex.matches()) {
+            if (line.startsWith("ERROR:")) {
+                lastError = line;
+            }
+            return;
+        }
+        String id = vertex.group(1);
+        String text = vertex.group(2);
+        if (text.startsWith("DONE") || "CACHED".equals(text)) {
+            if (id.equals(contextVertex) && contextDoneNanos == 0) {
+                contextDoneNanos = System.nanoTime();
+            }
+            String stage = stepStages.remove(id);
+            if (stage != null) {
+                steps++;
+                if ("CACHED".equals(text)) {
+                    cachedSteps++;
+                }
+            }
+        } else if (text.startsWith("ERROR:")) {
+            lastError = text;
+            stepStages.remove(id);
+        } else if (LOAD_CONTEXT.equals(text)) {
+            contextVertex = id;
+        } else {
+            Matcher step = STAGE_STEP.matcher(text);
+            if (step.find()) {
+                stepStages.put(id, step.group(1));
+                stages.add(step.group(1));
+            }
+        }
+    }
+
+    /**
+     * System.nanoTime() of the first output line, 0 if none arrived yet
+     */
+    public long getFirstResponseNanos() {
+        return firstResponseNanos;
+    }
+
+    /**
+     * System.nanoTime() at which the build context was transferred; falls back to
+     * the first output line when the build had no context to load
+     */
+    public long getContextDoneNanos() {
+        return contextDoneNanos != 0 ? contextDoneNanos : firstResponseNanos;
+    }
+
+    /**
+     * Stages that ran at least one step; stages the target does not need never show up
+     */
+    public Set<String> getStages() {
+        return stages;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Cache outcome over all finished steps
+     */
+    public String getCacheResult() {
+        if (steps == 0) {
+            return DeploymentTimeline.CACHE_NONE;
+        }
+        if (cachedSteps == steps) {
+            return DeploymentTimeline.CACHE_HIT;
+        }
+        return cachedSteps == 0 ? DeploymentTimeline.CACHE_MISS : DeploymentTimeline.CACHE_PARTIAL;
+    }
+}
@@ -0,0 +1,78 @@
+package com.vision.paas.deploy.docker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Cpuset Allocator
+ * Picks the cores a pinned container runs on from a fixed pool. Which cores are taken
+ * is read from the running containers rather than kept here, so a restart of the
+ * service or containers removed behind its back never leak cores. When the pool is
+ * oversubscribed, containers share the least loaded cores.
+ */
+class CpusetAllocator {
+
+    private final List<Integer> pool;
+
+    CpusetAllocator(String cpusetPool) {
+        this.pool = parse(cpusetPool);
+    }
+
+    boolean isEnabled() {
+        return !pool.isEmpty();
+    }
+
+    /**
+     * @param count Cores wanted
+     * @param inUse cpusets of the other pinned containers, in Docker's "0-3,8" notation
+     * @return cpuset in Docker's notation, or null if pinning is disabled
+     */
+    String allocate(int count, Collection<String> inUse) {
+        if (pool.isEmpty() || count <= 0) {
+            return null;
+        }
+        Map<Integer, Integer> load = new TreeMap<>();
+        pool.forEach(cpu -> load.put(cpu, 0));
+        for (String cpuset : inUse) {
+            for (int cpu : parse(cpuset)) {
+                load.computeIfPresent(cpu, (key, containers) -> containers + 1);
+            }
+        }
+        return load.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()))
+                .limit(count)
+                .map(Map.Entry::getKey)
+                .sorted(Comparator.naturalOrder())
+                .map(String::valueOf)
+                .collect(Collectors.joining(","));
+    }
+
+    static List<Integer> parse(String cpuset) {
+        List<Integer> cpus = new ArrayList<>();
+        if (cpuset == null || cpuset.isBlank()) {
+            return cpus;
+        }
+        for (String part : cpuset.split(",")) {
+            String range = part.trim();
+            if (range.isEmpty()) {
+                continue;
+            }
+            int dash = range.indexOf('-');
+            if (dash < 0) {
+                cpus.add(Integer.parseInt(range));
+            } else {
+                int from = Integer.parseInt(range.substring(0, dash).trim());
+                int to = Integer.parseInt(range.substring(dash + 1).trim());
+                for (int cpu = from; cpu <= to; cpu++) {
+                    cpus.add(cpu);
+                }
+            }
+        }
+        return cpus;
+    }
+}
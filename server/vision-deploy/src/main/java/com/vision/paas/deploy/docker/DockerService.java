@@ -1,24 +1,40 @@
 package com.vision.paas.deploy.docker;
 
 import com.github.dockerjava.api.DockerClient;
-import com.github.dockerjava.api.command.BuildImageResultCallback;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.BuildImageCmd;
 import com.github.dockerjava.api.command.CreateContainerResponse;
+import com.github.dockerjava.api.command.EventsCmd;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.exception.NotModifiedException;
 import com.github.dockerjava.api.model.*;
 import com.github.dockerjava.core.DefaultDockerClientConfig;
 import com.github.dockerjava.core.DockerClientConfig;
 import com.github.dockerjava.core.DockerClientImpl;
 import com.github.dockerjava.httpclient5.ApacheDockerHttpClient;
 import com.github.dockerjava.transport.DockerHttpClient;
+import com.vision.paas.common.enums.SubscriptionPlan;
 import com.vision.paas.common.exception.BusinessException;
+import com.vision.paas.deploy.config.DeployProperties;
+import com.vision.paas.deploy.metrics.DeploymentTimeline;
+import com.vision.paas.deploy.scheduler.CancellationToken;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileWriter;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Docker Service
@@ -26,26 +42,55 @@ import java.util.concurrent.TimeUnit;
  */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class DockerService {
     
+    private static final long READINESS_POLL_MILLIS = 500;
+    
+    private static final String LABEL_PROJECT = "vision.project";
+    private static final String LABEL_PLAN = "vision.plan";
+    private static final String LABEL_CPUSET = "vision.cpuset";
+    private static final long EXPECTED_STOP_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    
+    private final DeployProperties properties;
+    
     private DockerClient dockerClient;
     
+    private BuildKitBuilder buildKitBuilder;
+    
+    private CpusetAllocator cpusetAllocator = new CpusetAllocator(null);
+    
+    // Containers this service stopped or removed, with when; their die events are not crashes
+    private final Map<String, Long> expectedStops = new ConcurrentHashMap<>();
+    
+    private String nodeName = "unknown";
+    
     @PostConstruct
     public void init() {
         try {
-            DockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder()
-                    .build();
+            DefaultDockerClientConfig.Builder configBuilder = DefaultDockerClientConfig.createDefaultConfigBuilder();
+            String host = properties.getDocker().getHost();
+            if (host != null && !host.isBlank()) {
+                configBuilder.withDockerHost(host);
+            }
+            DockerClientConfig config = configBuilder.build();
             
             DockerHttpClient httpClient = new ApacheDockerHttpClient.Builder()
                     .dockerHost(config.getDockerHost())
                     .sslConfig(config.getSSLConfig())
-                    .maxConnections(100)
+                    .maxConnections(properties.getDocker().getMaxConnections())
                     .connectionTimeout(Duration.ofSeconds(30))
                     .responseTimeout(Duration.ofSeconds(45))
                     .build();
             
             dockerClient = DockerClientImpl.getInstance(config, httpClient);
-            log.info("Docker client initialized successfully");
+            log.info("Docker client initialized for {}", config.getDockerHost());
+            
+            buildKitBuilder = new BuildKitBuilder(properties.getBuild(), config.getDockerHost().toString());
+            cpusetAllocator = new CpusetAllocator(properties.getLimits().getCpusetPool());
+            log.info("Image builds use the {} backend", properties.getBuild().getBackend());
+            
+            nodeName = resolveNodeName();
         } catch (Exception e) {
             log.error("Failed to initialize Docker client", e);
         }
@@ -59,8 +104,57 @@ public class DockerService {
      * @return Image ID
      */
     public String buildImage(String projectId, String repoPath, String dockerfileContent) {
+        return buildImage(projectId, repoPath, dockerfileContent, new CancellationToken());
+    }
+    
+    /**
+     * Build Docker image from Dockerfile, aborting on cancel or after the build timeout
+     * @param projectId Project ID
+     * @param repoPath Path to repository
+     * @param dockerfileContent Dockerfile content
+     * @param token Cancellation token of the deployment
+     * @return Image ID
+     */
+    public String buildImage(String projectId, String repoPath, String dockerfileContent,
+                             CancellationToken token) {
+        return buildImage(projectId, repoPath, dockerfileContent, token, new DeploymentTimeline());
+    }
+    
+    /**
+     * Build Docker image, recording the context upload and build stages in the timeline
+     * @param projectId Project ID
+     * @param repoPath Path to repository
+     * @param dockerfileContent Dockerfile content
+     * @param token Cancellation token of the deployment
+     * @param timeline Timeline of the deployment
+     * @return Image ID
+     */
+    public String buildImage(String projectId, String repoPath, String dockerfileContent,
+                             CancellationToken token, DeploymentTimeline timeline) {
+        return buildImage(projectId, repoPath, dockerfileContent, token, timeline, line -> { });
+    }
+    
+    /**
+     * Build Docker image with the configured backend, streaming BuildKit progress lines to the consumer
+     * @param projectId Project ID
+     * @param repoPath Path to repository
+     * @param dockerfileContent Dockerfile content
+     * @param token Cancellation token of the deployment
+     * @param timeline Timeline of the deployment
+     * @param progress Receives the build output line by line
+     * @return Image ID
+     */
+    public String buildImage(String projectId, String repoPath, String dockerfileContent,
+                             CancellationToken token, DeploymentTimeline timeline, Consumer<String> progress) {
+        if (properties.getBuild().getBackend() == DeployProperties.Build.Backend.BUILDKIT) {
+            return buildImageWithBuildKit(projectId, repoPath, dockerfileContent, token, timeline, progress);
+        }
         log.info("Building Docker image for project: {}", projectId);
         
+        TrackingBuildCallback callback = null;
+        long startedAt = System.currentTimeMillis();
+        long start = System.nanoTime();
+        boolean success = false;
         try {
             // Write Dockerfile
             File dockerfilePath = new File(repoPath + "/Dockerfile");
@@ -70,21 +164,163 @@ public class DockerService {
             
             String imageName = "vision-paas/" + projectId.toLowerCase();
             String imageTag = "latest";
+            Duration timeout = properties.getTimeouts().getBuild();
             
-            // Build image
-            String imageId = dockerClient.buildImageCmd()
+            // Build image; forcerm removes intermediate containers even when the build is aborted.
+            // Build containers get a low CPU weight so they never starve running apps.
+            DeployProperties.Build build = properties.getBuild();
+            BuildImageCmd buildCmd = dockerClient.buildImageCmd()
                     .withDockerfile(dockerfilePath)
                     .withBaseDirectory(new File(repoPath))
                     .withTags(Collections.singleton(imageName + ":" + imageTag))
-                    .exec(new BuildImageResultCallback())
-                    .awaitImageId(10, TimeUnit.MINUTES);
+                    .withForcerm(true)
+                    .withCpushares(String.valueOf(build.getCpuShares()));
+            if (build.getCpusetCpus() != null && !build.getCpusetCpus().isBlank()) {
+                buildCmd.withCpusetcpus(build.getCpusetCpus());
+            }
+            if (build.getMemory() != null) {
+                buildCmd.withMemory(build.getMemory().toBytes())
+                        .withMemswap(build.getMemory().toBytes());
+            }
+            callback = token.register(buildCmd.exec(new TrackingBuildCallback()));
+            
+            // Closing the callback drops the stream, which makes the daemon abort the build
+            if (!callback.awaitCompletion(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                callback.close();
+                removeBuildLeftovers(projectId, callback);
+                throw new BusinessException(408, "Image build timed out after " + timeout.toSeconds() + "s");
+            }
+            if (token.isCancelled()) {
+                removeBuildLeftovers(projectId, callback);
+                token.throwIfCancelled();
+            }
+            
+            String imageId = callback.awaitImageId();
+            success = true;
+            
+            log.info("Successfully built image: {} with ID: {}", imageName, imageId);
+            return imageId;
+            
+        } catch (BusinessException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closeQuietly(callback);
+            removeBuildLeftovers(projectId, callback);
+            token.throwIfCancelled();
+            throw new BusinessException("Image build interrupted");
+        } catch (Exception e) {
+            log.error("Failed to build Docker image", e);
+            throw new BusinessException("Failed to build image: " + e.getMessage());
+        } finally {
+            if (callback != null) {
+                token.unregister(callback);
+            }
+            recordBuildStages(timeline, callback, startedAt, start, success);
+        }
+    }
+    
+    /**
+     * Build with BuildKit, which runs independent stages concurrently and skips unused ones
+     */
+    private String buildImageWithBuildKit(String projectId, String repoPath, String dockerfileContent,
+                                          CancellationToken token, DeploymentTimeline timeline,
+                                          Consumer<String> progress) {
+        log.info("Building Docker image for project {} with BuildKit", projectId);
+        
+        BuildKitProgress tracker = new BuildKitProgress(progress);
+        long startedAt = System.currentTimeMillis();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            File dockerfilePath = new File(repoPath + "/Dockerfile");
+            try (FileWriter writer = new FileWriter(dockerfilePath)) {
+                writer.write(dockerfileContent);
+            }
+            
+            String imageName = "vision-paas/" + projectId.toLowerCase() + ":latest";
+            String imageId = buildKitBuilder.build(projectId, new File(repoPath), dockerfilePath, imageName,
+                    token, properties.getTimeouts().getBuild(), tracker);
+            success = true;
             
             log.info("Successfully built image: {} with ID: {}", imageName, imageId);
             return imageId;
             
+        } catch (BusinessException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            token.throwIfCancelled();
+            throw new BusinessException("Image build interrupted");
         } catch (Exception e) {
             log.error("Failed to build Docker image", e);
             throw new BusinessException("Failed to build image: " + e.getMessage());
+        } finally {
+            recordBuildKitStages(timeline, tracker, startedAt, start, success);
+        }
+    }
+    
+    /**
+     * Split the build into context (until BuildKit has loaded the context) and build
+     */
+    private void recordBuildKitStages(DeploymentTimeline timeline, BuildKitProgress tracker,
+                                      long startedAt, long start, boolean success) {
+        long end = System.nanoTime();
+        long contextDone = tracker.getContextDoneNanos();
+        if (contextDone == 0) {
+            timeline.record(DeploymentTimeline.CONTEXT, startedAt, end - start, false);
+            return;
+        }
+        timeline.record(DeploymentTimeline.CONTEXT, startedAt, contextDone - start, true);
+        timeline.record(DeploymentTimeline.BUILD,
+                startedAt + (contextDone - start) / 1_000_000, end - contextDone, success);
+        timeline.setCache(tracker.getCacheResult());
+    }
+    
+    /**
+     * Split the build into context (tar + upload until the daemon first answers) and build
+     */
+    private void recordBuildStages(DeploymentTimeline timeline, TrackingBuildCallback callback,
+                                   long startedAt, long start, boolean success) {
+        long end = System.nanoTime();
+        long firstResponse = callback != null ? callback.getFirstResponseNanos() : 0;
+        if (firstResponse == 0) {
+            timeline.record(DeploymentTimeline.CONTEXT, startedAt, end - start, false);
+            return;
+        }
+        timeline.record(DeploymentTimeline.CONTEXT, startedAt, firstResponse - start, true);
+        timeline.record(DeploymentTimeline.BUILD,
+                startedAt + (firstResponse - start) / 1_000_000, end - firstResponse, success);
+        timeline.setCache(callback.getCacheResult());
+    }
+    
+    /**
+     * Remove the layers an aborted build created; shared cached layers are left alone
+     */
+    private void removeBuildLeftovers(String projectId, TrackingBuildCallback callback) {
+        if (callback == null) {
+            return;
+        }
+        List<String> imageIds = new ArrayList<>(callback.getCreatedImageIds());
+        Collections.reverse(imageIds);
+        for (String imageId : imageIds) {
+            try {
+                dockerClient.removeImageCmd(imageId).exec();
+            } catch (Exception e) {
+                log.debug("Could not remove partial image {}", imageId, e);
+            }
+        }
+        log.info("[{}] Removed {} partial image layers", projectId, imageIds.size());
+    }
+    
+    private void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            log.debug("Failed to close docker callback", e);
         }
     }
     
@@ -99,49 +335,150 @@ public class DockerService {
      */
     public String startContainer(String projectId, String imageId, int port, 
                                   Map<String, String> envVars, int memoryMB) {
-        log.info("Starting container for project: {}", projectId);
+        String containerId = createContainer(projectId, imageId, port, envVars, memoryMB);
+        startCreatedContainer(containerId);
+        return containerId;
+    }
+    
+    /**
+     * Create container with the limits of the free plan, replacing any existing container of the project
+     * @param projectId Project ID
+     * @param imageId Image ID
+     * @param port Application port
+     * @param envVars Environment variables
+     * @param memoryMB Memory limit in MB
+     * @return Container ID
+     */
+    public String createContainer(String projectId, String imageId, int port, 
+                                  Map<String, String> envVars, int memoryMB) {
+        return createContainer(projectId, imageId, port, envVars, memoryMB, SubscriptionPlan.FREE);
+    }
+    
+    /**
+     * Create container, replacing any existing container of the project
+     * @param projectId Project ID
+     * @param imageId Image ID
+     * @param port Application port
+     * @param envVars Environment variables
+     * @param memoryMB Memory limit in MB
+     * @param plan Plan whose CPU, I/O and pids limits apply
+     * @return Container ID
+     */
+    public String createContainer(String projectId, String imageId, int port, 
+                                  Map<String, String> envVars, int memoryMB, SubscriptionPlan plan) {
+        String containerName = "vision-" + projectId;
+        
+        // Stop and remove existing container if exists
+        try {
+            stopContainer(containerName);
+            removeContainer(containerName);
+        } catch (Exception e) {
+            // Container doesn't exist, continue
+        }
+        
+        return createContainer(projectId, containerName, imageId, port, envVars, memoryMB, plan);
+    }
+    
+    /**
+     * Create container under the given name, next to any existing container of the project
+     * @param projectId Project ID
+     * @param containerName Container name
+     * @param imageId Image ID
+     * @param port Application port
+     * @param envVars Environment variables
+     * @param memoryMB Memory limit in MB
+     * @param plan Plan whose CPU, I/O and pids limits apply
+     * @return Container ID
+     */
+    public String createContainer(String projectId, String containerName, String imageId, int port,
+                                  Map<String, String> envVars, int memoryMB, SubscriptionPlan plan) {
+        log.info("Creating container {} for project: {} ({} plan)", containerName, projectId, plan);
         
         try {
-            String containerName = "vision-" + projectId;
-            
-            // Stop and remove existing container if exists
-            try {
-                stopContainer(containerName);
-                removeContainer(containerName);
-            } catch (Exception e) {
-                // Container doesn't exist, continue
-            }
-            
             // Prepare environment variables
             List<String> env = new ArrayList<>();
             if (envVars != null) {
                 envVars.forEach((key, value) -> env.add(key + "=" + value));
             }
             
-            // Create container
-            CreateContainerResponse container = dockerClient.createContainerCmd(imageId)
-                    .withName(containerName)
-                    .withEnv(env)
-                    .withExposedPorts(ExposedPort.tcp(port))
-                    .withHostConfig(HostConfig.newHostConfig()
-                            .withPortBindings(new PortBinding(
-                                    Ports.Binding.bindPort(0), // Random host port
-                                    ExposedPort.tcp(port)
-                            ))
-                            .withMemory((long) memoryMB * 1024 * 1024)
-                            .withMemorySwap((long) memoryMB * 1024 * 1024)
-                            .withRestartPolicy(RestartPolicy.onFailureRestart(3))
-                    )
-                    .exec();
+            // CPU quota and weight, I/O weight and pids from the plan, so one tenant cannot starve its neighbours
+            long cpuPeriod = properties.getLimits().getCpuPeriod().toNanos() / 1000;
+            HostConfig hostConfig = HostConfig.newHostConfig()
+                    .withPortBindings(new PortBinding(
+                            Ports.Binding.bindPort(0), // Random host port
+                            ExposedPort.tcp(port)
+                    ))
+                    .withMemory((long) memoryMB * 1024 * 1024)
+                    .withMemorySwap((long) memoryMB * 1024 * 1024)
+                    .withCpuPeriod(cpuPeriod)
+                    .withCpuQuota(cpuPeriod * plan.getCpuMillis() / 1000)
+                    .withCpuShares(plan.getCpuShares())
+                    .withBlkioWeight(plan.getBlkioWeight())
+                    .withPidsLimit((long) plan.getPidsLimit())
+                    // The restart supervisor restarts crashed containers with backoff instead of Docker
+                    .withRestartPolicy(properties.getSupervisor().isEnabled()
+                            ? RestartPolicy.noRestart() : RestartPolicy.onFailureRestart(3));
             
-            String containerId = container.getId();
+            Map<String, String> labels = new HashMap<>();
+            labels.put(LABEL_PROJECT, projectId);
+            labels.put(LABEL_PLAN, plan.name());
             
-            // Start container
-            dockerClient.startContainerCmd(containerId).exec();
+            CreateContainerResponse container;
+            if (plan.getPinnedCpus() > 0 && cpusetAllocator.isEnabled()) {
+                // Pick and claim the cores in one step, or two creates could pick the same ones
+                synchronized (cpusetAllocator) {
+                    String cpuset = cpusetAllocator.allocate(plan.getPinnedCpus(), pinnedCpusets(projectId));
+                    hostConfig.withCpusetCpus(cpuset);
+                    labels.put(LABEL_CPUSET, cpuset);
+                    log.info("Pinning container {} to cpus {}", containerName, cpuset);
+                    container = execCreate(imageId, containerName, env, port, hostConfig, labels);
+                }
+            } else {
+                container = execCreate(imageId, containerName, env, port, hostConfig, labels);
+            }
             
-            log.info("Container started successfully: {}", containerId);
-            return containerId;
+            log.info("Container created: {}", container.getId());
+            return container.getId();
             
+        } catch (Exception e) {
+            log.error("Failed to create container", e);
+            throw new BusinessException("Failed to create container: " + e.getMessage());
+        }
+    }
+    
+    private CreateContainerResponse execCreate(String imageId, String containerName, List<String> env, int port,
+                                               HostConfig hostConfig, Map<String, String> labels) {
+        return dockerClient.createContainerCmd(imageId)
+                .withName(containerName)
+                .withEnv(env)
+                .withExposedPorts(ExposedPort.tcp(port))
+                .withLabels(labels)
+                .withHostConfig(hostConfig)
+                .exec();
+    }
+    
+    /**
+     * Cpusets of the pinned containers of other projects; the project's own
+     * container is about to be replaced, so its cores count as free
+     */
+    private List<String> pinnedCpusets(String projectId) {
+        List<String> cpusets = new ArrayList<>();
+        for (Container container : dockerClient.listContainersCmd().exec()) {
+            Map<String, String> labels = container.getLabels();
+            if (labels != null && labels.containsKey(LABEL_CPUSET) && !projectId.equals(labels.get(LABEL_PROJECT))) {
+                cpusets.add(labels.get(LABEL_CPUSET));
+            }
+        }
+        return cpusets;
+    }
+    
+    /**
+     * Start a created container
+     */
+    public void startCreatedContainer(String containerId) {
+        try {
+            dockerClient.startContainerCmd(containerId).exec();
+            log.info("Container started successfully: {}", containerId);
         } catch (Exception e) {
             log.error("Failed to start container", e);
             throw new BusinessException("Failed to start container: " + e.getMessage());
@@ -152,11 +489,15 @@ public class DockerService {
      * Stop container
      */
     public void stopContainer(String containerId) {
+        expectStop(containerId);
         try {
             dockerClient.stopContainerCmd(containerId)
                     .withTimeout(30)
                     .exec();
             log.info("Container stopped: {}", containerId);
+        } catch (NotModifiedException e) {
+            // Created but never started, or already stopped: the caller's remove still has to run
+            log.debug("Container {} was not running", containerId);
         } catch (Exception e) {
             log.error("Failed to stop container", e);
             throw new BusinessException("Failed to stop container: " + e.getMessage());
@@ -167,6 +508,7 @@ public class DockerService {
      * Remove container
      */
     public void removeContainer(String containerId) {
+        expectStop(containerId);
         try {
             dockerClient.removeContainerCmd(containerId)
                     .withForce(true)
@@ -177,24 +519,326 @@ public class DockerService {
         }
     }
     
+    /**
+     * Rename container
+     */
+    public void renameContainer(String containerId, String newName) {
+        try {
+            dockerClient.renameContainerCmd(containerId)
+                    .withName(newName)
+                    .exec();
+            log.info("Container {} renamed to {}", containerId, newName);
+        } catch (Exception e) {
+            log.error("Failed to rename container", e);
+            throw new BusinessException("Failed to rename container: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Change the memory limit of a running container in place
+     * @return false if the daemon refused the new limit, e.g. below what the container already uses
+     */
+    public boolean updateContainerMemory(String containerId, int memoryMB) {
+        long bytes = (long) memoryMB * 1024 * 1024;
+        try {
+            // Swap moves with the limit, as at creation; setting both at once avoids the swap < memory check
+            dockerClient.updateContainerCmd(containerId)
+                    .withMemory(bytes)
+                    .withMemorySwap(bytes)
+                    .exec();
+            log.info("Container {} memory limit updated to {} MB", containerId, memoryMB);
+            return true;
+        } catch (Exception e) {
+            log.warn("Daemon refused memory update of container {}: {}", containerId, e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Image, port, environment and memory limit of an existing container
+     * @return null if there is no such container
+     */
+    public ContainerSpec getContainerSpec(String containerId) {
+        InspectContainerResponse inspect;
+        try {
+            inspect = dockerClient.inspectContainerCmd(containerId).exec();
+        } catch (NotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            log.error("Failed to inspect container", e);
+            throw new BusinessException("Failed to inspect container: " + e.getMessage());
+        }
+        
+        ContainerSpec spec = new ContainerSpec();
+        spec.setContainerId(inspect.getId());
+        spec.setImageId(inspect.getImageId());
+        spec.setRunning(Boolean.TRUE.equals(inspect.getState().getRunning()));
+        spec.setExitCode(inspect.getState().getExitCodeLong() != null ? inspect.getState().getExitCodeLong().intValue() : null);
+        spec.setOomKilled(Boolean.TRUE.equals(inspect.getState().getOOMKilled()));
+        
+        ExposedPort[] exposedPorts = inspect.getConfig().getExposedPorts();
+        if (exposedPorts != null && exposedPorts.length > 0) {
+            spec.setPort(exposedPorts[0].getPort());
+        }
+        
+        Map<String, String> env = new LinkedHashMap<>();
+        if (inspect.getConfig().getEnv() != null) {
+            for (String entry : inspect.getConfig().getEnv()) {
+                int separator = entry.indexOf('=');
+                if (separator > 0) {
+                    env.put(entry.substring(0, separator), entry.substring(separator + 1));
+                }
+            }
+        }
+        spec.setEnvVars(env);
+        
+        Long memory = inspect.getHostConfig() != null ? inspect.getHostConfig().getMemory() : null;
+        spec.setMemoryMB(memory != null && memory > 0 ? (int) (memory / (1024 * 1024)) : null);
+        
+        Map<String, String> labels = inspect.getConfig().getLabels();
+        spec.setPlan(labels != null ? planOf(labels.get(LABEL_PLAN)) : null);
+        return spec;
+    }
+    
+    private static SubscriptionPlan planOf(String plan) {
+        try {
+            return plan != null ? SubscriptionPlan.valueOf(plan) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * One reading of a container's memory use, null if the container is gone or not running
+     */
+    public MemorySample getMemoryUsage(String containerId) {
+        Statistics[] reading = new Statistics[1];
+        try {
+            dockerClient.statsCmd(containerId)
+                    .withNoStream(true)
+                    .exec(new ResultCallback.Adapter<Statistics>() {
+                        @Override
+                        public void onNext(Statistics statistics) {
+                            reading[0] = statistics;
+                        }
+                    })
+                    .awaitCompletion(10, TimeUnit.SECONDS);
+        } catch (NotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            log.warn("Failed to read memory stats of container {}: {}", containerId, e.getMessage());
+            return null;
+        }
+        MemoryStatsConfig memory = reading[0] != null ? reading[0].getMemoryStats() : null;
+        if (memory == null || memory.getUsage() == null || memory.getUsage() <= 0) {
+            return null;
+        }
+        MemorySample sample = new MemorySample();
+        sample.setUsageBytes(memory.getUsage() - reclaimable(memory.getStats()));
+        sample.setLimitBytes(memory.getLimit() != null ? memory.getLimit() : 0);
+        sample.setTime(System.currentTimeMillis());
+        return sample;
+    }
+    
+    /**
+     * Page cache the kernel can drop under pressure, the part of "usage" an app does not need;
+     * cgroup v2 and v1 report it differently, older daemons only as cache
+     */
+    private static long reclaimable(StatsConfig stats) {
+        if (stats == null) {
+            return 0;
+        }
+        if (stats.getInactiveFile() != null) {
+            return stats.getInactiveFile();
+        }
+        if (stats.getTotalInactiveFile() != null) {
+            return stats.getTotalInactiveFile();
+        }
+        return stats.getCache() != null ? stats.getCache() : 0;
+    }
+    
     /**
      * Get container logs
      */
     public String getContainerLogs(String containerId, int tail) {
         try {
-            return dockerClient.logContainerCmd(containerId)
-                    .withStdOut(true)
-                    .withStdErr(true)
-                    .withTail(tail)
-                    .exec(new LogContainerResultCallback())
-                    .awaitCompletion()
-                    .toString();
+            return String.join("\n", fetchLogLines(containerId, tail));
         } catch (Exception e) {
             log.error("Failed to get container logs", e);
             return "Failed to retrieve logs";
         }
     }
     
+    /**
+     * Last lines of a container's stdout and stderr, empty if they cannot be read
+     */
+    public List<String> getContainerLogLines(String containerId, int tail) {
+        try {
+            return fetchLogLines(containerId, tail);
+        } catch (Exception e) {
+            log.warn("Failed to get logs of container {}: {}", containerId, e.getMessage());
+            return List.of();
+        }
+    }
+    
+    private List<String> fetchLogLines(String containerId, int tail) throws InterruptedException {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        dockerClient.logContainerCmd(containerId)
+                .withStdOut(true)
+                .withStdErr(true)
+                .withTail(tail)
+                .exec(new ResultCallback.Adapter<Frame>() {
+                    @Override
+                    public void onNext(Frame frame) {
+                        String text = new String(frame.getPayload(), StandardCharsets.UTF_8);
+                        for (String line : text.split("\\r?\\n")) {
+                            if (!line.isEmpty()) {
+                                lines.add(line);
+                            }
+                        }
+                    }
+                })
+                .awaitCompletion(30, TimeUnit.SECONDS);
+        return new ArrayList<>(lines);
+    }
+    
+    /**
+     * Follow the die events of project containers until the returned handle is closed
+     * @param sinceSeconds Replay events from this epoch second on, 0 for new events only
+     * @param listener Called for every container that stopped, on the event thread
+     * @param onClosed Called once if the stream ends or fails, so the caller can subscribe again
+     */
+    public Closeable subscribeContainerDeaths(long sinceSeconds, Consumer<ContainerDeath> listener,
+                                              Consumer<Throwable> onClosed) {
+        EventsCmd events = dockerClient.eventsCmd()
+                .withEventTypeFilter(EventType.CONTAINER)
+                .withEventFilter("die")
+                .withLabelFilter(LABEL_PROJECT);
+        if (sinceSeconds > 0) {
+            events.withSince(String.valueOf(sinceSeconds));
+        }
+        return events.exec(new ResultCallback.Adapter<Event>() {
+            @Override
+            public void onNext(Event event) {
+                Map<String, String> attributes = event.getActor() != null && event.getActor().getAttributes() != null
+                        ? event.getActor().getAttributes() : Map.of();
+                ContainerDeath death = new ContainerDeath();
+                death.setContainerId(event.getId());
+                death.setName(attributes.get("name"));
+                death.setProjectId(attributes.get(LABEL_PROJECT));
+                death.setExitCode(parseExitCode(attributes.get("exitCode")));
+                death.setTime(event.getTime() != null ? event.getTime() : System.currentTimeMillis() / 1000);
+                listener.accept(death);
+            }
+            
+            @Override
+            public void onError(Throwable throwable) {
+                super.onError(throwable);
+                onClosed.accept(throwable);
+            }
+            
+            @Override
+            public void onComplete() {
+                super.onComplete();
+                onClosed.accept(null);
+            }
+        });
+    }
+    
+    private static Integer parseExitCode(String exitCode) {
+        try {
+            return exitCode != null ? Integer.valueOf(exitCode) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Whether this service stopped or removed the container recently; each stop is reported once
+     */
+    public boolean isExpectedStop(String containerId) {
+        long cutoff = System.currentTimeMillis() - EXPECTED_STOP_TTL_MILLIS;
+        expectedStops.values().removeIf(at -> at < cutoff);
+        return containerId != null && expectedStops.remove(containerId) != null;
+    }
+    
+    /**
+     * Remember the ID behind a name, so a later container with the same name is still supervised
+     */
+    private void expectStop(String containerId) {
+        try {
+            String id = dockerClient.inspectContainerCmd(containerId).exec().getId();
+            if (id != null) {
+                expectedStops.put(id, System.currentTimeMillis());
+            }
+        } catch (Exception e) {
+            // Gone already: there is nothing left to die
+        }
+    }
+    
+    /**
+     * Running app containers by project, as named by {@link #createContainer}
+     */
+    public Map<String, String> getProjectContainers() {
+        return getProjectContainers(false);
+    }
+    
+    /**
+     * App containers by project, as named by {@link #createContainer}
+     * @param includeStopped Also list exited containers, e.g. ones that crashed while this service was down
+     */
+    public Map<String, String> getProjectContainers(boolean includeStopped) {
+        Map<String, String> projects = new HashMap<>();
+        for (Container container : dockerClient.listContainersCmd().withShowAll(includeStopped).exec()) {
+            Map<String, String> labels = container.getLabels();
+            String projectId = labels != null ? labels.get(LABEL_PROJECT) : null;
+            if (projectId != null && container.getNames() != null
+                    && Arrays.asList(container.getNames()).contains("/vision-" + projectId)) {
+                projects.put(projectId, container.getId());
+            }
+        }
+        return projects;
+    }
+    
+    /**
+     * Wait until a started container is ready: healthy if it declares a HEALTHCHECK,
+     * otherwise still running once the settle period has passed
+     * @return false if the container exited, turned unhealthy or did not get ready in time
+     */
+    public boolean awaitReady(String containerId, CancellationToken token) throws InterruptedException {
+        Duration timeout = properties.getTimeouts().getReadiness();
+        Duration settle = properties.getTimeouts().getReadinessSettle();
+        long start = System.nanoTime();
+        long deadline = start + timeout.toNanos();
+        
+        while (true) {
+            token.throwIfCancelled();
+            var state = dockerClient.inspectContainerCmd(containerId).exec().getState();
+            if (!Boolean.TRUE.equals(state.getRunning())) {
+                log.warn("Container {} is {} (exit code {})", containerId, state.getStatus(), state.getExitCodeLong());
+                return false;
+            }
+            
+            var health = state.getHealth();
+            if (health != null) {
+                if ("healthy".equalsIgnoreCase(health.getStatus())) {
+                    return true;
+                }
+                if ("unhealthy".equalsIgnoreCase(health.getStatus())) {
+                    return false;
+                }
+            } else if (System.nanoTime() - start >= settle.toNanos()) {
+                return true;
+            }
+            
+            if (System.nanoTime() - deadline > 0) {
+                log.warn("Container {} not ready after {}s", containerId, timeout.toSeconds());
+                return false;
+            }
+            Thread.sleep(READINESS_POLL_MILLIS);
+        }
+    }
+    
     /**
      * Check container health
      */
@@ -273,4 +917,122 @@ public class DockerService {
             log.debug("No image to cleanup or cleanup failed", e);
         }
     }
+    
+    /**
+     * Whether the daemon still has the image, e.g. one built by an earlier attempt
+     */
+    public boolean imageExists(String imageId) {
+        try {
+            dockerClient.inspectImageCmd(imageId).exec();
+            return true;
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Name of the Docker node this service builds on, used to tag metrics
+     */
+    public String getNodeName() {
+        return nodeName;
+    }
+    
+    /**
+     * What a container runs with, enough to recreate it
+     */
+    public static class ContainerSpec {
+        private String containerId;
+        private String imageId;
+        private Integer port;
+        private Map<String, String> envVars;
+        private Integer memoryMB;
+        private SubscriptionPlan plan;
+        private boolean running;
+        private Integer exitCode;
+        private boolean oomKilled;
+        
+        public String getContainerId() { return containerId; }
+        public void setContainerId(String containerId) { this.containerId = containerId; }
+        
+        public String getImageId() { return imageId; }
+        public void setImageId(String imageId) { this.imageId = imageId; }
+        
+        public Integer getPort() { return port; }
+        public void setPort(Integer port) { this.port = port; }
+        
+        public Map<String, String> getEnvVars() { return envVars; }
+        public void setEnvVars(Map<String, String> envVars) { this.envVars = envVars; }
+        
+        public Integer getMemoryMB() { return memoryMB; }
+        public void setMemoryMB(Integer memoryMB) { this.memoryMB = memoryMB; }
+        
+        public SubscriptionPlan getPlan() { return plan; }
+        public void setPlan(SubscriptionPlan plan) { this.plan = plan; }
+        
+        public boolean isRunning() { return running; }
+        public void setRunning(boolean running) { this.running = running; }
+        
+        public Integer getExitCode() { return exitCode; }
+        public void setExitCode(Integer exitCode) { this.exitCode = exitCode; }
+        
+        public boolean isOomKilled() { return oomKilled; }
+        public void setOomKilled(boolean oomKilled) { this.oomKilled = oomKilled; }
+    }
+    
+    /**
+     * Memory in use by a container without reclaimable page cache, and its limit
+     */
+    public static class MemorySample {
+        private long usageBytes;
+        private long limitBytes;
+        private long time;
+        
+        public long getUsageBytes() { return usageBytes; }
+        public void setUsageBytes(long usageBytes) { this.usageBytes = usageBytes; }
+        
+        public long getLimitBytes() { return limitBytes; }
+        public void setLimitBytes(long limitBytes) { this.limitBytes = limitBytes; }
+        
+        public long getTime() { return time; }
+        public void setTime(long time) { this.time = time; }
+    }
+    
+    /**
+     * A project container that stopped, from its die event
+     */
+    public static class ContainerDeath {
+        private String containerId;
+        private String name;
+        private String projectId;
+        private Integer exitCode;
+        private long time;
+        
+        public String getContainerId() { return containerId; }
+        public void setContainerId(String containerId) { this.containerId = containerId; }
+        
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        
+        public String getProjectId() { return projectId; }
+        public void setProjectId(String projectId) { this.projectId = projectId; }
+        
+        public Integer getExitCode() { return exitCode; }
+        public void setExitCode(Integer exitCode) { this.exitCode = exitCode; }
+        
+        public long getTime() { return time; }
+        public void setTime(long time) { this.time = time; }
+    }
+    
+    private String resolveNodeName() {
+        try {
+            return dockerClient.infoCmd().exec().getName();
+        } catch (Exception e) {
+            log.debug("Could not read Docker node name, using local host name", e);
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
 }
@@ -0,0 +1,86 @@
+package com.vision.paas.deploy.docker;
+
+import com.github.dockerjava.api.command.BuildImageResultCallback;
+import com.github.dockerjava.api.model.BuildResponseItem;
+import com.vision.paas.deploy.metrics.DeploymentTimeline;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Build callback that remembers the layers this build created, so a
+ * cancelled or timed-out build can remove them again, and records when
+ * the daemon first answered and how many steps came from cache
+ */
+public class TrackingBuildCallback extends BuildImageResultCallback {
+
+    private static final String STEP_RESULT_PREFIX = "---> ";
+
+    private final List<String> createdImageIds = new CopyOnWriteArrayList<>();
+    private boolean cachedStep;
+    private volatile long firstResponseNanos;
+    private volatile int steps;
+    private volatile int cachedSteps;
+
+    @Override
+    public void onNext(BuildResponseItem item) {
+        if (firstResponseNanos == 0) {
+            firstResponseNanos = System.nanoTime();
+        }
+        String stream = item.getStream();
+        if (stream != null) {
+            trackStep(stream.trim());
+        }
+        super.onNext(item);
+    }
+
+    /**
+     * The legacy builder ends every step with " ---> <id>", preceded by
+     * " ---> Using cache" when the layer already existed
+     */
+    private void trackStep(String line) {
+        if (!line.startsWith(STEP_RESULT_PREFIX)) {
+            return;
+        }
+        String value = line.substring(STEP_RESULT_PREFIX.length()).trim();
+        if ("Using cache".equals(value)) {
+            cachedStep = true;
+        } else if (!value.isEmpty() && !value.contains(" ")) {
+            steps++;
+            if (cachedStep) {
+                cachedSteps++;
+            } else {
+                createdImageIds.add(value);
+            }
+            cachedStep = false;
+        }
+    }
+
+    /**
+     * Layers created by this build, oldest first
+     */
+    public List<String> getCreatedImageIds() {
+        return createdImageIds;
+    }
+
+    /**
+     * System.nanoTime() of the first response item; the daemon only answers
+     * once it has received the whole build context. 0 if none arrived yet.
+     */
+    public long getFirstResponseNanos() {
+        return firstResponseNanos;
+    }
+
+    /**
+     * Cache outcome over all finished steps
+     */
+    public String getCacheResult() {
+        if (steps == 0) {
+            return DeploymentTimeline.CACHE_NONE;
+        }
+        if (cachedSteps == steps) {
+            return DeploymentTimeline.CACHE_HIT;
+        }
+        return cachedSteps == 0 ? DeploymentTimeline.CACHE_MISS : DeploymentTimeline.CACHE_PARTIAL;
+    }
+}
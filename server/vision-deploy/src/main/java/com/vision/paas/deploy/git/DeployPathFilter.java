@@ -0,0 +1,113 @@
+package com.vision.paas.deploy.git;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Deploy Path Filter
+ * Decides whether a changed repository path should trigger a build.
+ *
+ * Patterns are repository-relative globs ("apps/web/**"); a glob without a slash
+ * ("*.md") matches the file name at any depth. A pattern without glob characters
+ * matches that file or anything below that directory. With no include patterns
+ * every path is included; exclude patterns always win.
+ */
+public class DeployPathFilter {
+
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+
+    public DeployPathFilter(Collection<String> includes, Collection<String> excludes) {
+        this.includes = compile(includes);
+        this.excludes = compile(excludes);
+    }
+
+    /**
+     * Filter for a deploy: the explicit includes, or else the root directory and
+     * the directories it depends on
+     */
+    public static DeployPathFilter of(String rootDirectory, List<String> dependsOn,
+                                      List<String> includePaths, List<String> excludePaths) {
+        List<String> includes = new ArrayList<>();
+        if (includePaths != null && !includePaths.isEmpty()) {
+            includes.addAll(includePaths);
+        } else if (rootDirectory != null && !rootDirectory.isBlank()) {
+            includes.add(rootDirectory);
+            if (dependsOn != null) {
+                includes.addAll(dependsOn);
+            }
+        }
+        return new DeployPathFilter(includes, excludePaths);
+    }
+
+    public boolean isRelevant(String path) {
+        if (!includes.isEmpty() && includes.stream().noneMatch(pattern -> pattern.matches(path))) {
+            return false;
+        }
+        return excludes.stream().noneMatch(pattern -> pattern.matches(path));
+    }
+
+    /**
+     * Changed paths the filter lets through
+     */
+    public List<String> relevant(Collection<String> changedPaths) {
+        return changedPaths.stream().filter(this::isRelevant).toList();
+    }
+
+    private static List<Pattern> compile(Collection<String> patterns) {
+        List<Pattern> compiled = new ArrayList<>();
+        if (patterns == null) {
+            return compiled;
+        }
+        for (String raw : patterns) {
+            if (raw == null || raw.isBlank()) {
+                continue;
+            }
+            String pattern = raw.trim().replace('\\', '/');
+            while (pattern.startsWith("./") || pattern.startsWith("/")) {
+                pattern = pattern.substring(pattern.startsWith("/") ? 1 : 2);
+            }
+            pattern = pattern.replaceAll("/+$", "");
+            compiled.add(new Pattern(pattern));
+        }
+        return compiled;
+    }
+
+    /**
+     * One include or exclude pattern
+     */
+    private static class Pattern {
+        private final String prefix;
+        private final PathMatcher glob;
+        private final boolean fileName;
+
+        Pattern(String pattern) {
+            if (pattern.isEmpty() || ".".equals(pattern)) {
+                this.prefix = "";
+                this.glob = null;
+                this.fileName = false;
+            } else if (pattern.matches(".*[*?\\[{].*")) {
+                this.prefix = null;
+                this.glob = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+                this.fileName = !pattern.contains("/");
+            } else {
+                this.prefix = pattern;
+                this.glob = null;
+                this.fileName = false;
+            }
+        }
+
+        boolean matches(String path) {
+            if (glob != null) {
+                Path candidate = Paths.get(path);
+                return glob.matches(fileName ? candidate.getFileName() : candidate);
+            }
+            return prefix.isEmpty() || path.equals(prefix) || path.startsWith(prefix + "/");
+        }
+    }
+}
@@ -1,15 +1,38 @@
 package com.vision.paas.deploy.git;
 
 import com.vision.paas.common.exception.BusinessException;
+import com.vision.paas.deploy.config.DeployProperties;
+import com.vision.paas.deploy.scheduler.CancellationToken;
+import com.vision.paas.deploy.workspace.WorkspaceManager;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.EmptyProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Git Service
@@ -17,9 +40,13 @@ import java.nio.file.Paths;
  */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class GitService {
     
-    private static final String CLONE_BASE_PATH = "/tmp/vision-deploy";
+    private static final String SPARSE_MARKER = "vision-sparse-paths";
+    
+    private final DeployProperties properties;
+    private final WorkspaceManager workspaceManager;
     
     /**
      * Clone a Git repository
@@ -28,69 +55,224 @@ public class GitService {
      * @return Path to cloned repository
      */
     public String cloneRepository(String gitUrl, String projectId) {
-        log.info("Cloning repository: {} for project: {}", gitUrl, projectId);
+        return cloneRepository(gitUrl, projectId, new CancellationToken());
+    }
+    
+    /**
+     * Clone a Git repository into the project's workspace, giving up when cancelled
+     * or past the clone timeout. The previous checkout of the project is updated in
+     * place when it tracks the same URL, so unchanged files are not written again.
+     * The deployment holds the workspace until {@link #release} or {@link #cleanup}.
+     * @param gitUrl Repository URL
+     * @param projectId Project ID for directory naming
+     * @param token Cancellation token of the deployment
+     * @return Path to cloned repository
+     */
+    public String cloneRepository(String gitUrl, String projectId, CancellationToken token) {
+        return cloneRepository(gitUrl, projectId, token, null);
+    }
+    
+    /**
+     * Clone a Git repository, materialising only the given paths when there are any
+     * (sparse checkout). All history is fetched either way, so changes outside the
+     * paths can still be diffed.
+     * @param gitUrl Repository URL
+     * @param projectId Project ID for directory naming
+     * @param token Cancellation token of the deployment
+     * @param sparsePaths Directories or files to check out, relative to the repository root; null for all
+     * @return Path to cloned repository
+     */
+    public String cloneRepository(String gitUrl, String projectId, CancellationToken token,
+                                  List<String> sparsePaths) {
+        log.info("Cloning repository: {} for project: {}{}", gitUrl, projectId,
+                sparsePaths != null && !sparsePaths.isEmpty() ? " (sparse: " + sparsePaths + ")" : "");
+        List<String> paths = normalizeSparsePaths(sparsePaths);
+        
+        Duration timeout = properties.getTimeouts().getClone();
+        CloneMonitor monitor = new CloneMonitor(token, timeout);
+        
+        // Waits while the disk is under pressure or another deploy of the project holds it
+        File targetDir = workspaceManager.acquire(projectId, token).toFile();
+        String targetPath = targetDir.getPath();
         
         try {
-            // Create base directory if not exists
-            Path basePath = Paths.get(CLONE_BASE_PATH);
-            if (!Files.exists(basePath)) {
-                Files.createDirectories(basePath);
+            if (updateCheckout(gitUrl, targetDir, monitor, projectId, paths)) {
+                log.info("Updated existing checkout in: {}", targetPath);
+                workspaceManager.updateUsage(projectId, token);
+                return targetPath;
             }
+            abortIfStopped(monitor, token, projectId);
             
-            // Create project-specific directory
-            String targetPath = CLONE_BASE_PATH + "/" + projectId;
-            File targetDir = new File(targetPath);
-            
-            // Clean up existing directory
-            if (targetDir.exists()) {
-                deleteDirectory(targetDir);
-            }
-            
-            // Clone repository
-            Git git = Git.cloneRepository()
-                    .setURI(gitUrl)
-                    .setDirectory(targetDir)
-                    .setBranch("main")
-                    .call();
-            
-            git.close();
+            workspaceManager.clear(projectId, token);
+            cloneBranch(gitUrl, targetDir, "main", monitor, paths);
             
             log.info("Successfully cloned repository to: {}", targetPath);
+            workspaceManager.updateUsage(projectId, token);
             return targetPath;
             
         } catch (GitAPIException e) {
+            abortIfStopped(monitor, token, projectId);
             log.error("Failed to clone repository", e);
             
             // Try with master branch if main fails
             try {
-                String targetPath = CLONE_BASE_PATH + "/" + projectId;
-                File targetDir = new File(targetPath);
-                
-                if (targetDir.exists()) {
-                    deleteDirectory(targetDir);
-                }
-                
-                Git git = Git.cloneRepository()
-                        .setURI(gitUrl)
-                        .setDirectory(targetDir)
-                        .setBranch("master")
-                        .call();
-                
-                git.close();
+                workspaceManager.clear(projectId, token);
+                cloneBranch(gitUrl, targetDir, "master", monitor, paths);
                 
                 log.info("Successfully cloned repository (master branch) to: {}", targetPath);
+                workspaceManager.updateUsage(projectId, token);
                 return targetPath;
                 
+            } catch (BusinessException ex) {
+                throw ex;
             } catch (Exception ex) {
+                abortIfStopped(monitor, token, projectId);
+                cleanup(projectId, token);
                 throw new BusinessException("Failed to clone repository: " + ex.getMessage());
             }
             
+        } catch (BusinessException e) {
+            throw e;
         } catch (Exception e) {
+            abortIfStopped(monitor, token, projectId);
             log.error("Unexpected error while cloning", e);
+            cleanup(projectId, token);
             throw new BusinessException("Failed to clone repository: " + e.getMessage());
         }
     }
     
+    private void cloneBranch(String gitUrl, File targetDir, String branch, CloneMonitor monitor,
+                             List<String> sparsePaths) throws GitAPIException, IOException {
+        // The transport timeout bounds each network read; the monitor bounds the whole clone
+        try (Git git = Git.cloneRepository()
+                .setURI(gitUrl)
+                .setDirectory(targetDir)
+                .setBranch(branch)
+                .setNoCheckout(!sparsePaths.isEmpty())
+                .setTimeout((int) Math.max(1, monitor.remainingSeconds()))
+                .setProgressMonitor(monitor)
+                .call()) {
+            if (!sparsePaths.isEmpty()) {
+                checkoutPaths(git, sparsePaths);
+            }
+            writeSparseMarker(git, sparsePaths);
+        }
+    }
+    
+    /**
+     * Write only the given paths of HEAD to the working tree and index
+     */
+    private void checkoutPaths(Git git, List<String> sparsePaths) throws GitAPIException {
+        git.checkout()
+                .setStartPoint(Constants.HEAD)
+                .addPaths(sparsePaths)
+                .call();
+    }
+    
+    /**
+     * Remember which paths a checkout holds, so a reused workspace with other paths is recloned
+     */
+    private void writeSparseMarker(Git git, List<String> sparsePaths) throws IOException {
+        Files.writeString(git.getRepository().getDirectory().toPath().resolve(SPARSE_MARKER),
+                String.join("\n", sparsePaths));
+    }
+    
+    private List<String> readSparseMarker(Git git) throws IOException {
+        Path marker = git.getRepository().getDirectory().toPath().resolve(SPARSE_MARKER);
+        if (!Files.exists(marker)) {
+            return List.of();
+        }
+        return Files.readAllLines(marker).stream().filter(line -> !line.isBlank()).toList();
+    }
+    
+    /**
+     * Repository-relative, forward-slash paths without "." or ".." segments, sorted
+     */
+    private List<String> normalizeSparsePaths(List<String> sparsePaths) {
+        if (sparsePaths == null) {
+            return List.of();
+        }
+        TreeSet<String> normalized = new TreeSet<>();
+        for (String raw : sparsePaths) {
+            if (raw == null || raw.isBlank()) {
+                continue;
+            }
+            String path = raw.trim().replace('\\', '/');
+            while (path.startsWith("./")) {
+                path = path.substring(2);
+            }
+            path = path.replaceAll("/+$", "");
+            if (path.isEmpty() || ".".equals(path)) {
+                // The repository root: no point in a sparse checkout
+                return List.of();
+            }
+            if (path.startsWith("/") || Arrays.asList(path.split("/")).contains("..")) {
+                throw new BusinessException(400, "Checkout path must stay inside the repository: " + raw);
+            }
+            normalized.add(path);
+        }
+        return new ArrayList<>(normalized);
+    }
+    
+    /**
+     * Bring a kept checkout of the same remote up to date: fetch, hard reset to the
+     * remote branch (only files whose content changed are rewritten) and remove
+     * untracked files such as the generated Dockerfile. A sparse checkout moves the
+     * index only and rewrites just its paths.
+     * @return false if there is no reusable checkout or updating it failed
+     */
+    private boolean updateCheckout(String gitUrl, File targetDir, CloneMonitor monitor, String projectId,
+                                   List<String> sparsePaths) {
+        if (!properties.getWorkspace().isReuse() || !new File(targetDir, ".git").isDirectory()) {
+            return false;
+        }
+        try (Git git = Git.open(targetDir)) {
+            String remoteUrl = git.getRepository().getConfig().getString("remote", "origin", "url");
+            if (!gitUrl.equals(remoteUrl)) {
+                log.info("[{}] Repository URL changed, cloning again", projectId);
+                return false;
+            }
+            if (!sparsePaths.equals(readSparseMarker(git))) {
+                log.info("[{}] Checkout paths changed, cloning again", projectId);
+                return false;
+            }
+            String branch = git.getRepository().getBranch();
+            git.fetch()
+                    .setRemote("origin")
+                    .setTimeout((int) Math.max(1, monitor.remainingSeconds()))
+                    .setProgressMonitor(monitor)
+                    .call();
+            git.reset()
+                    .setMode(sparsePaths.isEmpty() ? ResetCommand.ResetType.HARD : ResetCommand.ResetType.MIXED)
+                    .setRef("origin/" + branch)
+                    .call();
+            if (!sparsePaths.isEmpty()) {
+                checkoutPaths(git, sparsePaths);
+            }
+            git.clean()
+                    .setCleanDirectories(true)
+                    .setIgnore(false)
+                    .setForce(true)
+                    .call();
+            return true;
+        } catch (Exception e) {
+            log.warn("[{}] Could not update existing checkout, cloning again", projectId, e);
+            return false;
+        }
+    }
+    
+    /**
+     * Turn a clone failure caused by cancel or timeout into the matching error
+     */
+    private void abortIfStopped(CloneMonitor monitor, CancellationToken token, String projectId) {
+        if (!token.isCancelled() && !monitor.isTimedOut()) {
+            return;
+        }
+        cleanup(projectId, token);
+        token.throwIfCancelled();
+        throw new BusinessException(408, "Clone timed out after " + monitor.timeout.toSeconds() + "s");
+    }
+    
     /**
      * Pull latest changes from repository
      */
@@ -106,6 +288,42 @@ public class GitService {
         }
     }
     
+    /**
+     * Paths changed between a commit and the checkout's HEAD, both sides of renames included
+     * @param repoPath Path to cloned repository
+     * @param fromCommit Earlier commit, e.g. the last deployed one
+     * @return Changed paths, or null if the commit is not in the repository (e.g. after a force push)
+     */
+    public List<String> getChangedPaths(String repoPath, String fromCommit) {
+        try (Git git = Git.open(new File(repoPath));
+             ObjectReader reader = git.getRepository().newObjectReader();
+             RevWalk walk = new RevWalk(reader)) {
+            Repository repository = git.getRepository();
+            ObjectId from = repository.resolve(fromCommit + "^{commit}");
+            ObjectId to = repository.resolve(Constants.HEAD + "^{commit}");
+            if (from == null || to == null) {
+                return null;
+            }
+            CanonicalTreeParser oldTree = new CanonicalTreeParser(null, reader, walk.parseCommit(from).getTree());
+            CanonicalTreeParser newTree = new CanonicalTreeParser(null, reader, walk.parseCommit(to).getTree());
+            Set<String> paths = new TreeSet<>();
+            for (DiffEntry entry : git.diff().setOldTree(oldTree).setNewTree(newTree).setShowNameAndStatusOnly(true).call()) {
+                if (!DiffEntry.DEV_NULL.equals(entry.getOldPath())) {
+                    paths.add(entry.getOldPath());
+                }
+                if (!DiffEntry.DEV_NULL.equals(entry.getNewPath())) {
+                    paths.add(entry.getNewPath());
+                }
+            }
+            return new ArrayList<>(paths);
+        } catch (MissingObjectException | IncorrectObjectTypeException e) {
+            return null;
+        } catch (Exception e) {
+            log.error("Failed to diff against commit {}", fromCommit, e);
+            return null;
+        }
+    }
+    
     /**
      * Get current commit SHA
      */
@@ -122,35 +340,80 @@ public class GitService {
     }
     
     /**
-     * Clean up cloned repository
+     * Commit the deployed branch points at on the remote: main, or master when there is no main
+     * @return The commit SHA, or null if the remote could not be asked or has neither branch
      */
-    public void cleanup(String projectId) {
+    public String getRemoteHead(String gitUrl) {
         try {
-            String targetPath = CLONE_BASE_PATH + "/" + projectId;
-            File targetDir = new File(targetPath);
-            if (targetDir.exists()) {
-                deleteDirectory(targetDir);
-                log.info("Cleaned up repository for project: {}", projectId);
+            Map<String, Ref> heads = Git.lsRemoteRepository()
+                    .setRemote(gitUrl)
+                    .setHeads(true)
+                    .setTimeout((int) Math.max(1, properties.getTimeouts().getClone().toSeconds()))
+                    .callAsMap();
+            Ref head = heads.get(Constants.R_HEADS + "main");
+            if (head == null) {
+                head = heads.get(Constants.R_HEADS + "master");
             }
+            return head != null && head.getObjectId() != null ? head.getObjectId().getName() : null;
+        } catch (Exception e) {
+            log.warn("Failed to read the remote head of {}: {}", gitUrl, e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Hand the project's workspace back once the deployment no longer needs the
+     * checkout; it is kept so the next deploy can update it instead of cloning
+     */
+    public void release(String projectId, CancellationToken token) {
+        workspaceManager.release(projectId, token);
+    }
+    
+    /**
+     * Clean up cloned repository; deletion happens in the background
+     */
+    public void cleanup(String projectId) {
+        cleanup(projectId, null);
+    }
+    
+    /**
+     * Clean up the cloned repository of a deployment, unless another deployment holds it
+     */
+    public void cleanup(String projectId, CancellationToken token) {
+        try {
+            workspaceManager.discard(projectId, token);
+            log.info("Cleaned up repository for project: {}", projectId);
         } catch (Exception e) {
             log.error("Failed to cleanup repository", e);
         }
     }
     
     /**
-     * Recursively delete directory
+     * Progress monitor that JGit polls between work units; reports cancelled
+     * once the deployment is cancelled or the clone deadline has passed
      */
-    private void deleteDirectory(File directory) {
-        File[] files = directory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    deleteDirectory(file);
-                } else {
-                    file.delete();
-                }
-            }
+    private static class CloneMonitor extends EmptyProgressMonitor {
+        private final CancellationToken token;
+        private final Duration timeout;
+        private final long deadline;
+        
+        CloneMonitor(CancellationToken token, Duration timeout) {
+            this.token = token;
+            this.timeout = timeout;
+            this.deadline = System.nanoTime() + timeout.toNanos();
+        }
+        
+        @Override
+        public boolean isCancelled() {
+            return token.isCancelled() || isTimedOut();
+        }
+        
+        boolean isTimedOut() {
+            return System.nanoTime() - deadline > 0;
+        }
+        
+        long remainingSeconds() {
+            return Duration.ofNanos(deadline - System.nanoTime()).toSeconds();
         }
-        directory.delete();
     }
 }
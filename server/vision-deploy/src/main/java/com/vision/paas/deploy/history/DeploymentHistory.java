@@ -0,0 +1,694 @@
+package com.vision.paas.deploy.history;
+
+import com.vision.paas.common.enums.DeploymentStatus;
+import com.vision.paas.common.exception.BusinessException;
+import com.vision.paas.deploy.config.DeployProperties;
+import com.vision.paas.deploy.history.DeploymentHistoryRepository.StoredLog;
+import com.vision.paas.deploy.metrics.DeploymentTimeline;
+import com.vision.paas.deploy.service.AutoDeployService.DeploymentResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Deployment History
+ * Persists every deployment to the deployments table, with each status transition and
+ * stage timing in deployment_events and the gzip-compressed log in deployment_logs.
+ * Deployments only put writes on a bounded queue; one writer thread sends them in
+ * batches, coalescing the updates of a deployment to its latest state. When the queue
+ * is full writes are dropped and counted rather than slowing deployments down.
+ * History is read newest first with an opaque (created_at, id) cursor.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DeploymentHistory {
+
+    public static final String KIND_STATUS = "status";
+    public static final String KIND_STAGE = "stage";
+
+    private static final Pattern UUID_PATTERN =
+            Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private final DeployProperties properties;
+    private final DeploymentHistoryRepository repository;
+    private final MeterRegistry registry;
+
+    // Deployments of unknown projects; their remaining writes are skipped
+    private final Set<String> rejected = ConcurrentHashMap.newKeySet();
+    private BlockingQueue<PendingWrite> queue;
+    private Thread writer;
+    private volatile boolean running;
+    private Counter queueFull;
+    private Counter writeFailed;
+
+    @PostConstruct
+    public void init() {
+        if (!properties.getHistory().isEnabled() || repository == null) {
+            log.info("Deployment history disabled");
+            return;
+        }
+        queue = new LinkedBlockingQueue<>(properties.getHistory().getQueueCapacity());
+        queueFull = Counter.builder("vision.deploy.history.dropped")
+                .description("Deployment history writes not persisted")
+                .tag("reason", "queue_full")
+                .register(registry);
+        writeFailed = Counter.builder("vision.deploy.history.dropped")
+                .description("Deployment history writes not persisted")
+                .tag("reason", "write_failed")
+                .register(registry);
+        Gauge.builder("vision.deploy.history.queue", queue, BlockingQueue::size)
+                .description("Deployment history writes waiting for the writer")
+                .register(registry);
+
+        running = true;
+        writer = new Thread(this::writeLoop, "deploy-history-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stop taking new batches and write out what is queued
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * Start recording a deployment: gives it an id and persists every later status change
+     */
+    public void record(DeploymentResult result) {
+        if (queue == null || !isUuid(result.getProjectId())) {
+            return;
+        }
+        result.setDeploymentId(UUID.randomUUID().toString());
+        offer(PendingWrite.insert(snapshot(result, null)));
+        offer(PendingWrite.event(statusEvent(result)));
+        result.onStatusChange(this::transition);
+    }
+
+    /**
+     * Record the outcome of a deployment: final state, stage timings and log
+     */
+    public void finish(DeploymentResult result) {
+        if (queue == null || result.getDeploymentId() == null) {
+            return;
+        }
+        result.onStatusChange(null);
+        offer(PendingWrite.update(snapshot(result, System.currentTimeMillis())));
+        for (DeploymentTimeline.StageTiming stage : result.getTimeline().getStages()) {
+            DeploymentEvent event = new DeploymentEvent();
+            event.setDeploymentId(result.getDeploymentId());
+            event.setKind(KIND_STAGE);
+            event.setName(stage.getStage());
+            event.setAt(stage.getStartedAt());
+            event.setDurationMs(stage.getDurationMs());
+            event.setSuccess(stage.isSuccess());
+            offer(PendingWrite.event(event));
+        }
+        offer(PendingWrite.log(result.getDeploymentId(), result.getLogs()));
+    }
+
+    /**
+     * Mark the deployment that started the container FAILED once the restart supervisor gave up
+     * on it, appending the container's last log lines to the deployment log
+     * @param reason Error message of the deployment, e.g. the exit code
+     */
+    public void recordCrashFailure(String projectId, String containerId, String reason, List<String> logLines) {
+        if (queue == null || !isUuid(projectId)) {
+            return;
+        }
+        DeploymentRecord record;
+        String previousLog;
+        try {
+            record = repository.findByContainer(projectId, containerId);
+            StoredLog stored = record != null ? repository.findLog(record.getId()) : null;
+            previousLog = stored != null ? gunzip(stored.getContent()) : "";
+        } catch (DataAccessException e) {
+            log.warn("[{}] Failed to record crash of container {}: {}", projectId, containerId, e.getMessage());
+            return;
+        }
+        if (record == null) {
+            log.debug("[{}] No deployment recorded for container {}", projectId, containerId);
+            return;
+        }
+
+        record.setStatus(statusOf(DeploymentStatus.FAILED));
+        record.setState(DeploymentStatus.FAILED.name());
+        record.setErrorMessage(reason);
+        offer(PendingWrite.update(record));
+        DeploymentEvent event = new DeploymentEvent();
+        event.setDeploymentId(record.getId());
+        event.setKind(KIND_STATUS);
+        event.setName(DeploymentStatus.FAILED.name());
+        event.setAt(System.currentTimeMillis());
+        offer(PendingWrite.event(event));
+
+        StringBuilder text = new StringBuilder(previousLog);
+        if (text.length() > 0 && text.charAt(text.length() - 1) != '\n') {
+            text.append('\n');
+        }
+        text.append("--- ").append(reason).append("; last ").append(logLines.size())
+                .append(" lines of the container log ---\n");
+        logLines.forEach(line -> text.append(line).append('\n'));
+        offer(PendingWrite.log(record.getId(), text.toString()));
+    }
+
+    /**
+     * State of the deployment that started the container, null if none is recorded
+     */
+    public String getContainerState(String projectId, String containerId) {
+        if (queue == null || !isUuid(projectId)) {
+            return null;
+        }
+        try {
+            DeploymentRecord record = repository.findByContainer(projectId, containerId);
+            return record != null ? record.getState() : null;
+        } catch (DataAccessException e) {
+            log.warn("[{}] Failed to read state of container {}: {}", projectId, containerId, e.getMessage());
+            return null;
+        }
+    }
+
+    private void transition(DeploymentResult result) {
+        offer(PendingWrite.update(snapshot(result, null)));
+        offer(PendingWrite.event(statusEvent(result)));
+    }
+
+    private void offer(PendingWrite write) {
+        if (!queue.offer(write)) {
+            queueFull.increment();
+            log.debug("[{}] History queue full, {} write dropped", write.deploymentId, write.type);
+        }
+    }
+
+    /**
+     * One page of the project's deployments, newest first
+     * @param cursor Cursor of the previous page, null for the first one
+     * @param limit Page size, null for the configured default
+     */
+    public HistoryPage getHistory(String projectId, String cursor, Integer limit) {
+        requireEnabled();
+        DeployProperties.History config = properties.getHistory();
+        int size = Math.max(1, Math.min(limit != null ? limit : config.getPageSize(), config.getMaxPageSize()));
+        HistoryPage page = new HistoryPage();
+        if (!isUuid(projectId)) {
+            return page;
+        }
+
+        Long createdBefore = null;
+        String idBefore = null;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] parts = decodeCursor(cursor);
+            createdBefore = Long.parseLong(parts[0]);
+            idBefore = parts[1];
+        }
+        // One extra row tells whether there is a next page
+        List<DeploymentRecord> records = repository.findPage(projectId, createdBefore, idBefore, size + 1);
+        if (records.size() > size) {
+            records = new ArrayList<>(records.subList(0, size));
+            DeploymentRecord last = records.get(size - 1);
+            page.setNextCursor(encodeCursor(last.getCreatedAt(), last.getId()));
+        }
+        page.setItems(records);
+        return page;
+    }
+
+    /**
+     * A deployment of the project with its status transitions and stage timings, null if unknown
+     */
+    public DeploymentDetail getDeployment(String projectId, String deploymentId) {
+        requireEnabled();
+        if (!isUuid(projectId) || !isUuid(deploymentId)) {
+            return null;
+        }
+        DeploymentRecord record = repository.find(projectId, deploymentId);
+        if (record == null) {
+            return null;
+        }
+        DeploymentDetail detail = new DeploymentDetail();
+        detail.setDeployment(record);
+        detail.setEvents(repository.findEvents(deploymentId));
+        return detail;
+    }
+
+    /**
+     * Log of a deployment of the project, null if unknown or not written yet
+     */
+    public String getLogs(String projectId, String deploymentId) {
+        requireEnabled();
+        if (!isUuid(projectId) || !isUuid(deploymentId) || repository.find(projectId, deploymentId) == null) {
+            return null;
+        }
+        StoredLog stored = repository.findLog(deploymentId);
+        return stored != null ? gunzip(stored.getContent()) : null;
+    }
+
+    /**
+     * Commit of the project's last deployment that ended up running, null if none is recorded
+     */
+    public String getLastDeployedCommit(String projectId) {
+        if (queue == null || !isUuid(projectId)) {
+            return null;
+        }
+        try {
+            return repository.findLastDeployedCommit(projectId);
+        } catch (DataAccessException e) {
+            log.warn("[{}] Failed to read last deployed commit: {}", projectId, e.getMessage());
+            return null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return queue != null;
+    }
+
+    private void requireEnabled() {
+        if (queue == null) {
+            throw new BusinessException(503, "Deployment history is disabled");
+        }
+    }
+
+    private void writeLoop() {
+        int batchSize = Math.max(1, properties.getHistory().getBatchSize());
+        long lingerNanos = properties.getHistory().getLinger().toNanos();
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Give a burst of writes a moment to join the batch
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize && running) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                writeFailed.increment(batch.size());
+                log.warn("Dropped {} history writes: {}", batch.size(), e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Write one batch statement by statement. Writes are queued in order, so a deployment's
+     * insert is never in a later batch than its updates, and inserts go first within one.
+     */
+    private void write(List<PendingWrite> batch) {
+        List<DeploymentRecord> inserts = new ArrayList<>();
+        Map<String, DeploymentRecord> updates = new LinkedHashMap<>();
+        List<DeploymentEvent> events = new ArrayList<>();
+        List<PendingWrite> logs = new ArrayList<>();
+        for (PendingWrite write : batch) {
+            switch (write.type) {
+                case INSERT -> inserts.add(write.record);
+                // Only the latest state of a deployment is worth writing
+                case UPDATE -> updates.put(write.deploymentId, write.record);
+                case EVENT -> events.add(write.event);
+                case LOG -> logs.add(write);
+            }
+        }
+
+        if (!inserts.isEmpty()) {
+            insert(inserts);
+        }
+        List<DeploymentRecord> updated = updates.values().stream().filter(this::accepted).toList();
+        if (!updated.isEmpty()) {
+            writeAll("update", updated, repository::updateDeployments);
+        }
+        List<DeploymentEvent> accepted = events.stream().filter(this::accepted).toList();
+        if (!accepted.isEmpty()) {
+            writeAll("event", accepted, repository::insertEvents);
+        }
+        List<StoredLog> compressed = new ArrayList<>();
+        for (PendingWrite write : logs) {
+            // The log is the last write of a deployment
+            if (rejected.remove(write.deploymentId)) {
+                continue;
+            }
+            byte[] text = write.log.getBytes(StandardCharsets.UTF_8);
+            compressed.add(new StoredLog(write.deploymentId, text.length, gzip(text)));
+        }
+        if (!compressed.isEmpty()) {
+            writeAll("log", compressed, repository::saveLogs);
+        }
+    }
+
+    private void insert(List<DeploymentRecord> records) {
+        try {
+            int[] counts = repository.insertDeployments(records);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    log.debug("[{}] Project not found, deployment {} not recorded",
+                            records.get(i).getProjectId(), records.get(i).getId());
+                    rejected.add(records.get(i).getId());
+                }
+            }
+        } catch (DataIntegrityViolationException e) {
+            if (records.size() == 1) {
+                writeFailed.increment();
+                rejected.add(records.get(0).getId());
+                log.warn("[{}] Deployment {} not recorded: {}", records.get(0).getProjectId(),
+                        records.get(0).getId(), e.getMessage());
+                return;
+            }
+            records.forEach(record -> insert(List.of(record)));
+        }
+    }
+
+    /**
+     * Send rows as one batch; when a row breaks a constraint, send them one by one so only it is lost
+     */
+    private <T> void writeAll(String what, List<T> rows, Consumer<List<T>> statement) {
+        try {
+            statement.accept(rows);
+        } catch (DataIntegrityViolationException e) {
+            if (rows.size() == 1) {
+                writeFailed.increment();
+                log.warn("History {} dropped: {}", what, e.getMessage());
+                return;
+            }
+            rows.forEach(row -> writeAll(what, List.of(row), statement));
+        } catch (DataAccessException e) {
+            writeFailed.increment(rows.size());
+            log.warn("Dropped {} history {} writes: {}", rows.size(), what, e.getMessage());
+        }
+    }
+
+    private boolean accepted(DeploymentRecord record) {
+        return !rejected.contains(record.getId());
+    }
+
+    private boolean accepted(DeploymentEvent event) {
+        return !rejected.contains(event.getDeploymentId());
+    }
+
+    private static DeploymentRecord snapshot(DeploymentResult result, Long completedAt) {
+        DeploymentRecord record = new DeploymentRecord();
+        record.setId(result.getDeploymentId());
+        record.setProjectId(result.getProjectId());
+        record.setStatus(statusOf(result.getStatus()));
+        record.setState(result.getStatus() != null ? result.getStatus().name() : null);
+        record.setCommitSha(result.getCommitSha());
+        record.setImageId(result.getImageId());
+        record.setContainerId(result.getContainerId());
+        record.setHostPort(result.getHostPort());
+        record.setErrorMessage(result.getErrorMessage());
+        record.setCreatedAt(result.getStartedAt());
+        if (completedAt != null) {
+            record.setCompletedAt(completedAt);
+            record.setBuildTime((int) Math.round((completedAt - result.getStartedAt()) / 1000.0));
+        }
+        return record;
+    }
+
+    private static DeploymentEvent statusEvent(DeploymentResult result) {
+        DeploymentEvent event = new DeploymentEvent();
+        event.setDeploymentId(result.getDeploymentId());
+        event.setKind(KIND_STATUS);
+        event.setName(String.valueOf(result.getStatus()));
+        event.setAt(System.currentTimeMillis());
+        return event;
+    }
+
+    /**
+     * The coarse status the deployments table allows; the exact one is kept in its state column
+     */
+    static String statusOf(DeploymentStatus status) {
+        if (status == null) {
+            return "pending";
+        }
+        return switch (status) {
+            case PENDING -> "pending";
+            case RUNNING, SKIPPED -> "success";
+            case FAILED, CANCELLED, STOPPED -> "failed";
+            default -> "building";
+        };
+    }
+
+    private static boolean isUuid(String value) {
+        return value != null && UUID_PATTERN.matcher(value).matches();
+    }
+
+    private static String encodeCursor(long createdAt, String id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((createdAt + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 2);
+            if (parts.length == 2 && isUuid(parts[1])) {
+                Long.parseLong(parts[0]);
+                return parts;
+            }
+        } catch (IllegalArgumentException e) {
+            // Reported below
+        }
+        throw new BusinessException(400, "Invalid history cursor");
+    }
+
+    private static byte[] gzip(byte[] text) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, text.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String gunzip(byte[] content) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(content))) {
+            return new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A queued write of one deployment
+     */
+    private static final class PendingWrite {
+        enum Type { INSERT, UPDATE, EVENT, LOG }
+
+        private final Type type;
+        private final String deploymentId;
+        private DeploymentRecord record;
+        private DeploymentEvent event;
+        private String log;
+
+        private PendingWrite(Type type, String deploymentId) {
+            this.type = type;
+            this.deploymentId = deploymentId;
+        }
+
+        static PendingWrite insert(DeploymentRecord record) {
+            PendingWrite write = new PendingWrite(Type.INSERT, record.getId());
+            write.record = record;
+            return write;
+        }
+
+        static PendingWrite update(DeploymentRecord record) {
+            PendingWrite write = new PendingWrite(Type.UPDATE, record.getId());
+            write.record = record;
+            return write;
+        }
+
+        static PendingWrite event(DeploymentEvent event) {
+            PendingWrite write = new PendingWrite(Type.EVENT, event.getDeploymentId());
+            write.event = event;
+            return write;
+        }
+
+        static PendingWrite log(String deploymentId, String log) {
+            PendingWrite write = new PendingWrite(Type.LOG, deploymentId);
+            write.log = log;
+            return write;
+        }
+    }
+
+    /**
+     * One row of the deployments table
+     */
+    public static class DeploymentRecord {
+        private String id;
+        private String projectId;
+        private String status;
+        private String state;
+        private String commitSha;
+        private String imageId;
+        private String containerId;
+        private Integer hostPort;
+        private String url;
+        private Integer buildTime;
+        private String errorMessage;
+        private long createdAt;
+        private Long completedAt;
+
+        public String getId() { return id; }
+        public void setId(String id) { this.id = id; }
+
+        public String getProjectId() { return projectId; }
+        public void setProjectId(String projectId) { this.projectId = projectId; }
+
+        /**
+         * pending, building, success or failed
+         */
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
+
+        /**
+         * Exact {@link DeploymentStatus}
+         */
+        public String getState() { return state; }
+        public void setState(String state) { this.state = state; }
+
+        public String getCommitSha() { return commitSha; }
+        public void setCommitSha(String commitSha) { this.commitSha = commitSha; }
+
+        public String getImageId() { return imageId; }
+        public void setImageId(String imageId) { this.imageId = imageId; }
+
+        public String getContainerId() { return containerId; }
+        public void setContainerId(String containerId) { this.containerId = containerId; }
+
+        public Integer getHostPort() { return hostPort; }
+        public void setHostPort(Integer hostPort) { this.hostPort = hostPort; }
+
+        public String getUrl() { return url; }
+        public void setUrl(String url) { this.url = url; }
+
+        /**
+         * Whole deployment in seconds
+         */
+        public Integer getBuildTime() { return buildTime; }
+        public void setBuildTime(Integer buildTime) { this.buildTime = buildTime; }
+
+        public String getErrorMessage() { return errorMessage; }
+        public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
+
+        public long getCreatedAt() { return createdAt; }
+        public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+
+        public Long getCompletedAt() { return completedAt; }
+        public void setCompletedAt(Long completedAt) { this.completedAt = completedAt; }
+    }
+
+    /**
+     * A status transition or a stage timing of a deployment
+     */
+    public static class DeploymentEvent {
+        private String deploymentId;
+        private String kind;
+        private String name;
+        private long at;
+        private Long durationMs;
+        private Boolean success;
+
+        public String getDeploymentId() { return deploymentId; }
+        public void setDeploymentId(String deploymentId) { this.deploymentId = deploymentId; }
+
+        /**
+         * status or stage
+         */
+        public String getKind() { return kind; }
+        public void setKind(String kind) { this.kind = kind; }
+
+        /**
+         * The status entered, or the stage timed
+         */
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+
+        public long getAt() { return at; }
+        public void setAt(long at) { this.at = at; }
+
+        public Long getDurationMs() { return durationMs; }
+        public void setDurationMs(Long durationMs) { this.durationMs = durationMs; }
+
+        public Boolean getSuccess() { return success; }
+        public void setSuccess(Boolean success) { this.success = success; }
+    }
+
+    /**
+     * One page of a project's history
+     */
+    public static class HistoryPage {
+        private List<DeploymentRecord> items = new ArrayList<>();
+        private String nextCursor;
+
+        public List<DeploymentRecord> getItems() { return items; }
+        public void setItems(List<DeploymentRecord> items) { this.items = items; }
+
+        /**
+         * Cursor of the next, older page; null on the last one
+         */
+        public String getNextCursor() { return nextCursor; }
+        public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+    }
+
+    /**
+     * A deployment with its events in order
+     */
+    public static class DeploymentDetail {
+        private DeploymentRecord deployment;
+        private List<DeploymentEvent> events;
+
+        public DeploymentRecord getDeployment() { return deployment; }
+        public void setDeployment(DeploymentRecord deployment) { this.deployment = deployment; }
+
+        public List<DeploymentEvent> getEvents() { return events; }
+        public void setEvents(List<DeploymentEvent> events) { this.events = events; }
+    }
+}
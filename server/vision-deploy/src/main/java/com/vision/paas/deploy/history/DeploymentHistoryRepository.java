@@ -0,0 +1,205 @@
+package com.vision.paas.deploy.history;
+
+import com.vision.paas.deploy.history.DeploymentHistory.DeploymentEvent;
+import com.vision.paas.deploy.history.DeploymentHistory.DeploymentRecord;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Deployment History Repository
+ * SQL for the deployments table and the two tables beside it: deployment_events with
+ * status transitions and stage timings, and deployment_logs with the gzip-compressed
+ * build log, kept out of the deployments rows so history pages stay small.
+ */
+@Repository
+@RequiredArgsConstructor
+public class DeploymentHistoryRepository {
+
+    // Owner and existence come from the project; an unknown project inserts nothing
+    private static final String INSERT_DEPLOYMENT =
+            "INSERT INTO deployments (id, project_id, user_id, platform, status, state, created_at) "
+            + "SELECT CAST(? AS uuid), p.id, p.user_id, 'vision', ?, ?, ? FROM projects p WHERE p.id = CAST(? AS uuid) "
+            + "ON CONFLICT (id) DO NOTHING";
+
+    private static final String UPDATE_DEPLOYMENT =
+            "UPDATE deployments SET status = ?, state = ?, commit_sha = ?, image_id = ?, container_id = ?, "
+            + "host_port = ?, build_time = ?, error_message = ?, completed_at = ? WHERE id = CAST(? AS uuid)";
+
+    private static final String INSERT_EVENT =
+            "INSERT INTO deployment_events (deployment_id, kind, name, at, duration_ms, success) "
+            + "VALUES (CAST(? AS uuid), ?, ?, ?, ?, ?)";
+
+    private static final String UPSERT_LOG =
+            "INSERT INTO deployment_logs (deployment_id, encoding, size, content) VALUES (CAST(? AS uuid), 'gzip', ?, ?) "
+            + "ON CONFLICT (deployment_id) DO UPDATE SET encoding = EXCLUDED.encoding, size = EXCLUDED.size, "
+            + "content = EXCLUDED.content";
+
+    private static final String COLUMNS =
+            "id, project_id, status, state, commit_sha, image_id, container_id, host_port, deployment_url, "
+            + "build_time, error_message, created_at, completed_at";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @return Rows inserted per deployment, 0 where the project does not exist
+     */
+    public int[] insertDeployments(List<DeploymentRecord> records) {
+        return jdbcTemplate.batchUpdate(INSERT_DEPLOYMENT, records, records.size(), (ps, record) -> {
+            ps.setString(1, record.getId());
+            ps.setString(2, record.getStatus());
+            ps.setString(3, record.getState());
+            ps.setTimestamp(4, new Timestamp(record.getCreatedAt()));
+            ps.setString(5, record.getProjectId());
+        })[0];
+    }
+
+    public void updateDeployments(List<DeploymentRecord> records) {
+        jdbcTemplate.batchUpdate(UPDATE_DEPLOYMENT, records, records.size(), (ps, record) -> {
+            ps.setString(1, record.getStatus());
+            ps.setString(2, record.getState());
+            ps.setString(3, record.getCommitSha());
+            ps.setString(4, record.getImageId());
+            ps.setString(5, record.getContainerId());
+            ps.setObject(6, record.getHostPort(), Types.INTEGER);
+            ps.setObject(7, record.getBuildTime(), Types.INTEGER);
+            ps.setString(8, record.getErrorMessage());
+            ps.setTimestamp(9, record.getCompletedAt() != null ? new Timestamp(record.getCompletedAt()) : null);
+            ps.setString(10, record.getId());
+        });
+    }
+
+    public void insertEvents(List<DeploymentEvent> events) {
+        jdbcTemplate.batchUpdate(INSERT_EVENT, events, events.size(), (ps, event) -> {
+            ps.setString(1, event.getDeploymentId());
+            ps.setString(2, event.getKind());
+            ps.setString(3, event.getName());
+            ps.setTimestamp(4, new Timestamp(event.getAt()));
+            ps.setObject(5, event.getDurationMs(), Types.BIGINT);
+            ps.setObject(6, event.getSuccess(), Types.BOOLEAN);
+        });
+    }
+
+    public void saveLogs(List<StoredLog> logs) {
+        jdbcTemplate.batchUpdate(UPSERT_LOG, logs, logs.size(), (ps, log) -> {
+            ps.setString(1, log.getDeploymentId());
+            ps.setInt(2, log.getSize());
+            ps.setBytes(3, log.getContent());
+        });
+    }
+
+    /**
+     * Newest deployments of the project first, strictly after the (createdAt, id) cursor when given;
+     * served by the (project_id, created_at DESC, id DESC) index
+     */
+    public List<DeploymentRecord> findPage(String projectId, Long createdBefore, String idBefore, int limit) {
+        if (createdBefore == null) {
+            return jdbcTemplate.query("SELECT " + COLUMNS + " FROM deployments WHERE project_id = CAST(? AS uuid) "
+                    + "ORDER BY created_at DESC, id DESC LIMIT ?", RECORD_MAPPER, projectId, limit);
+        }
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM deployments WHERE project_id = CAST(? AS uuid) "
+                        + "AND (created_at, id) < (?, CAST(? AS uuid)) ORDER BY created_at DESC, id DESC LIMIT ?",
+                RECORD_MAPPER, projectId, new Timestamp(createdBefore), idBefore, limit);
+    }
+
+    public DeploymentRecord find(String projectId, String deploymentId) {
+        List<DeploymentRecord> records = jdbcTemplate.query("SELECT " + COLUMNS + " FROM deployments "
+                + "WHERE id = CAST(? AS uuid) AND project_id = CAST(? AS uuid)", RECORD_MAPPER, deploymentId, projectId);
+        return records.isEmpty() ? null : records.get(0);
+    }
+
+    public List<DeploymentEvent> findEvents(String deploymentId) {
+        return jdbcTemplate.query("SELECT deployment_id, kind, name, at, duration_ms, success FROM deployment_events "
+                + "WHERE deployment_id = CAST(? AS uuid) ORDER BY at, id", (rs, row) -> {
+                    DeploymentEvent event = new DeploymentEvent();
+                    event.setDeploymentId(rs.getString("deployment_id"));
+                    event.setKind(rs.getString("kind"));
+                    event.setName(rs.getString("name"));
+                    event.setAt(rs.getTimestamp("at").getTime());
+                    event.setDurationMs(rs.getObject("duration_ms", Long.class));
+                    event.setSuccess(rs.getObject("success", Boolean.class));
+                    return event;
+                }, deploymentId);
+    }
+
+    public StoredLog findLog(String deploymentId) {
+        List<StoredLog> logs = jdbcTemplate.query("SELECT deployment_id, size, content FROM deployment_logs "
+                + "WHERE deployment_id = CAST(? AS uuid)", (rs, row) -> new StoredLog(
+                        rs.getString("deployment_id"), rs.getInt("size"), rs.getBytes("content")), deploymentId);
+        return logs.isEmpty() ? null : logs.get(0);
+    }
+
+    /**
+     * Commit of the project's newest deployment that ended up running
+     */
+    public String findLastDeployedCommit(String projectId) {
+        List<String> commits = jdbcTemplate.queryForList("SELECT commit_sha FROM deployments "
+                + "WHERE project_id = CAST(? AS uuid) AND state = 'RUNNING' AND commit_sha IS NOT NULL "
+                + "ORDER BY created_at DESC, id DESC LIMIT 1", String.class, projectId);
+        return commits.isEmpty() ? null : commits.get(0);
+    }
+
+    /**
+     * The project's newest deployment that started the container, null if none did
+     */
+    public DeploymentRecord findByContainer(String projectId, String containerId) {
+        List<DeploymentRecord> records = jdbcTemplate.query("SELECT " + COLUMNS + " FROM deployments "
+                + "WHERE project_id = CAST(? AS uuid) AND container_id = ? ORDER BY created_at DESC, id DESC LIMIT 1",
+                RECORD_MAPPER, projectId, containerId);
+        return records.isEmpty() ? null : records.get(0);
+    }
+
+    private static final RowMapper<DeploymentRecord> RECORD_MAPPER = (rs, row) -> {
+        DeploymentRecord record = new DeploymentRecord();
+        record.setId(rs.getString("id"));
+        record.setProjectId(rs.getString("project_id"));
+        record.setStatus(rs.getString("status"));
+        record.setState(rs.getString("state"));
+        record.setCommitSha(rs.getString("commit_sha"));
+        record.setImageId(rs.getString("image_id"));
+        record.setContainerId(rs.getString("container_id"));
+        record.setHostPort(rs.getObject("host_port", Integer.class));
+        record.setUrl(rs.getString("deployment_url"));
+        record.setBuildTime(rs.getObject("build_time", Integer.class));
+        record.setErrorMessage(rs.getString("error_message"));
+        record.setCreatedAt(rs.getTimestamp("created_at").getTime());
+        record.setCompletedAt(millis(rs, "completed_at"));
+        return record;
+    };
+
+    private static Long millis(ResultSet rs, String column) throws SQLException {
+        Timestamp timestamp = rs.getTimestamp(column);
+        return timestamp != null ? timestamp.getTime() : null;
+    }
+
+    /**
+     * Compressed build log of one deployment
+     */
+    public static class StoredLog {
+        private final String deploymentId;
+        private final int size;
+        private final byte[] content;
+
+        public StoredLog(String deploymentId, int size, byte[] content) {
+            this.deploymentId = deploymentId;
+            this.size = size;
+            this.content = content;
+        }
+
+        public String getDeploymentId() { return deploymentId; }
+
+        /**
+         * Uncompressed size in bytes
+         */
+        public int getSize() { return size; }
+
+        public byte[] getContent() { return content; }
+    }
+}
@@ -0,0 +1,58 @@
+package com.vision.paas.deploy.metrics;
+
+import com.vision.paas.deploy.docker.DockerService;
+import com.vision.paas.deploy.service.AutoDeployService.DeploymentResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deployment Metrics
+ * Publishes a finished deployment's timeline as Micrometer timers with
+ * percentile histograms (exported on /actuator/prometheus):
+ * - vision.deploy.stage  per stage, tagged stage/project_type/node/cache/outcome
+ * - vision.deploy.total  whole pipeline, tagged project_type/node/cache/status
+ */
+@Component
+@RequiredArgsConstructor
+public class DeploymentMetrics {
+
+    private final MeterRegistry registry;
+    private final DockerService dockerService;
+
+    /**
+     * Stages are published once the deployment ends, when project type and cache outcome are known
+     */
+    public void publish(DeploymentResult result) {
+        DeploymentTimeline timeline = result.getTimeline();
+        Tags tags = Tags.of(
+                "project_type", result.getProjectType() != null ? result.getProjectType().name() : "UNKNOWN",
+                "node", dockerService.getNodeName(),
+                "cache", timeline.getCache());
+
+        long total = 0;
+        for (DeploymentTimeline.StageTiming stage : timeline.getStages()) {
+            total += stage.getDurationNanos();
+            Timer.builder("vision.deploy.stage")
+                    .description("Duration of one deployment pipeline stage")
+                    .tags(tags)
+                    .tag("stage", stage.getStage())
+                    .tag("outcome", stage.isSuccess() ? "success" : "failure")
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(stage.getDurationNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        Timer.builder("vision.deploy.total")
+                .description("Duration of the whole deployment pipeline")
+                .tags(tags)
+                .tag("status", String.valueOf(result.getStatus()))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(total, TimeUnit.NANOSECONDS);
+    }
+}
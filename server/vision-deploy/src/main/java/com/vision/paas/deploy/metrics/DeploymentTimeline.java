@@ -0,0 +1,93 @@
+package com.vision.paas.deploy.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Deployment Timeline
+ * Ordered stage timings of one deployment, returned with the result
+ * so the UI can draw a waterfall
+ */
+public class DeploymentTimeline {
+
+    public static final String CLONE = "clone";
+    public static final String DETECT = "detect";
+    public static final String GENERATE = "generate";
+    public static final String CONTEXT = "context";
+    public static final String BUILD = "build";
+    public static final String CREATE = "create";
+    public static final String START = "start";
+    public static final String READY = "ready";
+
+    public static final String CACHE_NONE = "none";
+    public static final String CACHE_HIT = "hit";
+    public static final String CACHE_PARTIAL = "partial";
+    public static final String CACHE_MISS = "miss";
+
+    private final List<StageTiming> stages = new CopyOnWriteArrayList<>();
+    private volatile String cache = CACHE_NONE;
+
+    /**
+     * Run a stage and record how long it took, whether it succeeds or throws
+     */
+    public <T> T stage(String name, StageCall<T> call) throws Exception {
+        long startedAt = System.currentTimeMillis();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T value = call.call();
+            success = true;
+            return value;
+        } finally {
+            record(name, startedAt, System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Record a stage measured by the caller
+     */
+    public void record(String name, long startedAt, long durationNanos, boolean success) {
+        stages.add(new StageTiming(name, startedAt, durationNanos, success));
+    }
+
+    public List<StageTiming> getStages() { return stages; }
+
+    /**
+     * Build cache outcome: none, hit, partial or miss
+     */
+    public String getCache() { return cache; }
+
+    public void setCache(String cache) { this.cache = cache; }
+
+    @FunctionalInterface
+    public interface StageCall<T> {
+        T call() throws Exception;
+    }
+
+    /**
+     * One stage in the timeline
+     */
+    public static class StageTiming {
+        private final String stage;
+        private final long startedAt;
+        private final long durationNanos;
+        private final boolean success;
+
+        public StageTiming(String stage, long startedAt, long durationNanos, boolean success) {
+            this.stage = stage;
+            this.startedAt = startedAt;
+            this.durationNanos = durationNanos;
+            this.success = success;
+        }
+
+        public String getStage() { return stage; }
+
+        public long getStartedAt() { return startedAt; }
+
+        public long getDurationMs() { return durationNanos / 1_000_000; }
+
+        public boolean isSuccess() { return success; }
+
+        long getDurationNanos() { return durationNanos; }
+    }
+}
@@ -0,0 +1,142 @@
+package com.vision.paas.deploy.pipeline;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vision.paas.deploy.config.DeployProperties;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Checkpoint Store
+ * Keeps one checkpoint per project as a JSON file on the node, next to the images and
+ * containers it refers to, so it survives a restart of the service. Files are replaced
+ * atomically; a checkpoint older than the resume window is ignored and removed.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CheckpointStore {
+
+    private static final String SUFFIX = ".json";
+
+    private final DeployProperties properties;
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private Path directory;
+
+    @PostConstruct
+    public void init() throws IOException {
+        directory = Paths.get(properties.getPipeline().getCheckpointDir()).toAbsolutePath();
+        Files.createDirectories(directory);
+        log.info("Deployment checkpoints in {}", directory);
+    }
+
+    /**
+     * Checkpoint to resume a deployment with these inputs from, or a new one
+     */
+    public DeploymentCheckpoint open(String projectId, String fingerprint) {
+        DeploymentCheckpoint checkpoint = load(projectId);
+        if (checkpoint != null && fingerprint.equals(checkpoint.getFingerprint())) {
+            return checkpoint;
+        }
+        return new DeploymentCheckpoint(projectId, fingerprint);
+    }
+
+    /**
+     * Last unfinished deployment of the project, null if there is none or it expired
+     */
+    public DeploymentCheckpoint load(String projectId) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Path file = fileOf(projectId);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            DeploymentCheckpoint checkpoint = mapper.readValue(file.toFile(), DeploymentCheckpoint.class);
+            long age = System.currentTimeMillis() - checkpoint.getUpdatedAt();
+            if (age > properties.getPipeline().getResumeWindow().toMillis()) {
+                delete(projectId);
+                return null;
+            }
+            return checkpoint;
+        } catch (IOException e) {
+            log.warn("[{}] Unreadable checkpoint ignored: {}", projectId, e.getMessage());
+            delete(projectId);
+            return null;
+        }
+    }
+
+    public void save(DeploymentCheckpoint checkpoint) {
+        if (!isEnabled()) {
+            return;
+        }
+        Path file = fileOf(checkpoint.getProjectId());
+        try {
+            Path temp = Files.createTempFile(directory, ".checkpoint-", ".tmp");
+            try {
+                mapper.writeValue(temp.toFile(), checkpoint);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            // A lost checkpoint costs a rebuild on retry, not the deployment
+            log.warn("[{}] Failed to write checkpoint: {}", checkpoint.getProjectId(), e.getMessage());
+        }
+    }
+
+    public void delete(String projectId) {
+        if (directory == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(fileOf(projectId));
+        } catch (IOException e) {
+            log.warn("[{}] Failed to delete checkpoint: {}", projectId, e.getMessage());
+        }
+    }
+
+    /**
+     * All unfinished deployments that can still be resumed
+     */
+    public List<DeploymentCheckpoint> list() {
+        List<DeploymentCheckpoint> checkpoints = new ArrayList<>();
+        if (!isEnabled()) {
+            return checkpoints;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).toList()) {
+                String name = file.getFileName().toString();
+                DeploymentCheckpoint checkpoint = load(name.substring(0, name.length() - SUFFIX.length()));
+                if (checkpoint != null) {
+                    checkpoints.add(checkpoint);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to list checkpoints: {}", e.getMessage());
+        }
+        return checkpoints;
+    }
+
+    private boolean isEnabled() {
+        return directory != null && properties.getPipeline().isCheckpoints();
+    }
+
+    private Path fileOf(String projectId) {
+        return directory.resolve(projectId.replaceAll("[^A-Za-z0-9._-]", "_") + SUFFIX);
+    }
+}
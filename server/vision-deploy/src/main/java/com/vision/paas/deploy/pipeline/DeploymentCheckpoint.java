@@ -0,0 +1,79 @@
+package com.vision.paas.deploy.pipeline;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Completed stages of a project's last unfinished deployment and their outputs.
+ * The fingerprint identifies the request; a deployment with different inputs starts over.
+ */
+public class DeploymentCheckpoint {
+
+    private String projectId;
+    private String fingerprint;
+    private long createdAt;
+    private long updatedAt;
+    private Map<String, Map<String, String>> stages = new LinkedHashMap<>();
+
+    public DeploymentCheckpoint() {
+    }
+
+    public DeploymentCheckpoint(String projectId, String fingerprint) {
+        this.projectId = projectId;
+        this.fingerprint = fingerprint;
+        this.createdAt = System.currentTimeMillis();
+        this.updatedAt = createdAt;
+    }
+
+    public boolean isCompleted(String stage) {
+        return stages.containsKey(stage);
+    }
+
+    void complete(String stage, Map<String, String> outputs) {
+        stages.put(stage, outputs);
+        updatedAt = System.currentTimeMillis();
+    }
+
+    void invalidate(Collection<String> stageNames) {
+        stageNames.forEach(stages::remove);
+    }
+
+    /**
+     * SHA-256 over the request inputs; maps are compared independent of their order.
+     * Secrets in the inputs never reach the checkpoint, only their hash.
+     */
+    public static String fingerprint(Object... inputs) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Object input : inputs) {
+                Object canonical = input instanceof Map<?, ?> map ? new TreeMap<>(map) : input;
+                digest.update(String.valueOf(canonical).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public String getProjectId() { return projectId; }
+    public void setProjectId(String projectId) { this.projectId = projectId; }
+
+    public String getFingerprint() { return fingerprint; }
+    public void setFingerprint(String fingerprint) { this.fingerprint = fingerprint; }
+
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+
+    public long getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(long updatedAt) { this.updatedAt = updatedAt; }
+
+    public Map<String, Map<String, String>> getStages() { return stages; }
+    public void setStages(Map<String, Map<String, String>> stages) { this.stages = stages; }
+}
@@ -0,0 +1,152 @@
+package com.vision.paas.deploy.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Deployment Pipeline
+ * A deployment as a DAG of stages. A stage may only depend on stages declared before it,
+ * so declaration order is a topological order and cycles cannot be built. Every stage
+ * that completes is written to the checkpoint with its outputs; on the next run with the
+ * same checkpoint only what is missing is run again:
+ * - a resumable stage whose checkpoint still validates (its image or container still
+ *   exists) is restored instead of run, and its dependencies are not needed at all
+ * - any other stage runs again whenever a stage depending on it has to run
+ * Outputs of all recorded stages are available to every stage from the start.
+ */
+@Slf4j
+public class DeploymentPipeline {
+
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+
+    /**
+     * A stage that runs again whenever it is needed, e.g. because its result is cheap or leased per run
+     */
+    public DeploymentPipeline stage(String name, List<String> dependsOn, StageAction action) {
+        return add(new Stage(name, dependsOn, action, null));
+    }
+
+    /**
+     * A stage whose checkpoint is restored on resume as long as the validator accepts it
+     */
+    public DeploymentPipeline resumable(String name, List<String> dependsOn, StageValidator validator,
+                                        StageAction action) {
+        return add(new Stage(name, dependsOn, action, validator));
+    }
+
+    private DeploymentPipeline add(Stage stage) {
+        if (stages.containsKey(stage.name)) {
+            throw new IllegalArgumentException("Duplicate stage: " + stage.name);
+        }
+        for (String dependency : stage.dependsOn) {
+            if (!stages.containsKey(dependency)) {
+                throw new IllegalArgumentException("Stage " + stage.name + " depends on " + dependency
+                        + ", which must be declared before it");
+            }
+        }
+        stages.put(stage.name, stage);
+        return this;
+    }
+
+    /**
+     * Run every stage no other stage depends on, and whatever they need
+     * @param onRestored Called with the name of each stage restored from the checkpoint
+     */
+    public void run(StageContext context, Consumer<String> onRestored) throws Exception {
+        Set<String> needed = new HashSet<>();
+        stages.values().forEach(stage -> needed.addAll(stage.dependsOn));
+
+        Map<String, Boolean> done = new LinkedHashMap<>();
+        for (Stage stage : stages.values()) {
+            if (!needed.contains(stage.name)) {
+                ensure(stage, context, done, onRestored);
+                if (context.isHalted()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Restore the stage if its checkpoint is still good, otherwise run it after its dependencies
+     */
+    private void ensure(Stage stage, StageContext context, Map<String, Boolean> done,
+                        Consumer<String> onRestored) throws Exception {
+        if (done.containsKey(stage.name) || context.isHalted()) {
+            return;
+        }
+        context.throwIfCancelled();
+        if (stage.validator != null && context.getCheckpoint().isCompleted(stage.name)
+                && stage.validator.isValid(context)) {
+            log.info("[{}] Stage {} restored from checkpoint", context.getCheckpoint().getProjectId(), stage.name);
+            done.put(stage.name, false);
+            onRestored.accept(stage.name);
+            return;
+        }
+        for (String dependency : stage.dependsOn) {
+            ensure(stages.get(dependency), context, done, onRestored);
+            if (context.isHalted()) {
+                return;
+            }
+        }
+
+        // The stage's previous result and what was built on it are no longer valid
+        context.discard(descendants(stage.name));
+        context.begin(stage.name);
+        stage.action.run(context);
+        context.complete(stage.name);
+        done.put(stage.name, true);
+    }
+
+    /**
+     * The stage and every stage depending on it, directly or not
+     */
+    private List<String> descendants(String name) {
+        Set<String> found = new HashSet<>(List.of(name));
+        List<String> result = new ArrayList<>(List.of(name));
+        for (Stage stage : stages.values()) {
+            if (stage.dependsOn.stream().anyMatch(found::contains)) {
+                found.add(stage.name);
+                result.add(stage.name);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Work of one stage; outputs go to {@link StageContext#put}
+     */
+    @FunctionalInterface
+    public interface StageAction {
+        void run(StageContext context) throws Exception;
+    }
+
+    /**
+     * Whether a completed stage's outputs can still be used, e.g. its image was not removed
+     */
+    @FunctionalInterface
+    public interface StageValidator {
+        boolean isValid(StageContext context) throws Exception;
+    }
+
+    private static final class Stage {
+        private final String name;
+        private final List<String> dependsOn;
+        private final StageAction action;
+        private final StageValidator validator;
+
+        Stage(String name, List<String> dependsOn, StageAction action, StageValidator validator) {
+            this.name = name;
+            this.dependsOn = List.copyOf(dependsOn);
+            this.action = action;
+            this.validator = validator;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.vision.paas.deploy.pipeline;
+
+import com.vision.paas.deploy.scheduler.CancellationToken;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outputs shared by the stages of one pipeline run. Starts with the outputs recorded
+ * in the checkpoint; what a stage puts is recorded for it once the stage completes.
+ */
+public class StageContext {
+
+    private final DeploymentCheckpoint checkpoint;
+    private final CheckpointStore store;
+    private final CancellationToken token;
+    private final Map<String, String> values = new LinkedHashMap<>();
+    private Map<String, String> current;
+    private boolean halted;
+
+    public StageContext(DeploymentCheckpoint checkpoint, CheckpointStore store, CancellationToken token) {
+        this.checkpoint = checkpoint;
+        this.store = store;
+        this.token = token;
+        checkpoint.getStages().values().forEach(values::putAll);
+    }
+
+    public String get(String key) {
+        return values.get(key);
+    }
+
+    public Integer getInt(String key) {
+        String value = values.get(key);
+        return value != null ? Integer.valueOf(value) : null;
+    }
+
+    /**
+     * Set an output of the running stage; null removes it
+     */
+    public void put(String key, Object value) {
+        String text = value != null ? String.valueOf(value) : null;
+        if (text == null) {
+            values.remove(key);
+        } else {
+            values.put(key, text);
+        }
+        if (current != null) {
+            current.put(key, text);
+        }
+    }
+
+    /**
+     * Stop after the running stage without running the rest, e.g. because there is nothing to deploy
+     */
+    public void halt() {
+        halted = true;
+    }
+
+    public boolean isHalted() {
+        return halted;
+    }
+
+    public DeploymentCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    void throwIfCancelled() {
+        token.throwIfCancelled();
+    }
+
+    /**
+     * Drop what the stages recorded, from the checkpoint and from the outputs seen by later stages
+     */
+    void discard(Collection<String> stages) {
+        for (String stage : stages) {
+            Map<String, String> outputs = checkpoint.getStages().get(stage);
+            if (outputs != null) {
+                outputs.keySet().forEach(values::remove);
+            }
+        }
+        checkpoint.invalidate(stages);
+    }
+
+    void begin(String stage) {
+        current = new LinkedHashMap<>();
+    }
+
+    void complete(String stage) {
+        Map<String, String> outputs = new LinkedHashMap<>();
+        current.forEach((key, value) -> {
+            if (value != null) {
+                outputs.put(key, value);
+            }
+        });
+        current = null;
+        checkpoint.complete(stage, outputs);
+        store.save(checkpoint);
+    }
+}
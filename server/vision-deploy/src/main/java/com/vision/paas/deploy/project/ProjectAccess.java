@@ -0,0 +1,57 @@
+package com.vision.paas.deploy.project;
+
+import com.vision.paas.common.exception.BusinessException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Project Access
+ * Checks that the caller owns the project a request acts on, so one tenant cannot
+ * deploy, cancel, resize or read the history of another tenant's project by its id
+ */
+@Service
+@RequiredArgsConstructor
+public class ProjectAccess {
+
+    private static final Pattern UUID_PATTERN =
+            Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private final ProjectRepository repository;
+
+    /**
+     * @throws BusinessException 404 when the project does not exist, 403 when the user does not own it
+     */
+    public void requireOwner(String projectId, String userId) {
+        String owner = isUuid(projectId) ? repository.findOwner(projectId) : null;
+        if (owner == null) {
+            throw new BusinessException(404, "Project not found: " + projectId);
+        }
+        if (!owner.equalsIgnoreCase(userId)) {
+            throw new BusinessException(403, "No access to project: " + projectId);
+        }
+    }
+
+    /**
+     * Ids of the user's projects, lower case
+     */
+    public Set<String> ownedProjects(String userId) {
+        Set<String> owned = new HashSet<>();
+        if (isUuid(userId)) {
+            repository.findOwned(userId).forEach(id -> owned.add(id.toLowerCase(Locale.ROOT)));
+        }
+        return owned;
+    }
+
+    public static boolean owns(Set<String> owned, String projectId) {
+        return projectId != null && owned.contains(projectId.toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean isUuid(String value) {
+        return value != null && UUID_PATTERN.matcher(value).matches();
+    }
+}
@@ -0,0 +1,32 @@
+package com.vision.paas.deploy.project;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Project Repository
+ * Reads project ownership from the projects table that vision-project maintains
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProjectRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Owner's user id, null when the project does not exist
+     */
+    public String findOwner(String projectId) {
+        List<String> owners = jdbcTemplate.queryForList(
+                "SELECT user_id FROM projects WHERE id = CAST(? AS uuid)", String.class, projectId);
+        return owners.isEmpty() ? null : owners.get(0);
+    }
+
+    public List<String> findOwned(String userId) {
+        return jdbcTemplate.queryForList(
+                "SELECT id FROM projects WHERE user_id = CAST(? AS uuid)", String.class, userId);
+    }
+}
@@ -0,0 +1,28 @@
+package com.vision.paas.deploy.scheduler;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Build Cluster Endpoint
+ * /actuator/buildcluster lists the workers sharing the build queue and which of them leads;
+ * an operator view, so it is not routed through the gateway like /api/deploy
+ */
+@Component
+@Endpoint(id = "buildcluster")
+@RequiredArgsConstructor
+public class BuildClusterEndpoint {
+
+    private final DistributedBuildQueue buildQueue;
+
+    @ReadOperation
+    public DistributedBuildQueue.ClusterStatus buildCluster() {
+        // Without a cluster there is nothing to show: a 404 rather than the queue's 503
+        if (!buildQueue.isEnabled()) {
+            return null;
+        }
+        return buildQueue.getStatus();
+    }
+}
@@ -0,0 +1,131 @@
+package com.vision.paas.deploy.scheduler;
+
+import com.vision.paas.common.enums.SubscriptionPlan;
+import com.vision.paas.common.exception.BusinessException;
+import com.vision.paas.common.util.IdGenerator;
+import com.vision.paas.deploy.service.AutoDeployService.DeploymentResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Build Job
+ * A deployment waiting for, or holding, a build worker
+ */
+public class BuildJob {
+
+    private final String id;
+    private final String projectId;
+    private final String tenantId;
+    private final SubscriptionPlan plan;
+    private final int memoryMB;
+    private final Function<CancellationToken, DeploymentResult> task;
+    private final CancellationToken token = new CancellationToken();
+    private final CompletableFuture<DeploymentResult> result = new CompletableFuture<>();
+    private final long enqueuedAt = System.currentTimeMillis();
+    private volatile long startedAt;
+
+    BuildJob(String projectId, String tenantId, SubscriptionPlan plan, int memoryMB,
+             Function<CancellationToken, DeploymentResult> task) {
+        this(IdGenerator.generateId(), projectId, tenantId, plan, memoryMB, task);
+    }
+
+    /**
+     * A job already known under this id, e.g. claimed from the shared queue
+     */
+    BuildJob(String id, String projectId, String tenantId, SubscriptionPlan plan, int memoryMB,
+             Function<CancellationToken, DeploymentResult> task) {
+        this.id = id;
+        this.projectId = projectId;
+        this.tenantId = tenantId;
+        this.plan = plan;
+        this.memoryMB = memoryMB;
+        this.task = task;
+    }
+
+    /**
+     * Block until the job has run and return its result
+     */
+    public DeploymentResult await() {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("Interrupted while waiting for deployment " + id);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BusinessException businessException) {
+                throw businessException;
+            }
+            throw new BusinessException("Deployment " + id + " failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    void run() {
+        token.bind(Thread.currentThread());
+        try {
+            result.complete(task.apply(token));
+        } catch (Throwable t) {
+            result.completeExceptionally(t);
+        } finally {
+            token.unbind();
+        }
+    }
+
+    /**
+     * Complete with the result of a run elsewhere
+     */
+    void complete(DeploymentResult deploymentResult) {
+        result.complete(deploymentResult);
+    }
+
+    void fail(Throwable cause) {
+        result.completeExceptionally(cause);
+    }
+
+    /**
+     * Stop the running pipeline, or fail the job if it was still queued.
+     * A running pipeline completes the job itself once it has cleaned up.
+     */
+    void cancel(boolean queued) {
+        token.cancel();
+        if (queued) {
+            result.completeExceptionally(new BusinessException(409, "Deployment " + id + " cancelled"));
+        }
+    }
+
+    /**
+     * QUEUED until a worker picks the job up, then RUNNING, then DONE
+     */
+    public String getState() {
+        if (result.isDone()) {
+            return token.isCancelled() ? "CANCELLED" : "DONE";
+        }
+        return startedAt > 0 ? "RUNNING" : "QUEUED";
+    }
+
+    void markStarted() {
+        startedAt = System.currentTimeMillis();
+    }
+
+    long waitMillis() {
+        return (startedAt > 0 ? startedAt : System.currentTimeMillis()) - enqueuedAt;
+    }
+
+    public String getId() { return id; }
+
+    public String getProjectId() { return projectId; }
+
+    public String getTenantId() { return tenantId; }
+
+    public SubscriptionPlan getPlan() { return plan; }
+
+    public int getMemoryMB() { return memoryMB; }
+
+    public long getEnqueuedAt() { return enqueuedAt; }
+
+    public long getStartedAt() { return startedAt; }
+
+    public CompletableFuture<DeploymentResult> getResult() { return result; }
+}
@@ -0,0 +1,329 @@
+package com.vision.paas.deploy.scheduler;
+
+import com.vision.paas.common.enums.SubscriptionPlan;
+import com.vision.paas.common.exception.BusinessException;
+import com.vision.paas.deploy.config.DeployProperties;
+import com.vision.paas.deploy.service.AutoDeployService.DeploymentResult;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Build Scheduler
+ * Shares a fixed pool of build workers between tenants:
+ * - Requests above the plan's memory limit are rejected before queueing
+ * - Each tenant runs at most {@link SubscriptionPlan#getMaxConcurrentBuilds()} builds
+ * - Each tenant holds at most {@link SubscriptionPlan#getMaxQueuedBuilds()} queued or running builds
+ * - Free workers go to the tenant with the lowest virtual pass (stride scheduling),
+ *   so backlogged tenants share workers in proportion to {@link SubscriptionPlan#getBuildWeight()}
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BuildScheduler {
+
+    private final DeployProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, TenantQueue> tenants = new HashMap<>();
+    private final Map<SubscriptionPlan, PlanCounters> counters = new EnumMap<>(SubscriptionPlan.class);
+    private final Map<String, BuildJob> jobs = new ConcurrentHashMap<>();
+    private int running;
+    private double virtualTime;
+
+    private ExecutorService workers;
+
+    @PostConstruct
+    public void init() {
+        for (SubscriptionPlan plan : SubscriptionPlan.values()) {
+            PlanCounters c = new PlanCounters();
+            c.waitTimer = Timer.builder("vision.deploy.queue.wait")
+                    .description("Time a build waited for a worker")
+                    .tag("plan", plan.name())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            counters.put(plan, c);
+            Gauge.builder("vision.deploy.queue.depth", this, s -> s.snapshot(plan).getQueued())
+                    .description("Builds waiting for a worker")
+                    .tag("plan", plan.name())
+                    .register(meterRegistry);
+            Gauge.builder("vision.deploy.builds.running", this, s -> s.snapshot(plan).getRunning())
+                    .description("Builds holding a worker")
+                    .tag("plan", plan.name())
+                    .register(meterRegistry);
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(properties.getScheduler().getWorkers(), runnable -> {
+            Thread thread = new Thread(runnable, "build-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Build scheduler started with {} workers", properties.getScheduler().getWorkers());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Queue a deployment for a tenant
+     * @param tenantId Owner of the deployment, used for fairness and caps
+     * @param plan Tenant's subscription plan
+     * @param projectId Project ID
+     * @param memoryMB Requested container memory
+     * @param task Deployment pipeline to run on a build worker; must honour the token
+     * @return Queued job
+     */
+    public BuildJob submit(String tenantId, SubscriptionPlan plan, String projectId,
+                           int memoryMB, Function<CancellationToken, DeploymentResult> task) {
+        checkMemory(plan, memoryMB);
+
+        BuildJob job = new BuildJob(projectId, tenantId, plan, memoryMB, task);
+
+        lock.lock();
+        try {
+            TenantQueue queue = tenants.get(tenantId);
+            if (queue == null) {
+                queue = new TenantQueue(plan);
+                queue.pass = virtualTime;
+                tenants.put(tenantId, queue);
+            }
+            queue.plan = plan;
+
+            int maxQueued = plan.getMaxQueuedBuilds();
+            if (maxQueued > 0 && queue.pending.size() + queue.running >= maxQueued) {
+                throw new BusinessException(429, "Too many pending deployments for the "
+                        + plan.getDisplayName() + " plan (limit " + maxQueued + ")");
+            }
+
+            queue.pending.add(job);
+            jobs.put(job.getId(), job);
+            counters.get(plan).queued++;
+            log.info("[{}] Queued build job {} for tenant {} ({})",
+                    projectId, job.getId(), tenantId, plan);
+
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+        return job;
+    }
+
+    /**
+     * Reject requests above the plan's memory limit before they are queued
+     */
+    public static void checkMemory(SubscriptionPlan plan, int memoryMB) {
+        if (memoryMB <= 0) {
+            throw new BusinessException(400, "Memory limit must be positive");
+        }
+        if (memoryMB > plan.getMaxMemoryMB()) {
+            throw new BusinessException(400, "Requested " + memoryMB + " MB exceeds the "
+                    + plan.getDisplayName() + " plan limit of " + plan.getMaxMemoryMB() + " MB");
+        }
+    }
+
+    /**
+     * Cancel a queued or running job
+     * @return false if no such job is active
+     */
+    public boolean cancel(String jobId) {
+        BuildJob job = jobs.get(jobId);
+        if (job == null) {
+            return false;
+        }
+
+        boolean queued = false;
+        lock.lock();
+        try {
+            TenantQueue queue = tenants.get(job.getTenantId());
+            if (queue != null && queue.pending.remove(job)) {
+                queued = true;
+                counters.get(job.getPlan()).queued--;
+                jobs.remove(jobId);
+                if (queue.pending.isEmpty() && queue.running == 0) {
+                    tenants.remove(job.getTenantId(), queue);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // A running job releases its worker once the pipeline unwinds
+        log.info("[{}] Cancelling build job {} ({})", job.getProjectId(), jobId, job.getState());
+        job.cancel(queued);
+        return true;
+    }
+
+    public BuildJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * Jobs that are queued or running
+     */
+    public Collection<BuildJob> getActiveJobs() {
+        return jobs.values();
+    }
+
+    /**
+     * Queue depth and wait time per plan
+     */
+    public Map<SubscriptionPlan, PlanStats> getStats() {
+        Map<SubscriptionPlan, PlanStats> stats = new EnumMap<>(SubscriptionPlan.class);
+        for (SubscriptionPlan plan : SubscriptionPlan.values()) {
+            stats.put(plan, snapshot(plan));
+        }
+        return stats;
+    }
+
+    private PlanStats snapshot(SubscriptionPlan plan) {
+        lock.lock();
+        try {
+            PlanCounters c = counters.get(plan);
+            return new PlanStats(c.queued, c.running, c.dispatched,
+                    c.dispatched > 0 ? c.totalWaitMs / c.dispatched : 0, c.maxWaitMs);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hand free workers to eligible tenants, lowest pass first.
+     * Caller must hold the lock.
+     */
+    private void dispatch() {
+        while (running < properties.getScheduler().getWorkers()) {
+            String nextTenant = null;
+            TenantQueue next = null;
+            for (Map.Entry<String, TenantQueue> entry : tenants.entrySet()) {
+                TenantQueue queue = entry.getValue();
+                if (queue.pending.isEmpty() || queue.running >= queue.plan.getMaxConcurrentBuilds()) {
+                    continue;
+                }
+                if (next == null || queue.pass < next.pass) {
+                    nextTenant = entry.getKey();
+                    next = queue;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+
+            BuildJob job = next.pending.poll();
+            next.running++;
+            running++;
+            virtualTime = next.pass;
+            next.pass += 1.0 / job.getPlan().getBuildWeight();
+
+            job.markStarted();
+            PlanCounters c = counters.get(job.getPlan());
+            c.queued--;
+            c.running++;
+            c.dispatched++;
+            c.totalWaitMs += job.waitMillis();
+            c.maxWaitMs = Math.max(c.maxWaitMs, job.waitMillis());
+            c.waitTimer.record(job.waitMillis(), TimeUnit.MILLISECONDS);
+
+            String tenantId = nextTenant;
+            TenantQueue queue = next;
+            workers.execute(() -> execute(tenantId, queue, job));
+        }
+    }
+
+    private void execute(String tenantId, TenantQueue queue, BuildJob job) {
+        log.info("[{}] Build job {} started after {} ms in queue",
+                job.getProjectId(), job.getId(), job.waitMillis());
+        try {
+            job.run();
+        } finally {
+            jobs.remove(job.getId());
+            lock.lock();
+            try {
+                queue.running--;
+                running--;
+                counters.get(job.getPlan()).running--;
+                if (queue.pending.isEmpty() && queue.running == 0) {
+                    tenants.remove(tenantId, queue);
+                }
+                dispatch();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Per-tenant backlog; guarded by the scheduler lock
+     */
+    private static class TenantQueue {
+        private final ArrayDeque<BuildJob> pending = new ArrayDeque<>();
+        private SubscriptionPlan plan;
+        private int running;
+        private double pass;
+
+        TenantQueue(SubscriptionPlan plan) {
+            this.plan = plan;
+        }
+    }
+
+    /**
+     * Per-plan counters; guarded by the scheduler lock
+     */
+    private static class PlanCounters {
+        private int queued;
+        private int running;
+        private long dispatched;
+        private long totalWaitMs;
+        private long maxWaitMs;
+        private Timer waitTimer;
+    }
+
+    /**
+     * Per-plan scheduler snapshot
+     */
+    public static class PlanStats {
+        private final int queued;
+        private final int running;
+        private final long dispatched;
+        private final long avgWaitMs;
+        private final long maxWaitMs;
+
+        public PlanStats(int queued, int running, long dispatched, long avgWaitMs, long maxWaitMs) {
+            this.queued = queued;
+            this.running = running;
+            this.dispatched = dispatched;
+            this.avgWaitMs = avgWaitMs;
+            this.maxWaitMs = maxWaitMs;
+        }
+
+        public int getQueued() { return queued; }
+
+        public int getRunning() { return running; }
+
+        public long getDispatched() { return dispatched; }
+
+        public long getAvgWaitMs() { return avgWaitMs; }
+
+        public long getMaxWaitMs() { return maxWaitMs; }
+    }
+}
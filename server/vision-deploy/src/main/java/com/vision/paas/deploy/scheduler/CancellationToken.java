@@ -0,0 +1,74 @@
+package com.vision.paas.deploy.scheduler;
+
+import com.vision.paas.common.exception.BusinessException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cancellation Token
+ * Lets another thread stop a running deployment: cancel() flips the flag,
+ * closes the blocking resources the pipeline registered (docker-java callbacks)
+ * and interrupts the worker thread running the pipeline.
+ */
+@Slf4j
+public class CancellationToken {
+
+    private final Set<AutoCloseable> resources = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+    private Thread owner;
+
+    /**
+     * Register a resource to close on cancel; closed at once if already cancelled
+     */
+    public <T extends AutoCloseable> T register(T resource) {
+        resources.add(resource);
+        if (cancelled) {
+            closeQuietly(resource);
+        }
+        return resource;
+    }
+
+    public void unregister(AutoCloseable resource) {
+        resources.remove(resource);
+    }
+
+    public void cancel() {
+        cancelled = true;
+        resources.forEach(this::closeQuietly);
+        synchronized (this) {
+            if (owner != null) {
+                owner.interrupt();
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new BusinessException(409, "Deployment cancelled");
+        }
+    }
+
+    synchronized void bind(Thread thread) {
+        owner = thread;
+    }
+
+    synchronized void unbind() {
+        owner = null;
+        // Clear an interrupt that raced with completion so it does not leak into the next job
+        Thread.interrupted();
+    }
+
+    private void closeQuietly(AutoCloseable resource) {
+        try {
+            resource.close();
+        } catch (Exception e) {
+            log.debug("Failed to close resource on cancel", e);
+        }
+    }
+}
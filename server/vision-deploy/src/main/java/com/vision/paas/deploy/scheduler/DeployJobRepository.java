@@ -0,0 +1,258 @@
+package com.vision.paas.deploy.scheduler;
+
+import com.vision.paas.deploy.scheduler.DistributedBuildQueue.QueuedJob;
+import com.vision.paas.deploy.scheduler.DistributedBuildQueue.WorkerInfo;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deploy Job Repository
+ * SQL for the shared build queue: deploy_jobs holds queued, running and recently finished
+ * jobs, deploy_workers the instances taking part and when they last reported in. Every
+ * time comparison uses the database clock, so workers need not agree on the time.
+ */
+@Repository
+@RequiredArgsConstructor
+public class DeployJobRepository {
+
+    private static final String INSERT_JOB =
+            "INSERT INTO deploy_jobs (id, project_id, tenant_id, plan, weight, max_concurrent, memory_mb, request, "
+            + "preferred_worker, pinned) VALUES (?, ?, ?, ?, ?, ?, ?, CAST(? AS jsonb), ?, ?)";
+
+    /*
+     * Fair share across the cluster: a tenant's n-th queued job ranks at (running + n) / weight,
+     * and only jobs within the tenant's concurrency limit are candidates. A worker takes the
+     * jobs queued for it first; jobs queued for another live worker only once they waited
+     * longer than the steal delay, and never while a pinned project's worker is alive.
+     * SKIP LOCKED lets workers claim side by side without waiting on each other's rows.
+     */
+    private static final String CLAIM =
+            "WITH live AS ("
+            + "  SELECT id FROM deploy_workers WHERE heartbeat_at > now() - ? * interval '1 millisecond'"
+            + "), busy AS ("
+            + "  SELECT tenant_id, count(*) AS running FROM deploy_jobs WHERE state = 'running' GROUP BY tenant_id"
+            + "), candidates AS ("
+            + "  SELECT j.id, j.preferred_worker, j.pinned, j.enqueued_at, j.weight, j.max_concurrent,"
+            + "         COALESCE(b.running, 0) AS running,"
+            + "         row_number() OVER (PARTITION BY j.tenant_id ORDER BY j.enqueued_at) AS position"
+            + "  FROM deploy_jobs j LEFT JOIN busy b ON b.tenant_id = j.tenant_id"
+            + "  WHERE j.state = 'queued'"
+            + ") "
+            + "UPDATE deploy_jobs d SET state = 'running', owner = ?, attempts = d.attempts + 1, started_at = now(),"
+            + "       lease_until = now() + ? * interval '1 millisecond' "
+            + "WHERE d.id IN ("
+            + "  SELECT q.id FROM deploy_jobs q JOIN candidates c ON c.id = q.id"
+            + "  WHERE q.state = 'queued' AND c.running + c.position <= c.max_concurrent"
+            + "    AND (c.preferred_worker IS NULL OR c.preferred_worker = ?"
+            + "         OR c.preferred_worker NOT IN (SELECT id FROM live)"
+            + "         OR (NOT c.pinned AND c.enqueued_at < now() - ? * interval '1 millisecond'))"
+            + "  ORDER BY COALESCE(c.preferred_worker = ?, false) DESC,"
+            + "           CAST(c.running + c.position AS float) / c.weight, c.enqueued_at"
+            + "  LIMIT ? FOR UPDATE OF q SKIP LOCKED"
+            + ") "
+            + "RETURNING d.id, d.project_id, d.tenant_id, d.plan, d.memory_mb, d.request, d.state, d.owner,"
+            + "          d.preferred_worker, d.attempts, d.enqueued_at, d.started_at";
+
+    private static final String RENEW =
+            "UPDATE deploy_jobs SET lease_until = now() + ? * interval '1 millisecond' "
+            + "WHERE owner = ? AND state = 'running' RETURNING id, cancel_requested";
+
+    private static final String FINISH =
+            "UPDATE deploy_jobs SET state = ?, result = CAST(? AS jsonb), error = ?, error_code = ?, "
+            + "finished_at = now(), lease_until = NULL WHERE id = ? AND owner = ? AND state = 'running'";
+
+    private static final String REQUEUE_EXPIRED =
+            "UPDATE deploy_jobs SET state = 'queued', owner = NULL, lease_until = NULL, preferred_worker = NULL, "
+            + "pinned = false WHERE state = 'running' AND lease_until < now() AND attempts < ?";
+
+    private static final String FAIL_EXPIRED =
+            "UPDATE deploy_jobs SET state = 'failed', error = 'Worker lost ' || attempts || ' times', error_code = 500, "
+            + "finished_at = now(), lease_until = NULL WHERE state = 'running' AND lease_until < now()";
+
+    private static final String RELEASE =
+            "UPDATE deploy_jobs SET state = 'queued', owner = NULL, lease_until = NULL, preferred_worker = NULL, "
+            + "pinned = false, attempts = GREATEST(attempts - 1, 0) WHERE owner = ? AND state = 'running'";
+
+    private static final String HEARTBEAT =
+            "INSERT INTO deploy_workers (id, host, capacity, running, started_at, heartbeat_at) "
+            + "VALUES (?, ?, ?, ?, ?, now()) ON CONFLICT (id) DO UPDATE SET host = EXCLUDED.host, "
+            + "capacity = EXCLUDED.capacity, running = EXCLUDED.running, heartbeat_at = now()";
+
+    private static final String JOB_COLUMNS =
+            "id, project_id, tenant_id, plan, memory_mb, request, state, owner, preferred_worker, attempts, "
+            + "enqueued_at, started_at";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void insert(QueuedJob job, int weight, int maxConcurrent, boolean pinned) {
+        jdbcTemplate.update(INSERT_JOB, job.getId(), job.getProjectId(), job.getTenantId(), job.getPlan(), weight,
+                maxConcurrent, job.getMemoryMB(), job.getRequest(), job.getPreferredWorker(), pinned);
+    }
+
+    /**
+     * Queued and running jobs of a tenant
+     */
+    public int countActive(String tenantId) {
+        Integer count = jdbcTemplate.queryForObject("SELECT count(*) FROM deploy_jobs "
+                + "WHERE tenant_id = ? AND state IN ('queued', 'running')", Integer.class, tenantId);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Worker that ran the project's last successful job
+     */
+    public String findLastOwner(String projectId) {
+        List<String> owners = jdbcTemplate.queryForList("SELECT owner FROM deploy_jobs "
+                + "WHERE project_id = ? AND state = 'done' AND owner IS NOT NULL ORDER BY enqueued_at DESC LIMIT 1",
+                String.class, projectId);
+        return owners.isEmpty() ? null : owners.get(0);
+    }
+
+    /**
+     * Take up to limit jobs for the worker and start their leases
+     */
+    public List<QueuedJob> claim(String workerId, int limit, long leaseMs, long stealAfterMs) {
+        return jdbcTemplate.query(CLAIM, JOB_MAPPER, leaseMs, workerId, leaseMs, workerId, stealAfterMs,
+                workerId, limit);
+    }
+
+    /**
+     * Extend the leases of the worker's running jobs
+     * @return Jobs the worker still owns, and whether cancelling them was requested
+     */
+    public Map<String, Boolean> renew(String workerId, long leaseMs) {
+        Map<String, Boolean> owned = new LinkedHashMap<>();
+        jdbcTemplate.query(RENEW, rs -> {
+            owned.put(rs.getString("id"), rs.getBoolean("cancel_requested"));
+        }, leaseMs, workerId);
+        return owned;
+    }
+
+    /**
+     * Record the outcome of a run; refused once the worker lost the job's lease
+     */
+    public boolean finish(String id, String workerId, String state, String result, String error, Integer errorCode) {
+        return jdbcTemplate.update(FINISH, ps -> {
+            ps.setString(1, state);
+            ps.setString(2, result);
+            ps.setString(3, error);
+            ps.setObject(4, errorCode, Types.INTEGER);
+            ps.setString(5, id);
+            ps.setString(6, workerId);
+        }) > 0;
+    }
+
+    public List<QueuedJob> findFinished(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        return jdbcTemplate.query("SELECT " + JOB_COLUMNS + ", result, error, error_code FROM deploy_jobs "
+                + "WHERE id IN (" + placeholders + ") AND state IN ('done', 'failed', 'cancelled')", (rs, row) -> {
+                    QueuedJob job = JOB_MAPPER.mapRow(rs, row);
+                    job.setResult(rs.getString("result"));
+                    job.setError(rs.getString("error"));
+                    job.setErrorCode(rs.getObject("error_code", Integer.class));
+                    return job;
+                }, ids.toArray());
+    }
+
+    public List<QueuedJob> findActive() {
+        return jdbcTemplate.query("SELECT " + JOB_COLUMNS + " FROM deploy_jobs "
+                + "WHERE state IN ('queued', 'running') ORDER BY enqueued_at", JOB_MAPPER);
+    }
+
+    /**
+     * Cancel a queued job outright, or flag a running one for its worker
+     * @return false if the job is not active
+     */
+    public boolean requestCancel(String id) {
+        if (jdbcTemplate.update("UPDATE deploy_jobs SET state = 'cancelled', finished_at = now() "
+                + "WHERE id = ? AND state = 'queued'", id) > 0) {
+            return true;
+        }
+        return jdbcTemplate.update("UPDATE deploy_jobs SET cancel_requested = true "
+                + "WHERE id = ? AND state = 'running'", id) > 0;
+    }
+
+    /**
+     * Requeue running jobs whose worker stopped extending the lease, failing those out of attempts
+     * @return Jobs requeued and failed
+     */
+    public int[] reapExpired(int maxAttempts) {
+        int requeued = jdbcTemplate.update(REQUEUE_EXPIRED, maxAttempts);
+        int failed = jdbcTemplate.update(FAIL_EXPIRED);
+        return new int[] {requeued, failed};
+    }
+
+    /**
+     * Put a stopping worker's jobs back in the queue without counting the interrupted run
+     */
+    public int release(String workerId) {
+        return jdbcTemplate.update(RELEASE, workerId);
+    }
+
+    public void heartbeat(WorkerInfo worker) {
+        jdbcTemplate.update(HEARTBEAT, worker.getId(), worker.getHost(), worker.getCapacity(), worker.getRunning(),
+                new Timestamp(worker.getStartedAt()));
+    }
+
+    /**
+     * Workers that reported in recently, longest running first
+     */
+    public List<WorkerInfo> findLiveWorkers(long staleMs) {
+        return jdbcTemplate.query("SELECT id, host, capacity, running, started_at, heartbeat_at FROM deploy_workers "
+                + "WHERE heartbeat_at > now() - ? * interval '1 millisecond' ORDER BY started_at, id", (rs, row) -> {
+                    WorkerInfo worker = new WorkerInfo();
+                    worker.setId(rs.getString("id"));
+                    worker.setHost(rs.getString("host"));
+                    worker.setCapacity(rs.getInt("capacity"));
+                    worker.setRunning(rs.getInt("running"));
+                    worker.setStartedAt(rs.getTimestamp("started_at").getTime());
+                    worker.setHeartbeatAt(rs.getTimestamp("heartbeat_at").getTime());
+                    return worker;
+                }, staleMs);
+    }
+
+    public void removeWorker(String workerId) {
+        jdbcTemplate.update("DELETE FROM deploy_workers WHERE id = ?", workerId);
+    }
+
+    /**
+     * Drop finished jobs and silent workers older than the retention
+     */
+    public int purge(long retentionMs) {
+        jdbcTemplate.update("DELETE FROM deploy_workers WHERE heartbeat_at < now() - ? * interval '1 millisecond'",
+                retentionMs);
+        return jdbcTemplate.update("DELETE FROM deploy_jobs WHERE state IN ('done', 'failed', 'cancelled') "
+                + "AND finished_at < now() - ? * interval '1 millisecond'", retentionMs);
+    }
+
+    private static final RowMapper<QueuedJob> JOB_MAPPER = (rs, row) -> {
+        QueuedJob job = new QueuedJob();
+        job.setId(rs.getString("id"));
+        job.setProjectId(rs.getString("project_id"));
+        job.setTenantId(rs.getString("tenant_id"));
+        job.setPlan(rs.getString("plan"));
+        job.setMemoryMB(rs.getInt("memory_mb"));
+        job.setRequest(rs.getString("request"));
+        job.setState(rs.getString("state"));
+        job.setOwner(rs.getString("owner"));
+        job.setPreferredWorker(rs.getString("preferred_worker"));
+        job.setAttempts(rs.getInt("attempts"));
+        job.setEnqueuedAt(rs.getTimestamp("enqueued_at").getTime());
+        Timestamp startedAt = rs.getTimestamp("started_at");
+        job.setStartedAt(startedAt != null ? startedAt.getTime() : 0);
+        return job;
+    };
+}
@@ -0,0 +1,630 @@
+package com.vision.paas.deploy.scheduler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vision.paas.common.enums.DeploymentStatus;
+import com.vision.paas.common.enums.SubscriptionPlan;
+import com.vision.paas.common.exception.BusinessException;
+import com.vision.paas.common.util.IdGenerator;
+import com.vision.paas.deploy.config.DeployProperties;
+import com.vision.paas.deploy.docker.DockerService;
+import com.vision.paas.deploy.service.AutoDeployService;
+import com.vision.paas.deploy.service.AutoDeployService.DeploymentRequest;
+import com.vision.paas.deploy.service.AutoDeployService.DeploymentResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Distributed Build Queue
+ * Lets several instances share one durable build queue in the deploy_jobs table:
+ * - A request is queued for the instance that received it, or for the worker that last
+ *   deployed the project, whose container, image cache and checkpoint are there
+ * - Each instance claims jobs for its free workers with FOR UPDATE SKIP LOCKED, in fair
+ *   share order across tenants; adding instances adds workers without shared locks
+ * - A worker idle while jobs wait for a busy one takes them after the steal delay
+ * - Workers heartbeat and extend the leases of the jobs they run; the longest-running
+ *   live worker is the leader and requeues jobs whose lease ran out. A worker that
+ *   finds it lost a lease stops the run, and its outcome is no longer accepted.
+ * The instance that queued a job completes its {@link BuildJob} once the outcome is
+ * recorded, so callers wait on it as with the local {@link BuildScheduler}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DistributedBuildQueue {
+
+    private static final String DONE = "done";
+    private static final String FAILED = "failed";
+    private static final String CANCELLED = "cancelled";
+
+    private final DeployProperties properties;
+    private final DeployJobRepository repository;
+    private final AutoDeployService autoDeployService;
+    private final DockerService dockerService;
+    private final MeterRegistry meterRegistry;
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    // Jobs queued through this instance, until their outcome is recorded
+    private final Map<String, BuildJob> submitted = new ConcurrentHashMap<>();
+    // Jobs this instance's workers run
+    private final Map<String, BuildJob> running = new ConcurrentHashMap<>();
+    private final Semaphore wakeup = new Semaphore(0);
+
+    private String workerId;
+    private long startedAt;
+    private int capacity;
+    private volatile boolean active;
+    private volatile boolean leader;
+    private volatile List<WorkerInfo> liveWorkers = List.of();
+    private long lastPurge;
+    private ExecutorService workers;
+    private ScheduledExecutorService timers;
+    private Thread dispatcher;
+    private Counter claimed;
+    private Counter stolen;
+    private Counter requeued;
+
+    @PostConstruct
+    public void init() {
+        DeployProperties.Cluster cluster = properties.getCluster();
+        if (!cluster.isEnabled()) {
+            return;
+        }
+        workerId = cluster.getWorkerId() != null && !cluster.getWorkerId().isBlank() ? cluster.getWorkerId()
+                : dockerService.getNodeName() + "-" + IdGenerator.generateShortId(6);
+        startedAt = System.currentTimeMillis();
+        capacity = properties.getScheduler().getWorkers();
+        claimed = Counter.builder("vision.deploy.cluster.claimed")
+                .description("Jobs this worker claimed from the shared queue")
+                .tag("stolen", "false")
+                .register(meterRegistry);
+        stolen = Counter.builder("vision.deploy.cluster.claimed")
+                .description("Jobs this worker claimed from the shared queue")
+                .tag("stolen", "true")
+                .register(meterRegistry);
+        requeued = Counter.builder("vision.deploy.cluster.requeued")
+                .description("Jobs requeued after their worker lost the lease")
+                .register(meterRegistry);
+        Gauge.builder("vision.deploy.cluster.running", running, Map::size)
+                .description("Shared-queue jobs running on this worker")
+                .register(meterRegistry);
+
+        active = true;
+        heartbeat();
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(capacity, runnable -> {
+            Thread thread = new Thread(runnable, "cluster-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        timers = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long heartbeatMs = cluster.getHeartbeatInterval().toMillis();
+        long pollMs = cluster.getPollInterval().toMillis();
+        timers.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        timers.scheduleWithFixedDelay(this::collect, pollMs, pollMs, TimeUnit.MILLISECONDS);
+        dispatcher = new Thread(this::dispatch, "cluster-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        log.info("Joined build cluster as {} with {} workers", workerId, capacity);
+    }
+
+    /**
+     * Stop claiming, interrupt the running jobs and hand them back to the queue for other workers
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!active) {
+            return;
+        }
+        active = false;
+        wakeup.release();
+        dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+        timers.shutdownNow();
+        running.values().forEach(job -> job.cancel(false));
+        workers.shutdownNow();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+        try {
+            int released = repository.release(workerId);
+            repository.removeWorker(workerId);
+            log.info("Left build cluster, {} running jobs requeued", released);
+        } catch (DataAccessException e) {
+            log.warn("Failed to leave build cluster, leases will expire: {}", e.getMessage());
+        }
+        submitted.values().forEach(job -> job.fail(new BusinessException(503, "Deploy service is shutting down")));
+        submitted.clear();
+    }
+
+    public boolean isEnabled() {
+        return active;
+    }
+
+    /**
+     * Queue a deployment for any worker in the cluster
+     * @param tenantId Owner of the deployment, used for fairness and caps
+     * @return Job that completes once a worker recorded the outcome
+     */
+    public BuildJob submit(String tenantId, DeploymentRequest request) {
+        requireEnabled();
+        SubscriptionPlan plan = request.getPlan() != null ? request.getPlan() : SubscriptionPlan.FREE;
+        BuildScheduler.checkMemory(plan, request.getMemoryMB());
+
+        // Back to the worker that has the project's container, as long as it is alive
+        String preferred = workerId;
+        boolean pinned = false;
+        if (properties.getCluster().isPinProjects()) {
+            String previous = repository.findLastOwner(request.getProjectId());
+            if (previous != null && isLive(previous)) {
+                preferred = previous;
+                pinned = true;
+            }
+        }
+        return enqueue(tenantId, request, plan, preferred, pinned);
+    }
+
+    /**
+     * Queue work on the project's running container, e.g. a runtime redeploy, for the worker
+     * whose Docker daemon runs it; it is never stolen by another worker while that one lives
+     * @return Job that completes once the owning worker recorded the outcome
+     */
+    public BuildJob submitToOwner(String tenantId, DeploymentRequest request) {
+        requireEnabled();
+        SubscriptionPlan plan = request.getPlan() != null ? request.getPlan() : SubscriptionPlan.FREE;
+        if (request.getMemoryMB() != 0) {
+            BuildScheduler.checkMemory(plan, request.getMemoryMB());
+        }
+        String owner;
+        try {
+            owner = repository.findLastOwner(request.getProjectId());
+        } catch (DataAccessException e) {
+            throw new BusinessException(503, "Build queue unavailable: " + e.getMessage());
+        }
+        if (owner == null) {
+            throw new BusinessException(404, "No worker has deployed project " + request.getProjectId()
+                    + ", deploy it first");
+        }
+        if (!isLive(owner)) {
+            throw new BusinessException(503, "Worker " + owner + " running project " + request.getProjectId()
+                    + " is not available");
+        }
+        return enqueue(tenantId, request, plan, owner, true);
+    }
+
+    private boolean isLive(String worker) {
+        return liveWorkers.stream().anyMatch(live -> live.getId().equals(worker));
+    }
+
+    private BuildJob enqueue(String tenantId, DeploymentRequest request, SubscriptionPlan plan,
+                             String preferred, boolean pinned) {
+        int maxQueued = plan.getMaxQueuedBuilds();
+        if (maxQueued > 0 && repository.countActive(tenantId) >= maxQueued) {
+            throw new BusinessException(429, "Too many pending deployments for the "
+                    + plan.getDisplayName() + " plan (limit " + maxQueued + ")");
+        }
+
+        BuildJob job = new BuildJob(request.getProjectId(), tenantId, plan, request.getMemoryMB(),
+                token -> autoDeployService.run(request, token));
+        QueuedJob row = new QueuedJob();
+        row.setId(job.getId());
+        row.setProjectId(request.getProjectId());
+        row.setTenantId(tenantId);
+        row.setPlan(plan.name());
+        row.setMemoryMB(request.getMemoryMB());
+        row.setRequest(toJson(request));
+        row.setPreferredWorker(preferred);
+        submitted.put(job.getId(), job);
+        try {
+            repository.insert(row, plan.getBuildWeight(), plan.getMaxConcurrentBuilds(), pinned);
+        } catch (DataAccessException e) {
+            submitted.remove(job.getId());
+            throw new BusinessException(503, "Build queue unavailable: " + e.getMessage());
+        }
+        log.info("[{}] Queued build job {} for tenant {} ({}) on {}{}", request.getProjectId(), job.getId(),
+                tenantId, plan, preferred, pinned ? ", pinned" : "");
+        wakeup.release();
+        return job;
+    }
+
+    /**
+     * Cancel a queued job, or ask the worker running it to stop
+     * @return false if no such job is active
+     */
+    public boolean cancel(String jobId) {
+        requireEnabled();
+        if (!repository.requestCancel(jobId)) {
+            return false;
+        }
+        BuildJob local = running.get(jobId);
+        if (local != null) {
+            local.cancel(false);
+        }
+        return true;
+    }
+
+    /**
+     * Jobs queued or running anywhere in the cluster
+     */
+    public List<QueuedJob> getActiveJobs() {
+        requireEnabled();
+        return repository.findActive();
+    }
+
+    public ClusterStatus getStatus() {
+        requireEnabled();
+        ClusterStatus status = new ClusterStatus();
+        status.setWorkerId(workerId);
+        status.setLeader(leader);
+        status.setRunning(running.size());
+        status.setWorkers(liveWorkers);
+        return status;
+    }
+
+    private void requireEnabled() {
+        if (!active) {
+            throw new BusinessException(503, "Build cluster is not enabled");
+        }
+    }
+
+    /**
+     * Claim jobs for free workers; when the queue has nothing for this worker, wait for
+     * the poll interval or until a job is queued here or a worker frees up
+     */
+    private void dispatch() {
+        DeployProperties.Cluster cluster = properties.getCluster();
+        while (active) {
+            int free = capacity - running.size();
+            List<QueuedJob> jobs = List.of();
+            if (free > 0) {
+                try {
+                    jobs = repository.claim(workerId, free, cluster.getLease().toMillis(),
+                            cluster.getStealAfter().toMillis());
+                    jobs.forEach(this::start);
+                } catch (DataAccessException e) {
+                    log.warn("Failed to claim build jobs: {}", e.getMessage());
+                } catch (RuntimeException e) {
+                    log.error("Failed to start build jobs", e);
+                }
+            }
+            if (jobs.size() < free || free <= 0) {
+                try {
+                    wakeup.tryAcquire(cluster.getPollInterval().toMillis(), TimeUnit.MILLISECONDS);
+                    wakeup.drainPermits();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void start(QueuedJob row) {
+        boolean steal = row.getPreferredWorker() != null && !workerId.equals(row.getPreferredWorker());
+        (steal ? stolen : claimed).increment();
+        log.info("[{}] Build job {} claimed{} (attempt {})", row.getProjectId(), row.getId(),
+                steal ? " from " + row.getPreferredWorker() : "", row.getAttempts());
+
+        DeploymentRequest request;
+        SubscriptionPlan plan;
+        try {
+            request = mapper.readValue(row.getRequest(), DeploymentRequest.class);
+            plan = SubscriptionPlan.valueOf(row.getPlan());
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            log.error("[{}] Unreadable build job {} dropped", row.getProjectId(), row.getId(), e);
+            repository.finish(row.getId(), workerId, FAILED, null, "Unreadable job: " + e.getMessage(), 500);
+            return;
+        }
+        // A run of its own, so only the recorded outcome completes the submitter's job
+        BuildJob job = new BuildJob(row.getId(), row.getProjectId(), row.getTenantId(), plan, row.getMemoryMB(),
+                token -> autoDeployService.run(request, token));
+        job.markStarted();
+        running.put(job.getId(), job);
+        workers.execute(() -> execute(job));
+    }
+
+    private void execute(BuildJob job) {
+        try {
+            job.run();
+        } finally {
+            running.remove(job.getId());
+            if (active) {
+                record(job);
+                wakeup.release();
+            }
+        }
+    }
+
+    /**
+     * Record a finished run and, if it was queued here, hand the outcome to the waiting caller
+     */
+    private void record(BuildJob job) {
+        DeploymentResult result = null;
+        BusinessException failure = null;
+        try {
+            result = job.await();
+        } catch (BusinessException e) {
+            failure = e;
+        }
+        String state = failure != null ? FAILED
+                : result.getStatus() == DeploymentStatus.CANCELLED ? CANCELLED : DONE;
+
+        boolean recorded;
+        try {
+            recorded = repository.finish(job.getId(), workerId, state, result != null ? toJson(result) : null,
+                    failure != null ? failure.getMessage() : null, failure != null ? failure.getCode() : null);
+        } catch (DataAccessException e) {
+            // The lease runs out and the job is run again elsewhere
+            log.warn("[{}] Failed to record build job {}: {}", job.getProjectId(), job.getId(), e.getMessage());
+            return;
+        }
+        if (!recorded) {
+            log.warn("[{}] Build job {} lost its lease, outcome discarded", job.getProjectId(), job.getId());
+            return;
+        }
+        BuildJob origin = submitted.remove(job.getId());
+        if (origin != null) {
+            if (failure != null) {
+                origin.fail(failure);
+            } else {
+                origin.complete(result);
+            }
+        }
+    }
+
+    /**
+     * Report in, extend leases, stop runs that were cancelled or lost their lease,
+     * and as leader requeue the jobs of workers that went silent
+     */
+    private void heartbeat() {
+        DeployProperties.Cluster cluster = properties.getCluster();
+        long leaseMs = cluster.getLease().toMillis();
+        try {
+            WorkerInfo self = new WorkerInfo();
+            self.setId(workerId);
+            self.setHost(dockerService.getNodeName());
+            self.setCapacity(capacity);
+            self.setRunning(running.size());
+            self.setStartedAt(startedAt);
+            repository.heartbeat(self);
+
+            // Only jobs started before the renewal can be missing from it
+            Set<String> local = Set.copyOf(running.keySet());
+            Map<String, Boolean> owned = repository.renew(workerId, leaseMs);
+            for (String id : local) {
+                BuildJob job = running.get(id);
+                if (job == null) {
+                    continue;
+                }
+                if (!owned.containsKey(id)) {
+                    log.warn("[{}] Build job {} lost its lease, stopping the run", job.getProjectId(), id);
+                    job.cancel(false);
+                } else if (owned.get(id)) {
+                    log.info("[{}] Build job {} cancelled", job.getProjectId(), id);
+                    job.cancel(false);
+                }
+            }
+
+            List<WorkerInfo> live = repository.findLiveWorkers(leaseMs);
+            liveWorkers = live;
+            boolean wasLeader = leader;
+            leader = !live.isEmpty() && workerId.equals(live.get(0).getId());
+            if (leader != wasLeader) {
+                log.info("Worker {} {} build cluster leader", workerId, leader ? "is now" : "is no longer");
+            }
+            if (leader) {
+                int[] reaped = repository.reapExpired(cluster.getMaxAttempts());
+                if (reaped[0] + reaped[1] > 0) {
+                    requeued.increment(reaped[0]);
+                    log.warn("Requeued {} and failed {} build jobs of lost workers", reaped[0], reaped[1]);
+                }
+                if (System.currentTimeMillis() - lastPurge > TimeUnit.MINUTES.toMillis(1)) {
+                    lastPurge = System.currentTimeMillis();
+                    repository.purge(cluster.getRetention().toMillis());
+                }
+            }
+        } catch (DataAccessException e) {
+            log.warn("Build cluster heartbeat failed: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Build cluster heartbeat failed", e);
+        }
+    }
+
+    /**
+     * Complete jobs queued here whose outcome another worker recorded
+     */
+    private void collect() {
+        List<String> waiting = new ArrayList<>();
+        submitted.keySet().forEach(id -> {
+            if (!running.containsKey(id)) {
+                waiting.add(id);
+            }
+        });
+        if (waiting.isEmpty()) {
+            return;
+        }
+        try {
+            for (QueuedJob row : repository.findFinished(waiting)) {
+                BuildJob job = submitted.remove(row.getId());
+                if (job == null) {
+                    continue;
+                }
+                if (row.getResult() != null) {
+                    job.complete(mapper.readValue(row.getResult(), DeploymentResult.class));
+                } else if (CANCELLED.equals(row.getState())) {
+                    job.fail(new BusinessException(409, "Deployment " + row.getId() + " cancelled"));
+                } else {
+                    job.fail(new BusinessException(row.getErrorCode() != null ? row.getErrorCode() : 500,
+                            row.getError() != null ? row.getError() : "Deployment " + row.getId() + " failed"));
+                }
+            }
+        } catch (DataAccessException | JsonProcessingException e) {
+            log.warn("Failed to collect build job outcomes: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Failed to collect build job outcomes", e);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    /**
+     * A row of the shared queue
+     */
+    public static class QueuedJob {
+        private String id;
+        private String projectId;
+        private String tenantId;
+        private String plan;
+        private int memoryMB;
+        private String request;
+        private String state;
+        private String owner;
+        private String preferredWorker;
+        private int attempts;
+        private long enqueuedAt;
+        private long startedAt;
+        private String result;
+        private String error;
+        private Integer errorCode;
+
+        public String getId() { return id; }
+        public void setId(String id) { this.id = id; }
+
+        public String getProjectId() { return projectId; }
+        public void setProjectId(String projectId) { this.projectId = projectId; }
+
+        public String getTenantId() { return tenantId; }
+        public void setTenantId(String tenantId) { this.tenantId = tenantId; }
+
+        public String getPlan() { return plan; }
+        public void setPlan(String plan) { this.plan = plan; }
+
+        public int getMemoryMB() { return memoryMB; }
+        public void setMemoryMB(int memoryMB) { this.memoryMB = memoryMB; }
+
+        /**
+         * The {@link DeploymentRequest} as JSON
+         */
+        public String getRequest() { return request; }
+        public void setRequest(String request) { this.request = request; }
+
+        public String getState() { return state; }
+        public void setState(String state) { this.state = state; }
+
+        /**
+         * Worker running the job
+         */
+        public String getOwner() { return owner; }
+        public void setOwner(String owner) { this.owner = owner; }
+
+        /**
+         * Worker the job was queued for
+         */
+        public String getPreferredWorker() { return preferredWorker; }
+        public void setPreferredWorker(String preferredWorker) { this.preferredWorker = preferredWorker; }
+
+        public int getAttempts() { return attempts; }
+        public void setAttempts(int attempts) { this.attempts = attempts; }
+
+        public long getEnqueuedAt() { return enqueuedAt; }
+        public void setEnqueuedAt(long enqueuedAt) { this.enqueuedAt = enqueuedAt; }
+
+        public long getStartedAt() { return startedAt; }
+        public void setStartedAt(long startedAt) { this.startedAt = startedAt; }
+
+        /**
+         * The {@link DeploymentResult} as JSON, once finished
+         */
+        public String getResult() { return result; }
+        public void setResult(String result) { this.result = result; }
+
+        public String getError() { return error; }
+        public void setError(String error) { this.error = error; }
+
+        public Integer getErrorCode() { return errorCode; }
+        public void setErrorCode(Integer errorCode) { this.errorCode = errorCode; }
+    }
+
+    /**
+     * A worker instance as it last reported in
+     */
+    public static class WorkerInfo {
+        private String id;
+        private String host;
+        private int capacity;
+        private int running;
+        private long startedAt;
+        private long heartbeatAt;
+
+        public String getId() { return id; }
+        public void setId(String id) { this.id = id; }
+
+        public String getHost() { return host; }
+        public void setHost(String host) { this.host = host; }
+
+        public int getCapacity() { return capacity; }
+        public void setCapacity(int capacity) { this.capacity = capacity; }
+
+        public int getRunning() { return running; }
+        public void setRunning(int running) { this.running = running; }
+
+        public long getStartedAt() { return startedAt; }
+        public void setStartedAt(long startedAt) { this.startedAt = startedAt; }
+
+        public long getHeartbeatAt() { return heartbeatAt; }
+        public void setHeartbeatAt(long heartbeatAt) { this.heartbeatAt = heartbeatAt; }
+    }
+
+    /**
+     * This worker's view of the cluster
+     */
+    public static class ClusterStatus {
+        private String workerId;
+        private boolean leader;
+        private int running;
+        private List<WorkerInfo> workers;
+
+        public String getWorkerId() { return workerId; }
+        public void setWorkerId(String workerId) { this.workerId = workerId; }
+
+        public boolean isLeader() { return leader; }
+        public void setLeader(boolean leader) { this.leader = leader; }
+
+        /**
+         * Jobs running on this worker
+         */
+        public int getRunning() { return running; }
+        public void setRunning(int running) { this.running = running; }
+
+        public List<WorkerInfo> getWorkers() { return workers; }
+        public void setWorkers(List<WorkerInfo> workers) { this.workers = workers; }
+    }
+}
@@ -2,18 +2,36 @@ package com.vision.paas.deploy.service;
 
 import com.vision.paas.common.enums.DeploymentStatus;
 import com.vision.paas.common.enums.ProjectType;
+import com.vision.paas.common.enums.SubscriptionPlan;
 import com.vision.paas.common.exception.BusinessException;
 import com.vision.paas.deploy.detector.ProjectDetector;
 import com.vision.paas.deploy.docker.DockerService;
 import com.vision.paas.deploy.generator.DockerfileGenerator;
+import com.vision.paas.deploy.git.DeployPathFilter;
 import com.vision.paas.deploy.git.GitService;
+import com.vision.paas.deploy.history.DeploymentHistory;
+import com.vision.paas.deploy.metrics.DeploymentMetrics;
+import com.vision.paas.deploy.metrics.DeploymentTimeline;
+import com.vision.paas.deploy.pipeline.CheckpointStore;
+import com.vision.paas.deploy.pipeline.DeploymentCheckpoint;
+import com.vision.paas.deploy.pipeline.DeploymentPipeline;
+import com.vision.paas.deploy.pipeline.StageContext;
+import com.vision.paas.deploy.scheduler.CancellationToken;
+import com.vision.paas.deploy.supervisor.RestartSupervisor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Auto Deploy Service
@@ -24,6 +42,8 @@ import java.util.concurrent.CompletableFuture;
  * 4. Build Docker image
  * 5. Start container
  * 6. Health check
+ * The steps run as a {@link DeploymentPipeline}; a retry of a failed deployment
+ * reuses the image and container it left behind instead of building again.
  */
 @Slf4j
 @Service
@@ -34,6 +54,34 @@ public class AutoDeployService {
     private final ProjectDetector projectDetector;
     private final DockerfileGenerator dockerfileGenerator;
     private final DockerService dockerService;
+    private final DeploymentMetrics deploymentMetrics;
+    private final RestartSupervisor restartSupervisor;
+    private final CheckpointStore checkpointStore;
+    private final DeploymentHistory deploymentHistory;
+    
+    // Pipeline stages and the checkpointed outputs they hand on
+    private static final String STAGE_SOURCE = "source";
+    private static final String STAGE_DOCKERFILE = "dockerfile";
+    private static final String STAGE_IMAGE = "image";
+    private static final String STAGE_CONTAINER = "container";
+    private static final String STAGE_READY = "ready";
+    private static final String OUT_REPO_PATH = "repoPath";
+    private static final String OUT_APP_PATH = "appPath";
+    private static final String OUT_COMMIT_SHA = "commitSha";
+    private static final String OUT_PROJECT_TYPE = "projectType";
+    private static final String OUT_PORT = "port";
+    private static final String OUT_DOCKERFILE = "dockerfile";
+    private static final String OUT_IMAGE_ID = "imageId";
+    private static final String OUT_CONTAINER_ID = "containerId";
+    
+    // Commit of each project's last successful deployment, the base for path-filtered triggers;
+    // filled from the deployment history after a restart
+    private final Map<String, String> lastDeployedCommits = new ConcurrentHashMap<>();
+    
+    // Held by every deploy, redeploy and runtime redeploy of a project; they all act on its vision-<id> container
+    private final Map<String, ReentrantLock> projectLocks = new ConcurrentHashMap<>();
+    
+    private volatile BiFunction<String, SubscriptionPlan, Integer> memoryAdvisor;
     
     /**
      * Deploy project automatically (zero-config)
@@ -45,89 +93,139 @@ public class AutoDeployService {
      */
     public DeploymentResult deploy(String projectId, String gitUrl, 
                                     Map<String, String> envVars, int memoryMB) {
+        return deploy(projectId, gitUrl, envVars, memoryMB, new CancellationToken());
+    }
+    
+    /**
+     * Deploy project automatically (zero-config) with the limits of the free plan,
+     * stopping early when the token is cancelled
+     */
+    public DeploymentResult deploy(String projectId, String gitUrl, 
+                                    Map<String, String> envVars, int memoryMB,
+                                    CancellationToken token) {
+        return deploy(projectId, gitUrl, envVars, memoryMB, SubscriptionPlan.FREE, token);
+    }
+    
+    /**
+     * Deploy project automatically (zero-config), running the container with the plan's
+     * resource limits and stopping early when the token is cancelled
+     */
+    public DeploymentResult deploy(String projectId, String gitUrl, 
+                                    Map<String, String> envVars, int memoryMB,
+                                    SubscriptionPlan plan, CancellationToken token) {
+        return withProjectLock(projectId, () -> runDeploy(projectId, gitUrl, envVars, memoryMB, plan, token));
+    }
+    
+    private DeploymentResult runDeploy(String projectId, String gitUrl, Map<String, String> envVars, int memoryMB,
+                                       SubscriptionPlan plan, CancellationToken token) {
         log.info("Starting auto-deployment for project: {}", projectId);
         
         DeploymentResult result = new DeploymentResult();
         result.setProjectId(projectId);
         result.setStatus(DeploymentStatus.PENDING);
+        deploymentHistory.record(result);
+        DeploymentTimeline timeline = result.getTimeline();
+        StageContext context = new StageContext(
+                openCheckpoint(projectId, gitUrl,
+                        DeploymentCheckpoint.fingerprint("auto", gitUrl, envVars, memoryMB, plan)),
+                checkpointStore, token);
+        
+        DeploymentPipeline pipeline = new DeploymentPipeline()
+                // Step 1: Clone repository
+                .stage(STAGE_SOURCE, List.of(), ctx -> {
+                    result.setStatus(DeploymentStatus.CLONING);
+                    log.info("[{}] Cloning repository...", projectId);
+                    String repoPath = timeline.stage(DeploymentTimeline.CLONE,
+                            () -> gitService.cloneRepository(gitUrl, projectId, token));
+                    result.setRepoPath(repoPath);
+                    result.setCommitSha(gitService.getCurrentCommit(repoPath));
+                    ctx.put(OUT_REPO_PATH, repoPath);
+                    ctx.put(OUT_COMMIT_SHA, result.getCommitSha());
+                    result.addLog("✓ Repository cloned successfully");
+                    token.throwIfCancelled();
+                })
+                // Steps 2-4: Detect project type and port, generate Dockerfile
+                .stage(STAGE_DOCKERFILE, List.of(STAGE_SOURCE), ctx -> {
+                    String repoPath = ctx.get(OUT_REPO_PATH);
+                    result.setStatus(DeploymentStatus.DETECTING);
+                    log.info("[{}] Detecting project type...", projectId);
+                    ProjectType projectType = timeline.stage(DeploymentTimeline.DETECT,
+                            () -> projectDetector.detect(repoPath));
+                    result.setProjectType(projectType);
+                    result.addLog("✓ Detected project type: " + projectType.getDisplayName());
+                    
+                    int port = projectDetector.detectPort(repoPath, projectType);
+                    result.setPort(port);
+                    result.addLog("✓ Detected port: " + port);
+                    
+                    log.info("[{}] Generating Dockerfile...", projectId);
+                    String dockerfile = timeline.stage(DeploymentTimeline.GENERATE,
+                            () -> dockerfileGenerator.generate(projectType, repoPath, port));
+                    result.setDockerfile(dockerfile);
+                    result.addLog("✓ Dockerfile generated");
+                    ctx.put(OUT_PROJECT_TYPE, projectType.name());
+                    ctx.put(OUT_PORT, port);
+                    ctx.put(OUT_DOCKERFILE, dockerfile);
+                })
+                // Step 5: Build Docker image
+                .resumable(STAGE_IMAGE, List.of(STAGE_DOCKERFILE), this::imageExists, ctx -> {
+                    result.setStatus(DeploymentStatus.BUILDING);
+                    log.info("[{}] Building Docker image...", projectId);
+                    String imageId = dockerService.buildImage(projectId, ctx.get(OUT_REPO_PATH),
+                            ctx.get(OUT_DOCKERFILE), token, timeline, line -> result.addLog("  " + line));
+                    result.setImageId(imageId);
+                    ctx.put(OUT_IMAGE_ID, imageId);
+                    result.addLog("✓ Image built successfully: " + imageId.substring(0, 12));
+                    gitService.release(projectId, token);
+                    token.throwIfCancelled();
+                })
+                // Step 6: Start container
+                .resumable(STAGE_CONTAINER, List.of(STAGE_IMAGE), this::containerRunning, ctx -> {
+                    result.setStatus(DeploymentStatus.DEPLOYING);
+                    log.info("[{}] Starting container...", projectId);
+                    String containerId = timeline.stage(DeploymentTimeline.CREATE,
+                            () -> dockerService.createContainer(projectId, ctx.get(OUT_IMAGE_ID),
+                                    ctx.getInt(OUT_PORT), envVars, memoryMB, plan));
+                    result.setContainerId(containerId);
+                    ctx.put(OUT_CONTAINER_ID, containerId);
+                    timeline.stage(DeploymentTimeline.START, () -> {
+                        dockerService.startCreatedContainer(containerId);
+                        return containerId;
+                    });
+                    result.addLog("✓ Container started: " + containerId.substring(0, 12));
+                })
+                // Steps 7-8: Get container port, health check
+                .stage(STAGE_READY, List.of(STAGE_CONTAINER), ctx -> {
+                    String containerId = ctx.get(OUT_CONTAINER_ID);
+                    Integer hostPort = dockerService.getContainerPort(containerId);
+                    result.setHostPort(hostPort);
+                    result.addLog("✓ Container accessible on port: " + hostPort);
+                    
+                    boolean healthy = timeline.stage(DeploymentTimeline.READY,
+                            () -> dockerService.awaitReady(containerId, token));
+                    if (healthy) {
+                        result.setStatus(DeploymentStatus.RUNNING);
+                        recordDeployedCommit(result);
+                        restartSupervisor.track(projectId, containerId);
+                        result.addLog("✓ Deployment successful! Application is running");
+                        log.info("[{}] Deployment completed successfully", projectId);
+                    } else {
+                        result.setErrorMessage("Health check failed");
+                        result.setStatus(DeploymentStatus.FAILED);
+                        result.addLog("✗ Health check failed");
+                        log.error("[{}] Container health check failed", projectId);
+                        removeUnhealthy(projectId, containerId);
+                    }
+                });
         
         try {
-            // Step 1: Clone repository
-            result.setStatus(DeploymentStatus.CLONING);
-            log.info("[{}] Cloning repository...", projectId);
-            String repoPath = gitService.cloneRepository(gitUrl, projectId);
-            result.setRepoPath(repoPath);
-            result.addLog("✓ Repository cloned successfully");
-            
-            // Step 2: Detect project type
-            result.setStatus(DeploymentStatus.DETECTING);
-            log.info("[{}] Detecting project type...", projectId);
-            ProjectType projectType = projectDetector.detect(repoPath);
-            result.setProjectType(projectType);
-            result.addLog("✓ Detected project type: " + projectType.getDisplayName());
-            
-            // Step 3: Detect port
-            int port = projectDetector.detectPort(repoPath, projectType);
-            result.setPort(port);
-            result.addLog("✓ Detected port: " + port);
-            
-            // Step 4: Generate Dockerfile
-            log.info("[{}] Generating Dockerfile...", projectId);
-            String dockerfile = dockerfileGenerator.generate(projectType, repoPath, port);
-            result.setDockerfile(dockerfile);
-            result.addLog("✓ Dockerfile generated");
-            
-            // Step 5: Build Docker image
-            result.setStatus(DeploymentStatus.BUILDING);
-            log.info("[{}] Building Docker image...", projectId);
-            String imageId = dockerService.buildImage(projectId, repoPath, dockerfile);
-            result.setImageId(imageId);
-            result.addLog("✓ Image built successfully: " + imageId.substring(0, 12));
-            
-            // Step 6: Start container
-            result.setStatus(DeploymentStatus.DEPLOYING);
-            log.info("[{}] Starting container...", projectId);
-            String containerId = dockerService.startContainer(
-                    projectId, imageId, port, envVars, memoryMB);
-            result.setContainerId(containerId);
-            result.addLog("✓ Container started: " + containerId.substring(0, 12));
-            
-            // Step 7: Get container port
-            Integer hostPort = dockerService.getContainerPort(containerId);
-            result.setHostPort(hostPort);
-            result.addLog("✓ Container accessible on port: " + hostPort);
-            
-            // Step 8: Health check
-            Thread.sleep(3000); // Wait for container to start
-            boolean healthy = dockerService.isContainerHealthy(containerId);
-            if (healthy) {
-                result.setStatus(DeploymentStatus.RUNNING);
-                result.addLog("✓ Deployment successful! Application is running");
-                log.info("[{}] Deployment completed successfully", projectId);
-            } else {
-                result.setStatus(DeploymentStatus.FAILED);
-                result.addLog("✗ Health check failed");
-                log.error("[{}] Container health check failed", projectId);
-            }
-            
+            pipeline.run(context, stage -> restored(result, context, stage));
+            finishCheckpoint(result);
         } catch (Exception e) {
-            log.error("[{}] Deployment failed", projectId, e);
-            result.setStatus(DeploymentStatus.FAILED);
-            result.addLog("✗ Deployment failed: " + e.getMessage());
-            
-            // Cleanup on failure
-            try {
-                if (result.getContainerId() != null) {
-                    dockerService.stopContainer(result.getContainerId());
-                    dockerService.removeContainer(result.getContainerId());
-                }
-                gitService.cleanup(projectId);
-            } catch (Exception cleanupEx) {
-                log.error("Cleanup failed", cleanupEx);
-            }
+            handleFailure(projectId, result, e, token);
         }
         
-        return result;
+        return publish(result);
     }
     
     /**
@@ -135,74 +233,345 @@ public class AutoDeployService {
      */
     public DeploymentResult deployWithConfig(String projectId, String gitUrl,
                                               DeploymentConfig config) {
+        return deployWithConfig(projectId, gitUrl, config, new CancellationToken());
+    }
+    
+    /**
+     * Deploy with custom configuration, stopping early when the token is cancelled
+     */
+    public DeploymentResult deployWithConfig(String projectId, String gitUrl,
+                                              DeploymentConfig config, CancellationToken token) {
+        return withProjectLock(projectId, () -> runDeployWithConfig(projectId, gitUrl, config, token));
+    }
+    
+    private DeploymentResult runDeployWithConfig(String projectId, String gitUrl, DeploymentConfig config,
+                                                 CancellationToken token) {
         log.info("Starting custom deployment for project: {}", projectId);
         
         DeploymentResult result = new DeploymentResult();
         result.setProjectId(projectId);
         result.setStatus(DeploymentStatus.PENDING);
+        deploymentHistory.record(result);
+        DeploymentTimeline timeline = result.getTimeline();
         
         try {
-            // Clone repository
-            result.setStatus(DeploymentStatus.CLONING);
-            String repoPath = gitService.cloneRepository(gitUrl, projectId);
-            result.setRepoPath(repoPath);
-            result.addLog("✓ Repository cloned");
+            String rootDirectory = normalizeRootDirectory(config.getRootDirectory());
+            List<String> sparsePaths = sparsePaths(rootDirectory, config.getDependsOn());
+            StageContext context = new StageContext(
+                    openCheckpoint(projectId, gitUrl, DeploymentCheckpoint.fingerprint("custom", gitUrl,
+                            config.getProjectType(), config.getPort(), config.getCustomDockerfile(),
+                            config.getBuildCommand(), config.getStartCommand(), config.getEnvVars(),
+                            config.getMemoryMB(), rootDirectory, config.getDependsOn(), config.getIncludePaths(),
+                            config.getExcludePaths(), config.getPlan())),
+                    checkpointStore, token);
             
-            // Use custom Dockerfile if provided
-            String dockerfile;
-            if (config.getCustomDockerfile() != null) {
-                dockerfile = config.getCustomDockerfile();
-                result.addLog("✓ Using custom Dockerfile");
-            } else {
-                // Auto-detect and generate
-                result.setStatus(DeploymentStatus.DETECTING);
-                ProjectType projectType = config.getProjectType() != null ?
-                        config.getProjectType() : projectDetector.detect(repoPath);
-                result.setProjectType(projectType);
-                
-                int port = config.getPort() != null ?
-                        config.getPort() : projectDetector.detectPort(repoPath, projectType);
-                result.setPort(port);
-                
-                dockerfile = dockerfileGenerator.generate(projectType, repoPath, port);
-                result.addLog("✓ Auto-generated Dockerfile");
-            }
-            
-            result.setDockerfile(dockerfile);
-            
-            // Build image
-            result.setStatus(DeploymentStatus.BUILDING);
-            String imageId = dockerService.buildImage(projectId, repoPath, dockerfile);
-            result.setImageId(imageId);
-            result.addLog("✓ Image built");
-            
-            // Start container with custom config
-            result.setStatus(DeploymentStatus.DEPLOYING);
-            String containerId = dockerService.startContainer(
-                    projectId, imageId, 
-                    config.getPort() != null ? config.getPort() : result.getPort(),
-                    config.getEnvVars(), 
-                    config.getMemoryMB() != null ? config.getMemoryMB() : 512);
-            result.setContainerId(containerId);
-            result.addLog("✓ Container started");
+            DeploymentPipeline pipeline = new DeploymentPipeline()
+                    // Clone repository, only the root directory and its dependencies for a monorepo app
+                    .stage(STAGE_SOURCE, List.of(), ctx -> {
+                        result.setStatus(DeploymentStatus.CLONING);
+                        String repoPath = timeline.stage(DeploymentTimeline.CLONE,
+                                () -> gitService.cloneRepository(gitUrl, projectId, token, sparsePaths));
+                        result.setRepoPath(repoPath);
+                        result.setCommitSha(gitService.getCurrentCommit(repoPath));
+                        ctx.put(OUT_REPO_PATH, repoPath);
+                        ctx.put(OUT_COMMIT_SHA, result.getCommitSha());
+                        result.addLog("✓ Repository cloned" + (sparsePaths != null ? " (" + String.join(", ", sparsePaths) + ")" : ""));
+                        token.throwIfCancelled();
+                        
+                        // Skip the build when the commit changed nothing the deployment depends on
+                        if (!Boolean.TRUE.equals(config.getForce()) && !hasRelevantChanges(projectId, repoPath, rootDirectory, config, result)) {
+                            result.setStatus(DeploymentStatus.SKIPPED);
+                            gitService.release(projectId, token);
+                            log.info("[{}] No relevant changes, deployment skipped", projectId);
+                            ctx.halt();
+                        }
+                    })
+                    .stage(STAGE_DOCKERFILE, List.of(STAGE_SOURCE), ctx -> {
+                        String repoPath = ctx.get(OUT_REPO_PATH);
+                        String appPath = rootDirectory != null ? Paths.get(repoPath, rootDirectory).toString() : repoPath;
+                        if (!new File(appPath).isDirectory()) {
+                            throw new BusinessException(400, "Root directory not found in repository: " + rootDirectory);
+                        }
+                        ctx.put(OUT_APP_PATH, appPath);
+                        
+                        // Use custom Dockerfile if provided
+                        String dockerfile;
+                        if (config.getCustomDockerfile() != null) {
+                            dockerfile = config.getCustomDockerfile();
+                            result.addLog("✓ Using custom Dockerfile");
+                        } else {
+                            // Auto-detect and generate
+                            result.setStatus(DeploymentStatus.DETECTING);
+                            ProjectType projectType = config.getProjectType() != null ?
+                                    config.getProjectType() : timeline.stage(DeploymentTimeline.DETECT,
+                                            () -> projectDetector.detect(appPath));
+                            result.setProjectType(projectType);
+                            ctx.put(OUT_PROJECT_TYPE, projectType.name());
+                            
+                            int port = config.getPort() != null ?
+                                    config.getPort() : projectDetector.detectPort(appPath, projectType);
+                            result.setPort(port);
+                            ctx.put(OUT_PORT, port);
+                            
+                            dockerfile = timeline.stage(DeploymentTimeline.GENERATE,
+                                    () -> dockerfileGenerator.generate(projectType, appPath, port));
+                            result.addLog("✓ Auto-generated Dockerfile");
+                        }
+                        
+                        result.setDockerfile(dockerfile);
+                        ctx.put(OUT_DOCKERFILE, dockerfile);
+                    })
+                    // Build image; a custom Dockerfile gets the whole checkout so it can copy dependencies
+                    .resumable(STAGE_IMAGE, List.of(STAGE_DOCKERFILE), this::imageExists, ctx -> {
+                        result.setStatus(DeploymentStatus.BUILDING);
+                        String contextPath = config.getCustomDockerfile() != null ? ctx.get(OUT_REPO_PATH) : ctx.get(OUT_APP_PATH);
+                        String imageId = dockerService.buildImage(projectId, contextPath, ctx.get(OUT_DOCKERFILE),
+                                token, timeline, line -> result.addLog("  " + line));
+                        result.setImageId(imageId);
+                        ctx.put(OUT_IMAGE_ID, imageId);
+                        result.addLog("✓ Image built");
+                        gitService.release(projectId, token);
+                        token.throwIfCancelled();
+                    })
+                    // Start container with custom config
+                    .resumable(STAGE_CONTAINER, List.of(STAGE_IMAGE), this::containerRunning, ctx -> {
+                        result.setStatus(DeploymentStatus.DEPLOYING);
+                        String containerId = timeline.stage(DeploymentTimeline.CREATE,
+                                () -> dockerService.createContainer(
+                                        projectId, ctx.get(OUT_IMAGE_ID), 
+                                        config.getPort() != null ? config.getPort() : ctx.getInt(OUT_PORT),
+                                        config.getEnvVars(), 
+                                        config.getMemoryMB() != null ? config.getMemoryMB() : 512,
+                                        config.getPlan() != null ? config.getPlan() : SubscriptionPlan.FREE));
+                        result.setContainerId(containerId);
+                        ctx.put(OUT_CONTAINER_ID, containerId);
+                        timeline.stage(DeploymentTimeline.START, () -> {
+                            dockerService.startCreatedContainer(containerId);
+                            return containerId;
+                        });
+                        result.addLog("✓ Container started");
+                    })
+                    // Get container port, health check
+                    .stage(STAGE_READY, List.of(STAGE_CONTAINER), ctx -> {
+                        String containerId = ctx.get(OUT_CONTAINER_ID);
+                        Integer hostPort = dockerService.getContainerPort(containerId);
+                        result.setHostPort(hostPort);
+                        
+                        boolean healthy = timeline.stage(DeploymentTimeline.READY,
+                                () -> dockerService.awaitReady(containerId, token));
+                        if (!healthy) {
+                            result.setErrorMessage("Health check failed");
+                        }
+                        result.setStatus(healthy ? DeploymentStatus.RUNNING : DeploymentStatus.FAILED);
+                        result.addLog(healthy ? "✓ Deployment successful" : "✗ Health check failed");
+                        if (healthy) {
+                            recordDeployedCommit(result);
+                            restartSupervisor.track(projectId, containerId);
+                        } else {
+                            removeUnhealthy(projectId, containerId);
+                        }
+                    });
             
-            // Get container port
-            Integer hostPort = dockerService.getContainerPort(containerId);
-            result.setHostPort(hostPort);
-            
-            // Health check
-            Thread.sleep(3000);
-            boolean healthy = dockerService.isContainerHealthy(containerId);
-            result.setStatus(healthy ? DeploymentStatus.RUNNING : DeploymentStatus.FAILED);
-            result.addLog(healthy ? "✓ Deployment successful" : "✗ Health check failed");
+            pipeline.run(context, stage -> restored(result, context, stage));
+            finishCheckpoint(result);
             
         } catch (Exception e) {
-            log.error("[{}] Custom deployment failed", projectId, e);
-            result.setStatus(DeploymentStatus.FAILED);
-            result.addLog("✗ Deployment failed: " + e.getMessage());
+            handleFailure(projectId, result, e, token);
         }
         
-        return result;
+        return publish(result);
+    }
+    
+    /**
+     * Checkpoint to resume from, as long as the commit its image was built from is still the
+     * remote head; after a push, or when the remote cannot be asked, the deployment starts over
+     */
+    private DeploymentCheckpoint openCheckpoint(String projectId, String gitUrl, String fingerprint) {
+        DeploymentCheckpoint checkpoint = checkpointStore.open(projectId, fingerprint);
+        if (!checkpoint.isCompleted(STAGE_IMAGE) && !checkpoint.isCompleted(STAGE_CONTAINER)) {
+            return checkpoint;
+        }
+        Map<String, String> source = checkpoint.getStages().get(STAGE_SOURCE);
+        String checkpointed = source != null ? source.get(OUT_COMMIT_SHA) : null;
+        String remoteHead = gitService.getRemoteHead(gitUrl);
+        if (checkpointed != null && checkpointed.equals(remoteHead)) {
+            return checkpoint;
+        }
+        log.info("[{}] Discarding checkpoint of commit {}, the remote head is {}", projectId,
+                checkpointed != null ? abbreviate(checkpointed) : "unknown", remoteHead != null ? abbreviate(remoteHead) : "unknown");
+        checkpointStore.delete(projectId);
+        return new DeploymentCheckpoint(projectId, fingerprint);
+    }
+    
+    /**
+     * A container that never became ready is not left behind; a retry starts a new one
+     * from the checkpointed image
+     */
+    private void removeUnhealthy(String projectId, String containerId) {
+        log.info("[{}] Removing unhealthy container {}", projectId, abbreviate(containerId));
+        dockerService.removeContainer(containerId);
+    }
+    
+    /**
+     * A stage's image is gone once it was cleaned up or pruned
+     */
+    private boolean imageExists(StageContext context) {
+        String imageId = context.get(OUT_IMAGE_ID);
+        return imageId != null && dockerService.imageExists(imageId);
+    }
+    
+    /**
+     * A container from an interrupted attempt is only picked up while it still runs the checkpointed image
+     */
+    private boolean containerRunning(StageContext context) {
+        String containerId = context.get(OUT_CONTAINER_ID);
+        String imageId = context.get(OUT_IMAGE_ID);
+        DockerService.ContainerSpec spec = containerId != null ? dockerService.getContainerSpec(containerId) : null;
+        return spec != null && spec.isRunning() && imageId != null
+                && spec.getImageId() != null && spec.getImageId().endsWith(imageId);
+    }
+    
+    /**
+     * Take over what a restored stage and the stages before it produced
+     */
+    private void restored(DeploymentResult result, StageContext context, String stage) {
+        result.setRepoPath(context.get(OUT_REPO_PATH));
+        result.setCommitSha(context.get(OUT_COMMIT_SHA));
+        if (context.get(OUT_PROJECT_TYPE) != null) {
+            result.setProjectType(ProjectType.valueOf(context.get(OUT_PROJECT_TYPE)));
+        }
+        result.setPort(context.getInt(OUT_PORT));
+        result.setDockerfile(context.get(OUT_DOCKERFILE));
+        result.setImageId(context.get(OUT_IMAGE_ID));
+        if (STAGE_CONTAINER.equals(stage)) {
+            result.setContainerId(context.get(OUT_CONTAINER_ID));
+        }
+        String id = STAGE_CONTAINER.equals(stage) ? result.getContainerId() : result.getImageId();
+        result.addLog("✓ Resumed " + stage + " from an earlier attempt" + (id != null ? ": " + abbreviate(id) : ""));
+    }
+    
+    /**
+     * A deployment that ran to the end, or had nothing to do, leaves nothing to resume;
+     * a failed health check keeps the checkpoint so a retry only checks again
+     */
+    private void finishCheckpoint(DeploymentResult result) {
+        if (result.getStatus() != DeploymentStatus.FAILED) {
+            checkpointStore.delete(result.getProjectId());
+        }
+    }
+    
+    /**
+     * Diff the checkout against the last deployed commit through the deployment's path filters
+     * @return true if a relevant path changed or there is nothing to compare against
+     */
+    private boolean hasRelevantChanges(String projectId, String repoPath, String rootDirectory,
+                                       DeploymentConfig config, DeploymentResult result) {
+        String lastSha = config.getLastDeployedSha() != null ?
+                config.getLastDeployedSha() : lastDeployedCommit(projectId);
+        if (lastSha == null) {
+            return true;
+        }
+        List<String> changed = gitService.getChangedPaths(repoPath, lastSha);
+        if (changed == null) {
+            result.addLog("✓ Last deployed commit " + abbreviate(lastSha) + " not found, building");
+            return true;
+        }
+        DeployPathFilter filter = DeployPathFilter.of(rootDirectory, config.getDependsOn(),
+                config.getIncludePaths(), config.getExcludePaths());
+        List<String> relevant = filter.relevant(changed);
+        if (relevant.isEmpty()) {
+            result.addLog("✓ No relevant changes since " + abbreviate(lastSha)
+                    + " (" + changed.size() + " changed paths filtered out), build skipped");
+            return false;
+        }
+        result.addLog("✓ " + relevant.size() + " relevant changes since " + abbreviate(lastSha));
+        return true;
+    }
+    
+    private String lastDeployedCommit(String projectId) {
+        String sha = lastDeployedCommits.get(projectId);
+        if (sha == null) {
+            sha = deploymentHistory.getLastDeployedCommit(projectId);
+            if (sha != null) {
+                lastDeployedCommits.putIfAbsent(projectId, sha);
+            }
+        }
+        return sha;
+    }
+    
+    private void recordDeployedCommit(DeploymentResult result) {
+        if (result.getCommitSha() != null && !"unknown".equals(result.getCommitSha())) {
+            lastDeployedCommits.put(result.getProjectId(), result.getCommitSha());
+        }
+    }
+    
+    /**
+     * Repository-relative root directory, or null for the repository root
+     */
+    private static String normalizeRootDirectory(String rootDirectory) {
+        if (rootDirectory == null) {
+            return null;
+        }
+        String root = rootDirectory.trim().replace('\\', '/').replaceAll("^(\\./)+", "").replaceAll("/+$", "");
+        if (root.isEmpty() || ".".equals(root)) {
+            return null;
+        }
+        if (root.startsWith("/") || List.of(root.split("/")).contains("..")) {
+            throw new BusinessException(400, "Root directory must stay inside the repository: " + rootDirectory);
+        }
+        return root;
+    }
+    
+    /**
+     * Paths a sparse checkout needs, or null to check out everything
+     */
+    private static List<String> sparsePaths(String rootDirectory, List<String> dependsOn) {
+        if (rootDirectory == null) {
+            return null;
+        }
+        List<String> paths = new ArrayList<>();
+        paths.add(rootDirectory);
+        if (dependsOn != null) {
+            paths.addAll(dependsOn);
+        }
+        return paths;
+    }
+    
+    private static String abbreviate(String sha) {
+        return sha.length() > 12 ? sha.substring(0, 12) : sha;
+    }
+    
+    /**
+     * Run a queued deployment request, e.g. one claimed from the shared job queue
+     */
+    public DeploymentResult run(DeploymentRequest request, CancellationToken token) {
+        SubscriptionPlan plan = request.getPlan() != null ? request.getPlan() : SubscriptionPlan.FREE;
+        return switch (request.getKind()) {
+            case AUTO -> deploy(request.getProjectId(), request.getGitUrl(), request.getEnvVars(),
+                    request.getMemoryMB(), plan, token);
+            case CUSTOM -> deployWithConfig(request.getProjectId(), request.getGitUrl(), request.getConfig(), token);
+            case REDEPLOY -> redeploy(request.getProjectId(), request.getGitUrl(), request.getEnvVars(),
+                    request.getMemoryMB(), plan, token);
+            case RECONFIGURE -> reconfigure(request.getProjectId(), request.getEnvVars(),
+                    reconfigureMemory(request, plan), plan, token);
+        };
+    }
+    
+    /**
+     * Supplies the memory recommendation for a project within a plan, on the worker running its container
+     */
+    public void setMemoryAdvisor(BiFunction<String, SubscriptionPlan, Integer> memoryAdvisor) {
+        this.memoryAdvisor = memoryAdvisor;
+    }
+    
+    private Integer reconfigureMemory(DeploymentRequest request, SubscriptionPlan plan) {
+        if (request.isRecommendedMemory()) {
+            if (memoryAdvisor == null) {
+                throw new BusinessException(409, "Memory right-sizing is disabled");
+            }
+            return memoryAdvisor.apply(request.getProjectId(), plan);
+        }
+        return request.getMemoryMB() > 0 ? request.getMemoryMB() : null;
     }
     
     /**
@@ -210,20 +579,248 @@ public class AutoDeployService {
      */
     public DeploymentResult redeploy(String projectId, String gitUrl, 
                                       Map<String, String> envVars, int memoryMB) {
+        return redeploy(projectId, gitUrl, envVars, memoryMB, new CancellationToken());
+    }
+    
+    /**
+     * Redeploy existing project with the limits of the free plan, stopping early when the token is cancelled
+     */
+    public DeploymentResult redeploy(String projectId, String gitUrl, 
+                                      Map<String, String> envVars, int memoryMB,
+                                      CancellationToken token) {
+        return redeploy(projectId, gitUrl, envVars, memoryMB, SubscriptionPlan.FREE, token);
+    }
+    
+    /**
+     * Redeploy existing project with the plan's resource limits, stopping early when the token is cancelled
+     */
+    public DeploymentResult redeploy(String projectId, String gitUrl, 
+                                      Map<String, String> envVars, int memoryMB,
+                                      SubscriptionPlan plan, CancellationToken token) {
         log.info("Redeploying project: {}", projectId);
+        return withProjectLock(projectId, () -> {
+            // Stop and remove old container
+            try {
+                String oldContainerId = "vision-" + projectId;
+                dockerService.stopContainer(oldContainerId);
+                dockerService.removeContainer(oldContainerId);
+                dockerService.cleanupImages(projectId);
+            } catch (Exception e) {
+                log.debug("No existing container to stop", e);
+            }
+            
+            // Deploy fresh
+            return runDeploy(projectId, gitUrl, envVars, memoryMB, plan, token);
+        });
+    }
+    
+    /**
+     * Run the action holding the project's lock, waiting for a deployment of the project in progress
+     */
+    private <T> T withProjectLock(String projectId, Supplier<T> action) {
+        ReentrantLock lock = projectLocks.computeIfAbsent(projectId, id -> new ReentrantLock());
+        try {
+            lock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException(409, "Cancelled while waiting for the deployment of project "
+                    + projectId + " in progress");
+        }
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Runtime-only redeploy: apply new environment variables and/or memory limit to the
+     * running image without cloning or building. A memory-only change is applied live;
+     * anything else starts a replacement container next to the current one and swaps
+     * them once it is ready, so the current container keeps serving until then. Fails
+     * with 409 rather than waiting while another deployment of the project runs.
+     * @param envVars Complete new environment, or null to keep the current one
+     * @param memoryMB New memory limit in MB, or null to keep the current one
+     * @param plan Plan whose CPU, I/O and pids limits a replacement container gets
+     */
+    public DeploymentResult reconfigure(String projectId, Map<String, String> envVars, Integer memoryMB,
+                                        SubscriptionPlan plan, CancellationToken token) {
+        log.info("Reconfiguring project: {}", projectId);
+        ReentrantLock lock = projectLocks.computeIfAbsent(projectId, id -> new ReentrantLock());
+        if (!lock.tryLock()) {
+            throw new BusinessException(409, "A deployment of project " + projectId + " is already in progress");
+        }
+        try {
+            recoverSwap(projectId);
+            DockerService.ContainerSpec current = dockerService.getContainerSpec("vision-" + projectId);
+            if (current == null || !current.isRunning() || current.getPort() == null) {
+                throw new BusinessException(404, "No running container for project " + projectId + ", deploy it first");
+            }
+            return reconfigure(projectId, current, envVars, memoryMB, plan, token);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Clean up after a swap interrupted between its renames: the retired container either
+     * gets the project's name back, or is removed if the replacement already took it
+     */
+    private void recoverSwap(String projectId) {
+        String liveName = "vision-" + projectId;
+        DockerService.ContainerSpec retired = dockerService.getContainerSpec(liveName + "-old");
+        if (retired == null) {
+            return;
+        }
+        if (dockerService.getContainerSpec(liveName) == null) {
+            log.warn("[{}] Restoring the name of the container of an interrupted swap", projectId);
+            dockerService.renameContainer(retired.getContainerId(), liveName);
+        } else {
+            log.warn("[{}] Removing the container retired by an interrupted swap", projectId);
+            dockerService.stopContainer(retired.getContainerId());
+            dockerService.removeContainer(retired.getContainerId());
+        }
+    }
+    
+    private DeploymentResult reconfigure(String projectId, DockerService.ContainerSpec current,
+                                         Map<String, String> envVars, Integer memoryMB,
+                                         SubscriptionPlan plan, CancellationToken token) {
+        DeploymentResult result = new DeploymentResult();
+        result.setProjectId(projectId);
+        result.setStatus(DeploymentStatus.DEPLOYING);
+        result.setImageId(current.getImageId());
+        deploymentHistory.record(result);
+        result.setPort(current.getPort());
+        DeploymentTimeline timeline = result.getTimeline();
+        String liveName = "vision-" + projectId;
+        int memory = memoryMB != null ? memoryMB : current.getMemoryMB() != null ? current.getMemoryMB() : 512;
+        String candidateId = null;
         
-        // Stop and remove old container
         try {
-            String oldContainerId = "vision-" + projectId;
-            dockerService.stopContainer(oldContainerId);
-            dockerService.removeContainer(oldContainerId);
-            dockerService.cleanupImages(projectId);
+            // Memory only: resize the running container in place
+            if (envVars == null) {
+                boolean unchanged = current.getMemoryMB() != null && current.getMemoryMB() == memory;
+                if (unchanged || dockerService.updateContainerMemory(current.getContainerId(), memory)) {
+                    result.setContainerId(current.getContainerId());
+                    result.setHostPort(dockerService.getContainerPort(current.getContainerId()));
+                    result.setStatus(DeploymentStatus.RUNNING);
+                    result.addLog("✓ Memory limit set to " + memory + " MB without restart");
+                    return publish(result);
+                }
+                result.addLog("✓ Live memory update refused, replacing the container");
+            }
+            
+            // Side-by-side: start the replacement under a temporary name and wait until it is ready
+            Map<String, String> env = envVars != null ? envVars : current.getEnvVars();
+            String candidateName = liveName + "-next";
+            if (dockerService.getContainerSpec(candidateName) != null) {
+                // Left over from an interrupted swap
+                dockerService.removeContainer(candidateName);
+            }
+            String newId = timeline.stage(DeploymentTimeline.CREATE,
+                    () -> dockerService.createContainer(projectId, candidateName, current.getImageId(),
+                            current.getPort(), env, memory, plan));
+            candidateId = newId;
+            timeline.stage(DeploymentTimeline.START, () -> {
+                dockerService.startCreatedContainer(newId);
+                return newId;
+            });
+            result.addLog("✓ Replacement container started: " + newId.substring(0, 12));
+            
+            boolean healthy = timeline.stage(DeploymentTimeline.READY,
+                    () -> dockerService.awaitReady(newId, token));
+            if (!healthy) {
+                throw new BusinessException("Replacement container failed health check");
+            }
+            
+            // Swap names while both run: the old container only moves aside, and gets its name back
+            // if the new one cannot take it, so the project never loses its container
+            String retiredName = liveName + "-old";
+            dockerService.renameContainer(current.getContainerId(), retiredName);
+            try {
+                dockerService.renameContainer(newId, liveName);
+            } catch (BusinessException e) {
+                dockerService.renameContainer(current.getContainerId(), liveName);
+                throw e;
+            }
+            
+            // Route to the new container through its deployment before the old one stops serving
+            result.setContainerId(newId);
+            result.setHostPort(dockerService.getContainerPort(newId));
+            result.setStatus(DeploymentStatus.RUNNING);
+            restartSupervisor.track(projectId, newId);
+            result.addLog("✓ Swapped to the new container on port " + result.getHostPort());
+            try {
+                dockerService.stopContainer(current.getContainerId());
+                dockerService.removeContainer(current.getContainerId());
+            } catch (BusinessException e) {
+                // Left as vision-<id>-old; the next runtime redeploy removes it
+                log.warn("[{}] Could not retire the old container: {}", projectId, e.getMessage());
+                result.addLog("✗ Old container not removed yet: " + e.getMessage());
+            }
+            
         } catch (Exception e) {
-            log.debug("No existing container to stop", e);
+            if (token.isCancelled()) {
+                Thread.interrupted();
+                result.setStatus(DeploymentStatus.CANCELLED);
+                result.addLog("✗ Runtime redeploy cancelled");
+            } else {
+                log.error("[{}] Runtime redeploy failed", projectId, e);
+                result.setErrorMessage(e.getMessage());
+                result.setStatus(DeploymentStatus.FAILED);
+                result.addLog("✗ Runtime redeploy failed: " + e.getMessage());
+            }
+            // Until the swap the old container is untouched and keeps serving
+            if (candidateId != null && result.getContainerId() == null) {
+                dockerService.removeContainer(candidateId);
+                result.setContainerId(current.getContainerId());
+                result.addLog("✓ Current container kept");
+            }
         }
         
-        // Deploy fresh
-        return deploy(projectId, gitUrl, envVars, memoryMB);
+        return publish(result);
+    }
+    
+    private DeploymentResult publish(DeploymentResult result) {
+        deploymentMetrics.publish(result);
+        deploymentHistory.finish(result);
+        return result;
+    }
+    
+    /**
+     * Record a failed or cancelled deployment and release what it holds:
+     * the container it started and its workspace, which is discarded rather
+     * than kept for reuse. Partial image layers are
+     * removed by DockerService when the build itself is aborted; a finished
+     * image stays for a retry to resume from.
+     */
+    private void handleFailure(String projectId, DeploymentResult result, Exception e,
+                               CancellationToken token) {
+        if (token.isCancelled()) {
+            // Cleanup below talks to Docker; don't let the cancel interrupt abort it
+            Thread.interrupted();
+            log.info("[{}] Deployment cancelled", projectId);
+            result.setStatus(DeploymentStatus.CANCELLED);
+            result.addLog("✗ Deployment cancelled");
+            // A cancelled deployment is abandoned, not resumed by the next one
+            checkpointStore.delete(projectId);
+        } else {
+            log.error("[{}] Deployment failed", projectId, e);
+            result.setErrorMessage(e.getMessage());
+            result.setStatus(DeploymentStatus.FAILED);
+            result.addLog("✗ Deployment failed: " + e.getMessage());
+        }
+        
+        // Cleanup on failure
+        try {
+            if (result.getContainerId() != null) {
+                dockerService.stopContainer(result.getContainerId());
+                dockerService.removeContainer(result.getContainerId());
+            }
+            gitService.cleanup(projectId, token);
+        } catch (Exception cleanupEx) {
+            log.error("Cleanup failed", cleanupEx);
+        }
     }
     
     /**
@@ -240,6 +837,10 @@ public class AutoDeployService {
             
             // Start previous container
             dockerService.restartContainer(previousContainerId);
+            DockerService.ContainerSpec previous = dockerService.getContainerSpec(previousContainerId);
+            if (previous != null) {
+                restartSupervisor.track(projectId, previous.getContainerId());
+            }
             
             log.info("Rollback completed for project: {}", projectId);
         } catch (Exception e) {
@@ -252,27 +853,51 @@ public class AutoDeployService {
      * Deployment Result DTO
      */
     public static class DeploymentResult {
+        private String deploymentId;
         private String projectId;
         private DeploymentStatus status;
         private ProjectType projectType;
         private String repoPath;
         private String dockerfile;
         private String imageId;
+        private String commitSha;
         private String containerId;
         private Integer port;
         private Integer hostPort;
+        private String errorMessage;
+        private final long startedAt = System.currentTimeMillis();
         private StringBuilder logs = new StringBuilder();
+        private final DeploymentTimeline timeline = new DeploymentTimeline();
+        private volatile Consumer<DeploymentResult> statusListener;
         
-        public void addLog(String message) {
+        // Build progress is appended from the thread reading the builder's output
+        public synchronized void addLog(String message) {
             logs.append(message).append("\n");
         }
         
+        /**
+         * Called after every status change, e.g. to persist the transition
+         */
+        public void onStatusChange(Consumer<DeploymentResult> listener) {
+            this.statusListener = listener;
+        }
+        
         // Getters and Setters
+        public String getDeploymentId() { return deploymentId; }
+        public void setDeploymentId(String deploymentId) { this.deploymentId = deploymentId; }
+        
         public String getProjectId() { return projectId; }
         public void setProjectId(String projectId) { this.projectId = projectId; }
         
         public DeploymentStatus getStatus() { return status; }
-        public void setStatus(DeploymentStatus status) { this.status = status; }
+        public void setStatus(DeploymentStatus status) {
+            boolean changed = this.status != status;
+            this.status = status;
+            Consumer<DeploymentResult> listener = statusListener;
+            if (changed && listener != null) {
+                listener.accept(this);
+            }
+        }
         
         public ProjectType getProjectType() { return projectType; }
         public void setProjectType(ProjectType projectType) { this.projectType = projectType; }
@@ -286,6 +911,9 @@ public class AutoDeployService {
         public String getImageId() { return imageId; }
         public void setImageId(String imageId) { this.imageId = imageId; }
         
+        public String getCommitSha() { return commitSha; }
+        public void setCommitSha(String commitSha) { this.commitSha = commitSha; }
+        
         public String getContainerId() { return containerId; }
         public void setContainerId(String containerId) { this.containerId = containerId; }
         
@@ -295,7 +923,66 @@ public class AutoDeployService {
         public Integer getHostPort() { return hostPort; }
         public void setHostPort(Integer hostPort) { this.hostPort = hostPort; }
         
-        public String getLogs() { return logs.toString(); }
+        public String getErrorMessage() { return errorMessage; }
+        public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
+        
+        public long getStartedAt() { return startedAt; }
+        
+        public synchronized String getLogs() { return logs.toString(); }
+        public synchronized void setLogs(String logs) { this.logs = new StringBuilder(logs != null ? logs : ""); }
+        
+        public DeploymentTimeline getTimeline() { return timeline; }
+    }
+    
+    /**
+     * Deployment Request DTO
+     * Everything needed to run a deployment, so any worker can pick it up
+     */
+    public static class DeploymentRequest {
+        private Kind kind;
+        private String projectId;
+        private String gitUrl;
+        private Map<String, String> envVars;
+        private int memoryMB;
+        private SubscriptionPlan plan;
+        private DeploymentConfig config;
+        private boolean recommendedMemory;
+        
+        public enum Kind { AUTO, CUSTOM, REDEPLOY, RECONFIGURE }
+        
+        // Getters and Setters
+        public Kind getKind() { return kind; }
+        public void setKind(Kind kind) { this.kind = kind; }
+        
+        public String getProjectId() { return projectId; }
+        public void setProjectId(String projectId) { this.projectId = projectId; }
+        
+        public String getGitUrl() { return gitUrl; }
+        public void setGitUrl(String gitUrl) { this.gitUrl = gitUrl; }
+        
+        public Map<String, String> getEnvVars() { return envVars; }
+        public void setEnvVars(Map<String, String> envVars) { this.envVars = envVars; }
+        
+        /**
+         * Memory limit in MB; for a runtime redeploy 0 keeps the current one
+         */
+        public int getMemoryMB() { return memoryMB; }
+        public void setMemoryMB(int memoryMB) { this.memoryMB = memoryMB; }
+        
+        public SubscriptionPlan getPlan() { return plan; }
+        public void setPlan(SubscriptionPlan plan) { this.plan = plan; }
+        
+        /**
+         * Custom deployments only
+         */
+        public DeploymentConfig getConfig() { return config; }
+        public void setConfig(DeploymentConfig config) { this.config = config; }
+        
+        /**
+         * Runtime redeploys only: apply the memory recommendation of the worker running the container
+         */
+        public boolean isRecommendedMemory() { return recommendedMemory; }
+        public void setRecommendedMemory(boolean recommendedMemory) { this.recommendedMemory = recommendedMemory; }
     }
     
     /**
@@ -310,6 +997,12 @@ public class AutoDeployService {
         private Map<String, String> envVars;
         private Integer memoryMB;
         private String rootDirectory;
+        private List<String> dependsOn;
+        private List<String> includePaths;
+        private List<String> excludePaths;
+        private String lastDeployedSha;
+        private Boolean force;
+        private SubscriptionPlan plan;
         
         // Getters and Setters
         public ProjectType getProjectType() { return projectType; }
@@ -335,5 +1028,23 @@ public class AutoDeployService {
         
         public String getRootDirectory() { return rootDirectory; }
         public void setRootDirectory(String rootDirectory) { this.rootDirectory = rootDirectory; }
+        
+        public List<String> getDependsOn() { return dependsOn; }
+        public void setDependsOn(List<String> dependsOn) { this.dependsOn = dependsOn; }
+        
+        public List<String> getIncludePaths() { return includePaths; }
+        public void setIncludePaths(List<String> includePaths) { this.includePaths = includePaths; }
+        
+        public List<String> getExcludePaths() { return excludePaths; }
+        public void setExcludePaths(List<String> excludePaths) { this.excludePaths = excludePaths; }
+        
+        public String getLastDeployedSha() { return lastDeployedSha; }
+        public void setLastDeployedSha(String lastDeployedSha) { this.lastDeployedSha = lastDeployedSha; }
+        
+        public Boolean getForce() { return force; }
+        public void setForce(Boolean force) { this.force = force; }
+        
+        public SubscriptionPlan getPlan() { return plan; }
+        public void setPlan(SubscriptionPlan plan) { this.plan = plan; }
     }
 }
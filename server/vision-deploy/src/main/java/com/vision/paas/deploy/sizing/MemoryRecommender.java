@@ -0,0 +1,480 @@
+package com.vision.paas.deploy.sizing;
+
+import com.vision.paas.common.enums.SubscriptionPlan;
+import com.vision.paas.common.exception.BusinessException;
+import com.vision.paas.deploy.config.DeployProperties;
+import com.vision.paas.deploy.docker.DockerService;
+import com.vision.paas.deploy.scheduler.CancellationToken;
+import com.vision.paas.deploy.service.AutoDeployService;
+import com.vision.paas.deploy.supervisor.RestartSupervisor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Memory Recommender
+ * Samples the working set (usage without reclaimable page cache) of every running app
+ * container and recommends a memory limit per project: the p99 over the window plus
+ * headroom, never below the observed peak, and grown past the current limit when the
+ * container was OOM-killed. Recommendations stay within the project's plan and can be
+ * applied to running containers automatically.
+ *
+ * Metrics:
+ * - vision.deploy.memory.reclaimable  MB that right-sizing would free on this host
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MemoryRecommender {
+
+    private static final long MB = 1024 * 1024;
+    private static final int MAX_SAMPLES = 10_000;
+    private static final int DEFAULT_MEMORY_MB = 512;
+
+    private final DeployProperties properties;
+    private final DockerService dockerService;
+    private final AutoDeployService autoDeployService;
+    private final RestartSupervisor restartSupervisor;
+    private final MeterRegistry registry;
+
+    private final Map<String, Usage> projects = new ConcurrentHashMap<>();
+    private ScheduledExecutorService timer;
+    private ExecutorService samplers;
+    private volatile long reclaimableMB;
+
+    @PostConstruct
+    public void init() {
+        DeployProperties.Sizing sizing = properties.getSizing();
+        if (!sizing.isEnabled()) {
+            log.info("Memory right-sizing disabled");
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "memory-sizing");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger counter = new AtomicInteger();
+        samplers = Executors.newFixedThreadPool(Math.max(1, sizing.getSampleThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "memory-sampler-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = sizing.getSampleInterval().toMillis();
+        timer.scheduleWithFixedDelay(this::sampleAll, interval, interval, TimeUnit.MILLISECONDS);
+        restartSupervisor.addCrashListener(this::onCrash);
+        // Runtime redeploys queued to this worker by another one apply the recommendation made here
+        autoDeployService.setMemoryAdvisor(this::takeRecommendation);
+
+        Gauge.builder("vision.deploy.memory.reclaimable", this, recommender -> recommender.reclaimableMB)
+                .description("Memory in MB that applying all recommendations would free on this host")
+                .baseUnit("megabytes")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (timer != null) {
+            timer.shutdownNow();
+            samplers.shutdownNow();
+        }
+    }
+
+    /**
+     * Recommendation for one project, null if it was never sampled
+     */
+    public Recommendation getRecommendation(String projectId) {
+        Usage usage = projects.get(projectId);
+        return usage != null ? recommend(usage) : null;
+    }
+
+    /**
+     * Sampled projects with the memory right-sizing would free or need
+     * @param included Projects to report on, e.g. those of the caller
+     */
+    public CapacityReport getReport(Predicate<String> included) {
+        List<Recommendation> recommendations = new ArrayList<>();
+        projects.values().stream()
+                .filter(usage -> included.test(usage.projectId))
+                .forEach(usage -> recommendations.add(recommend(usage)));
+        recommendations.sort(Comparator.comparing(Recommendation::getProjectId));
+
+        CapacityReport report = new CapacityReport();
+        report.setRecommendations(recommendations);
+        for (Recommendation recommendation : recommendations) {
+            if (recommendation.getCurrentMB() == null || recommendation.getRecommendedMB() == null) {
+                continue;
+            }
+            report.setAllocatedMB(report.getAllocatedMB() + recommendation.getCurrentMB());
+            report.setRecommendedMB(report.getRecommendedMB() + recommendation.getRecommendedMB());
+            report.setReclaimableMB(report.getReclaimableMB() + recommendation.getSavingsMB());
+            if (recommendation.getRecommendedMB() > recommendation.getCurrentMB()) {
+                report.setUnderProvisioned(report.getUnderProvisioned() + 1);
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Memory limit for a deploy that did not ask for one: the recommendation if there is one, within the plan
+     */
+    public int defaultMemoryMB(String projectId, SubscriptionPlan plan) {
+        Recommendation recommendation = getRecommendation(projectId);
+        int memory = recommendation != null && recommendation.getRecommendedMB() != null
+                ? recommendation.getRecommendedMB() : DEFAULT_MEMORY_MB;
+        return Math.min(memory, plan.getMaxMemoryMB());
+    }
+
+    /**
+     * Apply the current recommendation to the project's running container
+     * @param plan The caller's current plan; the one the container was deployed under may be higher
+     */
+    public AutoDeployService.DeploymentResult apply(String projectId, SubscriptionPlan plan) {
+        return autoDeployService.reconfigure(projectId, null, takeRecommendation(projectId, plan), plan,
+                new CancellationToken());
+    }
+
+    /**
+     * The recommended limit within the plan, about to be applied; starts the auto-apply cooldown
+     */
+    public int takeRecommendation(String projectId, SubscriptionPlan plan) {
+        Usage usage = projects.get(projectId);
+        Recommendation recommendation = usage != null ? recommend(usage, plan) : null;
+        if (recommendation == null || recommendation.getRecommendedMB() == null) {
+            throw new BusinessException(404, "No memory recommendation for project " + projectId + " yet");
+        }
+        usage.appliedAt = System.currentTimeMillis();
+        return recommendation.getRecommendedMB();
+    }
+
+    private void sampleAll() {
+        try {
+            Map<String, String> containers = dockerService.getProjectContainers();
+            List<Future<?>> pending = new ArrayList<>();
+            containers.forEach((projectId, containerId) -> pending.add(samplers.submit(() -> sample(projectId, containerId))));
+            for (Future<?> future : pending) {
+                future.get();
+            }
+
+            long cutoff = System.currentTimeMillis() - properties.getSizing().getWindow().toMillis();
+            projects.values().removeIf(usage -> usage.lastSeen < cutoff);
+
+            long reclaimable = 0;
+            for (Usage usage : projects.values()) {
+                Recommendation recommendation = recommend(usage);
+                if (recommendation.getRecommendedMB() == null) {
+                    continue;
+                }
+                reclaimable += recommendation.getSavingsMB();
+                if (containers.containsKey(usage.projectId)) {
+                    autoApply(usage, recommendation, false);
+                }
+            }
+            reclaimableMB = reclaimable;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Memory sampling failed: {}", e.getMessage());
+        }
+    }
+
+    private void sample(String projectId, String containerId) {
+        DockerService.MemorySample sample = dockerService.getMemoryUsage(containerId);
+        if (sample == null) {
+            return;
+        }
+        Usage usage = projects.computeIfAbsent(projectId, id -> new Usage(id, capacity()));
+        synchronized (usage) {
+            if (!containerId.equals(usage.containerId)) {
+                // New deploy: remember its limit and plan, keep the history of the project
+                DockerService.ContainerSpec spec = dockerService.getContainerSpec(containerId);
+                usage.containerId = containerId;
+                usage.plan = spec != null ? spec.getPlan() : null;
+            }
+            usage.limitMB = sample.getLimitBytes() > 0 ? (int) (sample.getLimitBytes() / MB) : null;
+            usage.add(sample.getTime(), sample.getUsageBytes());
+            usage.lastSeen = sample.getTime();
+        }
+    }
+
+    private void onCrash(RestartSupervisor.ProjectHealth health) {
+        if (!health.isOomKilled()) {
+            return;
+        }
+        Usage usage = projects.computeIfAbsent(health.getProjectId(), id -> new Usage(id, capacity()));
+        synchronized (usage) {
+            usage.oomKills.addLast(System.currentTimeMillis());
+            usage.lastSeen = System.currentTimeMillis();
+        }
+        log.warn("[{}] OOM-killed, memory recommendation raised", health.getProjectId());
+        // Growing the limit should not wait for the next sampling round or the cooldown
+        if (samplers != null) {
+            samplers.execute(() -> autoApply(usage, recommend(usage), true));
+        }
+    }
+
+    private void autoApply(Usage usage, Recommendation recommendation, boolean urgent) {
+        DeployProperties.Sizing sizing = properties.getSizing();
+        Integer current = recommendation.getCurrentMB();
+        Integer recommended = recommendation.getRecommendedMB();
+        if (!sizing.isAutoApply() || current == null || recommended == null || recommendation.getPlan() == null) {
+            return;
+        }
+        if (Math.abs(recommended - current) < current * sizing.getMinChange()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!urgent && now - usage.appliedAt < sizing.getApplyCooldown().toMillis()) {
+            return;
+        }
+        usage.appliedAt = now;
+        try {
+            AutoDeployService.DeploymentResult result = autoDeployService.reconfigure(usage.projectId, null,
+                    recommended, recommendation.getPlan(), new CancellationToken());
+            log.info("[{}] Memory limit right-sized from {} MB to {} MB: {}", usage.projectId, current, recommended,
+                    result.getStatus());
+        } catch (BusinessException e) {
+            // Another reconfigure or the container went away; the next round tries again
+            log.info("[{}] Memory right-sizing skipped: {}", usage.projectId, e.getMessage());
+        }
+    }
+
+    private Recommendation recommend(Usage usage) {
+        return recommend(usage, null);
+    }
+
+    /**
+     * @param plan Plan to stay within, null for the one the container was deployed under
+     */
+    private Recommendation recommend(Usage usage, SubscriptionPlan plan) {
+        DeployProperties.Sizing sizing = properties.getSizing();
+        long now = System.currentTimeMillis();
+        long windowStart = now - sizing.getWindow().toMillis();
+
+        Recommendation recommendation = new Recommendation();
+        long[] window;
+        int oomKills;
+        synchronized (usage) {
+            usage.prune(windowStart);
+            window = usage.values();
+            oomKills = usage.oomKills.size();
+            recommendation.setProjectId(usage.projectId);
+            recommendation.setContainerId(usage.containerId);
+            recommendation.setPlan(plan != null ? plan : usage.plan);
+            recommendation.setCurrentMB(usage.limitMB);
+        }
+        recommendation.setSamples(window.length);
+        recommendation.setOomKills(oomKills);
+        if (window.length > 0) {
+            Arrays.sort(window);
+            recommendation.setPeakMB(toMB(window[window.length - 1]));
+            recommendation.setP99MB(toMB(window[(int) Math.ceil(window.length * 0.99) - 1]));
+        }
+
+        Integer current = recommendation.getCurrentMB();
+        if (window.length < sizing.getMinSamples() && (oomKills == 0 || current == null)) {
+            recommendation.setReason("Collecting samples (" + window.length + "/" + sizing.getMinSamples() + ")");
+            return recommendation;
+        }
+
+        long target = 0;
+        String reason = "p99 plus " + Math.round(sizing.getHeadroom() * 100) + "% headroom";
+        if (window.length > 0) {
+            long p99 = window[(int) Math.ceil(window.length * 0.99) - 1];
+            long peak = window[window.length - 1];
+            target = Math.max((long) (p99 * (1 + sizing.getHeadroom())), peak);
+        }
+        if (oomKills > 0 && current != null) {
+            // Usage is capped by the limit that killed it, so it understates the need
+            long grown = (long) (current * MB * sizing.getOomGrowth());
+            if (grown > target) {
+                target = grown;
+                reason = oomKills + " OOM kill(s) in the window";
+            }
+        }
+
+        long step = Math.max(MB, sizing.getStep().toBytes());
+        long bytes = Math.max(sizing.getMinimum().toBytes(), (target + step - 1) / step * step);
+        int recommended = (int) (bytes / MB);
+        plan = recommendation.getPlan();
+        if (plan != null && recommended > plan.getMaxMemoryMB()) {
+            recommended = plan.getMaxMemoryMB();
+            recommendation.setCappedByPlan(true);
+            reason += ", capped by the " + plan.getDisplayName() + " plan";
+        }
+        recommendation.setRecommendedMB(recommended);
+        recommendation.setReason(reason);
+        if (current != null) {
+            recommendation.setSavingsMB(current - recommended);
+        }
+        return recommendation;
+    }
+
+    private int capacity() {
+        DeployProperties.Sizing sizing = properties.getSizing();
+        long perWindow = sizing.getWindow().toMillis() / Math.max(1, sizing.getSampleInterval().toMillis());
+        return (int) Math.max(sizing.getMinSamples(), Math.min(MAX_SAMPLES, perWindow));
+    }
+
+    private static int toMB(long bytes) {
+        return (int) ((bytes + MB - 1) / MB);
+    }
+
+    /**
+     * Samples of one project in a ring buffer; guarded by its own lock
+     */
+    private static final class Usage {
+        private final String projectId;
+        private final long[] times;
+        private final long[] bytes;
+        private final Deque<Long> oomKills = new ArrayDeque<>();
+        private int head;
+        private int size;
+        private String containerId;
+        private SubscriptionPlan plan;
+        private Integer limitMB;
+        private volatile long lastSeen;
+        private volatile long appliedAt;
+
+        Usage(String projectId, int capacity) {
+            this.projectId = projectId;
+            this.times = new long[capacity];
+            this.bytes = new long[capacity];
+        }
+
+        void add(long time, long usage) {
+            int slot = (head + size) % times.length;
+            times[slot] = time;
+            bytes[slot] = usage;
+            if (size < times.length) {
+                size++;
+            } else {
+                head = (head + 1) % times.length;
+            }
+        }
+
+        void prune(long windowStart) {
+            while (size > 0 && times[head] < windowStart) {
+                head = (head + 1) % times.length;
+                size--;
+            }
+            while (!oomKills.isEmpty() && oomKills.peekFirst() < windowStart) {
+                oomKills.pollFirst();
+            }
+        }
+
+        long[] values() {
+            long[] values = new long[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = bytes[(head + i) % bytes.length];
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Memory limit suggested for one project
+     */
+    public static class Recommendation {
+        private String projectId;
+        private String containerId;
+        private SubscriptionPlan plan;
+        private Integer currentMB;
+        private Integer recommendedMB;
+        private Integer peakMB;
+        private Integer p99MB;
+        private int samples;
+        private int oomKills;
+        private int savingsMB;
+        private boolean cappedByPlan;
+        private String reason;
+
+        public String getProjectId() { return projectId; }
+        public void setProjectId(String projectId) { this.projectId = projectId; }
+
+        public String getContainerId() { return containerId; }
+        public void setContainerId(String containerId) { this.containerId = containerId; }
+
+        public SubscriptionPlan getPlan() { return plan; }
+        public void setPlan(SubscriptionPlan plan) { this.plan = plan; }
+
+        public Integer getCurrentMB() { return currentMB; }
+        public void setCurrentMB(Integer currentMB) { this.currentMB = currentMB; }
+
+        public Integer getRecommendedMB() { return recommendedMB; }
+        public void setRecommendedMB(Integer recommendedMB) { this.recommendedMB = recommendedMB; }
+
+        public Integer getPeakMB() { return peakMB; }
+        public void setPeakMB(Integer peakMB) { this.peakMB = peakMB; }
+
+        public Integer getP99MB() { return p99MB; }
+        public void setP99MB(Integer p99MB) { this.p99MB = p99MB; }
+
+        public int getSamples() { return samples; }
+        public void setSamples(int samples) { this.samples = samples; }
+
+        public int getOomKills() { return oomKills; }
+        public void setOomKills(int oomKills) { this.oomKills = oomKills; }
+
+        /**
+         * Memory freed by applying the recommendation, negative if the project needs more
+         */
+        public int getSavingsMB() { return savingsMB; }
+        public void setSavingsMB(int savingsMB) { this.savingsMB = savingsMB; }
+
+        public boolean isCappedByPlan() { return cappedByPlan; }
+        public void setCappedByPlan(boolean cappedByPlan) { this.cappedByPlan = cappedByPlan; }
+
+        public String getReason() { return reason; }
+        public void setReason(String reason) { this.reason = reason; }
+    }
+
+    /**
+     * Memory allocated to app containers on this host against what they would get when right-sized
+     */
+    public static class CapacityReport {
+        private int allocatedMB;
+        private int recommendedMB;
+        private int reclaimableMB;
+        private int underProvisioned;
+        private List<Recommendation> recommendations;
+
+        public int getAllocatedMB() { return allocatedMB; }
+        public void setAllocatedMB(int allocatedMB) { this.allocatedMB = allocatedMB; }
+
+        public int getRecommendedMB() { return recommendedMB; }
+        public void setRecommendedMB(int recommendedMB) { this.recommendedMB = recommendedMB; }
+
+        /**
+         * Net memory freed; over-provisioned projects give back more than under-provisioned ones take
+         */
+        public int getReclaimableMB() { return reclaimableMB; }
+        public void setReclaimableMB(int reclaimableMB) { this.reclaimableMB = reclaimableMB; }
+
+        public int getUnderProvisioned() { return underProvisioned; }
+        public void setUnderProvisioned(int underProvisioned) { this.underProvisioned = underProvisioned; }
+
+        public List<Recommendation> getRecommendations() { return recommendations; }
+        public void setRecommendations(List<Recommendation> recommendations) { this.recommendations = recommendations; }
+    }
+}
@@ -0,0 +1,468 @@
+package com.vision.paas.deploy.supervisor;
+
+import com.vision.paas.common.enums.DeploymentStatus;
+import com.vision.paas.deploy.config.DeployProperties;
+import com.vision.paas.deploy.docker.DockerService;
+import com.vision.paas.deploy.history.DeploymentHistory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Restart Supervisor
+ * Follows Docker's die events for deployed containers and restarts crashed ones
+ * itself, doubling the delay with every restart inside the window. Once a container
+ * crashes more than maxRestarts times in the window, it is left stopped and its
+ * deployment marked FAILED with the exit code and last log lines. Containers that
+ * exited while this service was down are found on startup and handled as crashes.
+ *
+ * Metrics (tagged project):
+ * - vision.deploy.container.crashes   unexpected container exits
+ * - vision.deploy.container.restarts  restarts done by the supervisor
+ * - vision.deploy.container.failures  containers given up on
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RestartSupervisor {
+
+    private static final long RESUBSCRIBE_DELAY_MILLIS = 5000;
+
+    private final DeployProperties properties;
+    private final DockerService dockerService;
+    private final DeploymentHistory deploymentHistory;
+    private final MeterRegistry registry;
+
+    private final Map<String, Supervised> projects = new ConcurrentHashMap<>();
+    private final List<Consumer<ProjectHealth>> crashListeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService timer;
+    private volatile Closeable subscription;
+    private volatile long lastEventSeconds;
+    private volatile boolean stopped;
+
+    @PostConstruct
+    public void init() {
+        if (!properties.getSupervisor().isEnabled()) {
+            log.info("Restart supervisor disabled, Docker's restart policy applies");
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "restart-supervisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lastEventSeconds = System.currentTimeMillis() / 1000;
+        subscribe();
+
+        // Containers deployed before this service started, including those that exited meanwhile:
+        // Docker does not restart them under the supervisor and its event buffer may be gone
+        try {
+            dockerService.getProjectContainers(true).forEach(this::resume);
+        } catch (Exception e) {
+            log.warn("Could not list containers to supervise: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopped = true;
+        closeSubscription();
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+
+    /**
+     * Supervise the project's container from now on, replacing whatever was supervised for it
+     */
+    public void track(String projectId, String containerId) {
+        if (timer == null) {
+            return;
+        }
+        Supervised previous = projects.put(projectId, new Supervised(projectId, containerId));
+        if (previous != null) {
+            previous.cancelRestart();
+        }
+    }
+
+    /**
+     * Supervise a container found on startup; one that is not running died while nobody watched
+     */
+    private void resume(String projectId, String containerId) {
+        track(projectId, containerId);
+        Supervised supervised = projects.get(projectId);
+        timer.execute(() -> {
+            DockerService.ContainerSpec spec;
+            try {
+                spec = dockerService.getContainerSpec(containerId);
+            } catch (Exception e) {
+                log.warn("[{}] Could not inspect container {}: {}", projectId, containerId, e.getMessage());
+                return;
+            }
+            if (spec == null || spec.isRunning()) {
+                return;
+            }
+            if (DeploymentStatus.FAILED.name().equals(deploymentHistory.getContainerState(projectId, containerId))) {
+                // Given up on before the restart; stays stopped until the next deployment
+                synchronized (supervised) {
+                    supervised.status = DeploymentStatus.FAILED;
+                    supervised.lastExitCode = spec.getExitCode();
+                    supervised.oomKilled = spec.isOomKilled();
+                }
+                return;
+            }
+            log.warn("[{}] Container exited while the supervisor was down", projectId);
+            DockerService.ContainerDeath death = new DockerService.ContainerDeath();
+            death.setContainerId(containerId);
+            death.setProjectId(projectId);
+            onCrash(supervised, death);
+        });
+    }
+
+    /**
+     * Stop supervising the project, e.g. because it was undeployed
+     */
+    public void untrack(String projectId) {
+        Supervised previous = projects.remove(projectId);
+        if (previous != null) {
+            previous.cancelRestart();
+        }
+    }
+
+    /**
+     * Called on the supervisor's thread after every crash, before the restart is scheduled
+     */
+    public void addCrashListener(Consumer<ProjectHealth> listener) {
+        crashListeners.add(listener);
+    }
+
+    /**
+     * Restart state of one project, null if it is not supervised
+     */
+    public ProjectHealth getHealth(String projectId) {
+        Supervised supervised = projects.get(projectId);
+        return supervised != null ? supervised.snapshot() : null;
+    }
+
+    public List<ProjectHealth> getHealth() {
+        List<ProjectHealth> health = new ArrayList<>();
+        projects.values().forEach(supervised -> health.add(supervised.snapshot()));
+        return health;
+    }
+
+    private void subscribe() {
+        if (stopped) {
+            return;
+        }
+        try {
+            // Replay from the last event seen so deaths during a reconnect are not missed
+            subscription = dockerService.subscribeContainerDeaths(lastEventSeconds, this::onDeath, this::onClosed);
+        } catch (Exception e) {
+            log.warn("Could not subscribe to Docker events, retrying: {}", e.getMessage());
+            onClosed(e);
+        }
+    }
+
+    private void onClosed(Throwable cause) {
+        if (stopped) {
+            return;
+        }
+        log.warn("Docker event stream closed{}, resubscribing", cause != null ? ": " + cause.getMessage() : "");
+        closeSubscription();
+        timer.schedule(this::subscribe, RESUBSCRIBE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void closeSubscription() {
+        Closeable current = subscription;
+        subscription = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (Exception e) {
+                log.debug("Failed to close Docker event stream", e);
+            }
+        }
+    }
+
+    private void onDeath(DockerService.ContainerDeath death) {
+        lastEventSeconds = Math.max(lastEventSeconds, death.getTime());
+        Supervised supervised = death.getProjectId() != null ? projects.get(death.getProjectId()) : null;
+        if (supervised == null || !supervised.containerId.equals(death.getContainerId())) {
+            return;
+        }
+        if (dockerService.isExpectedStop(death.getContainerId())) {
+            log.debug("[{}] Container {} stopped on purpose", death.getProjectId(), death.getContainerId());
+            return;
+        }
+        // Docker calls back on its event thread; inspecting and fetching logs belongs on ours
+        timer.execute(() -> onCrash(supervised, death));
+    }
+
+    private void onCrash(Supervised supervised, DockerService.ContainerDeath death) {
+        DeployProperties.Supervisor settings = properties.getSupervisor();
+        String projectId = supervised.projectId;
+        synchronized (supervised) {
+            // A restart is already pending or the container was given up on, e.g. seen both on startup and as an event
+            if (supervised.status != DeploymentStatus.RUNNING) {
+                return;
+            }
+        }
+        DockerService.ContainerSpec spec = null;
+        try {
+            spec = dockerService.getContainerSpec(supervised.containerId);
+        } catch (Exception e) {
+            log.debug("[{}] Could not inspect crashed container", projectId, e);
+        }
+        if (spec == null || spec.isRunning()) {
+            // Removed meanwhile, or already started again by someone else
+            return;
+        }
+        List<String> logs = dockerService.getContainerLogLines(supervised.containerId, settings.getLogLines());
+        counter("vision.deploy.container.crashes", "Unexpected exits of deployed containers", projectId).increment();
+
+        long now = System.currentTimeMillis();
+        synchronized (supervised) {
+            if (projects.get(projectId) != supervised) {
+                return;
+            }
+            supervised.crashes++;
+            supervised.lastExitCode = death.getExitCode() != null ? death.getExitCode() : spec.getExitCode();
+            supervised.oomKilled = spec.isOomKilled();
+            supervised.lastLogs = logs;
+            supervised.lastCrashAt = now;
+        }
+        ProjectHealth crashed = supervised.snapshot();
+        for (Consumer<ProjectHealth> listener : crashListeners) {
+            try {
+                listener.accept(crashed);
+            } catch (Exception e) {
+                log.warn("[{}] Crash listener failed: {}", projectId, e.getMessage());
+            }
+        }
+
+        Duration delay = null;
+        String reason = null;
+        synchronized (supervised) {
+            if (projects.get(projectId) != supervised) {
+                return;
+            }
+
+            // A container that stayed up long enough earns a fresh backoff
+            if (now - supervised.startedAt >= settings.getStableAfter().toMillis()) {
+                supervised.recentRestarts.clear();
+            }
+            long windowStart = now - settings.getWindow().toMillis();
+            while (!supervised.recentRestarts.isEmpty() && supervised.recentRestarts.peekFirst() < windowStart) {
+                supervised.recentRestarts.pollFirst();
+            }
+
+            int attempt = supervised.recentRestarts.size();
+            if (attempt >= settings.getMaxRestarts()) {
+                supervised.status = DeploymentStatus.FAILED;
+                supervised.nextRestartAt = 0;
+                reason = String.format("Container crash-looping (%d restarts in %s), exit code %s%s", attempt,
+                        settings.getWindow(), supervised.lastExitCode, supervised.oomKilled ? " (OOM killed)" : "");
+            } else {
+                delay = backoff(settings, attempt);
+                supervised.status = DeploymentStatus.RESTARTING;
+                supervised.nextRestartAt = now + delay.toMillis();
+                supervised.pendingRestart = timer.schedule(() -> restart(supervised), delay.toMillis(),
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+        if (reason != null) {
+            log.error("[{}] {}, giving up", projectId, reason);
+            giveUp(supervised, reason);
+            return;
+        }
+        log.warn("[{}] Container exited with code {}{}, restarting in {} ms", projectId, supervised.lastExitCode,
+                supervised.oomKilled ? " (OOM killed)" : "", delay.toMillis());
+    }
+
+    private void restart(Supervised supervised) {
+        synchronized (supervised) {
+            if (projects.get(supervised.projectId) != supervised || supervised.status != DeploymentStatus.RESTARTING) {
+                return;
+            }
+            supervised.pendingRestart = null;
+            supervised.nextRestartAt = 0;
+        }
+        try {
+            dockerService.startCreatedContainer(supervised.containerId);
+        } catch (Exception e) {
+            log.error("[{}] Restart failed, no longer supervising: {}", supervised.projectId, e.getMessage());
+            synchronized (supervised) {
+                supervised.status = DeploymentStatus.FAILED;
+            }
+            giveUp(supervised, "Restart after crash failed: " + e.getMessage());
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (supervised) {
+            supervised.status = DeploymentStatus.RUNNING;
+            supervised.startedAt = now;
+            supervised.recentRestarts.addLast(now);
+            supervised.restarts++;
+        }
+        counter("vision.deploy.container.restarts", "Restarts of crashed containers by the supervisor",
+                supervised.projectId).increment();
+    }
+
+    /**
+     * Persist the FAILED state, so the deployment shows it and a restarted service leaves the container stopped
+     */
+    private void giveUp(Supervised supervised, String reason) {
+        counter("vision.deploy.container.failures", "Deployed containers given up on after crash-looping",
+                supervised.projectId).increment();
+        List<String> logs;
+        synchronized (supervised) {
+            logs = supervised.lastLogs;
+        }
+        deploymentHistory.recordCrashFailure(supervised.projectId, supervised.containerId, reason, logs);
+    }
+
+    /**
+     * initialBackoff * 2^attempt, capped at maxBackoff
+     */
+    static Duration backoff(DeployProperties.Supervisor settings, int attempt) {
+        long max = settings.getMaxBackoff().toMillis();
+        long delay = settings.getInitialBackoff().toMillis();
+        for (int i = 0; i < attempt && delay < max; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, max);
+        return Duration.ofMillis(delay);
+    }
+
+    private Counter counter(String name, String description, String projectId) {
+        return Counter.builder(name)
+                .description(description)
+                .tag("project", projectId)
+                .register(registry);
+    }
+
+    /**
+     * Supervision state of one project; guarded by its own lock
+     */
+    private static final class Supervised {
+        private final String projectId;
+        private final String containerId;
+        private final Deque<Long> recentRestarts = new ArrayDeque<>();
+        private final long trackedAt = System.currentTimeMillis();
+        private DeploymentStatus status = DeploymentStatus.RUNNING;
+        private long startedAt = trackedAt;
+        private int crashes;
+        private int restarts;
+        private Integer lastExitCode;
+        private boolean oomKilled;
+        private List<String> lastLogs = List.of();
+        private long lastCrashAt;
+        private long nextRestartAt;
+        private ScheduledFuture<?> pendingRestart;
+
+        Supervised(String projectId, String containerId) {
+            this.projectId = projectId;
+            this.containerId = containerId;
+        }
+
+        synchronized void cancelRestart() {
+            if (pendingRestart != null) {
+                pendingRestart.cancel(false);
+                pendingRestart = null;
+            }
+            status = DeploymentStatus.STOPPED;
+        }
+
+        synchronized ProjectHealth snapshot() {
+            long now = System.currentTimeMillis();
+            double minutes = Math.max(1.0, (now - trackedAt) / 60_000.0);
+            ProjectHealth health = new ProjectHealth();
+            health.setProjectId(projectId);
+            health.setContainerId(containerId);
+            health.setStatus(status);
+            health.setCrashes(crashes);
+            health.setRestarts(restarts);
+            health.setRecentRestarts(recentRestarts.size());
+            health.setRestartsPerMinute(restarts / minutes);
+            health.setLastExitCode(lastExitCode);
+            health.setOomKilled(oomKilled);
+            health.setLastCrashAt(lastCrashAt > 0 ? lastCrashAt : null);
+            health.setNextRestartAt(nextRestartAt > 0 ? nextRestartAt : null);
+            health.setLastLogs(lastLogs);
+            return health;
+        }
+    }
+
+    /**
+     * Restart state of a supervised project
+     */
+    public static class ProjectHealth {
+        private String projectId;
+        private String containerId;
+        private DeploymentStatus status;
+        private int crashes;
+        private int restarts;
+        private int recentRestarts;
+        private double restartsPerMinute;
+        private Integer lastExitCode;
+        private boolean oomKilled;
+        private Long lastCrashAt;
+        private Long nextRestartAt;
+        private List<String> lastLogs;
+
+        public String getProjectId() { return projectId; }
+        public void setProjectId(String projectId) { this.projectId = projectId; }
+
+        public String getContainerId() { return containerId; }
+        public void setContainerId(String containerId) { this.containerId = containerId; }
+
+        public DeploymentStatus getStatus() { return status; }
+        public void setStatus(DeploymentStatus status) { this.status = status; }
+
+        public int getCrashes() { return crashes; }
+        public void setCrashes(int crashes) { this.crashes = crashes; }
+
+        public int getRestarts() { return restarts; }
+        public void setRestarts(int restarts) { this.restarts = restarts; }
+
+        public int getRecentRestarts() { return recentRestarts; }
+        public void setRecentRestarts(int recentRestarts) { this.recentRestarts = recentRestarts; }
+
+        public double getRestartsPerMinute() { return restartsPerMinute; }
+        public void setRestartsPerMinute(double restartsPerMinute) { this.restartsPerMinute = restartsPerMinute; }
+
+        public Integer getLastExitCode() { return lastExitCode; }
+        public void setLastExitCode(Integer lastExitCode) { this.lastExitCode = lastExitCode; }
+
+        public boolean isOomKilled() { return oomKilled; }
+        public void setOomKilled(boolean oomKilled) { this.oomKilled = oomKilled; }
+
+        public Long getLastCrashAt() { return lastCrashAt; }
+        public void setLastCrashAt(Long lastCrashAt) { this.lastCrashAt = lastCrashAt; }
+
+        public Long getNextRestartAt() { return nextRestartAt; }
+        public void setNextRestartAt(Long nextRestartAt) { this.nextRestartAt = nextRestartAt; }
+
+        public List<String> getLastLogs() { return lastLogs; }
+        public void setLastLogs(List<String> lastLogs) { this.lastLogs = lastLogs; }
+    }
+}
@@ -0,0 +1,456 @@
+package com.vision.paas.deploy.workspace;
+
+import com.vision.paas.common.exception.BusinessException;
+import com.vision.paas.deploy.config.DeployProperties;
+import com.vision.paas.deploy.scheduler.CancellationToken;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Workspace Manager
+ * Owns the directories repositories are cloned into:
+ * - One workspace per project under a configurable root, kept between deploys for reuse
+ * - One deployment at a time holds a project's workspace, identified by its cancellation token
+ * - New clones wait while the global quota is used up or the disk is short of free space,
+ *   evicting the least recently used idle workspaces first
+ * - Discarded workspaces are renamed into a trash directory at once and deleted
+ *   in the background by a pool of threads walking the tree in parallel
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WorkspaceManager {
+
+    private static final String TRASH_DIR = ".trash";
+    private static final long PRESSURE_POLL_MILLIS = 1000;
+
+    private final DeployProperties properties;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Map<String, WorkspaceState> workspaces = new HashMap<>();
+    private long trashBytes;
+
+    private Path root;
+    private Path trash;
+    private ExecutorService deleter;
+    private ForkJoinPool deletePool;
+
+    @PostConstruct
+    public void init() throws IOException {
+        DeployProperties.Workspace settings = properties.getWorkspace();
+        root = Paths.get(settings.getRoot()).toAbsolutePath();
+        trash = root.resolve(TRASH_DIR);
+        Files.createDirectories(trash);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        deleter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "workspace-deleter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        deletePool = new ForkJoinPool(Math.max(1, settings.getDeleteThreads()), pool -> {
+            var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("workspace-delete-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+
+        // Finish deletions a previous run left behind and pick up workspaces it kept
+        try (Stream<Path> entries = Files.list(root)) {
+            for (Path entry : entries.toList()) {
+                if (entry.equals(trash) || !Files.isDirectory(entry)) {
+                    continue;
+                }
+                WorkspaceState state = new WorkspaceState();
+                state.bytes = sizeOf(entry);
+                workspaces.put(entry.getFileName().toString(), state);
+            }
+        }
+        try (Stream<Path> leftovers = Files.list(trash)) {
+            leftovers.forEach(path -> scheduleDelete(path, 0));
+        }
+        log.info("Workspace root {} with {} existing workspaces", root, workspaces.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deleter.shutdownNow();
+        deletePool.shutdownNow();
+    }
+
+    /**
+     * Take the project's workspace for a deployment, waiting while another deployment
+     * of the project holds it or while the disk is under pressure
+     * @param projectId Project ID
+     * @param token Cancellation token of the deployment, identifies the holder
+     * @return Workspace directory; it may still hold the previous checkout
+     */
+    public Path acquire(String projectId, CancellationToken token) {
+        Path path = pathOf(projectId);
+        Duration wait = properties.getWorkspace().getPressureWait();
+        long deadline = System.nanoTime() + wait.toNanos();
+
+        lock.lock();
+        try {
+            while (true) {
+                token.throwIfCancelled();
+                WorkspaceState state = workspaces.get(projectId);
+                boolean held = state != null && state.owner != null && state.owner != token;
+                if (!held && !underPressure()) {
+                    break;
+                }
+                if (!held && evictIdle(projectId)) {
+                    continue;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    if (held) {
+                        throw new BusinessException(409, "Another deployment of this project is still using its workspace");
+                    }
+                    throw new BusinessException(507, "Build workspace storage is full, try again later");
+                }
+                // Space freed by other processes does not signal, so poll as well
+                released.await(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(PRESSURE_POLL_MILLIS)),
+                        TimeUnit.NANOSECONDS);
+            }
+
+            WorkspaceState state = workspaces.computeIfAbsent(projectId, id -> new WorkspaceState());
+            state.owner = token;
+            state.lastUsed = System.currentTimeMillis();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            token.throwIfCancelled();
+            throw new BusinessException("Interrupted while waiting for a build workspace");
+        } finally {
+            lock.unlock();
+        }
+        return path;
+    }
+
+    /**
+     * Hand the workspace back once the deployment no longer reads it; the checkout is kept for reuse
+     */
+    public void release(String projectId, CancellationToken token) {
+        lock.lock();
+        try {
+            WorkspaceState state = workspaces.get(projectId);
+            if (state != null && state.owner == token) {
+                state.owner = null;
+                state.lastUsed = System.currentTimeMillis();
+                released.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Re-measure a workspace after a clone or update and enforce the per-project quota
+     * @throws BusinessException 413 and discards the checkout when it is over quota
+     */
+    public long updateUsage(String projectId, CancellationToken token) {
+        long bytes = sizeOf(pathOf(projectId));
+        long quota = properties.getWorkspace().getProjectQuota().toBytes();
+        lock.lock();
+        try {
+            WorkspaceState state = workspaces.get(projectId);
+            if (state != null) {
+                state.bytes = bytes;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (bytes > quota) {
+            discard(projectId, token);
+            throw new BusinessException(413, String.format(
+                    "Repository checkout is %.1f MB, over the workspace quota of %.1f MB",
+                    bytes / 1048576.0, quota / 1048576.0));
+        }
+        return bytes;
+    }
+
+    /**
+     * Move the project's checkout out of the way and delete it in the background.
+     * Does nothing while another deployment holds the workspace.
+     */
+    public void discard(String projectId, CancellationToken token) {
+        lock.lock();
+        try {
+            WorkspaceState state = workspaces.get(projectId);
+            if (state != null && state.owner != null && state.owner != token) {
+                log.debug("[{}] Workspace held by another deployment, not discarding", projectId);
+                return;
+            }
+            discardLocked(projectId, state);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Empty a workspace the deployment holds, keeping hold of it, before a fresh clone
+     */
+    public void clear(String projectId, CancellationToken token) {
+        lock.lock();
+        try {
+            WorkspaceState state = workspaces.get(projectId);
+            if (state == null || state.owner != token) {
+                throw new IllegalStateException("Workspace of " + projectId + " is not held by this deployment");
+            }
+            moveToTrash(projectId, state.bytes);
+            state.bytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Bytes used by workspaces and by discarded workspaces not yet deleted
+     */
+    public long getUsedBytes() {
+        lock.lock();
+        try {
+            return usedBytes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    private Path pathOf(String projectId) {
+        Path path = root.resolve(projectId).normalize();
+        if (!path.getParent().equals(root) || path.equals(trash)) {
+            throw new BusinessException(400, "Invalid project ID for a workspace: " + projectId);
+        }
+        return path;
+    }
+
+    /**
+     * Caller must hold the lock
+     */
+    private boolean underPressure() {
+        DeployProperties.Workspace settings = properties.getWorkspace();
+        if (usedBytes() >= settings.getGlobalQuota().toBytes()) {
+            return true;
+        }
+        try {
+            return Files.getFileStore(root).getUsableSpace() < settings.getMinFreeSpace().toBytes();
+        } catch (IOException e) {
+            log.warn("Cannot read free space of {}", root, e);
+            return false;
+        }
+    }
+
+    /**
+     * Discard the least recently used workspace nobody holds. Caller must hold the lock.
+     * @return false if there was nothing to evict
+     */
+    private boolean evictIdle(String exceptProjectId) {
+        String victim = workspaces.entrySet().stream()
+                .filter(entry -> entry.getValue().owner == null && !entry.getKey().equals(exceptProjectId))
+                .min(Comparator.comparingLong(entry -> entry.getValue().lastUsed))
+                .map(Map.Entry::getKey)
+                .orElse(null);
+        if (victim == null) {
+            return false;
+        }
+        log.info("[{}] Evicting idle workspace to free space", victim);
+        discardLocked(victim, workspaces.get(victim));
+        return true;
+    }
+
+    /**
+     * Caller must hold the lock
+     */
+    private void discardLocked(String projectId, WorkspaceState state) {
+        workspaces.remove(projectId);
+        if (state != null && state.owner != null) {
+            released.signalAll();
+        }
+        moveToTrash(projectId, state != null ? state.bytes : 0);
+    }
+
+    /**
+     * Caller must hold the lock
+     */
+    private void moveToTrash(String projectId, long bytes) {
+        Path path = pathOf(projectId);
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        Path target = trash.resolve(projectId + "-" + System.nanoTime());
+        try {
+            // Same file system, so the checkout leaves its path at once and a new clone can start
+            Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Never delete the live path in the background, a new clone may already be writing there
+            log.warn("[{}] Could not move workspace to trash, deleting in place", projectId, e);
+            deleteInPlace(projectId, path);
+            return;
+        }
+        trashBytes += bytes;
+        scheduleDelete(target, bytes);
+    }
+
+    /**
+     * Delete a checkout at its own path before anyone can clone into it. Caller must hold the lock.
+     * @throws BusinessException if part of it is left, rather than mixing it into the next clone
+     */
+    private void deleteInPlace(String projectId, Path path) {
+        DeleteTask task = new DeleteTask(path);
+        try {
+            deletePool.invoke(task);
+        } catch (RuntimeException e) {
+            throw new BusinessException("Could not delete the workspace of " + projectId + ": " + e.getMessage());
+        }
+        if (task.failures.get() > 0 || Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            throw new BusinessException("Could not delete the workspace of " + projectId + ", "
+                    + task.failures.get() + " entries left");
+        }
+    }
+
+    private void scheduleDelete(Path path, long bytes) {
+        deleter.execute(() -> {
+            long start = System.nanoTime();
+            DeleteTask task = new DeleteTask(path);
+            try {
+                deletePool.invoke(task);
+                if (task.failures.get() > 0) {
+                    log.warn("Deleting {} left {} entries behind", path, task.failures.get());
+                } else {
+                    log.debug("Deleted {} in {} ms", path, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+            } catch (RuntimeException e) {
+                // Pool shut down; the trash is purged on the next start
+                log.debug("Deleting {} aborted", path, e);
+            } finally {
+                lock.lock();
+                try {
+                    trashBytes -= bytes;
+                    released.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * Caller must hold the lock
+     */
+    private long usedBytes() {
+        long bytes = trashBytes;
+        for (WorkspaceState state : workspaces.values()) {
+            bytes += state.bytes;
+        }
+        return bytes;
+    }
+
+    private static long sizeOf(Path path) {
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            return files.filter(file -> Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS))
+                    .mapToLong(file -> {
+                        try {
+                            return Files.size(file);
+                        } catch (IOException e) {
+                            return 0;
+                        }
+                    })
+                    .sum();
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Cannot measure workspace {}", path, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Deletes a directory tree, one fork per subdirectory; failures are counted, not thrown
+     */
+    private static class DeleteTask extends RecursiveAction {
+        private final Path directory;
+        private final AtomicInteger failures;
+
+        DeleteTask(Path directory) {
+            this(directory, new AtomicInteger());
+        }
+
+        private DeleteTask(Path directory, AtomicInteger failures) {
+            this.directory = directory;
+            this.failures = failures;
+        }
+
+        @Override
+        protected void compute() {
+            List<DeleteTask> subdirectories = new ArrayList<>();
+            if (Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                    for (Path entry : entries) {
+                        if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                            subdirectories.add(new DeleteTask(entry, failures));
+                        } else {
+                            delete(entry);
+                        }
+                    }
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                    log.debug("Cannot list {}", directory, e);
+                }
+                invokeAll(subdirectories);
+            }
+            delete(directory);
+        }
+
+        private void delete(Path path) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                failures.incrementAndGet();
+                log.debug("Cannot delete {}", path, e);
+            }
+        }
+    }
+
+    /**
+     * Per-project bookkeeping; guarded by the manager lock
+     */
+    private static class WorkspaceState {
+        private CancellationToken owner;
+        private long bytes;
+        private long lastUsed = System.currentTimeMillis();
+    }
+}
@@ -1,7 +1,7 @@
 package com.vision.payment.controller;
 
 import com.vision.common.entity.R;
-import com.vision.common.util.JwtUtil;
+import com.vision.paas.common.security.CurrentUser;
 import com.vision.payment.service.IStripeService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
@@ -15,22 +15,13 @@ public class StripeController {
     @Autowired
     private IStripeService stripeService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
-    private String getUserIdFromHeader(String authorization) {
-        String token = authorization.replace("Bearer ", "");
-        return jwtUtil.getUserIdFromToken(token);
-    }
-
     /**
      * 创建支付会话
      * POST /api/payment/checkout
      */
     @PostMapping("/checkout")
-    public R<Map<String, String>> createCheckout(@RequestHeader("Authorization") String authorization,
+    public R<Map<String, String>> createCheckout(@CurrentUser String userId,
                                                    @RequestBody Map<String, String> request) {
-        String userId = getUserIdFromHeader(authorization);
         String priceId = request.get("priceId");
         
         String sessionUrl = stripeService.createCheckoutSession(priceId, userId);
@@ -43,7 +34,7 @@ public class StripeController {
      * POST /api/payment/portal
      */
     @PostMapping("/portal")
-    public R<Map<String, String>> createPortal(@RequestHeader("Authorization") String authorization,
+    public R<Map<String, String>> createPortal(@CurrentUser String userId,
                                                  @RequestBody Map<String, String> request) {
         String customerId = request.get("customerId");
         
@@ -68,8 +59,7 @@ public class StripeController {
      * GET /api/payment/subscription
      */
     @GetMapping("/subscription")
-    public R<Object> getSubscription(@RequestHeader("Authorization") String authorization) {
-        String userId = getUserIdFromHeader(authorization);
+    public R<Object> getSubscription(@CurrentUser String userId) {
         Object subscription = stripeService.getSubscriptionStatus(userId);
         return R.success(subscription);
     }
@@ -79,8 +69,7 @@ public class StripeController {
      * DELETE /api/payment/subscription
      */
     @DeleteMapping("/subscription")
-    public R<String> cancelSubscription(@RequestHeader("Authorization") String authorization) {
-        String userId = getUserIdFromHeader(authorization);
+    public R<String> cancelSubscription(@CurrentUser String userId) {
         stripeService.cancelSubscription(userId);
         return R.success("订阅已取消", "订阅已取消");
     }
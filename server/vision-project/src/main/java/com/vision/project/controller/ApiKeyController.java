@@ -1,7 +1,7 @@
 package com.vision.project.controller;
 
 import com.vision.common.entity.R;
-import com.vision.common.util.JwtUtil;
+import com.vision.paas.common.security.CurrentUser;
 import com.vision.project.entity.ApiKey;
 import com.vision.project.service.IApiKeyService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,42 +17,30 @@ public class ApiKeyController {
     @Autowired
     private IApiKeyService apiKeyService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
-    private String getUserIdFromHeader(String authorization) {
-        String token = authorization.replace("Bearer ", "");
-        return jwtUtil.getUserIdFromToken(token);
-    }
-
     @GetMapping
-    public R<List<ApiKey>> getApiKeys(@RequestHeader("Authorization") String authorization) {
-        String userId = getUserIdFromHeader(authorization);
+    public R<List<ApiKey>> getApiKeys(@CurrentUser String userId) {
         List<ApiKey> apiKeys = apiKeyService.getApiKeyList(userId);
         return R.success(apiKeys);
     }
 
     @PostMapping
-    public R<ApiKey> generateApiKey(@RequestHeader("Authorization") String authorization,
+    public R<ApiKey> generateApiKey(@CurrentUser String userId,
                                      @RequestBody Map<String, String> request) {
-        String userId = getUserIdFromHeader(authorization);
         String name = request.get("name");
         ApiKey apiKey = apiKeyService.generateApiKey(userId, name);
         return R.success("API 密钥生成成功", apiKey);
     }
 
     @DeleteMapping("/{id}")
-    public R<String> deleteApiKey(@RequestHeader("Authorization") String authorization,
+    public R<String> deleteApiKey(@CurrentUser String userId,
                                  @PathVariable String id) {
-        String userId = getUserIdFromHeader(authorization);
         apiKeyService.deleteApiKey(userId, id);
         return R.success("API 密钥删除成功", "API 密钥删除成功");
     }
 
     @PutMapping("/{id}/regenerate")
-    public R<ApiKey> regenerateApiKey(@RequestHeader("Authorization") String authorization,
+    public R<ApiKey> regenerateApiKey(@CurrentUser String userId,
                                        @PathVariable String id) {
-        String userId = getUserIdFromHeader(authorization);
         ApiKey apiKey = apiKeyService.regenerateApiKey(userId, id);
         return R.success("API 密钥重新生成成功", apiKey);
     }
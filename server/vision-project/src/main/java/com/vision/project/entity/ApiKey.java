@@ -1,5 +1,6 @@
 package com.vision.project.entity;
 
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 import lombok.Data;
@@ -16,8 +17,13 @@ public class ApiKey {
     @TableId
     private String id;
     
+    @TableField("key_name")
     private String name;
     
+    /**
+     * Base64 SHA-256 of the key; the gateway authenticates against this column
+     */
+    @TableField("api_key")
     private String keyHash;
     
     private String userId;
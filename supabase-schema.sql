@@ -74,6 +74,67 @@ CREATE TABLE IF NOT EXISTS deployments (
   completed_at TIMESTAMPTZ
 );
 
+-- Written by vision-deploy: exact state next to the coarse status, and what is running
+ALTER TABLE deployments ADD COLUMN IF NOT EXISTS state VARCHAR(20);
+ALTER TABLE deployments ADD COLUMN IF NOT EXISTS image_id VARCHAR(128);
+ALTER TABLE deployments ADD COLUMN IF NOT EXISTS container_id VARCHAR(128);
+ALTER TABLE deployments ADD COLUMN IF NOT EXISTS host_port INT;
+
+-- Create deployment events table (status transitions and stage timings)
+CREATE TABLE IF NOT EXISTS deployment_events (
+  id BIGSERIAL PRIMARY KEY,
+  deployment_id UUID REFERENCES deployments(id) ON DELETE CASCADE,
+  kind VARCHAR(10) NOT NULL CHECK (kind IN ('status', 'stage')),
+  name VARCHAR(32) NOT NULL,
+  at TIMESTAMPTZ NOT NULL,
+  duration_ms BIGINT,
+  success BOOLEAN
+);
+
+-- Create deployment logs table (compressed, kept out of the deployments rows)
+CREATE TABLE IF NOT EXISTS deployment_logs (
+  deployment_id UUID PRIMARY KEY REFERENCES deployments(id) ON DELETE CASCADE,
+  encoding VARCHAR(10) NOT NULL DEFAULT 'gzip',
+  size INT NOT NULL,
+  content BYTEA NOT NULL
+);
+ALTER TABLE deployment_logs ALTER COLUMN content SET STORAGE EXTERNAL;
+
+-- Create deploy jobs table (build queue shared by the vision-deploy instances)
+CREATE TABLE IF NOT EXISTS deploy_jobs (
+  id VARCHAR(32) PRIMARY KEY,
+  project_id VARCHAR(100) NOT NULL,
+  tenant_id VARCHAR(100) NOT NULL,
+  plan VARCHAR(20) NOT NULL,
+  weight INT NOT NULL,
+  max_concurrent INT NOT NULL,
+  memory_mb INT NOT NULL,
+  request JSONB NOT NULL,
+  state VARCHAR(10) NOT NULL DEFAULT 'queued' CHECK (state IN ('queued', 'running', 'done', 'failed', 'cancelled')),
+  preferred_worker VARCHAR(100),
+  pinned BOOLEAN NOT NULL DEFAULT false,
+  owner VARCHAR(100),
+  lease_until TIMESTAMPTZ,
+  attempts INT NOT NULL DEFAULT 0,
+  cancel_requested BOOLEAN NOT NULL DEFAULT false,
+  result JSONB,
+  error TEXT,
+  error_code INT,
+  enqueued_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+  started_at TIMESTAMPTZ,
+  finished_at TIMESTAMPTZ
+);
+
+-- Create deploy workers table (vision-deploy instances and their heartbeats)
+CREATE TABLE IF NOT EXISTS deploy_workers (
+  id VARCHAR(100) PRIMARY KEY,
+  host VARCHAR(255),
+  capacity INT NOT NULL,
+  running INT NOT NULL DEFAULT 0,
+  started_at TIMESTAMPTZ NOT NULL,
+  heartbeat_at TIMESTAMPTZ NOT NULL
+);
+
 -- Create subscriptions table
 CREATE TABLE IF NOT EXISTS subscriptions (
   id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
@@ -192,7 +253,12 @@ CREATE TABLE IF NOT EXISTS gitee_repos (
 CREATE INDEX IF NOT EXISTS idx_projects_user_id ON projects(user_id);
 CREATE INDEX IF NOT EXISTS idx_projects_status ON projects(status);
 CREATE INDEX IF NOT EXISTS idx_deployments_user_id ON deployments(user_id);
-CREATE INDEX IF NOT EXISTS idx_deployments_project_id ON deployments(project_id);
+CREATE INDEX IF NOT EXISTS idx_deployments_project_created ON deployments(project_id, created_at DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_deployment_events_deployment_id ON deployment_events(deployment_id);
+CREATE INDEX IF NOT EXISTS idx_deploy_jobs_queued ON deploy_jobs(tenant_id, enqueued_at) WHERE state = 'queued';
+CREATE INDEX IF NOT EXISTS idx_deploy_jobs_running ON deploy_jobs(owner) WHERE state = 'running';
+CREATE INDEX IF NOT EXISTS idx_deploy_jobs_project ON deploy_jobs(project_id, enqueued_at DESC);
+CREATE INDEX IF NOT EXISTS idx_deploy_jobs_finished ON deploy_jobs(finished_at) WHERE finished_at IS NOT NULL;
 CREATE INDEX IF NOT EXISTS idx_usage_metrics_user_id ON usage_metrics(user_id);
 CREATE INDEX IF NOT EXISTS idx_usage_metrics_date ON usage_metrics(date);
 CREATE INDEX IF NOT EXISTS idx_activity_logs_user_id ON activity_logs(user_id);
@@ -203,6 +269,10 @@ ALTER TABLE user_profiles ENABLE ROW LEVEL SECURITY;
 ALTER TABLE projects ENABLE ROW LEVEL SECURITY;
 ALTER TABLE project_files ENABLE ROW LEVEL SECURITY;
 ALTER TABLE deployments ENABLE ROW LEVEL SECURITY;
+ALTER TABLE deployment_events ENABLE ROW LEVEL SECURITY;
+ALTER TABLE deployment_logs ENABLE ROW LEVEL SECURITY;
+ALTER TABLE deploy_jobs ENABLE ROW LEVEL SECURITY;
+ALTER TABLE deploy_workers ENABLE ROW LEVEL SECURITY;
 ALTER TABLE subscriptions ENABLE ROW LEVEL SECURITY;
 ALTER TABLE payments ENABLE ROW LEVEL SECURITY;
 ALTER TABLE usage_metrics ENABLE ROW LEVEL SECURITY;
@@ -258,6 +328,26 @@ CREATE POLICY "Users can manage their own deployments"
   ON deployments FOR ALL
   USING (auth.uid() = user_id);
 
+CREATE POLICY "Users can view their own deployment events"
+  ON deployment_events FOR SELECT
+  USING (
+    EXISTS (
+      SELECT 1 FROM deployments
+      WHERE deployments.id = deployment_events.deployment_id
+      AND deployments.user_id = auth.uid()
+    )
+  );
+
+CREATE POLICY "Users can view their own deployment logs"
+  ON deployment_logs FOR SELECT
+  USING (
+    EXISTS (
+      SELECT 1 FROM deployments
+      WHERE deployments.id = deployment_logs.deployment_id
+      AND deployments.user_id = auth.uid()
+    )
+  );
+
 -- RLS Policies for subscriptions
 CREATE POLICY "Users can view their own subscriptions"
   ON subscriptions FOR SELECT
@@ -322,3 +412,21 @@ CREATE TRIGGER update_subscriptions_updated_at BEFORE UPDATE ON subscriptions
 
 CREATE TRIGGER update_teams_updated_at BEFORE UPDATE ON teams
   FOR EACH ROW EXECUTE FUNCTION update_updated_at_column();
+
+-- Tell the gateway which API key changed (payload: the key hash) so it drops its cached copy
+CREATE OR REPLACE FUNCTION notify_api_key_change()
+RETURNS TRIGGER AS $$
+BEGIN
+  IF TG_OP <> 'INSERT' THEN
+    PERFORM pg_notify('api_key_changes', OLD.api_key);
+  END IF;
+  IF TG_OP <> 'DELETE' AND (TG_OP = 'INSERT' OR NEW.api_key IS DISTINCT FROM OLD.api_key) THEN
+    PERFORM pg_notify('api_key_changes', NEW.api_key);
+  END IF;
+  RETURN NULL;
+END;
+$$ language 'plpgsql';
+
+CREATE TRIGGER notify_api_keys_change
+  AFTER INSERT OR DELETE OR UPDATE OF api_key, user_id, scopes, expires_at, is_active ON api_keys
+  FOR EACH ROW EXECUTE FUNCTION notify_api_key_change();